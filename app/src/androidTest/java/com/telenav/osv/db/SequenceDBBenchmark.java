@@ -0,0 +1,166 @@
+package com.telenav.osv.db;
+
+import java.util.Random;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import com.telenav.osv.item.LocalSequence;
+
+/**
+ * Query times of the frame and status lookups on a synthetic database of 500 sequences with 5000 frames each,
+ * with and without the secondary indexes of schema version 5.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class SequenceDBBenchmark {
+
+    private static final String TAG = "SequenceDBBenchmark";
+
+    private static final String DATABASE_NAME = "SequencesBenchmark";
+
+    private static final int SEQUENCES = 500;
+
+    private static final int FRAMES = 5000;
+
+    private static final int FRAMES_PER_VIDEO = 500;
+
+    private static final int FRAME_LOOKUPS = 50;
+
+    private static final int STATUS_SCANS = 200;
+
+    private static SequenceDB sDatabase;
+
+    @BeforeClass
+    public static void populate() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        sDatabase = new SequenceDB(context, DATABASE_NAME);
+        SQLiteDatabase db = sDatabase.getDatabase();
+        SQLiteStatement sequence = db.compileStatement("INSERT INTO " + SequenceDB.SEQUENCE_TABLE + " (" + SequenceDB.SEQUENCE_ID + ", " +
+                SequenceDB.SEQUENCE_ONLINE_ID + ", " + SequenceDB.SEQUENCE_COUNT + ", " + SequenceDB.SEQUENCE_ORIG_COUNT + ", " +
+                SequenceDB.SEQUENCE_STATUS + ") VALUES (?, ?, ?, ?, ?)");
+        SQLiteStatement video = db.compileStatement("INSERT INTO " + SequenceDB.VIDEO_TABLE + " (" + SequenceDB.VIDEO_SEQ_ID + ", " +
+                SequenceDB.VIDEO_INDEX + ", " + SequenceDB.VIDEO_FILE_PATH + ", " + SequenceDB.VIDEO_FRAME_COUNT + ") VALUES (?, ?, ?, ?)");
+        SQLiteStatement frame = db.compileStatement("INSERT INTO " + SequenceDB.FRAME_TABLE + " (" + SequenceDB.FRAME_SEQ_ID + ", " +
+                SequenceDB.FRAME_VIDEO_ID + ", " + SequenceDB.FRAME_SEQ_INDEX + ", " + SequenceDB.FRAME_FILE_PATH + ", " + SequenceDB.FRAME_LAT +
+                ", " + SequenceDB.FRAME_LON + ", " + SequenceDB.FRAME_ACCURACY + ", " + SequenceDB.FRAME_ORIENTATION +
+                ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        Random random = new Random(42);
+        long time = System.currentTimeMillis();
+        for (int s = 0; s < SEQUENCES; s++) {
+            db.beginTransaction();
+            try {
+                sequence.bindLong(1, s);
+                sequence.bindLong(2, s % 3 == 0 ? 1000 + s : -1);
+                sequence.bindLong(3, FRAMES);
+                sequence.bindLong(4, FRAMES);
+                sequence.bindLong(5, s % 50 == 0 ? LocalSequence.STATUS_UPLOADING : LocalSequence.STATUS_NEW);
+                sequence.executeInsert();
+                for (int v = 0; v < FRAMES / FRAMES_PER_VIDEO; v++) {
+                    video.bindLong(1, s);
+                    video.bindLong(2, v);
+                    video.bindString(3, "/SEQ_" + s + "/" + v + ".mp4");
+                    video.bindLong(4, FRAMES_PER_VIDEO);
+                    video.executeInsert();
+                }
+                for (int f = 0; f < FRAMES; f++) {
+                    int videoIndex = f / FRAMES_PER_VIDEO;
+                    frame.bindLong(1, s);
+                    frame.bindLong(2, videoIndex);
+                    frame.bindLong(3, f);
+                    frame.bindString(4, "/SEQ_" + s + "/" + videoIndex + ".mp4");
+                    frame.bindDouble(5, 46 + random.nextDouble());
+                    frame.bindDouble(6, 23 + random.nextDouble());
+                    frame.bindDouble(7, random.nextFloat() * 20);
+                    frame.bindLong(8, random.nextInt(360));
+                    frame.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        Log.d(TAG, "populate: " + SEQUENCES + " x " + FRAMES + " frames in " + (System.currentTimeMillis() - time) + " ms");
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        sDatabase.getDatabase().close();
+        InstrumentationRegistry.getTargetContext().deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void queryTimes() {
+        long[] indexed = measure();
+        SQLiteDatabase db = sDatabase.getDatabase();
+        db.execSQL("DROP INDEX " + SequenceDB.FRAME_SEQUENCE_INDEX);
+        db.execSQL("DROP INDEX " + SequenceDB.SEQUENCE_STATUS_INDEX);
+        db.execSQL("DROP INDEX " + SequenceDB.SEQUENCE_ONLINE_ID_INDEX);
+        long[] plain;
+        try {
+            plain = measure();
+        } finally {
+            db.execSQL(SequenceDBHelper.DB_CREATE_FRAME_SEQUENCE_INDEX);
+            db.execSQL(SequenceDBHelper.DB_CREATE_SEQUENCE_STATUS_INDEX);
+            db.execSQL(SequenceDBHelper.DB_CREATE_SEQUENCE_ONLINE_ID_INDEX);
+        }
+        String[] names = {"getFrames x" + FRAME_LOOKUPS, "getNumberOfFrames x" + SEQUENCES, "status scan x" + STATUS_SCANS,
+                "online id lookup x" + STATUS_SCANS};
+        for (int i = 0; i < names.length; i++) {
+            Log.d(TAG, names[i] + ": " + indexed[i] + " ms with indexes, " + plain[i] + " ms without");
+        }
+    }
+
+    private long[] measure() {
+        SQLiteDatabase db = sDatabase.getDatabase();
+        long[] result = new long[4];
+        Random random = new Random(7);
+
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < FRAME_LOOKUPS; i++) {
+            Cursor cursor = sDatabase.getFrames(random.nextInt(SEQUENCES));
+            int rows = 0;
+            while (!cursor.isAfterLast()) {
+                rows++;
+                cursor.moveToNext();
+            }
+            cursor.close();
+            Assert.assertEquals(FRAMES, rows);
+        }
+        result[0] = System.currentTimeMillis() - time;
+
+        time = System.currentTimeMillis();
+        for (int s = 0; s < SEQUENCES; s++) {
+            Assert.assertEquals(FRAMES, sDatabase.getNumberOfFrames(s));
+        }
+        result[1] = System.currentTimeMillis() - time;
+
+        time = System.currentTimeMillis();
+        for (int i = 0; i < STATUS_SCANS; i++) {
+            long uploading = DatabaseUtils.queryNumEntries(db, SequenceDB.SEQUENCE_TABLE, SequenceDB.SEQUENCE_STATUS + " = ?",
+                    new String[]{"" + LocalSequence.STATUS_UPLOADING});
+            Assert.assertEquals(SEQUENCES / 50, uploading);
+        }
+        result[2] = System.currentTimeMillis() - time;
+
+        time = System.currentTimeMillis();
+        for (int i = 0; i < STATUS_SCANS; i++) {
+            long matching = DatabaseUtils.queryNumEntries(db, SequenceDB.SEQUENCE_TABLE, SequenceDB.SEQUENCE_ONLINE_ID + " = ?",
+                    new String[]{"" + (1000 + 3 * (i % (SEQUENCES / 3)))});
+            Assert.assertEquals(1, matching);
+        }
+        result[3] = System.currentTimeMillis() - time;
+        return result;
+    }
+}
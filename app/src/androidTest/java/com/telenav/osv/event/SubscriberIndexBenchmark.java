@@ -0,0 +1,93 @@
+package com.telenav.osv.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.greenrobot.eventbus.EventBusBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.objenesis.Objenesis;
+import org.objenesis.ObjenesisStd;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+/**
+ * Time to register the subscribers of a cold start, looking their methods up in the generated index against scanning their classes by
+ * reflection. The method caches of the bus are cleared before every round. The subscribers are allocated without running their
+ * constructors, registering only needs their classes. The results are logged, the measurement is approximate.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class SubscriberIndexBenchmark {
+
+    private static final String TAG = "SubscriberIndexBench";
+
+    /**
+     * the subscribers registered while the app starts and records, by name as some of them are package private
+     */
+    private static final String[] SUBSCRIBERS = {"com.telenav.osv.activity.MainActivity", "com.telenav.osv.activity.SplashActivity",
+            "com.telenav.osv.activity.LoginActivity", "com.telenav.osv.activity.PlayerActivity",
+            "com.telenav.osv.ui.fragment.UploadProgressFragment", "com.telenav.osv.ui.fragment.UserProfileFragment",
+            "com.telenav.osv.ui.fragment.WaitingFragment", "com.telenav.osv.ui.fragment.SimpleProfileFragment",
+            "com.telenav.osv.ui.fragment.MapFragment", "com.telenav.osv.ui.fragment.SettingsFragment",
+            "com.telenav.osv.ui.fragment.CameraControlsFragment", "com.telenav.osv.ui.fragment.IssueReportFragment",
+            "com.telenav.osv.ui.fragment.CameraPreviewFragment", "com.telenav.osv.ui.fragment.ByodProfileFragment",
+            "com.telenav.osv.ui.ScreenDecorator", "com.telenav.osv.ui.ScreenComposer", "com.telenav.osv.manager.obd.ObdBleManager",
+            "com.telenav.osv.manager.network.LoginManager", "com.telenav.osv.manager.network.UserDataManager",
+            "com.telenav.osv.manager.network.UploadManager", "com.telenav.osv.manager.Recorder",
+            "com.telenav.osv.manager.location.ScoreManager", "com.telenav.osv.manager.location.GoogleLocationManager",
+            "com.telenav.osv.manager.capture.Camera2Manager", "com.telenav.osv.service.CameraHandlerService"};
+
+    private static final int WARMUP_ROUNDS = 3;
+
+    private static final int ROUNDS = 20;
+
+    private List<Object> mSubscribers;
+
+    @Before
+    public void setUp() throws Exception {
+        Objenesis objenesis = new ObjenesisStd();
+        mSubscribers = new ArrayList<>();
+        for (String name : SUBSCRIBERS) {
+            mSubscribers.add(objenesis.newInstance(Class.forName(name)));
+        }
+    }
+
+    @Test
+    public void registrationTime() throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            register(true);
+            register(false);
+        }
+        long indexed = 0;
+        long reflection = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            indexed += register(true);
+            reflection += register(false);
+        }
+        Log.i(TAG, "Register " + SUBSCRIBERS.length + " subscribers, indexed: " + indexed / ROUNDS / 1000 + " us, reflection: " +
+                reflection / ROUNDS / 1000 + " us");
+    }
+
+    /**
+     * @return the nanoseconds taken to register all subscribers on a new bus with empty method caches
+     */
+    private long register(boolean useIndex) {
+        org.greenrobot.eventbus.EventBus.clearCaches();
+        EventBusBuilder builder = org.greenrobot.eventbus.EventBus.builder();
+        if (useIndex) {
+            builder.addIndex(new OSVEventBusIndex());
+        }
+        org.greenrobot.eventbus.EventBus bus = builder.build();
+        long start = System.nanoTime();
+        for (Object subscriber : mSubscribers) {
+            bus.register(subscriber);
+        }
+        long time = System.nanoTime() - start;
+        for (Object subscriber : mSubscribers) {
+            bus.unregister(subscriber);
+        }
+        return time;
+    }
+}
@@ -0,0 +1,218 @@
+package com.telenav.osv.http;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Random;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.ContentBody;
+import org.apache.http.entity.mime.content.FileBody;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import com.android.volley.toolbox.HurlStack;
+import com.android.volley.toolbox.StringRequest;
+
+/**
+ * Upload throughput and CPU time of a 32 MB video sent to a loopback server, with chunked streaming and 4 KB file copies,
+ * and with fixed length streaming and pooled 64 KB file copies.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class UploadStreamingBenchmark {
+
+    private static final String TAG = "UploadStreamingBench";
+
+    private static final int FILE_SIZE = 32 * 1024 * 1024;
+
+    private static final int RUNS = 3;
+
+    private static final Charset LATIN = Charset.forName("ISO-8859-1");
+
+    private static File sFile;
+
+    private static LoopbackServer sServer;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        sFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "benchmark.mp4");
+        byte[] block = new byte[1024 * 1024];
+        new Random(3).nextBytes(block);
+        FileOutputStream fos = new FileOutputStream(sFile);
+        for (int i = 0; i < FILE_SIZE / block.length; i++) {
+            fos.write(block);
+        }
+        fos.close();
+        sServer = new LoopbackServer();
+        sServer.start();
+    }
+
+    @AfterClass
+    public static void cleanup() throws Exception {
+        sServer.close();
+        sFile.delete();
+    }
+
+    @Test
+    public void throughput() throws Exception {
+        //warm up the connection code paths
+        upload(new HurlStack(null, null, true), new FileRangeBody(sFile, 0, FILE_SIZE, ContentType.create("video/mp4"), sFile.getName()));
+        long[] chunked = new long[2];
+        long[] fixed = new long[2];
+        for (int i = 0; i < RUNS; i++) {
+            add(chunked, upload(new HurlStack(null, null, false), new FileBody(sFile, ContentType.create("video/mp4"), sFile.getName())));
+            add(fixed, upload(new HurlStack(null, null, true),
+                    new FileRangeBody(sFile, 0, FILE_SIZE, ContentType.create("video/mp4"), sFile.getName())));
+        }
+        log("chunked, 4 KB copies", chunked);
+        log("fixed length, 64 KB copies", fixed);
+    }
+
+    private static void add(long[] total, long[] run) {
+        total[0] += run[0];
+        total[1] += run[1];
+    }
+
+    private static void log(String name, long[] total) {
+        long millis = total[0] / RUNS;
+        Log.d(TAG, name + ": " + (FILE_SIZE / 1024 / Math.max(millis, 1)) + " KB/ms, " + millis + " ms, cpu " + total[1] / RUNS / 1000000 +
+                " ms per upload");
+    }
+
+    /**
+     * @return wall time in milliseconds and cpu time of the uploading thread in nanoseconds
+     */
+    private static long[] upload(HurlStack stack, ContentBody body) throws Exception {
+        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+        builder.addTextBody("sequenceId", "1");
+        builder.addPart("video", body);
+        final HttpEntity entity = builder.build();
+        StringRequest request = new StringRequest(StringRequest.Method.POST, "http://127.0.0.1:" + sServer.getPort() + "/video", null, null) {
+
+            @Override
+            public HttpEntity getMultipartEntity() {
+                return entity;
+            }
+
+            @Override
+            public String getBodyContentType() {
+                return entity.getContentType().getValue();
+            }
+        };
+        long cpu = Debug.threadCpuTimeNanos();
+        long time = System.currentTimeMillis();
+        HttpResponse response = stack.performRequest(request, Collections.<String, String>emptyMap());
+        long[] result = {System.currentTimeMillis() - time, Debug.threadCpuTimeNanos() - cpu};
+        Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+        Assert.assertTrue(sServer.lastBodySize >= FILE_SIZE);
+        return result;
+    }
+
+    /**
+     * Reads and discards request bodies, either fixed length or chunked. The unit tests share the StubHttpServer of their own source
+     * set, which is not on the classpath of the instrumented tests and keeps whole multipart bodies in memory, this server discards the
+     * 32 MB bodies as they arrive.
+     */
+    private static class LoopbackServer extends Thread {
+
+        private final ServerSocket mSocket;
+
+        volatile long lastBodySize;
+
+        LoopbackServer() throws IOException {
+            mSocket = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+            setDaemon(true);
+        }
+
+        int getPort() {
+            return mSocket.getLocalPort();
+        }
+
+        void close() throws IOException {
+            mSocket.close();
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[64 * 1024];
+            while (!mSocket.isClosed()) {
+                try {
+                    Socket client = mSocket.accept();
+                    try {
+                        InputStream in = new BufferedInputStream(client.getInputStream(), buffer.length);
+                        long contentLength = -1;
+                        boolean chunked = false;
+                        String line;
+                        while (!(line = readLine(in)).isEmpty()) {
+                            String lower = line.toLowerCase();
+                            if (lower.startsWith("content-length:")) {
+                                contentLength = Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                            } else if (lower.startsWith("transfer-encoding:") && lower.contains("chunked")) {
+                                chunked = true;
+                            }
+                        }
+                        long size = 0;
+                        if (chunked) {
+                            long chunk;
+                            while ((chunk = Long.parseLong(readLine(in).trim(), 16)) > 0) {
+                                skip(in, buffer, chunk);
+                                readLine(in);
+                                size += chunk;
+                            }
+                            readLine(in);
+                        } else if (contentLength > 0) {
+                            skip(in, buffer, contentLength);
+                            size = contentLength;
+                        }
+                        lastBodySize = size;
+                        OutputStream out = client.getOutputStream();
+                        out.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\nConnection: close\r\n\r\n{}".getBytes(LATIN));
+                        out.flush();
+                    } finally {
+                        client.close();
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private void skip(InputStream in, byte[] buffer, long length) throws IOException {
+            while (length > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+                if (read == -1) {
+                    throw new IOException("connection closed");
+                }
+                length -= read;
+            }
+        }
+
+        private String readLine(InputStream in) throws IOException {
+            StringBuilder builder = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1 && c != '\n') {
+                if (c != '\r') {
+                    builder.append((char) c);
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
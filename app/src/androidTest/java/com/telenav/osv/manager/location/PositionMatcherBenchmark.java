@@ -0,0 +1,153 @@
+package com.telenav.osv.manager.location;
+
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import com.skobbler.ngx.SKCoordinate;
+import com.skobbler.ngx.map.SKBoundingBox;
+import com.telenav.osv.item.Polyline;
+import com.telenav.osv.item.Segment;
+
+/**
+ * Matching time of the grid index against the scan over every edge, on a dense city sized street grid covering the whole loaded
+ * bounding box. Warms up, then measures batches of matches and logs the average time per match.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class PositionMatcherBenchmark {
+
+    private static final String TAG = "PositionMatcherBench";
+
+    private static final SKCoordinate CENTER = new SKCoordinate(46.77324496178227, 23.593161462125305);
+
+    /**
+     * a street every ~90 meters in both directions, with a node every ~20 meters
+     */
+    private static final double STREET_SPACING = 0.0008;
+
+    private static final double NODE_SPACING = 0.0002;
+
+    private static final int POSITIONS = 500;
+
+    private static final int WARMUP_ITERATIONS = 3;
+
+    private static final int ITERATIONS = 5;
+
+    private PositionMatcher mIndexed;
+
+    private PositionMatcher mLinear;
+
+    private SKCoordinate[] mPositions;
+
+    private int mEdges;
+
+    @Before
+    public void setup() throws Exception {
+        SKBoundingBox requestedBB = PositionMatcher.getBoundingBoxForRegion(CENTER, 3500);
+        SKBoundingBox triggerBB = PositionMatcher.getBoundingBoxForRegion(CENTER, 1500);
+        ArrayList<Polyline> polylines = createStreetGrid(requestedBB);
+        mIndexed = createMatcher(polylines, triggerBB, requestedBB);
+        mLinear = createMatcher(polylines, triggerBB, requestedBB);
+
+        //a drive along the streets with some gps noise, and a few positions off road
+        Random random = new Random(7);
+        mPositions = new SKCoordinate[POSITIONS];
+        double lat = CENTER.getLatitude();
+        double lon = CENTER.getLongitude();
+        for (int i = 0; i < POSITIONS; i++) {
+            if (i % 50 < 25) {
+                lon += 0.00015;
+            } else {
+                lat += 0.00015;
+            }
+            mPositions[i] = new SKCoordinate(lat + (random.nextDouble() - 0.5) * 0.0002, lon + (random.nextDouble() - 0.5) * 0.0002);
+        }
+    }
+
+    @Test
+    public void indexedMatchingIsFasterAndEqual() throws Exception {
+        for (int i = 0; i < POSITIONS; i++) {
+            Segment indexed = mIndexed.match(mPositions[i]);
+            Segment linear = mLinear.matchAll(mPositions[i]);
+            Assert.assertEquals(linear.getPolyline().getIdentifier(), indexed.getPolyline().getIdentifier());
+            Assert.assertEquals(linear.getScore(), indexed.getScore(), 0);
+        }
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runLinear();
+            runIndexed();
+        }
+        long linear = 0;
+        long indexed = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            linear += runLinear();
+            indexed += runIndexed();
+        }
+        long linearPerMatch = linear / ITERATIONS / POSITIONS;
+        long indexedPerMatch = indexed / ITERATIONS / POSITIONS;
+        Log.i(TAG, mEdges + " edges, full scan " + linearPerMatch / 1000 + " us/match, grid index " +
+                indexedPerMatch / 1000 + " us/match");
+        Assert.assertTrue(indexedPerMatch < linearPerMatch);
+    }
+
+    private long runLinear() {
+        long time = System.nanoTime();
+        for (SKCoordinate position : mPositions) {
+            mLinear.matchAll(position);
+        }
+        return System.nanoTime() - time;
+    }
+
+    private long runIndexed() {
+        long time = System.nanoTime();
+        for (SKCoordinate position : mPositions) {
+            mIndexed.match(position);
+        }
+        return System.nanoTime() - time;
+    }
+
+    private static PositionMatcher createMatcher(ArrayList<Polyline> polylines, SKBoundingBox triggerBB, SKBoundingBox requestedBB) {
+        PositionMatcher matcher = new PositionMatcher(null, new PositionMatcher.SegmentsListener() {
+
+            @Override
+            public void onSegmentsReceived(SKCoordinate location) {
+
+            }
+        });
+        matcher.offerNewSegments(CENTER, polylines, triggerBB, requestedBB);
+        return matcher;
+    }
+
+    private ArrayList<Polyline> createStreetGrid(SKBoundingBox bb) {
+        double top = bb.getTopLeft().getLatitude();
+        double bottom = bb.getBottomRight().getLatitude();
+        double left = bb.getTopLeft().getLongitude();
+        double right = bb.getBottomRight().getLongitude();
+        ArrayList<Polyline> polylines = new ArrayList<>();
+        int id = 0;
+        for (double lat = bottom; lat <= top; lat += STREET_SPACING) {
+            Polyline polyline = new Polyline(id++);
+            polyline.coverage = id;
+            for (double lon = left; lon <= right; lon += NODE_SPACING) {
+                polyline.getNodes().add(new SKCoordinate(lat, lon));
+            }
+            mEdges += polyline.getNodes().size() - 1;
+            polylines.add(polyline);
+        }
+        for (double lon = left; lon <= right; lon += STREET_SPACING) {
+            Polyline polyline = new Polyline(id++);
+            polyline.coverage = id;
+            for (double lat = bottom; lat <= top; lat += NODE_SPACING) {
+                polyline.getNodes().add(new SKCoordinate(lat, lon));
+            }
+            mEdges += polyline.getNodes().size() - 1;
+            polylines.add(polyline);
+        }
+        return polylines;
+    }
+}
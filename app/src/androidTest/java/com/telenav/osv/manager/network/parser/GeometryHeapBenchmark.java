@@ -0,0 +1,62 @@
+package com.telenav.osv.manager.network.parser;
+
+import java.util.ArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import com.skobbler.ngx.SKCoordinate;
+import com.telenav.osv.item.ImageCoordinate;
+import com.telenav.osv.item.Polyline;
+import com.telenav.osv.item.network.GeometryCollection;
+
+/**
+ * Heap retained by the recorded coverage response as packed polylines, compared to the same polylines holding a coordinate object for
+ * each node, as the parser built them before. The results are logged, the measurement is approximate.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class GeometryHeapBenchmark {
+
+    private static final String TAG = "GeometryHeapBenchmark";
+
+    @Test
+    public void packedPolylinesRetainLessHeap() throws Exception {
+        byte[] json = ParserBenchmark.readRecording("geometry.json");
+        long base = usedHeap();
+        GeometryCollection packed = new GeometryParser().parse(json, "UTF-8");
+        long packedBytes = usedHeap() - base;
+
+        base = usedHeap();
+        ArrayList<Polyline> objects = new ArrayList<>(packed.getSegmentList().size());
+        int nodes = 0;
+        for (Polyline polyline : packed.getSegmentList()) {
+            Polyline copy = new Polyline(polyline.getIdentifier());
+            copy.coverage = polyline.coverage;
+            for (int i = 0; i < polyline.getNodeCount(); i++) {
+                copy.getNodes().add(new ImageCoordinate(polyline.getLatitude(i), polyline.getLongitude(i), i));
+            }
+            nodes += copy.getNodes().size();
+            objects.add(copy);
+        }
+        long objectBytes = usedHeap() - base;
+
+        Log.i(TAG, packed.getSegmentList().size() + " polylines, " + nodes + " nodes, packed " +
+                packedBytes / 1024 + " KB, coordinate objects " + objectBytes / 1024 + " KB");
+        SKCoordinate last = objects.get(objects.size() - 1).getNodes().get(0);
+        Polyline lastPacked = packed.getSegmentList().get(packed.getSegmentList().size() - 1);
+        Assert.assertEquals(lastPacked.getLatitude(0), last.getLatitude(), 0);
+        Assert.assertTrue(packedBytes < objectBytes);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,79 @@
+package com.telenav.osv.manager.network.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+/**
+ * Times the streaming parsers on the recorded responses against building the json tree the previous parsers started from.
+ * The results are logged, the numbers are only comparable between runs on the same device.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class ParserBenchmark {
+
+    private static final String TAG = "ParserBenchmark";
+
+    private static final int WARMUP = 3;
+
+    private static final int ITERATIONS = 10;
+
+    /**
+     * @param file a recorded response of the unit tests, packaged as an asset of the test apk
+     */
+    static byte[] readRecording(String file) throws IOException {
+        InputStream in = InstrumentationRegistry.getContext().getAssets().open(file);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void geometry() throws Exception {
+        benchmark("geometry.json", new GeometryParser());
+    }
+
+    @Test
+    public void userTracks() throws Exception {
+        benchmark("userTracks.json", new TrackCollectionParser());
+    }
+
+    @Test
+    public void trackPhotos() throws Exception {
+        benchmark("trackPhotos.json", new PhotoCollectionParser());
+    }
+
+    private void benchmark(String file, ApiResponseParser<?> parser) throws Exception {
+        byte[] data = readRecording(file);
+        for (int i = 0; i < WARMUP; i++) {
+            new JSONObject(new String(data, StandardCharsets.UTF_8));
+            parser.parse(data, "UTF-8");
+        }
+        long tree = 0;
+        long streaming = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            new JSONObject(new String(data, StandardCharsets.UTF_8));
+            tree += System.nanoTime() - start;
+            start = System.nanoTime();
+            Assert.assertNotNull(parser.parse(data, "UTF-8"));
+            streaming += System.nanoTime() - start;
+        }
+        Log.i(TAG, file + " (" + data.length / 1024 + " KB): json tree " + tree / ITERATIONS / 1000 + " us, streaming parse " +
+                streaming / ITERATIONS / 1000 + " us");
+    }
+}
@@ -860,7 +860,7 @@ public class MainActivity extends OSVActivity implements NetworkBroadcastReceive
         }
     }
 
-    @Subscribe(threadMode = ThreadMode.MAIN)
+    @Subscribe(threadMode = ThreadMode.MAIN, conflate = true)
     public void onScoreChanged(ScoreChangedEvent event) {
         Log.d(TAG, "onScoreChanged: " + event.score);
         if (scoreIndicator != null) {
@@ -884,11 +884,11 @@ public class MainActivity extends OSVActivity implements NetworkBroadcastReceive
         }
     }
 
-    @Subscribe(threadMode = ThreadMode.MAIN)
+    @Subscribe(threadMode = ThreadMode.MAIN, conflate = true)
     public void onFrameQueueChanged(FrameQueueEvent event) {
         if (Utils.DEBUG) {
             if (event.queueSize > 3) {
-                showSnackBar("Frames in queue: " + event.queueSize, Snackbar.LENGTH_INDEFINITE);
+                showSnackBar(event.toString(), Snackbar.LENGTH_INDEFINITE);
             } else {
                 hideSnackBar();
             }
@@ -914,7 +914,7 @@ public class MainActivity extends OSVActivity implements NetworkBroadcastReceive
     }
 
     @SuppressWarnings("deprecation")
-    @Subscribe(sticky = true, threadMode = ThreadMode.MAIN)
+    @Subscribe(sticky = true, threadMode = ThreadMode.MAIN, conflate = true)
     public void onAccuracyChanged(AccuracyEvent event) {
         int type = event.type;
         if (mGPSIcon != null) {
@@ -997,7 +997,7 @@ public class MainActivity extends OSVActivity implements NetworkBroadcastReceive
         }
     }
 
-    @Subscribe(threadMode = ThreadMode.MAIN)
+    @Subscribe(threadMode = ThreadMode.MAIN, conflate = true)
     public void onObdSpeed(ObdSpeedEvent event) {
         if (mOBDIcon != null) {
             if (event.data.getSpeed() != -1) {
@@ -100,6 +100,7 @@ public class OSVApplication extends Application {
             }
             if (!mIsMainProcess) {
                 Log.d(TAG, "uncaughtException: ");
+                Log.flush();
                 System.exit(1);
                 return;
             }
@@ -111,6 +112,7 @@ public class OSVApplication extends Application {
                     stopService(new Intent(OSVApplication.this, CameraHandlerService.class));
                 }
                 Log.w(TAG, "uncaughtException: on ui thread");
+                Log.flush();
                 if (isDebug) {
                     mDefaultExHandler.uncaughtException(thread, ex);
                 } else {
@@ -128,6 +130,7 @@ public class OSVApplication extends Application {
                     System.exit(1);
                 }
             } else {
+                Log.flush();
                 if (isDebug) {
                     mDefaultExHandler.uncaughtException(thread, ex);
                 }
@@ -380,6 +383,10 @@ public class OSVApplication extends Application {
                 } catch (Exception e) {
                     Log.w(TAG, "consistencyCheck: " + e.getLocalizedMessage());
                 }
+                //the file checks run after the list is loaded, so they do not delay it
+                if (SequenceDB.instance.removeMissingFiles(OSVApplication.this) > 0) {
+                    LocalSequence.forceRefreshLocalSequences();
+                }
                 Log.d(TAG, "consistencyCheck: done.");
             }
         }).start();
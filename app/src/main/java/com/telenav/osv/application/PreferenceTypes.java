@@ -115,6 +115,20 @@ public final class PreferenceTypes {
 
     public static final String K_UPLOAD_CHARGING = "uploadCharging";
 
+    public static final String K_UPLOAD_CONNECTIONS = "uploadConnections";
+
+    /**
+     * send videos in resumable parts to the video/part/ endpoint, off by default as that endpoint is an assumed server contract which
+     * the server does not have yet
+     */
+    public static final String K_UPLOAD_VIDEO_PARTS = "uploadVideoParts";
+
+    /**
+     * send the photos of safe sequences in batches to the photo/batch/ endpoint, off by default as that endpoint is an assumed server
+     * contract as well
+     */
+    public static final String K_UPLOAD_PHOTO_BATCH = "uploadPhotoBatch";
+
     public static final String K_HIDE_RECORDING_SUMMARY = "hideSummary";
 
     public static final String K_DRIVER_MODE_DIALOG_SHOWN = "driverModeDialogShown";
@@ -123,6 +137,11 @@ public final class PreferenceTypes {
 
     public static final String K_USE_CAMERA_API_NEW = "cameraApi";
 
+    /**
+     * capture uncompressed frames and encode them with the hardware video encoder
+     */
+    public static final String K_HARDWARE_ENCODER = "hardwareEncoder";
+
     public static final String K_PREVIEW_WIDTH = "previewWidth";
 
     public static final String K_PREVIEW_HEIGHT = "previewHeight";
@@ -1,12 +1,28 @@
 package com.telenav.osv.db;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteCantOpenDatabaseException;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.telenav.osv.item.LocalSequence;
 import com.telenav.osv.item.OSVFile;
 import com.telenav.osv.utils.Log;
@@ -41,6 +57,31 @@ public class SequenceDB {
 
     public static final String SEQUENCE_SAFE = "safe";
 
+    /**
+     * cached size of the sequence folder in bytes, -1 if the stats were never computed
+     */
+    public static final String SEQUENCE_SIZE = "size";
+
+    /**
+     * cached track length in meters
+     */
+    public static final String SEQUENCE_LENGTH = "length";
+
+    /**
+     * cached path of the first frame, used as thumbnail
+     */
+    public static final String SEQUENCE_FIRST_FRAME = "firstFrame";
+
+    /**
+     * reverse geocoded address, null until resolved
+     */
+    public static final String SEQUENCE_ADDRESS = "address";
+
+    /**
+     * modification time of the sequence folder the cached stats were computed for, they are stale once the folder changes
+     */
+    public static final String SEQUENCE_STATS_MODIFIED = "statsModified";
+
     public final static String VIDEO_INDEX = "videoIndex";
 
     //  -------------------------------------------------------------
@@ -49,6 +90,11 @@ public class SequenceDB {
 
     public final static String VIDEO_FRAME_COUNT = "count";
 
+    /**
+     * number of bytes of the video acknowledged by the server, the resumable upload continues from here
+     */
+    final static String VIDEO_UPLOAD_OFFSET = "uploadOffset";
+
     public final static String SCORE_COVERAGE = "coverage";
 
     public final static String SCORE_OBD_COUNT = "obdCount";
@@ -76,24 +122,30 @@ public class SequenceDB {
 
     final static String SEQUENCE_ONLINE_ID = "onlineSequenceId";
 
-    final static String SEQUENCE_COUNT = "count";
+    public final static String SEQUENCE_COUNT = "count";
 
     //  ---------------------------------------------------------------
 
-    final static String SEQUENCE_ORIG_COUNT = "origCount";
+    public final static String SEQUENCE_ORIG_COUNT = "origCount";
 
-    final static String SEQUENCE_VIDEO_COUNT = "videoCount";
+    public final static String SEQUENCE_VIDEO_COUNT = "videoCount";
 
     final static String SEQUENCE_PANO = "panorama";
 
-    final static String SEQUENCE_VERSION = "version";
+    public final static String SEQUENCE_VERSION = "version";
 
-    static final String SEQUENCE_OBD = "obd";
+    public static final String SEQUENCE_OBD = "obd";
 
     //  ---------------------------------------------------------------
 
     static final String SEQUENCE_STATUS = "status";
 
+    static final String FRAME_SEQUENCE_INDEX = "FrameSequenceIndex";
+
+    static final String SEQUENCE_STATUS_INDEX = "SequenceStatusIndex";
+
+    static final String SEQUENCE_ONLINE_ID_INDEX = "SequenceOnlineIdIndex";
+
     final static String VIDEO_TABLE = "Video";
 
     final static String VIDEO_SEQ_ID = "sequenceId";
@@ -104,12 +156,114 @@ public class SequenceDB {
 
     //  ---------------------------------------------------------------
 
+    /**
+     * upload state of every file of the sequences being uploaded, an interrupted upload resumes from it
+     */
+    static final String JOURNAL_TABLE = "UploadJournal";
+
+    static final String JOURNAL_SEQ_ID = "sequenceId";
+
+    /**
+     * {@link #JOURNAL_TYPE_VIDEO} or {@link #JOURNAL_TYPE_PHOTO}
+     */
+    static final String JOURNAL_TYPE = "fileType";
+
+    /**
+     * video index of a video, sequence index of a photo
+     */
+    public static final String JOURNAL_INDEX = "fileIndex";
+
+    public static final String JOURNAL_FILE_PATH = "filePath";
+
+    public static final String JOURNAL_LAT = "latitude";
+
+    public static final String JOURNAL_LON = "longitude";
+
+    public static final String JOURNAL_ACCURACY = "accuracy";
+
+    /**
+     * one of {@link #UPLOAD_PENDING}, {@link #UPLOAD_IN_FLIGHT}, {@link #UPLOAD_DONE} or {@link #UPLOAD_FAILED}
+     */
+    static final String JOURNAL_STATE = "state";
+
+    /**
+     * number of failed uploads of the file, kept across restarts
+     */
+    public static final String JOURNAL_ATTEMPTS = "attempts";
+
+    static final String JOURNAL_UNIQUE_CONSTRAINT = "journalUniqueConstraint";
+
+    public static final int JOURNAL_TYPE_VIDEO = 0;
+
+    public static final int JOURNAL_TYPE_PHOTO = 1;
+
+    /**
+     * not sent yet, or sent by an upload which was interrupted before the answer
+     */
+    public static final int UPLOAD_PENDING = 0;
+
+    /**
+     * handed to the upload queue
+     */
+    public static final int UPLOAD_IN_FLIGHT = 1;
+
+    /**
+     * stored by the server, never sent again
+     */
+    public static final int UPLOAD_DONE = 2;
+
+    /**
+     * the last upload failed, sent again
+     */
+    public static final int UPLOAD_FAILED = 3;
+
+    //  ---------------------------------------------------------------
+
     private static final String TAG = "SequenceDB";
 
+    /**
+     * temporary table holding the grouped frame counts while the counts are updated
+     */
+    private static final String FRAME_COUNT_TABLE = "FrameCount";
+
+    /**
+     * number of queued frame and video rows which triggers a batch commit
+     */
+    private static final int BATCH_MAX_ROWS = 20;
+
+    /**
+     * maximum time a queued frame or video row waits for its batch commit
+     */
+    private static final int BATCH_MAX_DELAY_MS = 2000;
+
     public static SequenceDB instance;
 
+    private final Object batchSyncObject = new Object();
+
+    private final List<PendingRow> mPendingRows = new ArrayList<>();
+
+    /**
+     * held by the startup checks and while a sequence is created, no recording starts while they delete sequences and files
+     */
+    private final Object sweepSyncObject = new Object();
+
+    /**
+     * the sequence created for the current recording, left alone by the startup checks, -1 if none
+     */
+    private int mRecordingSequenceId = -1;
+
     private SQLiteDatabase database;
 
+    private SQLiteStatement mInsertFrameStatement;
+
+    private SQLiteStatement mInsertVideoStatement;
+
+    private Handler mBatchHandler;
+
+    private Runnable mBatchFlushRunnable = this::flushPendingFrames;
+
+    private volatile RejectedRowListener mRejectedRowListener;
+
     /**
      * @param context context
      */
@@ -123,6 +277,15 @@ public class SequenceDB {
         SequenceDB.instance = this;
     }
 
+    /**
+     * Opens a separate database, without replacing {@link #instance}, used by the tests and benchmarks.
+     * @param context context
+     * @param databaseName name of the database file
+     */
+    public SequenceDB(Context context, String databaseName) {
+        database = new SequenceDBHelper(context, databaseName).getWritableDatabase();
+    }
+
     public static void instantiate(Context context) {
         if (instance == null) {
             SequenceDB.instance = new SequenceDB(context);
@@ -163,6 +326,122 @@ public class SequenceDB {
         database.insertOrThrow(FRAME_TABLE, null, values);
     }
 
+    /**
+     * Queues a frame row for the next batch commit. The batch is committed in a single transaction when {@link #BATCH_MAX_ROWS} rows are
+     * queued, {@link #BATCH_MAX_DELAY_MS} after the first row of the batch was queued, or when {@link #flushPendingFrames()} is called.
+     * A crash loses at most the rows of the uncommitted batch. The rows violating a constraint are passed to the
+     * {@link RejectedRowListener}, whichever call commits their batch.
+     * @return false if the batch committed by this call rejected the row of this frame
+     */
+    public boolean queuePhoto(int seqId, int videoIndex, int seqIndex, String filePath, double lat, double lon, float accuracy,
+                              int orientation) {
+        PendingRow row = new PendingRow(false, seqId, videoIndex, seqIndex, filePath, lat, lon, accuracy, orientation);
+        return !queueRow(row).contains(row);
+    }
+
+    /**
+     * Queues a video row for the next batch commit, the row is ignored if the video was already added.
+     * @see #queuePhoto(int, int, int, String, double, double, float, int)
+     */
+    public void queueVideoIfNotAdded(int seqId, int videoIndex, String filePath) {
+        queueRow(new PendingRow(true, seqId, videoIndex, -1, filePath, 0, 0, 0, 0));
+    }
+
+    /**
+     * Sets the listener of the queued rows rejected by their batch commit.
+     */
+    public void setRejectedRowListener(RejectedRowListener listener) {
+        mRejectedRowListener = listener;
+    }
+
+    /**
+     * Commits the queued frame and video rows in one transaction. The rows violating a constraint are left out and passed to the
+     * {@link RejectedRowListener}, the other rows are committed.
+     */
+    public void flushPendingFrames() {
+        commitPendingRows();
+    }
+
+    /**
+     * @return the rows rejected by the commit
+     */
+    private List<PendingRow> commitPendingRows() {
+        List<PendingRow> rejected = new ArrayList<>();
+        synchronized (batchSyncObject) {
+            if (mBatchHandler != null) {
+                mBatchHandler.removeCallbacks(mBatchFlushRunnable);
+            }
+            if (mPendingRows.isEmpty()) {
+                return rejected;
+            }
+            long time = System.currentTimeMillis();
+            int count = mPendingRows.size();
+            if (mInsertFrameStatement == null) {
+                mInsertFrameStatement = database.compileStatement(
+                        "INSERT INTO " + FRAME_TABLE + " (" + FRAME_SEQ_ID + ", " + FRAME_VIDEO_ID + ", " + FRAME_SEQ_INDEX + ", " + FRAME_FILE_PATH +
+                                ", " + FRAME_LAT + ", " + FRAME_LON + ", " + FRAME_ACCURACY + ", " + FRAME_ORIENTATION + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+                mInsertVideoStatement = database.compileStatement(
+                        "INSERT OR IGNORE INTO " + VIDEO_TABLE + " (" + VIDEO_SEQ_ID + ", " + VIDEO_INDEX + ", " + VIDEO_FILE_PATH + ", " +
+                                VIDEO_FRAME_COUNT + ") VALUES (?, ?, ?, -1)");
+            }
+            HashMap<Integer, BatchStats> stats = new HashMap<>();
+            database.beginTransaction();
+            try {
+                for (PendingRow row : mPendingRows) {
+                    try {
+                        BatchStats sequenceStats = stats.get(row.seqId);
+                        if (sequenceStats == null) {
+                            sequenceStats = new BatchStats(row.filePath);
+                            stats.put(row.seqId, sequenceStats);
+                        }
+                        if (row.video) {
+                            mInsertVideoStatement.bindLong(1, row.seqId);
+                            mInsertVideoStatement.bindLong(2, row.videoIndex);
+                            mInsertVideoStatement.bindString(3, row.filePath);
+                            if (mInsertVideoStatement.executeInsert() != -1) {
+                                sequenceStats.videos++;
+                            }
+                        } else {
+                            mInsertFrameStatement.bindLong(1, row.seqId);
+                            mInsertFrameStatement.bindLong(2, row.videoIndex);
+                            mInsertFrameStatement.bindLong(3, row.seqIndex);
+                            mInsertFrameStatement.bindString(4, row.filePath);
+                            mInsertFrameStatement.bindDouble(5, row.lat);
+                            mInsertFrameStatement.bindDouble(6, row.lon);
+                            mInsertFrameStatement.bindDouble(7, row.accuracy);
+                            mInsertFrameStatement.bindLong(8, row.orientation);
+                            mInsertFrameStatement.executeInsert();
+                            sequenceStats.frames++;
+                            if (row.videoIndex == -1) {
+                                sequenceStats.bytes += new OSVFile(row.filePath).length();
+                            } else {
+                                sequenceStats.video = true;
+                            }
+                        }
+                    } catch (SQLiteConstraintException e) {
+                        Log.w(TAG, "flushPendingFrames: " + Log.getStackTraceString(e));
+                        rejected.add(row);
+                    }
+                }
+                for (Map.Entry<Integer, BatchStats> entry : stats.entrySet()) {
+                    addToSequenceStats(entry.getKey(), entry.getValue());
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+                mPendingRows.clear();
+            }
+            Log.d(TAG, "flushPendingFrames: committed " + count + " rows in " + (System.currentTimeMillis() - time) + " ms");
+        }
+        RejectedRowListener listener = mRejectedRowListener;
+        if (listener != null) {
+            for (PendingRow row : rejected) {
+                listener.onRowRejected(row.seqId, row.videoIndex, row.seqIndex, row.filePath);
+            }
+        }
+        return rejected;
+    }
+
     public void insertScore(int seqId, boolean obd, int coverage) {
         String countColumn = (obd ? SCORE_OBD_COUNT : SCORE_COUNT);
         ContentValues values = new ContentValues();
@@ -182,7 +461,8 @@ public class SequenceDB {
         try {
             String[] cols =
                     new String[]{SEQUENCE_ID, SEQUENCE_ONLINE_ID, SEQUENCE_LAT, SEQUENCE_LON, SEQUENCE_PATH, SEQUENCE_COUNT, SEQUENCE_ORIG_COUNT,
-                            SEQUENCE_VIDEO_COUNT, SEQUENCE_PANO, SEQUENCE_EXTERNAL, SEQUENCE_VERSION, SEQUENCE_OBD, SEQUENCE_SAFE, SEQUENCE_STATUS};
+                            SEQUENCE_VIDEO_COUNT, SEQUENCE_PANO, SEQUENCE_EXTERNAL, SEQUENCE_VERSION, SEQUENCE_OBD, SEQUENCE_SAFE, SEQUENCE_STATUS,
+                            SEQUENCE_SIZE, SEQUENCE_LENGTH, SEQUENCE_FIRST_FRAME, SEQUENCE_ADDRESS, SEQUENCE_STATS_MODIFIED};
             Cursor mCursor = database.query(true, SEQUENCE_TABLE, cols, null, null, SEQUENCE_ID, null, null, null);
             if (mCursor != null && mCursor.getCount() > 0) {
                 mCursor.moveToFirst();
@@ -196,7 +476,8 @@ public class SequenceDB {
         //retry
         String[] cols =
                 new String[]{SEQUENCE_ID, SEQUENCE_ONLINE_ID, SEQUENCE_LAT, SEQUENCE_LON, SEQUENCE_PATH, SEQUENCE_COUNT, SEQUENCE_ORIG_COUNT,
-                        SEQUENCE_VIDEO_COUNT, SEQUENCE_PANO, SEQUENCE_EXTERNAL, SEQUENCE_VERSION, SEQUENCE_OBD, SEQUENCE_SAFE, SEQUENCE_STATUS};
+                        SEQUENCE_VIDEO_COUNT, SEQUENCE_PANO, SEQUENCE_EXTERNAL, SEQUENCE_VERSION, SEQUENCE_OBD, SEQUENCE_SAFE, SEQUENCE_STATUS,
+                        SEQUENCE_SIZE, SEQUENCE_LENGTH, SEQUENCE_FIRST_FRAME, SEQUENCE_ADDRESS, SEQUENCE_STATS_MODIFIED};
         Cursor mCursor = database.query(true, SEQUENCE_TABLE, cols, null, null, SEQUENCE_ID, null, null, null);
         if (mCursor != null && mCursor.getCount() > 0) {
             mCursor.moveToFirst();
@@ -219,6 +500,21 @@ public class SequenceDB {
         return mCursor; // iterate to get each value.
     }
 
+    /**
+     * reads a page of the frames of a sequence in index order, using the primary key, so the frames deleted meanwhile don't shift the pages
+     * @param afterIndex the sequence index of the last frame of the previous page, -1 for the first page
+     * @param limit maximum number of frames
+     */
+    public Cursor getFrames(int sequenceId, int afterIndex, int limit) {
+        String[] cols = new String[]{FRAME_SEQ_ID, FRAME_SEQ_INDEX, FRAME_FILE_PATH, FRAME_LAT, FRAME_LON, FRAME_ACCURACY};
+        Cursor mCursor = database.query(false, FRAME_TABLE, cols, FRAME_SEQ_ID + " = ? AND " + FRAME_SEQ_INDEX + " > ?",
+                new String[]{"" + sequenceId, "" + afterIndex}, null, null, FRAME_SEQ_INDEX + " ASC", "" + limit);
+        if (mCursor != null && mCursor.getCount() > 0) {
+            mCursor.moveToFirst();
+        }
+        return mCursor;
+    }
+
     public Cursor getVideos(int sequenceId) {
         String[] cols = new String[]{VIDEO_SEQ_ID, VIDEO_INDEX, VIDEO_FILE_PATH, VIDEO_FRAME_COUNT};
         Cursor mCursor = database.query(true, VIDEO_TABLE, cols, VIDEO_SEQ_ID + " = ?", new String[]{"" + sequenceId}, null, null, null, null);
@@ -281,31 +577,12 @@ public class SequenceDB {
     }
 
     public void updateSequenceFrameCount(int sequenceId) {
-        ContentValues cv = new ContentValues();
-        int imageCount = (int) getNumberOfFrames(sequenceId);
-        int originalCount = getOriginalFrameCount(sequenceId);
-        cv.put(SEQUENCE_COUNT, imageCount);
-        if (originalCount < imageCount) {
-            cv.put(SEQUENCE_ORIG_COUNT, imageCount);
-        } else {
-            if (imageCount != originalCount) {
-                cv.put(SEQUENCE_STATUS, LocalSequence.STATUS_INTERRUPTED);
-            } else if (imageCount != 0) {
-                cv.put(SEQUENCE_STATUS, LocalSequence.STATUS_NEW);
-            }
-        }
-        database.update(SEQUENCE_TABLE, cv, SEQUENCE_ID + " = ?", new String[]{"" + sequenceId});
-        Cursor videos = getVideos(sequenceId);
-        while (videos != null && videos.getCount() > 0 && !videos.isAfterLast()) {
-            int index = videos.getInt(videos.getColumnIndex(VIDEO_INDEX));
-            int count = (int) countVideoFrames(sequenceId, index);
-            cv = new ContentValues();
-            cv.put(VIDEO_FRAME_COUNT, count);
-            database.update(VIDEO_TABLE, cv, VIDEO_SEQ_ID + " = ? AND " + VIDEO_INDEX + " = ?", new String[]{"" + sequenceId, "" + index});
-            videos.moveToNext();
-        }
-        if (videos != null) {
-            videos.close();
+        database.beginTransaction();
+        try {
+            updateFrameCounts(sequenceId);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
     }
 
@@ -339,12 +616,18 @@ public class SequenceDB {
     }
 
     public int resetOnlineSequenceId(int onlineSequenceId) {
+        //parts and files uploaded to the old online sequence are lost, the new one gets all of them
+        String affected = " IN (SELECT " + SEQUENCE_ID + " FROM " + SEQUENCE_TABLE + " WHERE " + SEQUENCE_ONLINE_ID + " = ?)";
+        database.execSQL("UPDATE " + VIDEO_TABLE + " SET " + VIDEO_UPLOAD_OFFSET + " = 0 WHERE " + VIDEO_SEQ_ID + affected,
+                new Object[]{onlineSequenceId});
+        database.delete(JOURNAL_TABLE, JOURNAL_SEQ_ID + affected, new String[]{"" + onlineSequenceId});
         ContentValues cv = new ContentValues();
         cv.put(SEQUENCE_ONLINE_ID, "-1");
         return database.update(SEQUENCE_TABLE, cv, SEQUENCE_ONLINE_ID + " = ?", new String[]{"" + onlineSequenceId});
     }
 
     public void deleteRecords(int sequenceIdLocal) {
+        database.delete(JOURNAL_TABLE, JOURNAL_SEQ_ID + " = ?", new String[]{"" + sequenceIdLocal});
         database.delete(FRAME_TABLE, FRAME_SEQ_ID + " = ?", new String[]{"" + sequenceIdLocal});
         database.delete(VIDEO_TABLE, VIDEO_SEQ_ID + " = ?", new String[]{"" + sequenceIdLocal});
         database.delete(SCORE_TABLE, SCORE_SEQ_ID + " = ?", new String[]{"" + sequenceIdLocal});
@@ -354,26 +637,39 @@ public class SequenceDB {
     @SuppressWarnings("SameParameterValue")
     public LocalSequence createNewSequence(Context context, double lat, double lon, boolean pano, boolean external, String version,
                                            boolean obd, boolean safe) {
-        OSVFile osv = Utils.generateOSVFolder(context);
-        int i = 0;
-        int limit = 100;
-        while (limit > 0) {
-            OSVFile file = new OSVFile(osv.getPath(), "/SEQ_" + i);
-            if (!file.exists()) {
-                if (!checkSequenceExists(i)) {
-                    boolean result = file.mkdir();
-                    if (result && file.exists()) {
-                        insertSequence(i, lat, lon, file.getPath(), pano, external, version, obd, safe);
-                        return new LocalSequence(file);
-                    } else {
-                        Log.d(TAG, "createNewSequence: could not create directory " + file.getAbsolutePath());
+        synchronized (sweepSyncObject) {
+            OSVFile osv = Utils.generateOSVFolder(context);
+            int i = 0;
+            int limit = 100;
+            while (limit > 0) {
+                OSVFile file = new OSVFile(osv.getPath(), "/SEQ_" + i);
+                if (!file.exists()) {
+                    if (!checkSequenceExists(i)) {
+                        boolean result = file.mkdir();
+                        if (result && file.exists()) {
+                            insertSequence(i, lat, lon, file.getPath(), pano, external, version, obd, safe);
+                            mRecordingSequenceId = i;
+                            return new LocalSequence(file);
+                        } else {
+                            Log.d(TAG, "createNewSequence: could not create directory " + file.getAbsolutePath());
+                        }
+                        limit--;
                     }
-                    limit--;
                 }
+                i++;
             }
-            i++;
+            return null;
+        }
+    }
+
+    /**
+     * called when the recording of the sequence returned by {@link #createNewSequence} stopped, its rows are committed and its video is
+     * closed, the startup checks can clean it up from then on
+     */
+    public void clearRecordingSequence() {
+        synchronized (sweepSyncObject) {
+            mRecordingSequenceId = -1;
         }
-        return null;
     }
 
     /**
@@ -410,7 +706,20 @@ public class SequenceDB {
         }
     }
 
+    /**
+     * Updates the frame counts and statuses of all sequences and removes the sequences without frames, using set based statements in a
+     * single transaction. The file checks are done separately by {@link #removeMissingFiles(Context)}. The sequence being recorded is
+     * kept, its frames may not be committed yet.
+     * @param context context
+     */
     public void consistencyCheck(Context context) {
+        synchronized (sweepSyncObject) {
+            consistencyCheck(mRecordingSequenceId);
+        }
+    }
+
+    private void consistencyCheck(int recordingSequenceId) {
+        long time = System.currentTimeMillis();
         try {
             Cursor cur = getAllSequences();
             cur.close();
@@ -419,63 +728,120 @@ public class SequenceDB {
                 database.execSQL("ALTER TABLE " + SequenceDB.SEQUENCE_TABLE + " ADD COLUMN " + SequenceDB.SEQUENCE_STATUS + " int");
             }
         }
-        Cursor sequences = getAllSequences();
-        while (sequences != null && sequences.getCount() > 0 && !sequences.isAfterLast()) {
-            int id = sequences.getInt(sequences.getColumnIndex(SEQUENCE_ID));
-            updateSequenceFrameCount(id);
-            if (getNumberOfFrames(id) <= 0) {
-                int res = deleteSequenceRecord(id);
-                res = res + deleteVideoRecord(id);
-                Log.d(TAG, "consistencyCheck: deleted sequence with 0 items, id = " + sequences.getInt(sequences.getColumnIndex(SEQUENCE_ID)) +
-                        ", result = " + res);
-            }
-            sequences.moveToNext();
+        database.beginTransaction();
+        try {
+            updateFrameCounts(-1);
+            String empty = SEQUENCE_COUNT + " <= 0 AND " + SEQUENCE_ID + " != " + recordingSequenceId;
+            int res = database.delete(VIDEO_TABLE, VIDEO_SEQ_ID + " IN (SELECT " + SEQUENCE_ID + " FROM " + SEQUENCE_TABLE + " WHERE " +
+                    empty + ")", null);
+            res = res + database.delete(SEQUENCE_TABLE, empty, null);
+            Log.d(TAG, "consistencyCheck: deleted sequences with 0 items, result = " + res);
+            database.delete(JOURNAL_TABLE, JOURNAL_SEQ_ID + " NOT IN (SELECT " + SEQUENCE_ID + " FROM " + SEQUENCE_TABLE + ")", null);
+            interruptUploading();
+            fixStatuses();
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
-        if (sequences != null) {
-            sequences.close();
+        Log.d(TAG, "consistencyCheck: done in " + (System.currentTimeMillis() - time) + " ms");
+    }
+
+    /**
+     * Checks the video files of all sequences in parallel, deletes the records of the missing or broken ones, and the sequence folders
+     * which have no records left. Meant to run after {@link #consistencyCheck(Context)}, off the startup path. The sequence being
+     * recorded and its files are kept, a recording starting meanwhile waits for the checks to finish.
+     * @param context context
+     * @return the number of deleted video records
+     */
+    public int removeMissingFiles(Context context) {
+        synchronized (sweepSyncObject) {
+            //commits the frames which are still batched, so the counts of the recorded sequences are complete
+            flushPendingFrames();
+            return removeMissingFiles(context, mRecordingSequenceId);
         }
+    }
+
+    private int removeMissingFiles(Context context, int recordingSequenceId) {
+        long time = System.currentTimeMillis();
+        final List<int[]> ids = new ArrayList<>();
+        final List<String> paths = new ArrayList<>();
         Cursor cursor = getAllVideos();
-        if (cursor.getCount() > 0) {
-            while (!cursor.isAfterLast()) {
-                String path = cursor.getString(cursor.getColumnIndex(VIDEO_FILE_PATH));
-                OSVFile file = new OSVFile(path);
-                int sequenceId = cursor.getInt(cursor.getColumnIndex(VIDEO_SEQ_ID));
-                int index = cursor.getInt(cursor.getColumnIndex(VIDEO_INDEX));
-                //                double lat = cursor.getDouble(cursor.getColumnIndex(VIDEO_FRAME_COUNT));
-                //                double lon = cursor.getDouble(cursor.getColumnIndex(VIDEO_LON));
-                //                float accuracy = cursor.getFloat(cursor.getColumnIndex(VIDEO_ACCURACY));
-                //                int orientation = cursor.getInt(cursor.getColumnIndex(VIDEO_ORIENTATION));
-                ////                int fileindex = ImageFile.getImageIndex(file);
-                //                if (file.exists() && fileIndex != fileindex && fileindex != -1) {
-                //                    deleteVideo(sequenceId, fileIndex);
-                //                    try {
-                //                        insertPhoto(sequenceId, fileindex, file.getPath(), lat, lon, accuracy, orientation);
-                //                    } catch (Exception e) {
-                //                        Log.d(TAG, "consistencyCheck: " + Log.getStackTraceString(e));
-                //                    }
-                //                }
-                if (file.exists() && Utils.fileSize(file) < 1000) {
-                    file.delete();
-                }
-                if (!file.exists()) {
-                    deleteVideo(sequenceId, index);
-                    if (getNumberOfFrames(sequenceId) <= 0) {
-                        deleteSequenceRecord(sequenceId);
+        while (cursor != null && cursor.getCount() > 0 && !cursor.isAfterLast()) {
+            if (cursor.getInt(cursor.getColumnIndex(VIDEO_SEQ_ID)) == recordingSequenceId) {
+                //the video being written may still be shorter than a broken one
+                cursor.moveToNext();
+                continue;
+            }
+            ids.add(new int[]{cursor.getInt(cursor.getColumnIndex(VIDEO_SEQ_ID)), cursor.getInt(cursor.getColumnIndex(VIDEO_INDEX))});
+            paths.add(cursor.getString(cursor.getColumnIndex(VIDEO_FILE_PATH)));
+            cursor.moveToNext();
+        }
+        if (cursor != null) {
+            cursor.close();
+        }
+        final boolean[] missing = new boolean[paths.size()];
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), paths.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("SequenceDB-sweep-%d").build());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            final int step = threads;
+            tasks.add(() -> {
+                for (int i = first; i < missing.length; i += step) {
+                    OSVFile file = new OSVFile(paths.get(i));
+                    if (file.exists() && Utils.fileSize(file) < 1000) {
+                        file.delete();
                     }
+                    missing[i] = !file.exists();
                 }
-                cursor.moveToNext();
+                return null;
+            });
+        }
+        try {
+            executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Log.w(TAG, "removeMissingFiles: interrupted");
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            executor.shutdown();
+        }
+        int removed = 0;
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < missing.length; i++) {
+                if (missing[i]) {
+                    deleteVideo(ids.get(i)[0], ids.get(i)[1]);
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                updateFrameCounts(-1);
+                database.delete(SEQUENCE_TABLE, SEQUENCE_COUNT + " <= 0 AND " + SEQUENCE_ID + " != " + recordingSequenceId, null);
+                fixStatuses();
             }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
-        cursor.close();
+        Set<Integer> recorded = new HashSet<>();
+        recorded.add(recordingSequenceId);
+        Cursor recordedCursor = database.rawQuery("SELECT " + FRAME_SEQ_ID + " FROM " + FRAME_TABLE + " GROUP BY " + FRAME_SEQ_ID + " UNION SELECT " +
+                VIDEO_SEQ_ID + " FROM " + VIDEO_TABLE + " GROUP BY " + VIDEO_SEQ_ID, null);
+        while (recordedCursor.moveToNext()) {
+            recorded.add(recordedCursor.getInt(0));
+        }
+        recordedCursor.close();
         OSVFile osv = Utils.generateOSVFolder(context);
         for (OSVFile sequence : osv.listFiles()) {
-            int id = LocalSequence.getSequenceId(sequence);
-            if (getNumberOfFrames(id) <= 0 && getNumberOfVideos(id) <= 0) {
+            if (!recorded.contains(LocalSequence.getSequenceId(sequence))) {
                 sequence.delete();
             }
         }
-        interruptUploading();
-        fixStatuses();
+        Log.d(TAG, "removeMissingFiles: checked " + paths.size() + " videos on " + threads + " threads, removed " + removed + " in " +
+                (System.currentTimeMillis() - time) + " ms");
+        return removed;
     }
 
     public boolean isOBDSequence(int sequenceId) {
@@ -531,6 +897,10 @@ public class SequenceDB {
         cv.put(SEQUENCE_STATUS, LocalSequence.STATUS_NEW);
         res = database.update(SEQUENCE_TABLE, cv, SEQUENCE_STATUS + " = ?", new String[]{"" + LocalSequence.STATUS_INDEXING});
         Log.d(TAG, "interruptUploading: number of reset INDEXING statuses = " + res);
+        cv.clear();
+        cv.put(JOURNAL_STATE, UPLOAD_PENDING);
+        res = database.update(JOURNAL_TABLE, cv, JOURNAL_STATE + " = ?", new String[]{"" + UPLOAD_IN_FLIGHT});
+        Log.d(TAG, "interruptUploading: number of reset in flight files = " + res);
     }
 
     public void setStatus(int sequenceId, int status) {
@@ -540,32 +910,11 @@ public class SequenceDB {
     }
 
     public void fixStatuses() {
-        ContentValues cv = new ContentValues();
-        Cursor sequences = getAllSequences();
-        while (sequences != null && sequences.getCount() > 0 && !sequences.isAfterLast()) {
-            cv.clear();
-            int sequenceId = sequences.getInt(sequences.getColumnIndex(SEQUENCE_ID));
-            int status = sequences.getInt(sequences.getColumnIndex(SEQUENCE_STATUS));
-            int imageCount = (int) getNumberOfFrames(sequenceId);
-            int originalCount = getOriginalFrameCount(sequenceId);
-            boolean untouched = imageCount > 0 && (imageCount == originalCount || Math.abs(imageCount - originalCount) < 10);
-            if (untouched) {
-                if (status != LocalSequence.STATUS_NEW) {
-                    cv.put(SEQUENCE_STATUS, LocalSequence.STATUS_NEW);
-                    Log.d(TAG, "fixStatuses: setting NEW");
-                }
-            } else {
-                cv.put(SEQUENCE_STATUS, LocalSequence.STATUS_INTERRUPTED);
-                Log.d(TAG, "fixStatuses: setting INTERRUPTED");
-            }
-            if (cv.size() > 0) {
-                database.update(SEQUENCE_TABLE, cv, SEQUENCE_ID + " = ?", new String[]{"" + sequenceId});
-            }
-            sequences.moveToNext();
-        }
-        if (sequences != null) {
-            sequences.close();
-        }
+        //a sequence is untouched if it has frames and almost all of the originally recorded ones
+        String imageCount = "(SELECT COUNT(*) FROM " + FRAME_TABLE + " WHERE " + FRAME_TABLE + "." + FRAME_SEQ_ID + " = " + SEQUENCE_TABLE + "." +
+                SEQUENCE_ID + ")";
+        database.execSQL("UPDATE " + SEQUENCE_TABLE + " SET " + SEQUENCE_STATUS + " = CASE WHEN " + imageCount + " > 0 AND ABS(" + imageCount +
+                " - " + SEQUENCE_ORIG_COUNT + ") < 10 THEN " + LocalSequence.STATUS_NEW + " ELSE " + LocalSequence.STATUS_INTERRUPTED + " END");
     }
 
     public String getSequenceVersion(int sequenceId) {
@@ -642,10 +991,15 @@ public class SequenceDB {
         values.put(SEQUENCE_OBD, obd);
         values.put(SEQUENCE_SAFE, safe);
         values.put(SEQUENCE_STATUS, LocalSequence.STATUS_NEW);
+        values.put(SEQUENCE_SIZE, 0);
 
         database.insertOrThrow(SEQUENCE_TABLE, null, values);
     }
 
+    SQLiteDatabase getDatabase() {
+        return database;
+    }
+
     private Cursor getAllVideos() {
         String[] cols = new String[]{VIDEO_SEQ_ID, VIDEO_FILE_PATH, VIDEO_FRAME_COUNT, VIDEO_INDEX};
         Cursor mCursor = database.query(true, VIDEO_TABLE, cols, null, null, null, null, null, null);
@@ -655,6 +1009,247 @@ public class SequenceDB {
         return mCursor; // iterate to get each value.
     }
 
+    /**
+     * @return the rows rejected by the batch committed by this call
+     */
+    private List<PendingRow> queueRow(PendingRow row) {
+        boolean flush;
+        synchronized (batchSyncObject) {
+            mPendingRows.add(row);
+            flush = mPendingRows.size() >= BATCH_MAX_ROWS;
+            if (!flush && mPendingRows.size() == 1) {
+                if (mBatchHandler == null) {
+                    HandlerThread thread = new HandlerThread("SequenceDB-batch", Process.THREAD_PRIORITY_BACKGROUND);
+                    thread.start();
+                    mBatchHandler = new Handler(thread.getLooper());
+                }
+                mBatchHandler.postDelayed(mBatchFlushRunnable, BATCH_MAX_DELAY_MS);
+            }
+        }
+        if (flush) {
+            return commitPendingRows();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @param sequenceIdLocal sequence id
+     * @param videoIndex index of the video
+     * @return the number of bytes of the video already uploaded, 0 if the upload did not start
+     */
+    public long getVideoUploadOffset(int sequenceIdLocal, int videoIndex) {
+        Cursor cursor = database.query(VIDEO_TABLE, new String[]{VIDEO_UPLOAD_OFFSET}, VIDEO_SEQ_ID + " = ? AND " + VIDEO_INDEX + " = ?",
+                new String[]{"" + sequenceIdLocal, "" + videoIndex}, null, null, null);
+        long offset = 0;
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                offset = cursor.getLong(0);
+            }
+            cursor.close();
+        }
+        return offset;
+    }
+
+    /**
+     * saves the upload checkpoint of a video, called after the server acknowledged a part
+     * @param sequenceIdLocal sequence id
+     * @param videoIndex index of the video
+     * @param offset number of bytes uploaded
+     */
+    public void setVideoUploadOffset(int sequenceIdLocal, int videoIndex, long offset) {
+        ContentValues cv = new ContentValues();
+        cv.put(VIDEO_UPLOAD_OFFSET, offset);
+        database.update(VIDEO_TABLE, cv, VIDEO_SEQ_ID + " = ? AND " + VIDEO_INDEX + " = ?", new String[]{"" + sequenceIdLocal, "" + videoIndex});
+    }
+
+    /**
+     * Opens the upload journal of a sequence, writing it from the video or photo records the first time, so an interrupted upload goes on
+     * from the stored states instead of indexing the sequence again. The files left in flight by the interrupted upload are pending
+     * again, the server answers with a duplicate entry for the ones it stored before the interruption.
+     * @param sequenceId sequence id
+     * @param photos true for the photos of a safe sequence, false for the videos
+     * @return the number of files not uploaded yet
+     */
+    public int openUploadJournal(int sequenceId, boolean photos) {
+        long time = System.currentTimeMillis();
+        String[] args = new String[]{"" + sequenceId};
+        int remaining;
+        database.beginTransaction();
+        try {
+            if (DatabaseUtils.queryNumEntries(database, JOURNAL_TABLE, JOURNAL_SEQ_ID + " = ?", args) == 0) {
+                String columns = " (" + JOURNAL_SEQ_ID + ", " + JOURNAL_TYPE + ", " + JOURNAL_INDEX + ", " + JOURNAL_FILE_PATH + ", " + JOURNAL_LAT +
+                        ", " + JOURNAL_LON + ", " + JOURNAL_ACCURACY + ", " + JOURNAL_STATE + ", " + JOURNAL_ATTEMPTS + ")";
+                if (photos) {
+                    database.execSQL("INSERT INTO " + JOURNAL_TABLE + columns + " SELECT " + FRAME_SEQ_ID + ", " + JOURNAL_TYPE_PHOTO + ", " +
+                            FRAME_SEQ_INDEX + ", " + FRAME_FILE_PATH + ", " + FRAME_LAT + ", " + FRAME_LON + ", " + FRAME_ACCURACY + ", " +
+                            UPLOAD_PENDING + ", 0 FROM " + FRAME_TABLE + " WHERE " + FRAME_SEQ_ID + " = ?", args);
+                } else {
+                    database.execSQL("INSERT INTO " + JOURNAL_TABLE + columns + " SELECT " + VIDEO_SEQ_ID + ", " + JOURNAL_TYPE_VIDEO + ", " +
+                            VIDEO_INDEX + ", " + VIDEO_FILE_PATH + ", 0, 0, 0, " + UPLOAD_PENDING + ", 0 FROM " + VIDEO_TABLE + " WHERE " +
+                            VIDEO_SEQ_ID + " = ?", args);
+                }
+            }
+            ContentValues cv = new ContentValues();
+            cv.put(JOURNAL_STATE, UPLOAD_PENDING);
+            database.update(JOURNAL_TABLE, cv, JOURNAL_SEQ_ID + " = ? AND " + JOURNAL_STATE + " = ?",
+                    new String[]{"" + sequenceId, "" + UPLOAD_IN_FLIGHT});
+            remaining = (int) DatabaseUtils.queryNumEntries(database, JOURNAL_TABLE, JOURNAL_SEQ_ID + " = ? AND " + JOURNAL_STATE + " != ?",
+                    new String[]{"" + sequenceId, "" + UPLOAD_DONE});
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        Log.d(TAG, "openUploadJournal: " + remaining + " files left of sequence " + sequenceId + ", opened in " +
+                (System.currentTimeMillis() - time) + " ms");
+        return remaining;
+    }
+
+    /**
+     * reads a page of the files of a sequence which are not uploaded yet, in index order
+     * @param afterIndex the index of the last file of the previous page, -1 for the first page
+     * @param limit maximum number of files, 0 for all of them
+     */
+    public Cursor getPendingUploads(int sequenceId, int afterIndex, int limit) {
+        String[] cols = new String[]{JOURNAL_INDEX, JOURNAL_FILE_PATH, JOURNAL_LAT, JOURNAL_LON, JOURNAL_ACCURACY, JOURNAL_ATTEMPTS};
+        Cursor mCursor = database.query(false, JOURNAL_TABLE, cols, JOURNAL_SEQ_ID + " = ? AND " + JOURNAL_STATE + " != ? AND " + JOURNAL_INDEX +
+                        " > ?", new String[]{"" + sequenceId, "" + UPLOAD_DONE, "" + afterIndex}, null, null, JOURNAL_INDEX + " ASC",
+                limit > 0 ? "" + limit : null);
+        if (mCursor != null && mCursor.getCount() > 0) {
+            mCursor.moveToFirst();
+        }
+        return mCursor;
+    }
+
+    /**
+     * Sets the upload state of files of a sequence in one transaction. Marking a file {@link #UPLOAD_DONE} as soon as the server answers,
+     * before the file is deleted, keeps it from being sent again, see {@link #deleteUploadedFiles(int)}.
+     * @param type {@link #JOURNAL_TYPE_VIDEO} or {@link #JOURNAL_TYPE_PHOTO}
+     * @param state the new state
+     * @param indexes indexes of the files
+     */
+    public void setUploadState(int sequenceId, int type, int state, int... indexes) {
+        SQLiteStatement statement = database.compileStatement("UPDATE " + JOURNAL_TABLE + " SET " + JOURNAL_STATE + " = ? WHERE " + JOURNAL_SEQ_ID +
+                " = ? AND " + JOURNAL_TYPE + " = ? AND " + JOURNAL_INDEX + " = ?");
+        database.beginTransaction();
+        try {
+            for (int index : indexes) {
+                statement.bindLong(1, state);
+                statement.bindLong(2, sequenceId);
+                statement.bindLong(3, type);
+                statement.bindLong(4, index);
+                statement.executeUpdateDelete();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            statement.close();
+        }
+    }
+
+    /**
+     * marks a failed upload of a file
+     * @return the number of failed uploads of the file, including the ones of earlier runs
+     */
+    public int failUpload(int sequenceId, int type, int index) {
+        String[] args = new String[]{"" + sequenceId, "" + type, "" + index};
+        String selection = JOURNAL_SEQ_ID + " = ? AND " + JOURNAL_TYPE + " = ? AND " + JOURNAL_INDEX + " = ?";
+        database.execSQL("UPDATE " + JOURNAL_TABLE + " SET " + JOURNAL_STATE + " = " + UPLOAD_FAILED + ", " + JOURNAL_ATTEMPTS + " = " +
+                JOURNAL_ATTEMPTS + " + 1 WHERE " + selection, args);
+        return (int) DatabaseUtils.longForQuery(database, "SELECT COALESCE(MAX(" + JOURNAL_ATTEMPTS + "), 0) FROM " + JOURNAL_TABLE + " WHERE " +
+                selection, args);
+    }
+
+    /**
+     * removes a file from the journal without uploading it, used for the files missing from the disk
+     */
+    public void removeUpload(int sequenceId, int type, int index) {
+        database.delete(JOURNAL_TABLE, JOURNAL_SEQ_ID + " = ? AND " + JOURNAL_TYPE + " = ? AND " + JOURNAL_INDEX + " = ?",
+                new String[]{"" + sequenceId, "" + type, "" + index});
+    }
+
+    /**
+     * Deletes the files which the journal marks uploaded but which still have their records, left by an upload interrupted between the
+     * answer of the server and the deletion of the file.
+     * @return the number of bytes deleted
+     */
+    public long deleteUploadedFiles(int sequenceId) {
+        String photoRecord = "EXISTS (SELECT 1 FROM " + FRAME_TABLE + " f WHERE j." + JOURNAL_TYPE + " = " + JOURNAL_TYPE_PHOTO + " AND f." +
+                FRAME_SEQ_ID + " = j." + JOURNAL_SEQ_ID + " AND f." + FRAME_SEQ_INDEX + " = j." + JOURNAL_INDEX + ")";
+        String videoRecord = "EXISTS (SELECT 1 FROM " + VIDEO_TABLE + " v WHERE j." + JOURNAL_TYPE + " = " + JOURNAL_TYPE_VIDEO + " AND v." +
+                VIDEO_SEQ_ID + " = j." + JOURNAL_SEQ_ID + " AND v." + VIDEO_INDEX + " = j." + JOURNAL_INDEX + ")";
+        Cursor cursor = database.rawQuery("SELECT j." + JOURNAL_TYPE + ", j." + JOURNAL_INDEX + ", j." + JOURNAL_FILE_PATH + " FROM " +
+                JOURNAL_TABLE + " j WHERE j." + JOURNAL_SEQ_ID + " = ? AND j." + JOURNAL_STATE + " = " + UPLOAD_DONE + " AND (" + photoRecord +
+                " OR " + videoRecord + ")", new String[]{"" + sequenceId});
+        final List<int[]> ids = new ArrayList<>();
+        final List<String> paths = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(new int[]{cursor.getInt(0), cursor.getInt(1)});
+                paths.add(cursor.getString(2));
+            }
+        } finally {
+            cursor.close();
+        }
+        long size = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            OSVFile file = new OSVFile(paths.get(i));
+            size += Utils.fileSize(file);
+            if (ids.get(i)[0] == JOURNAL_TYPE_VIDEO) {
+                deleteVideo(file, sequenceId, ids.get(i)[1]);
+            } else {
+                deletePhoto(file, sequenceId, ids.get(i)[1]);
+            }
+        }
+        if (!ids.isEmpty()) {
+            Log.d(TAG, "deleteUploadedFiles: deleted " + ids.size() + " files of sequence " + sequenceId + " uploaded by an interrupted upload");
+        }
+        return size;
+    }
+
+    /**
+     * Stores the stats shown in the sequence list, so the next load does not have to walk the folder and the frames.
+     * @param sequenceId sequence id
+     * @param size size of the folder in bytes
+     * @param length track length in meters
+     * @param firstFrame path of the first frame
+     * @param frameCount number of frames
+     * @param videoCount number of videos
+     * @param folderModified modification time of the folder the stats were computed for
+     */
+    public void updateSequenceStats(int sequenceId, long size, int length, String firstFrame, int frameCount, int videoCount,
+                                    long folderModified) {
+        ContentValues cv = new ContentValues();
+        cv.put(SEQUENCE_SIZE, size);
+        cv.put(SEQUENCE_LENGTH, length);
+        cv.put(SEQUENCE_FIRST_FRAME, firstFrame);
+        cv.put(SEQUENCE_COUNT, frameCount);
+        cv.put(SEQUENCE_VIDEO_COUNT, videoCount);
+        cv.put(SEQUENCE_STATS_MODIFIED, folderModified);
+        database.update(SEQUENCE_TABLE, cv, SEQUENCE_ID + " = ?", new String[]{"" + sequenceId});
+    }
+
+    public void updateSequenceAddress(int sequenceId, String address) {
+        ContentValues cv = new ContentValues();
+        cv.put(SEQUENCE_ADDRESS, address);
+        database.update(SEQUENCE_TABLE, cv, SEQUENCE_ID + " = ?", new String[]{"" + sequenceId});
+    }
+
+    /**
+     * Adds the rows of a committed batch to the cached stats of the sequence, the caller has to hold the batch transaction. Photo sizes
+     * are known once written, video files still grow, so a batch with video frames marks the stats stale until they are recomputed.
+     */
+    private void addToSequenceStats(int sequenceId, BatchStats stats) {
+        long folderModified = 0;
+        if (!stats.video && stats.folder != null) {
+            folderModified = stats.folder.lastModified();
+        }
+        database.execSQL("UPDATE " + SEQUENCE_TABLE + " SET " + SEQUENCE_SIZE + " = " + SEQUENCE_SIZE + " + ?, " + SEQUENCE_COUNT + " = MAX(" +
+                        SEQUENCE_COUNT + ", 0) + ?, " + SEQUENCE_VIDEO_COUNT + " = MAX(" + SEQUENCE_VIDEO_COUNT + ", 0) + ?, " +
+                        SEQUENCE_FIRST_FRAME + " = COALESCE(" + SEQUENCE_FIRST_FRAME + ", ?), " + SEQUENCE_STATS_MODIFIED + " = ? WHERE " + SEQUENCE_ID +
+                        " = ? AND " + SEQUENCE_SIZE + " >= 0",
+                new Object[]{stats.bytes, stats.frames, stats.videos, stats.firstPath, folderModified, sequenceId});
+    }
+
     private boolean isVideoAdded(int localSequenceId, int videoIndex) {
         return DatabaseUtils.queryNumEntries(database, VIDEO_TABLE, VIDEO_SEQ_ID + "=? AND " + VIDEO_INDEX + "=?",
                 new String[]{"" + localSequenceId, "" + videoIndex}) > 0;
@@ -665,17 +1260,31 @@ public class SequenceDB {
                 new String[]{"" + localSequenceId, "" + coverage}) > 0;
     }
 
-    private long countVideoFrames(int localSequenceId, int videoIndex) {
-        return DatabaseUtils.queryNumEntries(database, FRAME_TABLE, FRAME_SEQ_ID + " = ? AND " + FRAME_VIDEO_ID + " = ?",
-                new String[]{"" + localSequenceId, "" + videoIndex});
-    }
-
-    private int deleteSequenceRecord(int sequenceId) {
-        return database.delete(SEQUENCE_TABLE, SEQUENCE_ID + " = ?", new String[]{"" + sequenceId});
-    }
-
-    private int deleteVideoRecord(int sequenceId) {
-        return database.delete(VIDEO_TABLE, VIDEO_SEQ_ID + " = ?", new String[]{"" + sequenceId});
+    /**
+     * Recounts the frames of a sequence and of its videos with grouped aggregates, the caller has to hold a transaction.
+     * @param sequenceId sequence id, or -1 for all sequences
+     */
+    private void updateFrameCounts(int sequenceId) {
+        String frameFilter = sequenceId == -1 ? "" : " WHERE " + FRAME_SEQ_ID + " = " + sequenceId;
+        String sequenceFilter = sequenceId == -1 ? "" : " WHERE " + SEQUENCE_ID + " = " + sequenceId;
+        String videoFilter = sequenceId == -1 ? "" : " WHERE " + VIDEO_SEQ_ID + " = " + sequenceId;
+        database.execSQL("DROP TABLE IF EXISTS temp." + FRAME_COUNT_TABLE);
+        database.execSQL("CREATE TEMP TABLE " + FRAME_COUNT_TABLE + " AS SELECT " + FRAME_SEQ_ID + ", " + FRAME_VIDEO_ID + ", COUNT(*) AS " +
+                VIDEO_FRAME_COUNT + " FROM " + FRAME_TABLE + frameFilter + " GROUP BY " + FRAME_SEQ_ID + ", " + FRAME_VIDEO_ID);
+        database.execSQL("CREATE INDEX temp." + FRAME_COUNT_TABLE + "Index ON " + FRAME_COUNT_TABLE + " (" + FRAME_SEQ_ID + ", " + FRAME_VIDEO_ID + ")");
+        String imageCount = "COALESCE((SELECT SUM(c." + VIDEO_FRAME_COUNT + ") FROM " + FRAME_COUNT_TABLE + " c WHERE c." + FRAME_SEQ_ID + " = " +
+                SEQUENCE_TABLE + "." + SEQUENCE_ID + "), 0)";
+        //all the expressions below see the values before the update
+        database.execSQL("UPDATE " + SEQUENCE_TABLE + " SET " +
+                SEQUENCE_STATUS + " = CASE WHEN " + SEQUENCE_ORIG_COUNT + " < " + imageCount + " THEN " + SEQUENCE_STATUS +
+                " WHEN " + imageCount + " != " + SEQUENCE_ORIG_COUNT + " THEN " + LocalSequence.STATUS_INTERRUPTED +
+                " WHEN " + imageCount + " != 0 THEN " + LocalSequence.STATUS_NEW + " ELSE " + SEQUENCE_STATUS + " END, " +
+                SEQUENCE_ORIG_COUNT + " = MAX(COALESCE(" + SEQUENCE_ORIG_COUNT + ", 0), " + imageCount + "), " +
+                SEQUENCE_COUNT + " = " + imageCount + sequenceFilter);
+        database.execSQL("UPDATE " + VIDEO_TABLE + " SET " + VIDEO_FRAME_COUNT + " = COALESCE((SELECT c." + VIDEO_FRAME_COUNT + " FROM " +
+                FRAME_COUNT_TABLE + " c WHERE c." + FRAME_SEQ_ID + " = " + VIDEO_TABLE + "." + VIDEO_SEQ_ID + " AND c." + FRAME_VIDEO_ID + " = " +
+                VIDEO_TABLE + "." + VIDEO_INDEX + "), 0)" + videoFilter);
+        database.execSQL("DROP TABLE temp." + FRAME_COUNT_TABLE);
     }
 
     /**
@@ -687,4 +1296,76 @@ public class SequenceDB {
         return database
                 .delete(FRAME_TABLE, FRAME_SEQ_ID + " = ? AND " + FRAME_SEQ_INDEX + " = ?", new String[]{"" + sequenceIdLocal, "" + photoIndex});
     }
-}
\ No newline at end of file
+
+    /**
+     * Notified of the queued frame rows violating a constraint, on the thread committing their batch.
+     */
+    public interface RejectedRowListener {
+
+        /**
+         * @param videoIndex index of the video of the frame, -1 for a photo
+         * @param filePath the video or photo file of the frame
+         */
+        void onRowRejected(int sequenceId, int videoIndex, int sequenceIndex, String filePath);
+    }
+
+    /**
+     * Stats of the rows of one sequence in a committed batch.
+     */
+    private static class BatchStats {
+
+        final String firstPath;
+
+        final OSVFile folder;
+
+        long bytes;
+
+        int frames;
+
+        int videos;
+
+        boolean video;
+
+        BatchStats(String path) {
+            firstPath = path;
+            folder = path == null ? null : new OSVFile(path).getParentFile();
+        }
+    }
+
+    /**
+     * A frame or video row waiting for its batch commit.
+     */
+    private static class PendingRow {
+
+        final boolean video;
+
+        final int seqId;
+
+        final int videoIndex;
+
+        final int seqIndex;
+
+        final String filePath;
+
+        final double lat;
+
+        final double lon;
+
+        final float accuracy;
+
+        final int orientation;
+
+        PendingRow(boolean video, int seqId, int videoIndex, int seqIndex, String filePath, double lat, double lon, float accuracy,
+                   int orientation) {
+            this.video = video;
+            this.seqId = seqId;
+            this.videoIndex = videoIndex;
+            this.seqIndex = seqIndex;
+            this.filePath = filePath;
+            this.lat = lat;
+            this.lon = lon;
+            this.accuracy = accuracy;
+            this.orientation = orientation;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.telenav.osv.db;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
 import com.telenav.osv.utils.Log;
 
 /**
@@ -12,7 +13,7 @@ class SequenceDBHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "Sequences";
 
-    private static final int DATABASE_VERSION = 4;
+    private static final int DATABASE_VERSION = 8;
 
     // Database creation sql statement
     private static final String DB_CREATE_PHOTO_TABLE =
@@ -26,7 +27,8 @@ class SequenceDBHelper extends SQLiteOpenHelper {
 
     private static final String DB_CREATE_VIDEO_TABLE =
             "create table if not exists " + SequenceDB.VIDEO_TABLE + "(" + SequenceDB.VIDEO_SEQ_ID + " integer, " + SequenceDB.VIDEO_INDEX +
-                    " integer, " + SequenceDB.VIDEO_FILE_PATH + " varchar(100), " + SequenceDB.VIDEO_FRAME_COUNT + " int, " + "CONSTRAINT " +
+                    " integer, " + SequenceDB.VIDEO_FILE_PATH + " varchar(100), " + SequenceDB.VIDEO_FRAME_COUNT + " int, " + SequenceDB.VIDEO_UPLOAD_OFFSET +
+                    " integer default 0, " + "CONSTRAINT " +
                     SequenceDB.VIDEO_UNIQUE_CONSTRAINT + " PRIMARY KEY (" + SequenceDB.VIDEO_SEQ_ID + "," + SequenceDB.VIDEO_INDEX + ")" +
                     "FOREIGN KEY (" + SequenceDB.VIDEO_SEQ_ID + ") REFERENCES " + SequenceDB.SEQUENCE_TABLE + " (" + SequenceDB.SEQUENCE_ID + ")" +
                     ");";
@@ -38,21 +40,68 @@ class SequenceDBHelper extends SQLiteOpenHelper {
                     "FOREIGN KEY (" + SequenceDB.SCORE_SEQ_ID + ") REFERENCES " + SequenceDB.SEQUENCE_TABLE + " (" + SequenceDB.SEQUENCE_ID + ")," +
                     "CHECK (" + SequenceDB.SCORE_COVERAGE + " > -2 AND " + SequenceDB.SCORE_COVERAGE + " < 11)" + ");";
 
+    /**
+     * upload state of the files, added in version 8
+     */
+    private static final String DB_CREATE_JOURNAL_TABLE =
+            "create table if not exists " + SequenceDB.JOURNAL_TABLE + "(" + SequenceDB.JOURNAL_SEQ_ID + " integer, " + SequenceDB.JOURNAL_TYPE +
+                    " integer, " + SequenceDB.JOURNAL_INDEX + " integer, " + SequenceDB.JOURNAL_FILE_PATH + " varchar(100), " +
+                    SequenceDB.JOURNAL_LAT + " real, " + SequenceDB.JOURNAL_LON + " real, " + SequenceDB.JOURNAL_ACCURACY + " float, " +
+                    SequenceDB.JOURNAL_STATE + " integer default " + SequenceDB.UPLOAD_PENDING + ", " + SequenceDB.JOURNAL_ATTEMPTS +
+                    " integer default 0, " + "CONSTRAINT " + SequenceDB.JOURNAL_UNIQUE_CONSTRAINT + " PRIMARY KEY (" + SequenceDB.JOURNAL_SEQ_ID +
+                    "," + SequenceDB.JOURNAL_TYPE + "," + SequenceDB.JOURNAL_INDEX + ")" + ");";
+
+    /**
+     * cached list stats of a sequence, added in version 7
+     */
+    private static final String[] SEQUENCE_STATS_COLUMN_DEFINITIONS =
+            {SequenceDB.SEQUENCE_SIZE + " integer default -1", SequenceDB.SEQUENCE_LENGTH + " integer default 0",
+                    SequenceDB.SEQUENCE_FIRST_FRAME + " varchar(300)", SequenceDB.SEQUENCE_ADDRESS + " varchar(300)",
+                    SequenceDB.SEQUENCE_STATS_MODIFIED + " integer default 0"};
+
     private static final String DB_CREATE_SEQUENCE_TABLE =
             "create table if not exists " + SequenceDB.SEQUENCE_TABLE + "(" + SequenceDB.SEQUENCE_ID + " integer primary key," +
                     SequenceDB.SEQUENCE_ONLINE_ID + " integer, " + SequenceDB.SEQUENCE_LAT + " real, " + SequenceDB.SEQUENCE_LON + " real, " +
                     SequenceDB.SEQUENCE_PATH + " varchar(300), " + SequenceDB.SEQUENCE_COUNT + " integer, " + SequenceDB.SEQUENCE_ORIG_COUNT +
                     " integer, " + SequenceDB.SEQUENCE_VIDEO_COUNT + " integer, " + SequenceDB.SEQUENCE_PANO + " integer, " +
                     SequenceDB.SEQUENCE_EXTERNAL + " integer, " + SequenceDB.SEQUENCE_VERSION + " varchar(30), " + SequenceDB.SEQUENCE_OBD +
-                    " integer, " + SequenceDB.SEQUENCE_STATUS + " integer," + SequenceDB.SEQUENCE_SAFE + " integer " + ");";
+                    " integer, " + SequenceDB.SEQUENCE_STATUS + " integer," + SequenceDB.SEQUENCE_SAFE + " integer, " +
+                    TextUtils.join(", ", SEQUENCE_STATS_COLUMN_DEFINITIONS) + ");";
+
+    /**
+     * frame lookups and counts by sequence, and per video counts
+     */
+    static final String DB_CREATE_FRAME_SEQUENCE_INDEX =
+            "create index if not exists " + SequenceDB.FRAME_SEQUENCE_INDEX + " on " + SequenceDB.FRAME_TABLE + "(" + SequenceDB.FRAME_SEQ_ID +
+                    ", " + SequenceDB.FRAME_VIDEO_ID + ");";
+
+    /**
+     * status scans done by interruptUploading and fixStatuses
+     */
+    static final String DB_CREATE_SEQUENCE_STATUS_INDEX =
+            "create index if not exists " + SequenceDB.SEQUENCE_STATUS_INDEX + " on " + SequenceDB.SEQUENCE_TABLE + "(" +
+                    SequenceDB.SEQUENCE_STATUS + ", " + SequenceDB.SEQUENCE_ID + ");";
+
+    /**
+     * online id lookups done by resetOnlineSequenceId
+     */
+    static final String DB_CREATE_SEQUENCE_ONLINE_ID_INDEX =
+            "create index if not exists " + SequenceDB.SEQUENCE_ONLINE_ID_INDEX + " on " + SequenceDB.SEQUENCE_TABLE + "(" +
+                    SequenceDB.SEQUENCE_ONLINE_ID + ");";
 
     private static final String TAG = "SequenceDBHelper";
 
     private Context mContext;
 
     public SequenceDBHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    SequenceDBHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
         mContext = context;
+        //readers like the sequence list should not wait for the recorder's write transactions
+        setWriteAheadLoggingEnabled(true);
     }
 
     // Method is called during creation of the database
@@ -62,6 +111,8 @@ class SequenceDBHelper extends SQLiteOpenHelper {
         database.execSQL(DB_CREATE_VIDEO_TABLE);
         database.execSQL(DB_CREATE_PHOTO_TABLE);
         database.execSQL(DB_CREATE_SCORE_TABLE);
+        database.execSQL(DB_CREATE_JOURNAL_TABLE);
+        createIndexes(database);
     }
 
     // Method is called during an upgrade of the database,
@@ -83,6 +134,26 @@ class SequenceDBHelper extends SQLiteOpenHelper {
                     SequenceDB.SCORE_TABLE + "1" + ";");
             database.execSQL("DROP TABLE " + SequenceDB.SCORE_TABLE + "1");
         }
+        if (oldVersion < 5) {
+            createIndexes(database);
+        }
+        if (oldVersion < 6) {
+            database.execSQL("ALTER TABLE " + SequenceDB.VIDEO_TABLE + " ADD " + SequenceDB.VIDEO_UPLOAD_OFFSET + " INTEGER DEFAULT 0");
+        }
+        if (oldVersion < 7) {
+            for (String column : SEQUENCE_STATS_COLUMN_DEFINITIONS) {
+                database.execSQL("ALTER TABLE " + SequenceDB.SEQUENCE_TABLE + " ADD " + column);
+            }
+        }
+        if (oldVersion < 8) {
+            database.execSQL(DB_CREATE_JOURNAL_TABLE);
+        }
+    }
+
+    private void createIndexes(SQLiteDatabase database) {
+        database.execSQL(DB_CREATE_FRAME_SEQUENCE_INDEX);
+        database.execSQL(DB_CREATE_SEQUENCE_STATUS_INDEX);
+        database.execSQL(DB_CREATE_SEQUENCE_ONLINE_ID_INDEX);
     }
     //
     //    private void moveFolders() {
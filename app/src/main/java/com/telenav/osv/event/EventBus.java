@@ -51,10 +51,18 @@ public class EventBus {
         }
     }
 
+    /**
+     * @return the number of events replaced by a later event before their delivery to a conflating subscriber
+     */
+    public static long getConflatedEventCount() {
+        return mBus.getConflatedEventCount();
+    }
+
     private static org.greenrobot.eventbus.EventBus getEventBus() {
         EventBusBuilder builder = org.greenrobot.eventbus.EventBus.builder();
         builder.installDefaultEventBus();
         builder.logNoSubscriberMessages(false);
+        builder.addIndex(new OSVEventBusIndex());
         return builder.build();
     }
 }
@@ -0,0 +1,45 @@
+package com.telenav.osv.event.hardware.camera;
+
+import com.telenav.osv.event.OSVEvent;
+
+/**
+ * Debug event with the frame buffer pool usage and the garbage collections of the process, sent after a frame was saved
+ */
+public class FrameBufferStatsEvent extends OSVEvent {
+
+    public final long requests;
+
+    /**
+     * requests served without allocating
+     */
+    public final long hits;
+
+    public final long pooledBytes;
+
+    /**
+     * garbage collections since the process started, -1 if not available
+     */
+    public final long gcCount;
+
+    /**
+     * time spent in garbage collections since the process started, in milliseconds, -1 if not available
+     */
+    public final long gcTime;
+
+    public FrameBufferStatsEvent(long requests, long hits, long pooledBytes, long gcCount, long gcTime) {
+        this.requests = requests;
+        this.hits = hits;
+        this.pooledBytes = pooledBytes;
+        this.gcCount = gcCount;
+        this.gcTime = gcTime;
+    }
+
+    public float getHitRate() {
+        return requests == 0 ? 0 : (float) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "Frame buffers: " + hits + "/" + requests + " reused, " + pooledBytes / 1024 + " KB idle, gc " + gcCount + " (" + gcTime + "ms)";
+    }
+}
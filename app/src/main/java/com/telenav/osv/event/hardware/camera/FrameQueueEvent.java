@@ -10,7 +10,42 @@ public class FrameQueueEvent extends OSVEvent {
 
     public final int queueSize;
 
+    /**
+     * names of the frame saving stages, in processing order
+     */
+    public final String[] stageNames;
+
+    /**
+     * number of frames waiting in front of each stage
+     */
+    public final int[] stageQueueSizes;
+
+    /**
+     * processing time of the last frame in each stage, in milliseconds
+     */
+    public final long[] stageLatencies;
+
     public FrameQueueEvent(int size) {
+        this(size, new String[0], new int[0], new long[0]);
+    }
+
+    public FrameQueueEvent(int size, String[] stageNames, int[] stageQueueSizes, long[] stageLatencies) {
         this.queueSize = size;
+        this.stageNames = stageNames;
+        this.stageQueueSizes = stageQueueSizes;
+        this.stageLatencies = stageLatencies;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Frames in queue: ").append(queueSize);
+        for (int i = 0; i < stageNames.length; i++) {
+            builder.append(i == 0 ? " (" : ", ").append(stageNames[i]).append(' ').append(stageQueueSizes[i]).append('/')
+                    .append(stageLatencies[i]).append("ms");
+            if (i == stageNames.length - 1) {
+                builder.append(')');
+            }
+        }
+        return builder.toString();
     }
 }
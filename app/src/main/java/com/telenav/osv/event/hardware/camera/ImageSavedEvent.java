@@ -11,10 +11,20 @@ public class ImageSavedEvent extends OSVEvent {
 
     public final LocalSequence sequence;
 
+    /**
+     * time spent encoding or writing the frame, in milliseconds, -1 if unknown
+     */
+    public final long encodeLatency;
+
     private boolean saved;
 
     public ImageSavedEvent(LocalSequence sequence, boolean saved) {
+        this(sequence, saved, -1);
+    }
+
+    public ImageSavedEvent(LocalSequence sequence, boolean saved, long encodeLatency) {
         this.sequence = sequence;
         this.saved = saved;
+        this.encodeLatency = encodeLatency;
     }
 }
@@ -0,0 +1,90 @@
+package com.telenav.osv.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MIME;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+import com.android.volley.toolbox.ByteArrayPool;
+
+/**
+ * multipart body sending a byte range of a file, used for the parts of a resumable upload
+ */
+public class FileRangeBody extends AbstractContentBody {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * copy buffers shared by the parts uploading at the same time
+     */
+    private static final ByteArrayPool sBufferPool = new ByteArrayPool(8 * BUFFER_SIZE);
+
+    private final File mFile;
+
+    private final long mOffset;
+
+    private final long mLength;
+
+    private final String mFilename;
+
+    /**
+     * @param file the file
+     * @param offset first byte of the range
+     * @param length number of bytes in the range
+     * @param contentType content type of the file
+     * @param filename file name sent in the part header
+     */
+    public FileRangeBody(File file, long offset, long length, ContentType contentType, String filename) {
+        super(contentType);
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range " + offset + "+" + length);
+        }
+        mFile = file;
+        mOffset = offset;
+        mLength = length;
+        mFilename = filename;
+    }
+
+    @Override
+    public String getFilename() {
+        return mFilename;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(mFile, "r");
+        byte[] buffer = sBufferPool.getBuf(BUFFER_SIZE);
+        try {
+            raf.seek(mOffset);
+            long remaining = mLength;
+            while (remaining > 0) {
+                int read = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    throw new IOException("File " + mFile.getName() + " ended before " + (mOffset + mLength));
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+            out.flush();
+        } finally {
+            sBufferPool.returnBuf(buffer);
+            raf.close();
+        }
+    }
+
+    @Override
+    public String getTransferEncoding() {
+        return MIME.ENC_BINARY;
+    }
+
+    @Override
+    public long getContentLength() {
+        return mLength;
+    }
+
+    public long getOffset() {
+        return mOffset;
+    }
+}
@@ -4,43 +4,27 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import com.android.volley.AuthFailureError;
-import com.android.volley.toolbox.StringRequest;
-import com.telenav.osv.listener.network.GenericResponseListener;
+import com.telenav.osv.item.network.PhotoCollection;
+import com.telenav.osv.listener.network.OsvRequestResponseListener;
 
 /**
  * Created by Kalman on 10/6/2015.
  */
 @SuppressWarnings("HardCodedStringLiteral")
-public class ListPhotosRequest extends StringRequest {
+public class ListPhotosRequest extends ParsedResponseRequest<PhotoCollection> {
 
     private static final String PARAM_SEQUENCE_ID = "sequenceId";
 
     private static final String PARAM_TOKEN = "access_token";
 
-    private final GenericResponseListener mListener;
-
     private final int mSequenceId;
 
     private final String mToken;
 
-    public ListPhotosRequest(String url, GenericResponseListener listener, int sequenceId, String token) {
-        super(Method.POST, url, listener, listener);
+    public ListPhotosRequest(String url, OsvRequestResponseListener<?, PhotoCollection> listener, int sequenceId, String token) {
+        super(Method.POST, url, listener);
         mToken = token;
         mSequenceId = sequenceId;
-        mListener = listener;
-    }
-
-    @Override
-    public Map<String, String> getHeaders() throws AuthFailureError {
-        Map<String, String> headers = super.getHeaders();
-
-        if (headers == null || headers.equals(Collections.emptyMap())) {
-            headers = new HashMap<>();
-        }
-
-        headers.put("Accept", "application/json");
-
-        return headers;
     }
 
     @Override
@@ -55,9 +39,4 @@ public class ListPhotosRequest extends StringRequest {
         }
         return params;
     }
-
-    @Override
-    protected void deliverResponse(String response) {
-        mListener.onResponse(response);
-    }
 }
\ No newline at end of file
@@ -4,14 +4,14 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import com.android.volley.AuthFailureError;
-import com.android.volley.toolbox.StringRequest;
-import com.telenav.osv.listener.network.GenericResponseListener;
+import com.telenav.osv.item.network.TrackCollection;
+import com.telenav.osv.listener.network.OsvRequestResponseListener;
 
 /**
  * Created by Kalman on 10/6/2015.
  */
 @SuppressWarnings("HardCodedStringLiteral")
-public class ListSequencesRequest extends StringRequest {
+public class ListSequencesRequest extends ParsedResponseRequest<TrackCollection> {
 
     private static final String PARAM_PAGE_NUMBER = "page";
 
@@ -19,35 +19,19 @@ public class ListSequencesRequest extends StringRequest {
 
     private static final String PARAM_TOKEN = "access_token";
 
-    private final GenericResponseListener mListener;
-
     private final int mPageIndex;
 
     private final int mResultsToLoad;
 
     private final String mToken;
 
-    public ListSequencesRequest(String url, GenericResponseListener listener, String token, int pageNr, int numberOfResults) {
-        super(Method.POST, url, listener, listener);
+    public ListSequencesRequest(String url, OsvRequestResponseListener<?, TrackCollection> listener, String token, int pageNr, int numberOfResults) {
+        super(Method.POST, url, listener);
         mToken = token;
-        mListener = listener;
         mPageIndex = pageNr;
         mResultsToLoad = numberOfResults;
     }
 
-    @Override
-    public Map<String, String> getHeaders() throws AuthFailureError {
-        Map<String, String> headers = super.getHeaders();
-
-        if (headers == null || headers.equals(Collections.emptyMap())) {
-            headers = new HashMap<>();
-        }
-
-        headers.put("Accept", "application/json");
-
-        return headers;
-    }
-
     @Override
     protected Map<String, String> getParams() throws AuthFailureError {
         Map<String, String> params = super.getParams();
@@ -61,9 +45,4 @@ public class ListSequencesRequest extends StringRequest {
         params.put(PARAM_NUMBER_OF_RESULT, mResultsToLoad + "");
         return params;
     }
-
-    @Override
-    protected void deliverResponse(String response) {
-        mListener.onResponse(response);
-    }
 }
\ No newline at end of file
@@ -4,14 +4,14 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import com.android.volley.AuthFailureError;
-import com.android.volley.toolbox.StringRequest;
-import com.telenav.osv.listener.network.GenericResponseListener;
+import com.telenav.osv.item.network.GeometryCollection;
+import com.telenav.osv.listener.network.OsvRequestResponseListener;
 
 /**
  * Created by Kalman on 10/6/2015.
  */
 @SuppressWarnings("HardCodedStringLiteral")
-public class ListTracksRequest extends StringRequest {
+public class ListTracksRequest extends ParsedResponseRequest<GeometryCollection> {
 
     private static final String PARAM_BB_TOP_LEFT = "bbTopLeft";
 
@@ -27,18 +27,15 @@ public class ListTracksRequest extends StringRequest {
 
     private final String mBbBottomRight;
 
-    private final GenericResponseListener mListener;
-
     private final float mZoom;
 
     private final int mIPP;
 
     private final int mPage;
 
-    public ListTracksRequest(String url, GenericResponseListener listener, String bbTopLeft, String bbBottomRight, int page, int ipp,
+    public ListTracksRequest(String url, OsvRequestResponseListener<?, GeometryCollection> listener, String bbTopLeft, String bbBottomRight, int page, int ipp,
                              float zoom) {
-        super(Method.POST, url, listener, listener);
-        mListener = listener;
+        super(Method.POST, url, listener);
         mBbTopLeft = bbTopLeft;
         mBbBottomRight = bbBottomRight;
         mZoom = zoom;
@@ -46,19 +43,6 @@ public class ListTracksRequest extends StringRequest {
         mPage = page;
     }
 
-    @Override
-    public Map<String, String> getHeaders() throws AuthFailureError {
-        Map<String, String> headers = super.getHeaders();
-
-        if (headers == null || headers.equals(Collections.emptyMap())) {
-            headers = new HashMap<>();
-        }
-
-        headers.put("Accept", "application/json");
-
-        return headers;
-    }
-
     @Override
     protected Map<String, String> getParams() throws AuthFailureError {
         Map<String, String> params = super.getParams();
@@ -73,9 +57,4 @@ public class ListTracksRequest extends StringRequest {
 
         return params;
     }
-
-    @Override
-    protected void deliverResponse(String response) {
-        mListener.onResponse(response);
-    }
 }
\ No newline at end of file
@@ -4,14 +4,14 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import com.android.volley.AuthFailureError;
-import com.android.volley.toolbox.StringRequest;
-import com.telenav.osv.listener.network.GenericResponseListener;
+import com.telenav.osv.item.network.TrackCollection;
+import com.telenav.osv.listener.network.OsvRequestResponseListener;
 
 /**
  * Created by Kalman on 10/6/2015.
  */
 @SuppressWarnings("HardCodedStringLiteral")
-public class NearbyRequest extends StringRequest {
+public class NearbyRequest extends ParsedResponseRequest<TrackCollection> {
 
     private static final String PARAM_LAT = "lat";
 
@@ -19,35 +19,19 @@ public class NearbyRequest extends StringRequest {
 
     private static final String PARAM_RADIUS = "distance";
 
-    private final GenericResponseListener mListener;
-
     private final String mLat;
 
     private final String mLon;
 
     private final String mRadius;
 
-    public NearbyRequest(String url, GenericResponseListener listener, String lat, String lon, int radius) {
-        super(Method.POST, url, listener, listener);
-        mListener = listener;
+    public NearbyRequest(String url, OsvRequestResponseListener<?, TrackCollection> listener, String lat, String lon, int radius) {
+        super(Method.POST, url, listener);
         mLat = lat;
         mLon = lon;
         mRadius = "" + radius;
     }
 
-    @Override
-    public Map<String, String> getHeaders() throws AuthFailureError {
-        Map<String, String> headers = super.getHeaders();
-
-        if (headers == null || headers.equals(Collections.emptyMap())) {
-            headers = new HashMap<>();
-        }
-
-        headers.put("Accept", "application/json");
-
-        return headers;
-    }
-
     @Override
     protected Map<String, String> getParams() throws AuthFailureError {
         Map<String, String> params = super.getParams();
@@ -61,9 +45,4 @@ public class NearbyRequest extends StringRequest {
 
         return params;
     }
-
-    @Override
-    protected void deliverResponse(String response) {
-        mListener.onResponse(response);
-    }
 }
\ No newline at end of file
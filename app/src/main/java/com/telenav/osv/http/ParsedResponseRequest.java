@@ -0,0 +1,54 @@
+package com.telenav.osv.http;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import com.android.volley.AuthFailureError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.telenav.osv.item.network.ApiResponse;
+import com.telenav.osv.listener.network.OsvRequestResponseListener;
+
+/**
+ * Json request which parses the response body on the network thread, straight from the received bytes, and delivers the parsed
+ * response through the delivery of its queue. Used for the large listings so no response string is built and the delivery thread
+ * is not blocked by the parsing.
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public abstract class ParsedResponseRequest<G extends ApiResponse> extends Request<G> {
+
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    private final OsvRequestResponseListener<?, G> mListener;
+
+    public ParsedResponseRequest(int method, String url, OsvRequestResponseListener<?, G> listener) {
+        super(method, url, listener);
+        mListener = listener;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() throws AuthFailureError {
+        Map<String, String> headers = super.getHeaders();
+
+        if (headers == null || headers.equals(Collections.emptyMap())) {
+            headers = new HashMap<>();
+        }
+
+        headers.put("Accept", "application/json");
+
+        return headers;
+    }
+
+    @Override
+    protected Response<G> parseNetworkResponse(NetworkResponse response) {
+        G parsed = mListener.parse(response.data, HttpHeaderParser.parseCharset(response.headers, DEFAULT_CHARSET));
+        return Response.success(parsed, HttpHeaderParser.parseCacheHeaders(response));
+    }
+
+    @Override
+    protected void deliverResponse(G response) {
+        mListener.onParsed(response);
+    }
+}
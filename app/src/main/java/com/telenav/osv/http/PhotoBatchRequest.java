@@ -0,0 +1,173 @@
+package com.telenav.osv.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.HttpMultipartMode;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import android.os.Handler;
+import com.android.volley.AuthFailureError;
+import com.android.volley.VolleyLog;
+import com.android.volley.toolbox.StringRequest;
+import com.telenav.osv.item.OSVFile;
+import com.telenav.osv.listener.network.GenericResponseListener;
+import com.telenav.osv.utils.Log;
+import com.telenav.osv.utils.Utils;
+
+/**
+ * Uploads several photos of a sequence in one multipart request. The fields of the photo at position i are sent as
+ * {@code sequenceIndex[i]}, {@code coordinate[i]}, {@code gpsAccuracy[i]} and the file as {@code photo[i]}, the response holds a status
+ * for every photo, see {@link com.telenav.osv.manager.network.parser.PhotoBatchParser}.
+ */
+public class PhotoBatchRequest extends StringRequest {
+
+    private static final String TAG = "PhotoBatchRequest";
+
+    private static final String FILE_PART_NAME = "photo";
+
+    private static final String PARAM_TOKEN = "access_token";
+
+    private final int mSequenceId;
+
+    private final List<Photo> mPhotos;
+
+    private final GenericResponseListener mListener;
+
+    private final String mToken;
+
+    private ProgressiveEntity mProgressiveEntity;
+
+    private ProgressiveEntity.DataProgressListener mDataProgressListener;
+
+    private Handler mResponseHandler;
+
+    public PhotoBatchRequest(String url, GenericResponseListener listener, ProgressiveEntity.DataProgressListener dataProgressListener,
+                             String token, int sequenceID, List<Photo> photos, Handler responseHandler) {
+        super(Method.POST, url, listener, listener);
+        mListener = listener;
+        mSequenceId = sequenceID;
+        mPhotos = Collections.unmodifiableList(new ArrayList<>(photos));
+        mToken = token;
+        mDataProgressListener = dataProgressListener;
+        mResponseHandler = responseHandler;
+        buildMultipartEntity();
+    }
+
+    @Override
+    public Map<String, String> getHeaders() throws AuthFailureError {
+        Map<String, String> headers = super.getHeaders();
+
+        if (headers == null || headers.equals(Collections.emptyMap())) {
+            headers = new HashMap<>();
+        }
+
+        headers.put("Accept", "application/json");
+
+        return headers;
+    }
+
+    @Override
+    public String getBodyContentType() {
+        return mProgressiveEntity.getContentType().getValue();
+    }
+
+    @Override
+    public byte[] getBody() throws AuthFailureError {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            mProgressiveEntity.writeTo(bos);
+        } catch (IOException e) {
+            VolleyLog.e("IOException writing to ByteArrayOutputStream bos, building the multipart request.");
+        }
+
+        return bos.toByteArray();
+    }
+
+    @Override
+    public HttpEntity getMultipartEntity() {
+        return mProgressiveEntity;
+    }
+
+    /**
+     * @return the photos sent in this request, in the order of their fields
+     */
+    public List<Photo> getPhotos() {
+        return mPhotos;
+    }
+
+    @Override
+    protected void deliverResponse(String response) {
+        mListener.onResponse(response);
+    }
+
+    private void buildMultipartEntity() {
+        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+        builder.addTextBody(PARAM_TOKEN, mToken);
+        builder.addTextBody("sequenceId", "" + mSequenceId);
+        long size = 0;
+        for (int i = 0; i < mPhotos.size(); i++) {
+            Photo photo = mPhotos.get(i);
+            builder.addTextBody("sequenceIndex[" + i + "]", "" + photo.getSequenceIndex());
+            builder.addTextBody("coordinate[" + i + "]", photo.getLat() + "," + photo.getLon());
+            builder.addTextBody("gpsAccuracy[" + i + "]", "" + photo.getAccuracy());
+            OSVFile file = photo.getFile();
+            builder.addBinaryBody(FILE_PART_NAME + "[" + i + "]", file, ContentType.create("image/jpeg"), file.getName());
+            size += Utils.fileSize(file);
+        }
+        Log.d(TAG, "buildMultipartEntity: sending " + mPhotos.size() + " photos of sequence " + mSequenceId + ", " + size + " bytes");
+        builder.setMode(HttpMultipartMode.BROWSER_COMPATIBLE);
+        builder.setLaxMode().setCharset(Charset.forName("UTF-8"));
+        mProgressiveEntity = new ProgressiveEntity(builder.build(), mDataProgressListener, size, mResponseHandler);
+    }
+
+    /**
+     * a photo of the batch with its position
+     */
+    public static class Photo {
+
+        private final OSVFile mFile;
+
+        private final int mSequenceIndex;
+
+        private final double mLat;
+
+        private final double mLon;
+
+        private final float mAccuracy;
+
+        public Photo(OSVFile file, int sequenceIndex, double lat, double lon, float accuracy) {
+            mFile = file;
+            mSequenceIndex = sequenceIndex;
+            mLat = lat;
+            mLon = lon;
+            mAccuracy = accuracy;
+        }
+
+        public OSVFile getFile() {
+            return mFile;
+        }
+
+        public int getSequenceIndex() {
+            return mSequenceIndex;
+        }
+
+        public double getLat() {
+            return mLat;
+        }
+
+        public double getLon() {
+            return mLon;
+        }
+
+        public float getAccuracy() {
+            return mAccuracy;
+        }
+    }
+}
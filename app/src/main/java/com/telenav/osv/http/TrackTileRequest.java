@@ -0,0 +1,74 @@
+package com.telenav.osv.http;
+
+import java.util.Map;
+import com.android.volley.AuthFailureError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.telenav.osv.item.network.GeometryCollection;
+import com.telenav.osv.listener.network.NetworkResponseDataListener;
+import com.telenav.osv.listener.network.OsvRequestResponseListener;
+import com.telenav.osv.manager.network.GeometryTileCache;
+
+/**
+ * Coverage listing of one tile of the {@link GeometryTileCache}. A cached tile is revalidated with its etag, a not modified response is
+ * delivered with the {@link NetworkResponseDataListener#HTTP_NOT_MODIFIED} code and without segments, a new response is stored in the
+ * cache before it is delivered.
+ * <p>
+ * All tiles are posted to the same url, so the volley cache, which is keyed by url, is not used.
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class TrackTileRequest extends ListTracksRequest {
+
+    private static final String HEADER_ETAG = "ETag";
+
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    private final GeometryTileCache mCache;
+
+    private final long mTileKey;
+
+    private final String mEtag;
+
+    /**
+     * @param cache the cache storing the tile
+     * @param tileKey the key of the tile
+     * @param etag the etag of the cached tile, null if the tile is not cached
+     */
+    public TrackTileRequest(String url, OsvRequestResponseListener<?, GeometryCollection> listener, GeometryTileCache cache, long tileKey,
+                            String etag, int ipp, float zoom) {
+        super(url, listener, GeometryTileCache.getTopLeft(tileKey), GeometryTileCache.getBottomRight(tileKey), 1, ipp, zoom);
+        mCache = cache;
+        mTileKey = tileKey;
+        mEtag = etag;
+        setShouldCache(false);
+    }
+
+    public long getTileKey() {
+        return mTileKey;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() throws AuthFailureError {
+        Map<String, String> headers = super.getHeaders();
+        if (mEtag != null) {
+            headers.put(HEADER_IF_NONE_MATCH, mEtag);
+        }
+        return headers;
+    }
+
+    @Override
+    protected Response<GeometryCollection> parseNetworkResponse(NetworkResponse response) {
+        if (response.statusCode == NetworkResponseDataListener.HTTP_NOT_MODIFIED) {
+            mCache.touch(mTileKey);
+            GeometryCollection collection = new GeometryCollection();
+            collection.setHttpCode(NetworkResponseDataListener.HTTP_NOT_MODIFIED);
+            return Response.success(collection, HttpHeaderParser.parseCacheHeaders(response));
+        }
+        Response<GeometryCollection> parsed = super.parseNetworkResponse(response);
+        if (parsed.result.getHttpCode() == NetworkResponseDataListener.HTTP_OK) {
+            mCache.put(mTileKey, response.data, response.headers.get(HEADER_ETAG), parsed.result.getSegmentList());
+        }
+        return parsed;
+    }
+}
@@ -29,6 +29,10 @@ public class VideoRequest<T> extends StringRequest {
 
     private static final String PARAM_TOKEN = "access_token";
 
+    private static final String PARAM_CHUNK_OFFSET = "chunkOffset";
+
+    private static final String PARAM_FILE_SIZE = "fileSize";
+
     private static final String TAG = "VideoRequest";
 
     private final int mSequenceId;
@@ -41,6 +45,16 @@ public class VideoRequest<T> extends StringRequest {
 
     private final String mToken;
 
+    /**
+     * first byte of the file sent in this request
+     */
+    private final long mOffset;
+
+    /**
+     * number of bytes sent in this request, -1 for the whole file
+     */
+    private final long mLength;
+
     private ProgressiveEntity mProgressiveEntity;
 
     private ProgressiveEntity.DataProgressListener mDataProgressListener;
@@ -49,6 +63,17 @@ public class VideoRequest<T> extends StringRequest {
 
     public VideoRequest(String url, GenericResponseListener listener, ProgressiveEntity.DataProgressListener dataProgressListener,
                         String token, OSVFile videoFile, int sequenceID, int sequenceIndex, Handler responseHandler) {
+        this(url, listener, dataProgressListener, token, videoFile, sequenceID, sequenceIndex, 0, -1, responseHandler);
+    }
+
+    /**
+     * request uploading a part of the video, the server appends it to the bytes received so far for the same video
+     * @param offset first byte of the part
+     * @param length size of the part, -1 for the whole file
+     */
+    public VideoRequest(String url, GenericResponseListener listener, ProgressiveEntity.DataProgressListener dataProgressListener,
+                        String token, OSVFile videoFile, int sequenceID, int sequenceIndex, long offset, long length,
+                        Handler responseHandler) {
         super(Method.POST, url, listener, listener);
 
         mListener = listener;
@@ -56,6 +81,8 @@ public class VideoRequest<T> extends StringRequest {
         mSequenceId = sequenceID;
         mSequenceIndex = sequenceIndex;
         mToken = token;
+        mOffset = offset;
+        mLength = length;
         mDataProgressListener = dataProgressListener;
         mResponseHandler = responseHandler;
         buildMultipartEntity();
@@ -118,7 +145,16 @@ public class VideoRequest<T> extends StringRequest {
         if (!mVideoFile.exists()) {
             Log.w(TAG, "buildMultipartEntity: video doesn't exist");
         }
-        mBuilder.addBinaryBody(FILE_PART_NAME, mVideoFile, ContentType.create("video/mp4"), mVideoFile.getName());
+        long size = Utils.fileSize(mVideoFile);
+        if (mLength < 0) {
+            mBuilder.addBinaryBody(FILE_PART_NAME, mVideoFile, ContentType.create("video/mp4"), mVideoFile.getName());
+        } else {
+            mBuilder.addTextBody(PARAM_CHUNK_OFFSET, "" + mOffset);
+            mBuilder.addTextBody(PARAM_FILE_SIZE, "" + size);
+            mBuilder.addPart(FILE_PART_NAME,
+                    new FileRangeBody(mVideoFile, mOffset, mLength, ContentType.create("video/mp4"), mVideoFile.getName()));
+            size = mLength;
+        }
         //        Log.d(TAG, "buildMultipartEntity: sending request: "
         //                + " " + PARAM_TOKEN + " " + mToken
         //                + " sequenceId " + mSequenceId
@@ -127,6 +163,6 @@ public class VideoRequest<T> extends StringRequest {
         mBuilder.setMode(HttpMultipartMode.BROWSER_COMPATIBLE);
         mBuilder.setLaxMode().setBoundary("xx").setCharset(Charset.forName("UTF-8"));
         HttpEntity mEntity = mBuilder.build();
-        mProgressiveEntity = new ProgressiveEntity(mEntity, mDataProgressListener, Utils.fileSize(mVideoFile), mResponseHandler);
+        mProgressiveEntity = new ProgressiveEntity(mEntity, mDataProgressListener, size, mResponseHandler);
     }
 }
\ No newline at end of file
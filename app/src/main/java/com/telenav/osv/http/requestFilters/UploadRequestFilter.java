@@ -2,6 +2,7 @@ package com.telenav.osv.http.requestFilters;
 
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
+import com.telenav.osv.http.PhotoBatchRequest;
 import com.telenav.osv.http.PhotoRequest;
 import com.telenav.osv.http.VideoRequest;
 
@@ -12,6 +13,6 @@ public class UploadRequestFilter implements RequestQueue.RequestFilter {
 
     @Override
     public boolean apply(Request<?> request) {
-        return request instanceof VideoRequest || request instanceof PhotoRequest;
+        return request instanceof VideoRequest || request instanceof PhotoRequest || request instanceof PhotoBatchRequest;
     }
 }
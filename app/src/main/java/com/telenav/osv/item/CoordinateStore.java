@@ -0,0 +1,78 @@
+package com.telenav.osv.item;
+
+import java.util.Arrays;
+
+/**
+ * Packed coordinates shared by the polylines of a geometry response, stored as fixed point micro degrees in two parallel arrays.
+ * A polyline references a range of the store instead of holding a coordinate object for each node.
+ * <p>
+ * The store only grows while a response is parsed, it is read only once its polylines were handed out.
+ */
+public class CoordinateStore {
+
+    /**
+     * fixed point units in a degree, the precision of the coordinates sent by the server
+     */
+    private static final double SCALE = 1000000d;
+
+    private int[] mLatitudes;
+
+    private int[] mLongitudes;
+
+    private int mSize;
+
+    public CoordinateStore(int capacity) {
+        mLatitudes = new int[Math.max(capacity, 16)];
+        mLongitudes = new int[mLatitudes.length];
+    }
+
+    private static int toFixed(double degrees) {
+        return (int) Math.round(degrees * SCALE);
+    }
+
+    private static double toDegrees(int fixed) {
+        return fixed / SCALE;
+    }
+
+    /**
+     * @return the index of the added coordinate
+     */
+    public int add(double lat, double lon) {
+        if (mSize == mLatitudes.length) {
+            mLatitudes = Arrays.copyOf(mLatitudes, mSize * 2);
+            mLongitudes = Arrays.copyOf(mLongitudes, mSize * 2);
+        }
+        mLatitudes[mSize] = toFixed(lat);
+        mLongitudes[mSize] = toFixed(lon);
+        return mSize++;
+    }
+
+    /**
+     * drops the coordinates added after the given size, e.g. the nodes of a segment which is not kept
+     */
+    public void truncate(int size) {
+        mSize = Math.min(mSize, size);
+    }
+
+    /**
+     * releases the unused capacity, once all coordinates were added
+     */
+    public void trimToSize() {
+        if (mSize < mLatitudes.length) {
+            mLatitudes = Arrays.copyOf(mLatitudes, mSize);
+            mLongitudes = Arrays.copyOf(mLongitudes, mSize);
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public double getLatitude(int index) {
+        return toDegrees(mLatitudes[index]);
+    }
+
+    public double getLongitude(int index) {
+        return toDegrees(mLongitudes[index]);
+    }
+}
@@ -4,18 +4,26 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import android.database.Cursor;
 import android.os.Build;
 import android.os.Looper;
 import com.skobbler.ngx.SKCoordinate;
 import com.skobbler.ngx.reversegeocode.SKReverseGeocoderManager;
 import com.skobbler.ngx.search.SKSearchResult;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.telenav.osv.db.SequenceDB;
 import com.telenav.osv.event.EventBus;
 import com.telenav.osv.event.ui.SequencesChangedEvent;
+import com.telenav.osv.utils.BackgroundThreadPool;
 import com.telenav.osv.utils.ComputingDistance;
 import com.telenav.osv.utils.Log;
 import com.telenav.osv.utils.Utils;
@@ -36,6 +44,11 @@ public class LocalSequence extends Sequence {
 
     private static final String TAG = "LocalSequence";
 
+    /**
+     * threads recomputing stale stats when the sequences are loaded
+     */
+    private static final int STATS_THREADS = 4;
+
     private static final ConcurrentHashMap<Integer, LocalSequence> sequences = new ConcurrentHashMap<>();
 
     private static boolean sInitialized = false;
@@ -54,6 +67,11 @@ public class LocalSequence extends Sequence {
 
     private int mVideoCount = -1;
 
+    /**
+     * true once the stats were computed, or read from an up to date cache
+     */
+    private boolean mStatsLoaded;
+
     public LocalSequence(OSVFile folder) {
         this.mFolder = folder;
         this.mId = getSequenceId(folder);
@@ -68,48 +86,150 @@ public class LocalSequence extends Sequence {
         Log.d(TAG, "LocalSequence: " + this.toString());
     }
 
+    /**
+     * Creates the sequence from a row of {@link SequenceDB#getAllSequences()}, using the cached stats if the folder did not change since
+     * they were stored. The track is loaded on first use. The sequence is not registered, see {@link #forceRefreshLocalSequences()}.
+     */
+    private LocalSequence(OSVFile folder, Cursor cursor) {
+        this.mFolder = folder;
+        this.mId = cursor.getInt(cursor.getColumnIndex(SequenceDB.SEQUENCE_ID));
+        long modified = folder.lastModified();
+        this.mDate = new Date(modified);
+        this.mIsExternal = cursor.getInt(cursor.getColumnIndex(SequenceDB.SEQUENCE_EXTERNAL)) > 0;
+        this.mIsSafe = cursor.getInt(cursor.getColumnIndex(SequenceDB.SEQUENCE_SAFE)) > 0;
+        this.mLocation.setLatitude(cursor.getDouble(cursor.getColumnIndex(SequenceDB.SEQUENCE_LAT)));
+        this.mLocation.setLongitude(cursor.getDouble(cursor.getColumnIndex(SequenceDB.SEQUENCE_LON)));
+        this.mAddress = cursor.getString(cursor.getColumnIndex(SequenceDB.SEQUENCE_ADDRESS));
+        long size = cursor.getLong(cursor.getColumnIndex(SequenceDB.SEQUENCE_SIZE));
+        long statsModified = cursor.getLong(cursor.getColumnIndex(SequenceDB.SEQUENCE_STATS_MODIFIED));
+        if (size < 0 || statsModified != modified) {
+            return;
+        }
+        this.mSize = size;
+        this.mOriginalSize = size;
+        this.mPlatform = "Android";
+        this.mPlatformVersion = Build.VERSION.RELEASE;
+        String version = cursor.getString(cursor.getColumnIndex(SequenceDB.SEQUENCE_VERSION));
+        this.mAppVersion = version == null ? "" : version;
+        this.mOriginalFrameCount = Math.max(0, cursor.getInt(cursor.getColumnIndex(SequenceDB.SEQUENCE_ORIG_COUNT)));
+        this.mFrameCount = Math.max(0, cursor.getInt(cursor.getColumnIndex(SequenceDB.SEQUENCE_COUNT)));
+        this.mVideoCount = Math.max(0, cursor.getInt(cursor.getColumnIndex(SequenceDB.SEQUENCE_VIDEO_COUNT)));
+        this.mTotalLength = cursor.getInt(cursor.getColumnIndex(SequenceDB.SEQUENCE_LENGTH));
+        String firstFrame = cursor.getString(cursor.getColumnIndex(SequenceDB.SEQUENCE_FIRST_FRAME));
+        if (firstFrame != null) {
+            this.mThumbLink = "file:///" + firstFrame;
+        }
+        this.mHasObd = cursor.getInt(cursor.getColumnIndex(SequenceDB.SEQUENCE_OBD)) > 0;
+        loadScores();
+        this.mStatsLoaded = true;
+    }
+
+    /**
+     * Loads the sequences from the database. Sequences already loaded are kept, new ones are built from the stats cached in the database,
+     * the ones with missing or stale stats are recomputed in parallel. Addresses are reverse geocoded in the background afterwards.
+     */
     public static ConcurrentHashMap<Integer, LocalSequence> forceRefreshLocalSequences() {
         if (Looper.myLooper() == Looper.getMainLooper()) {
             Log.e(TAG, "getLocalSequences called on main thread ");
             throw new IllegalStateException("GetLocalSequences called on main thread.");
         }
-        ConcurrentHashMap<Integer, LocalSequence> tempSequences = new ConcurrentHashMap<>();
-        synchronized (sequences) {
-            Cursor cur = SequenceDB.instance.getAllSequences();
+        long time = System.currentTimeMillis();
+        Set<Integer> previous = new HashSet<>(sequences.keySet());
+        HashMap<Integer, LocalSequence> tempSequences = new HashMap<>();
+        final List<LocalSequence> stale = new ArrayList<>();
+        final List<LocalSequence> unnamed = new ArrayList<>();
+        Cursor cur = SequenceDB.instance.getAllSequences();
+        try {
             while (cur != null && !cur.isAfterLast()) {
-                OSVFile f = new OSVFile(cur.getString(cur.getColumnIndex(SequenceDB.SEQUENCE_PATH)));
-                boolean external = cur.getInt(cur.getColumnIndex(SequenceDB.SEQUENCE_EXTERNAL)) > 0;
                 Integer id = cur.getInt(cur.getColumnIndex(SequenceDB.SEQUENCE_ID));
-                if (!sequences.containsKey(id)) {
-                    LocalSequence seq = new LocalSequence(f);
-                    seq.mIsExternal = external;
-                    double lat = cur.getDouble(cur.getColumnIndex(SequenceDB.SEQUENCE_LAT));
-                    double lon = cur.getDouble(cur.getColumnIndex(SequenceDB.SEQUENCE_LON));
-                    seq.mLocation.setLatitude(lat);
-                    seq.mLocation.setLongitude(lon);
-                    if (SKReverseGeocoderManager.getInstance() != null && lat != 0 && lon != 0) {
-                        SKSearchResult address = SKReverseGeocoderManager.getInstance().reverseGeocodePosition(new SKCoordinate(lat, lon));
-                        if (address != null) {
-                            seq.mAddress = address.getName();
+                LocalSequence seq = sequences.get(id);
+                if (seq == null) {
+                    seq = new LocalSequence(new OSVFile(cur.getString(cur.getColumnIndex(SequenceDB.SEQUENCE_PATH))), cur);
+                    if (!seq.mStatsLoaded) {
+                        stale.add(seq);
+                    }
+                    if (seq.mAddress == null) {
+                        seq.mAddress = "Track " + (seq.mId + 1);
+                        if (seq.mLocation.getLatitude() != 0 && seq.mLocation.getLongitude() != 0) {
+                            unnamed.add(seq);
                         }
                     }
-                    seq.mIsSafe = cur.getInt(cur.getColumnIndex(SequenceDB.SEQUENCE_SAFE)) > 0;
-                    Log.d(TAG, "getLocalSequences: reverseGeocode: " + seq.mAddress);
-                    tempSequences.put(seq.mId, seq);
-                } else {
-                    tempSequences.put(id, sequences.get(id));
                 }
+                tempSequences.put(id, seq);
                 cur.moveToNext();
             }
+        } finally {
             if (cur != null) {
                 cur.close();
             }
-            sequences.clear();
+        }
+        refreshStats(stale);
+        synchronized (sequences) {
+            //sequences created while loading stay
+            previous.removeAll(tempSequences.keySet());
+            for (Integer id : previous) {
+                sequences.remove(id);
+            }
             for (LocalSequence seq : tempSequences.values()) {
-                sequences.put(seq.mId, seq);
+                if (!sequences.containsKey(seq.mId)) {
+                    sequences.put(seq.mId, seq);
+                }
             }
             sInitialized = true;
-            return sequences;
+        }
+        Log.d(TAG, "forceRefreshLocalSequences: loaded " + tempSequences.size() + " sequences, recomputed " + stale.size() + " in " +
+                (System.currentTimeMillis() - time) + " ms");
+        EventBus.post(new SequencesChangedEvent(false));
+        if (!unnamed.isEmpty()) {
+            BackgroundThreadPool.post(() -> reverseGeocode(unnamed));
+        }
+        return sequences;
+    }
+
+    /**
+     * recomputes the stats of the sequences on a few worker threads, the folder walks and frame queries do not depend on each other
+     */
+    private static void refreshStats(List<LocalSequence> stale) {
+        if (stale.isEmpty()) {
+            return;
+        }
+        int threads = Math.max(1, Math.min(Math.min(STATS_THREADS, Runtime.getRuntime().availableProcessors()), stale.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("LocalSequence-stats-%d").build());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (final LocalSequence seq : stale) {
+            tasks.add(() -> {
+                seq.refreshStats();
+                return null;
+            });
+        }
+        try {
+            executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Log.w(TAG, "refreshStats: interrupted");
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void reverseGeocode(List<LocalSequence> unnamed) {
+        SKReverseGeocoderManager geocoder = SKReverseGeocoderManager.getInstance();
+        if (geocoder == null) {
+            return;
+        }
+        boolean changed = false;
+        for (LocalSequence seq : unnamed) {
+            SKSearchResult address = geocoder.reverseGeocodePosition(new SKCoordinate(seq.mLocation.getLatitude(), seq.mLocation.getLongitude()));
+            if (address != null && address.getName() != null && !address.getName().isEmpty()) {
+                seq.mAddress = address.getName();
+                SequenceDB.instance.updateSequenceAddress(seq.mId, seq.mAddress);
+                changed = true;
+                Log.d(TAG, "reverseGeocode: " + seq.mAddress);
+            }
+        }
+        if (changed) {
+            EventBus.post(new SequencesChangedEvent(false));
         }
     }
 
@@ -246,11 +366,12 @@ public class LocalSequence extends Sequence {
         mVideoCount = Math.max(0, mVideoCount);
     }
 
+    /**
+     * Recomputes the stats from the folder and the database and stores them for the next load.
+     */
     public void refreshStats() {
         this.mSize = Utils.folderSize(mFolder);
         this.mOriginalSize = mSize;
-        this.mPolyline = new Polyline(mId);
-        this.mPolyline.isLocal = true;
         this.mPlatform = "Android";
         this.mPlatformVersion = Build.VERSION.RELEASE;
         this.mAppVersion = SequenceDB.instance.getSequenceVersion(mId);
@@ -258,6 +379,40 @@ public class LocalSequence extends Sequence {
         this.mVideoCount = (int) SequenceDB.instance.getNumberOfVideos(mId);
 
         this.mIsSafe = SequenceDB.instance.isSequenceSafe(mId);
+        loadScores();
+        String firstFrame = loadTrack();
+        this.mHasObd = SequenceDB.instance.isOBDSequence(mId);
+        this.mStatsLoaded = true;
+        try {
+            SequenceDB.instance.updateSequenceStats(mId, mSize, (int) mTotalLength, firstFrame, mFrameCount, mVideoCount, mFolder.lastModified());
+        } catch (Exception e) {
+            Log.w(TAG, "refreshStats: " + Log.getStackTraceString(e));
+        }
+    }
+
+    /**
+     * The track is loaded on first use for the sequences created from the cached stats.
+     */
+    @Override
+    public Polyline getPolyline() {
+        synchronized (this) {
+            if (mPolyline == null) {
+                loadTrack();
+            }
+            return mPolyline;
+        }
+    }
+
+    @Override
+    public void setAddress(String address) {
+        super.setAddress(address);
+        if (address != null && !address.isEmpty() && SequenceDB.instance != null) {
+            final int id = mId;
+            BackgroundThreadPool.post(() -> SequenceDB.instance.updateSequenceAddress(id, address));
+        }
+    }
+
+    private void loadScores() {
         Cursor scores = null;
         try {
             scores = SequenceDB.instance.getScores(mId);
@@ -279,12 +434,23 @@ public class LocalSequence extends Sequence {
             }
         }
         this.value = calculateScore();
+    }
+
+    /**
+     * reads the frames into the polyline, and the thumbnail, frame count and length derived from them
+     * @return the path of the first frame, null if there are no frames
+     */
+    private synchronized String loadTrack() {
+        Polyline polyline = new Polyline(mId);
+        polyline.isLocal = true;
+        String firstFrame = null;
         try {
             Cursor records = SequenceDB.instance.getFrames(mId);
 
             if (records != null && records.getCount() > 0) {
                 try {
-                    this.mThumbLink = "file:///" + records.getString(records.getColumnIndex(SequenceDB.FRAME_FILE_PATH));
+                    firstFrame = records.getString(records.getColumnIndex(SequenceDB.FRAME_FILE_PATH));
+                    this.mThumbLink = "file:///" + firstFrame;
                     this.mFrameCount = records.getCount();
                 } catch (Exception e) {
                     Log.w(TAG, "LocalSequence: " + e.getLocalizedMessage());
@@ -296,11 +462,11 @@ public class LocalSequence extends Sequence {
                     double lon = records.getDouble(records.getColumnIndex(SequenceDB.FRAME_LON));
                     int index = records.getInt(records.getColumnIndex(SequenceDB.FRAME_SEQ_INDEX));
                     if (lat != 0.0 && lon != 0.0) {
-                        mPolyline.getNodes().add(new ImageCoordinate(lat, lon, index));
+                        polyline.getNodes().add(new ImageCoordinate(lat, lon, index));
                     }
                     records.moveToNext();
                 }
-                Collections.sort(mPolyline.getNodes(), new Comparator<SKCoordinate>() {
+                Collections.sort(polyline.getNodes(), new Comparator<SKCoordinate>() {
 
                     @Override
                     public int compare(SKCoordinate lhs, SKCoordinate rhs) {
@@ -309,9 +475,9 @@ public class LocalSequence extends Sequence {
                 });
                 mTotalLength = 0;
                 try {
-                    for (int i = 0; i < mPolyline.getNodes().size() - 1; i++) {
+                    for (int i = 0; i < polyline.getNodes().size() - 1; i++) {
                         mTotalLength =
-                                (int) (mTotalLength + ComputingDistance.distanceBetween(mPolyline.getNodes().get(i), mPolyline.getNodes().get(i + 1)));
+                                (int) (mTotalLength + ComputingDistance.distanceBetween(polyline.getNodes().get(i), polyline.getNodes().get(i + 1)));
                     }
                 } catch (Exception e) {
                     Log.w(TAG, "distanceCalculation: " + Log.getStackTraceString(e));
@@ -325,7 +491,8 @@ public class LocalSequence extends Sequence {
         } catch (Exception e) {
             Log.w(TAG, "LocalSequence: " + Log.getStackTraceString(e));
         }
-        this.mHasObd = SequenceDB.instance.isOBDSequence(mId);
+        this.mPolyline = polyline;
+        return firstFrame;
     }
 
     public int getStatus() {
@@ -5,6 +5,9 @@ import com.skobbler.ngx.SKCoordinate;
 import com.skobbler.ngx.map.SKPolyline;
 
 /**
+ * Map polyline, either holding its nodes as sdk coordinates or, for the downloaded coverage, referencing a range of a
+ * {@link CoordinateStore}. Packed polylines keep an empty node list, the node accessors of this class work for both kinds and the sdk
+ * nodes of a packed polyline are created with {@link #createNodes()} when it is added to the map.
  * Created by Kalman on 11/11/2016.
  */
 
@@ -14,9 +17,65 @@ public class Polyline extends SKPolyline {
 
     public int coverage = 0;
 
+    /**
+     * hash of the server side segment identifier, 0 if unknown, used to merge the segments of neighbouring tiles
+     */
+    public long segmentKey = 0;
+
+    private final CoordinateStore mStore;
+
+    private final int mOffset;
+
+    private final int mNodeCount;
+
     public Polyline(int identifier) {
         super();
         setIdentifier(identifier);
         setNodes(new ArrayList<SKCoordinate>());
+        mStore = null;
+        mOffset = 0;
+        mNodeCount = 0;
+    }
+
+    /**
+     * @param store the store holding the nodes
+     * @param offset index of the first node in the store
+     * @param nodeCount number of nodes
+     */
+    public Polyline(int identifier, CoordinateStore store, int offset, int nodeCount) {
+        super();
+        setIdentifier(identifier);
+        setNodes(new ArrayList<SKCoordinate>(0));
+        mStore = store;
+        mOffset = offset;
+        mNodeCount = nodeCount;
+    }
+
+    public boolean isPacked() {
+        return mStore != null;
+    }
+
+    public int getNodeCount() {
+        return mStore != null ? mNodeCount : getNodes().size();
+    }
+
+    public double getLatitude(int node) {
+        return mStore != null ? mStore.getLatitude(mOffset + node) : getNodes().get(node).getLatitude();
+    }
+
+    public double getLongitude(int node) {
+        return mStore != null ? mStore.getLongitude(mOffset + node) : getNodes().get(node).getLongitude();
+    }
+
+    /**
+     * @return a new sdk coordinate for every node, for rendering
+     */
+    public ArrayList<SKCoordinate> createNodes() {
+        int count = getNodeCount();
+        ArrayList<SKCoordinate> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            nodes.add(new SKCoordinate(getLatitude(i), getLongitude(i)));
+        }
+        return nodes;
     }
-}
\ No newline at end of file
+}
@@ -25,6 +25,113 @@ public class DataCollectorItemWrapper {
         this.baseObject = baseObject;
     }
 
+    /**
+     * Records the values of a sensor object, in the columns printed by {@link #toString()}, without creating a wrapper.
+     * @param baseObject the sensor data
+     * @param buffer the metadata buffer
+     * @return false if the sensor type is not part of the metadata
+     */
+    public static boolean writeTo(BaseObject baseObject, MetadataBuffer buffer) {
+        switch (baseObject.getSensorType()) {
+            case LibraryUtil.LINEAR_ACCELERATION:
+                ThreeAxesObject linearAccelerationObject = (ThreeAxesObject) baseObject;
+                buffer.begin(MetadataBuffer.TYPE_LINEAR_ACCELERATION, linearAccelerationObject.getTimestamp())
+                        .value(linearAccelerationObject.getxValue())
+                        .value(linearAccelerationObject.getyValue())
+                        .value(linearAccelerationObject.getzValue())
+                        .end();
+                return true;
+
+            case LibraryUtil.PRESSURE:
+                PressureObject pressureObject = (PressureObject) baseObject;
+                buffer.begin(MetadataBuffer.TYPE_PRESSURE, pressureObject.getTimestamp())
+                        .value(pressureObject.getPressure())
+                        .end();
+                return true;
+
+            case LibraryUtil.GRAVITY:
+                ThreeAxesObject gravityObject = (ThreeAxesObject) baseObject;
+                buffer.begin(MetadataBuffer.TYPE_GRAVITY, gravityObject.getTimestamp())
+                        .value(gravityObject.getxValue())
+                        .value(gravityObject.getyValue())
+                        .value(gravityObject.getzValue())
+                        .end();
+                return true;
+
+            case LibraryUtil.ROTATION_VECTOR_RAW:
+                ThreeAxesObject rotVectRawObject = (ThreeAxesObject) baseObject;
+                buffer.begin(MetadataBuffer.TYPE_ROTATION, rotVectRawObject.getTimestamp())
+                        .value(rotVectRawObject.getzValue())
+                        .value(rotVectRawObject.getxValue())
+                        .value(rotVectRawObject.getyValue())
+                        .end();
+                return true;
+
+            case LibraryUtil.PHONE_GPS:
+                PositionObject positionObject = (PositionObject) baseObject;
+                buffer.begin(MetadataBuffer.TYPE_POSITION, positionObject.getTimestamp())
+                        .value(positionObject.getLon())
+                        .value(positionObject.getLat())
+                        .end();
+                return true;
+
+            case LibraryUtil.SPEED:
+                SpeedObject speedObject = (SpeedObject) baseObject;
+                buffer.begin(MetadataBuffer.TYPE_SPEED, speedObject.getTimestamp())
+                        .value(speedObject.getSpeed())
+                        .end();
+                return true;
+
+            case LibraryUtil.GPS_DATA:
+                GPSData gpsData = (GPSData) baseObject;
+                PositionObject position = gpsData.getPositionObject();
+                AltitudeObject elevation = gpsData.getAltitudeObject();
+                AccuracyObject accuracy = gpsData.getAccuracyObject();
+                SpeedObject speed = gpsData.getSpeedObject();
+                if (position == null) {
+                    //nothing may throw between begin and end
+                    return false;
+                }
+                buffer.begin(MetadataBuffer.TYPE_GPS, gpsData.getTimestamp())
+                        .value(position.getLon())
+                        .value(position.getLat());
+                if (elevation != null) {
+                    buffer.value(elevation.getAltitude());
+                } else {
+                    buffer.skip();
+                }
+                if (accuracy != null) {
+                    buffer.value(accuracy.getAccuracy());
+                } else {
+                    buffer.skip();
+                }
+                if (speed != null) {
+                    buffer.value(speed.getSpeed());
+                } else {
+                    buffer.skip();
+                }
+                buffer.end();
+                return true;
+
+            case LibraryUtil.HEADING:
+                ThreeAxesObject compassObject = (ThreeAxesObject) baseObject;
+                buffer.begin(MetadataBuffer.TYPE_HEADING, compassObject.getTimestamp())
+                        .value(compassObject.getzValue())
+                        .end();
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @see #writeTo(BaseObject, MetadataBuffer)
+     */
+    public boolean writeTo(MetadataBuffer buffer) {
+        return writeTo(baseObject, buffer);
+    }
+
     @Override
     public String toString() {
         StringBuilder result;
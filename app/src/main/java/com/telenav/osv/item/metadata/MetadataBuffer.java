@@ -0,0 +1,225 @@
+package com.telenav.osv.item.metadata;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Preallocated columns of primitive metadata records, filled by the sensor threads and drained by the metadata writer thread.
+ * <p>
+ * A record is written between {@link #begin(byte, long)} and {@link #end()}, which hold the buffer lock, with one {@code value} call for
+ * every column of the record type. Float and double values keep their original precision, so the text converter prints them the same
+ * way the sensor objects did. Draining swaps the filled columns with a spare set, so recording never waits for the disk and no objects
+ * are created per sample.
+ */
+public class MetadataBuffer {
+
+    public static final byte TYPE_POSITION = 1;
+
+    /**
+     * lon, lat, altitude, accuracy, speed, the last three optional
+     */
+    public static final byte TYPE_GPS = 2;
+
+    /**
+     * z, x, y
+     */
+    public static final byte TYPE_ROTATION = 3;
+
+    public static final byte TYPE_LINEAR_ACCELERATION = 4;
+
+    public static final byte TYPE_PRESSURE = 5;
+
+    public static final byte TYPE_HEADING = 6;
+
+    public static final byte TYPE_GRAVITY = 7;
+
+    public static final byte TYPE_SPEED = 8;
+
+    /**
+     * video index, frame index
+     */
+    public static final byte TYPE_VIDEO = 9;
+
+    public static final byte TYPE_OBD = 10;
+
+    static final int MAX_VALUES = 5;
+
+    private static final int DEFAULT_CAPACITY = 2048;
+
+    private final ReentrantLock mLock = new ReentrantLock();
+
+    private Columns mActive;
+
+    private Columns mSpare;
+
+    private int mCount;
+
+    private int mValueIndex;
+
+    public MetadataBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MetadataBuffer(int capacity) {
+        mActive = new Columns(capacity);
+        mSpare = new Columns(capacity);
+    }
+
+    /**
+     * @return true if the values of the record type are integers
+     */
+    static boolean isIntType(byte type) {
+        return type == TYPE_VIDEO || type == TYPE_OBD;
+    }
+
+    /**
+     * @return the number of values of an integer record type
+     */
+    static int intValueCount(byte type) {
+        return type == TYPE_VIDEO ? 2 : type == TYPE_OBD ? 1 : 0;
+    }
+
+    /**
+     * Starts a record, holding the buffer lock until {@link #end()}.
+     * @param type record type
+     * @param timestamp timestamp in milliseconds
+     */
+    public MetadataBuffer begin(byte type, long timestamp) {
+        mLock.lock();
+        if (mCount == mActive.timestamps.length) {
+            //the writer fell behind, better grow than lose samples
+            mActive.grow();
+        }
+        mActive.types[mCount] = type;
+        mActive.timestamps[mCount] = timestamp;
+        mActive.present[mCount] = 0;
+        mActive.floats[mCount] = 0;
+        mValueIndex = 0;
+        return this;
+    }
+
+    public MetadataBuffer value(float value) {
+        mActive.floats[mCount] |= 1 << mValueIndex;
+        return put(value);
+    }
+
+    public MetadataBuffer value(double value) {
+        return put(value);
+    }
+
+    public MetadataBuffer value(int value) {
+        return put(value);
+    }
+
+    /**
+     * leaves the next column of the record empty
+     */
+    public MetadataBuffer skip() {
+        mValueIndex++;
+        return this;
+    }
+
+    /**
+     * Finishes the record started by {@link #begin(byte, long)} and releases the lock.
+     */
+    public void end() {
+        mCount++;
+        mLock.unlock();
+    }
+
+    public int size() {
+        mLock.lock();
+        try {
+            return mCount;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Hands the records collected so far to a writer. Only one thread may drain at a time.
+     * @param writer the writer
+     * @throws IOException if writing fails, the drained records are lost
+     */
+    public void drainTo(Sink writer) throws IOException {
+        Columns drained;
+        int count;
+        mLock.lock();
+        try {
+            drained = mActive;
+            count = mCount;
+            mActive = mSpare;
+            mSpare = drained;
+            mCount = 0;
+        } finally {
+            mLock.unlock();
+        }
+        if (count > 0) {
+            writer.write(drained, count);
+        }
+    }
+
+    public void clear() {
+        mLock.lock();
+        try {
+            mCount = 0;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private MetadataBuffer put(double value) {
+        mActive.values[mCount * MAX_VALUES + mValueIndex] = value;
+        mActive.present[mCount] |= 1 << mValueIndex;
+        mValueIndex++;
+        return this;
+    }
+
+    /**
+     * receives the drained records
+     */
+    interface Sink {
+
+        void write(Columns columns, int count) throws IOException;
+    }
+
+    /**
+     * one column per record field, values stored {@link #MAX_VALUES} per record
+     */
+    static class Columns {
+
+        byte[] types;
+
+        long[] timestamps;
+
+        /**
+         * bit i set if value i of the record is present
+         */
+        byte[] present;
+
+        /**
+         * bit i set if value i of the record was recorded as a float
+         */
+        byte[] floats;
+
+        double[] values;
+
+        Columns(int capacity) {
+            types = new byte[capacity];
+            timestamps = new long[capacity];
+            present = new byte[capacity];
+            floats = new byte[capacity];
+            values = new double[capacity * MAX_VALUES];
+        }
+
+        void grow() {
+            int capacity = timestamps.length * 2;
+            types = Arrays.copyOf(types, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            present = Arrays.copyOf(present, capacity);
+            floats = Arrays.copyOf(floats, capacity);
+            values = Arrays.copyOf(values, capacity * MAX_VALUES);
+        }
+    }
+}
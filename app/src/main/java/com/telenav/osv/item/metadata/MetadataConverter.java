@@ -0,0 +1,219 @@
+package com.telenav.osv.item.metadata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Converts the binary metadata written by {@link MetadataWriter} to the text format version 1.1.6 uploaded to the server, line for
+ * line identical to what {@link DataCollectorItemWrapper}, {@link VideoData} and {@link Obd2Data} print. The conversion runs before
+ * the upload, so stopping a recording only writes the gzip trailer of the binary track.
+ * @see <a href="http://spaces.telenav.com:8080/display/TELENAVEU/Metadata+Format+Protocol">Metadata format</a>
+ */
+public class MetadataConverter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String LINE_SEPARATOR = "\n";
+
+    /**
+     * text in front of the values of each record type, after the timestamp
+     */
+    private static final String[] PREFIXES = new String[MetadataBuffer.TYPE_OBD + 1];
+
+    /**
+     * text after the values of each record type, including the line separator
+     */
+    private static final String[] SUFFIXES = new String[MetadataBuffer.TYPE_OBD + 1];
+
+    /**
+     * number of value columns of each record type
+     */
+    private static final int[] COLUMNS = new int[MetadataBuffer.TYPE_OBD + 1];
+
+    static {
+        layout(MetadataBuffer.TYPE_POSITION, ";", 2, ";;;;;;;;;;;;;;;;;;\n");
+        layout(MetadataBuffer.TYPE_GPS, ";", 5, ";;;;;;;;;;;;;;;\n");
+        layout(MetadataBuffer.TYPE_ROTATION, ";;;;;;", 3, ";;;;;;;;;;;;\n");
+        layout(MetadataBuffer.TYPE_LINEAR_ACCELERATION, ";;;;;;;;;", 3, ";;;;;;;;;\n");
+        layout(MetadataBuffer.TYPE_PRESSURE, ";;;;;;;;;;;;", 1, ";;;;;;;;\n");
+        layout(MetadataBuffer.TYPE_HEADING, ";;;;;;;;;;;;;", 1, ";;;;;;;\n");
+        layout(MetadataBuffer.TYPE_GRAVITY, ";;;;;;;;;;;;;;;;", 3, ";;\n");
+        layout(MetadataBuffer.TYPE_SPEED, ";;;;;;;;;;;;;;;;;;;", 1, ";\n");
+        layout(MetadataBuffer.TYPE_VIDEO, ";;;;;;;;;;;;;;", 2, ";;;;;\n");
+        layout(MetadataBuffer.TYPE_OBD, ";;;;;;;;;;;;;;;;;;;", 1, ";\n");
+    }
+
+    private static void layout(byte type, String prefix, int columns, String suffix) {
+        PREFIXES[type] = prefix;
+        COLUMNS[type] = columns;
+        SUFFIXES[type] = suffix;
+    }
+
+    /**
+     * Writes the gzipped text metadata next to the upload, the binary file is kept.
+     * @param binary gzipped binary metadata file
+     * @param gzip the text file to create
+     * @return true if the file was complete, ending with the end marker
+     */
+    public static boolean convertToGzip(File binary, File gzip) throws IOException {
+        GZIPOutputStream zip = new GZIPOutputStream(new FileOutputStream(gzip));
+        try {
+            return convert(binary, zip);
+        } finally {
+            zip.finish();
+            zip.close();
+        }
+    }
+
+    /**
+     * Writes the text metadata. A file cut short by a crash, without the gzip trailer, is converted up to its last complete record
+     * before the last sync flush, without the DONE line.
+     * @param binary gzipped binary metadata file
+     * @param out text output, not closed
+     * @return true if the file was complete, ending with the end marker
+     */
+    public static boolean convert(File binary, OutputStream out) throws IOException {
+        FileInputStream fis = new FileInputStream(binary);
+        GZIPInputStream zip;
+        try {
+            zip = new GZIPInputStream(fis, 32 * 1024);
+        } catch (IOException e) {
+            fis.close();
+            throw e;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(zip, 32 * 1024));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8), 32 * 1024);
+        try {
+            byte[] magic = new byte[MetadataWriter.MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MetadataWriter.MAGIC)) {
+                throw new IOException("Not a metadata file: " + binary.getName());
+            }
+            int version = in.readByte();
+            if (version != MetadataWriter.FORMAT_VERSION) {
+                throw new IOException("Unknown metadata format version " + version);
+            }
+            byte[] header = new byte[(int) readVarLong(in)];
+            in.readFully(header);
+            writer.write(new String(header, UTF_8));
+            writer.write(LINE_SEPARATOR);
+            StringBuilder line = new StringBuilder(128);
+            double[] values = new double[MetadataBuffer.MAX_VALUES];
+            long timestamp = 0;
+            boolean complete = false;
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    if (type == MetadataWriter.TYPE_END) {
+                        complete = true;
+                        break;
+                    }
+                    if (!isKnownType(type)) {
+                        throw new IOException("Unknown metadata record type " + type);
+                    }
+                    timestamp += unZigZag(readVarLong(in));
+                    int present;
+                    int floats = 0;
+                    if (MetadataBuffer.isIntType(type)) {
+                        present = (1 << MetadataBuffer.intValueCount(type)) - 1;
+                        for (int v = 0; v < MetadataBuffer.intValueCount(type); v++) {
+                            values[v] = unZigZag(readVarLong(in));
+                        }
+                    } else {
+                        present = in.readByte() & 0xff;
+                        floats = in.readByte() & 0xff;
+                        for (int v = 0; v < MetadataBuffer.MAX_VALUES; v++) {
+                            if ((present & (1 << v)) != 0) {
+                                values[v] = (floats & (1 << v)) != 0 ? in.readFloat() : in.readDouble();
+                            }
+                        }
+                    }
+                    line.setLength(0);
+                    appendRecord(line, type, timestamp, present, floats, values, 0);
+                    writer.append(line);
+                }
+            } catch (EOFException e) {
+                //recording interrupted, keep the complete records
+            }
+            if (complete) {
+                writer.write("DONE");
+            }
+            return complete;
+        } finally {
+            writer.flush();
+            in.close();
+        }
+    }
+
+    static boolean isKnownType(byte type) {
+        return type > 0 && type < PREFIXES.length && PREFIXES[type] != null;
+    }
+
+    /**
+     * Appends the text line of a record, including the line separator.
+     * @param present bit i set if value i is present
+     * @param floats bit i set if value i was recorded as a float
+     * @param values record values, starting at {@code base}
+     */
+    static void appendRecord(StringBuilder line, byte type, long timestamp, int present, int floats, double[] values, int base) {
+        appendTimestamp(line, timestamp);
+        line.append(PREFIXES[type]);
+        boolean ints = MetadataBuffer.isIntType(type);
+        for (int v = 0; v < COLUMNS[type]; v++) {
+            if (v > 0) {
+                line.append(';');
+            }
+            if ((present & (1 << v)) == 0) {
+                continue;
+            }
+            if (ints) {
+                line.append((int) values[base + v]);
+            } else if ((floats & (1 << v)) != 0) {
+                line.append((float) values[base + v]);
+            } else {
+                line.append(values[base + v]);
+            }
+        }
+        line.append(SUFFIXES[type]);
+    }
+
+    /**
+     * seconds, a dot and the millisecond part without leading zeros, as the 1.1.6 format has it
+     */
+    private static void appendTimestamp(StringBuilder builder, long millis) {
+        long seconds = millis / 1_000L;
+        long partial = millis - (seconds * 1_000L);
+        builder.append(seconds).append('.').append((int) partial);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long result = 0;
+        int shift = 0;
+        while (shift < 64) {
+            byte b = in.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
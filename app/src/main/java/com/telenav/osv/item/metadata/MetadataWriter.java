@@ -0,0 +1,166 @@
+package com.telenav.osv.item.metadata;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes metadata records in a compact binary form, through a single reusable {@link ByteBuffer}, compressing them into a gzip file
+ * while the sequence records.
+ * <p>
+ * The file starts with {@link #MAGIC}, a format version byte and the length prefixed header line. Each record is its type byte and
+ * the zigzag varint difference from the previous timestamp, followed by zigzag varints for the integer record types, or by a bitmask
+ * of the present values, a bitmask of the float values and the values themselves, 4 bytes for floats and 8 for doubles. A
+ * {@link #TYPE_END} byte marks a recording which was finished properly. {@link MetadataConverter} turns the file into the text format
+ * expected by the server.
+ * <p>
+ * Every {@link #flush()} is a deflate sync flush, so the file written so far decompresses up to the last flush even if the app dies
+ * before {@link #finish()} writes the gzip trailer, finishing only writes the end marker and the trailer.
+ */
+public class MetadataWriter implements MetadataBuffer.Sink {
+
+    static final byte[] MAGIC = {'O', 'S', 'V', 'M'};
+
+    static final byte FORMAT_VERSION = 1;
+
+    static final byte TYPE_END = 0;
+
+    /**
+     * largest record: type, timestamp varint, two masks and five doubles
+     */
+    private static final int MAX_RECORD_SIZE = 1 + 10 + 2 + MetadataBuffer.MAX_VALUES * 8;
+
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+
+    private GZIPOutputStream mOutputStream;
+
+    private long mLastTimestamp;
+
+    /**
+     * Creates the file, replacing an existing one, and writes the header.
+     * @param file gzipped binary metadata file
+     * @param header the header line, without line separator
+     */
+    public void open(File file, String header) throws IOException {
+        close();
+        FileOutputStream fos = new FileOutputStream(file, false);
+        try {
+            mOutputStream = new GZIPOutputStream(fos, BUFFER_SIZE, true);
+        } catch (IOException e) {
+            fos.close();
+            throw e;
+        }
+        mLastTimestamp = 0;
+        mBuffer.clear();
+        byte[] headerBytes = header.getBytes(Charset.forName("UTF-8"));
+        mBuffer.put(MAGIC).put(FORMAT_VERSION);
+        putVarLong(headerBytes.length);
+        mBuffer.put(headerBytes);
+        flush();
+    }
+
+    public boolean isOpen() {
+        return mOutputStream != null;
+    }
+
+    /**
+     * writes the end marker and the gzip trailer, then closes the file
+     */
+    public void finish() throws IOException {
+        if (mOutputStream == null) {
+            return;
+        }
+        mBuffer.put(TYPE_END);
+        writeBuffer();
+        try {
+            mOutputStream.finish();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * closes the file without the end marker
+     */
+    public void close() throws IOException {
+        if (mOutputStream != null) {
+            try {
+                mOutputStream.close();
+            } finally {
+                mOutputStream = null;
+                mBuffer.clear();
+            }
+        }
+    }
+
+    /**
+     * compresses the buffered records and sync flushes the deflater, the file is readable up to this point
+     */
+    public void flush() throws IOException {
+        if (mOutputStream == null) {
+            mBuffer.clear();
+            return;
+        }
+        writeBuffer();
+        mOutputStream.flush();
+    }
+
+    @Override
+    public void write(MetadataBuffer.Columns columns, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (mBuffer.remaining() < MAX_RECORD_SIZE) {
+                writeBuffer();
+            }
+            byte type = columns.types[i];
+            long timestamp = columns.timestamps[i];
+            mBuffer.put(type);
+            putVarLong(zigZag(timestamp - mLastTimestamp));
+            mLastTimestamp = timestamp;
+            int base = i * MetadataBuffer.MAX_VALUES;
+            if (MetadataBuffer.isIntType(type)) {
+                for (int v = 0; v < MetadataBuffer.intValueCount(type); v++) {
+                    putVarLong(zigZag((long) columns.values[base + v]));
+                }
+            } else {
+                int present = columns.present[i] & 0xff;
+                int floats = columns.floats[i] & 0xff;
+                mBuffer.put((byte) present).put((byte) floats);
+                for (int v = 0; v < MetadataBuffer.MAX_VALUES; v++) {
+                    if ((present & (1 << v)) == 0) {
+                        continue;
+                    }
+                    if ((floats & (1 << v)) != 0) {
+                        mBuffer.putFloat((float) columns.values[base + v]);
+                    } else {
+                        mBuffer.putDouble(columns.values[base + v]);
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        if (mBuffer.position() > 0 && mOutputStream != null) {
+            mOutputStream.write(mBuffer.array(), 0, mBuffer.position());
+        }
+        mBuffer.clear();
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            mBuffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        mBuffer.put((byte) value);
+    }
+}
@@ -24,6 +24,10 @@ public class Obd2Data {
         mTimeStamp = millis;
     }
 
+    public void writeTo(MetadataBuffer buffer) {
+        buffer.begin(MetadataBuffer.TYPE_OBD, mTimeStamp).value(mSpeed[0]).end();
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
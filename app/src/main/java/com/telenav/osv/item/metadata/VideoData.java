@@ -29,6 +29,10 @@ public class VideoData {
         mTimeStamp = millis;
     }
 
+    public void writeTo(MetadataBuffer buffer) {
+        buffer.begin(MetadataBuffer.TYPE_VIDEO, mTimeStamp).value(mVideoIndex[0]).value(mIndex[0]).end();
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -0,0 +1,33 @@
+package com.telenav.osv.item.network;
+
+import java.util.HashMap;
+import java.util.Map;
+import static com.telenav.osv.listener.network.NetworkResponseDataListener.API_DUPLICATE_ENTRY;
+import static com.telenav.osv.listener.network.NetworkResponseDataListener.API_SUCCESS;
+
+/**
+ * Response of a photo batch upload, the status of the request and the status of every photo by its sequence index.
+ */
+public class PhotoBatchResult extends ApiResponse {
+
+    private final Map<Integer, ApiResponse> photoResults = new HashMap<>();
+
+    public void putPhotoResult(int sequenceIndex, ApiResponse result) {
+        photoResults.put(sequenceIndex, result);
+    }
+
+    /**
+     * @return the status of the photo, null if the response did not contain it
+     */
+    public ApiResponse getPhotoResult(int sequenceIndex) {
+        return photoResults.get(sequenceIndex);
+    }
+
+    /**
+     * @return true if the server stored the photo, now or by an earlier request
+     */
+    public boolean isUploaded(int sequenceIndex) {
+        ApiResponse result = photoResults.get(sequenceIndex);
+        return result != null && (result.getApiCode() == API_SUCCESS || result.getApiCode() == API_DUPLICATE_ENTRY);
+    }
+}
@@ -1,6 +1,8 @@
 package com.telenav.osv.listener;
 
 import android.location.Location;
+import com.telenav.osv.manager.capture.FrameBuffer;
+import com.telenav.osv.manager.capture.YuvFrame;
 
 /**
  * interface for image saved callback
@@ -8,5 +10,14 @@ import android.location.Location;
  */
 public interface ImageReadyCallback {
 
-    void onPictureTaken(final byte[] jpegData, long timestamp, int sequenceId, String folderPath, Location location);
+    /**
+     * @param jpeg the jpeg data, to be released once written
+     */
+    void onPictureTaken(final FrameBuffer jpeg, long timestamp, int sequenceId, String folderPath, Location location);
+
+    /**
+     * called instead of {@link #onPictureTaken(FrameBuffer, long, int, String, Location)} when the camera captures uncompressed frames,
+     * the frame has to be released once encoded
+     */
+    void onFrameTaken(final YuvFrame frame, long timestamp, int sequenceId, String folderPath, Location location);
 }
@@ -68,6 +68,11 @@ public interface NetworkResponseDataListener<T extends ApiResponse> {
      */
     public static final int HTTP_NOT_FOUND = 404;
 
+    /**
+     * Status code for a server that does not support the method of the request for the Request-URI.
+     */
+    public static final int HTTP_METHOD_NOT_ALLOWED = 405;
+
     /**
      * Status code for a request that could not be completed due to a timeout.
      */
@@ -33,6 +33,20 @@ public abstract class OsvRequestResponseListener<T extends ApiResponseParser<G>,
         onSuccess(g.getHttpCode(), g);
     }
 
+    /**
+     * Parses the raw response body, called on the network thread by requests which deliver already parsed responses.
+     */
+    public G parse(byte[] data, String charset) {
+        return parser.parse(data, charset);
+    }
+
+    /**
+     * Delivers a response parsed by {@link #parse(byte[], String)}.
+     */
+    public void onParsed(G g) {
+        onSuccess(g.getHttpCode(), g);
+    }
+
     public abstract void onSuccess(final int status, final G g);
 
     public abstract void onFailure(final int status, final G g);
@@ -13,9 +13,10 @@ import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.database.sqlite.SQLiteConstraintException;
 import android.graphics.SurfaceTexture;
 import android.location.Location;
+import android.os.Build;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.NonNull;
@@ -42,6 +43,7 @@ import com.telenav.osv.command.PhotoCommand;
 import com.telenav.osv.db.SequenceDB;
 import com.telenav.osv.event.EventBus;
 import com.telenav.osv.event.hardware.camera.CameraShutterEvent;
+import com.telenav.osv.event.hardware.camera.FrameBufferStatsEvent;
 import com.telenav.osv.event.hardware.camera.FrameQueueEvent;
 import com.telenav.osv.event.hardware.camera.ImageSavedEvent;
 import com.telenav.osv.event.hardware.camera.RecordingEvent;
@@ -60,6 +62,11 @@ import com.telenav.osv.listener.ImageReadyCallback;
 import com.telenav.osv.listener.ShutterCallback;
 import com.telenav.osv.listener.ShutterListener;
 import com.telenav.osv.manager.capture.CameraManager;
+import com.telenav.osv.manager.capture.FrameBuffer;
+import com.telenav.osv.manager.capture.FrameBufferPool;
+import com.telenav.osv.manager.capture.FramePipeline;
+import com.telenav.osv.manager.capture.VideoEncoder;
+import com.telenav.osv.manager.capture.YuvFrame;
 import com.telenav.osv.manager.location.LocationManager;
 import com.telenav.osv.manager.location.ScoreManager;
 import com.telenav.osv.manager.location.SensorManager;
@@ -92,6 +99,11 @@ public class Recorder implements ObdManager.ConnectionListener, LocationManager.
 
     private static final int MAX_WAIT_TIME_FOR_LOCATION_MS = 30000;
 
+    /**
+     * maximum number of frames waiting in front of a frame pipeline stage before the camera callback is blocked
+     */
+    private static final int FRAME_STAGE_CAPACITY = 5;
+
     private final Context mContext;
 
     private final LocationManager mLocationManager;
@@ -130,6 +142,11 @@ public class Recorder implements ObdManager.ConnectionListener, LocationManager.
 
     private ThreadPoolExecutor mThreadPoolExec;
 
+    /**
+     * frame saving stages: encode/write, database indexing and metadata logging
+     */
+    private FramePipeline<PendingFrame> mFramePipeline;
+
     private LocalSequence mSequence;
 
     private String mSequencePath;
@@ -152,6 +169,11 @@ public class Recorder implements ObdManager.ConnectionListener, LocationManager.
 
     private FFMPEG ffmpeg;
 
+    /**
+     * encoder of the frames captured as yuv, used instead of {@link #ffmpeg}
+     */
+    private VideoEncoder mVideoEncoder;
+
     private boolean mSafe;
 
     private long timeOfRecordingStart = -1;
@@ -159,17 +181,33 @@ public class Recorder implements ObdManager.ConnectionListener, LocationManager.
     private ImageReadyCallback mJpegPictureCallback = new ImageReadyCallback() {
 
         @Override
-        public void onPictureTaken(final byte[] jpegData, long timestamp, int sequenceId, String folderPath, Location location) {
+        public void onPictureTaken(final FrameBuffer jpeg, long timestamp, int sequenceId, String folderPath, Location location) {
+            onFrameCaptured(jpeg, null, timestamp, sequenceId, folderPath, location);
+        }
+
+        @Override
+        public void onFrameTaken(YuvFrame frame, long timestamp, int sequenceId, String folderPath, Location location) {
+            onFrameCaptured(null, frame, timestamp, sequenceId, folderPath, location);
+        }
+
+        private void onFrameCaptured(FrameBuffer jpeg, YuvFrame frame, long timestamp, int sequenceId, String folderPath,
+                                     Location location) {
             mHandler.removeCallbacks(mIdleRunnable);
             if (!recording) {
                 mCameraIdle = true;
+                if (jpeg != null) {
+                    jpeg.release();
+                }
+                if (frame != null) {
+                    frame.release();
+                }
                 return;
             }
             final boolean mSafeF = mSafe;
             final int mOrientationF = mOrientation;
             mCameraIdle = true;
 
-            saveFrame(mSafeF, jpegData, sequenceId, folderPath, location, mOrientationF, timestamp);
+            saveFrame(mSafeF, jpeg, frame, sequenceId, folderPath, location, mOrientationF, timestamp);
         }
     };
 
@@ -181,6 +219,8 @@ public class Recorder implements ObdManager.ConnectionListener, LocationManager.
         mThreadPoolExec = new ThreadPoolExecutor(coreNum, coreNum, 7, TimeUnit.SECONDS, workQueue,
                 new ThreadFactoryBuilder().setDaemon(false).setNameFormat("Recorder-pool-%d")
                         .setPriority(Thread.MAX_PRIORITY).build());
+        mFramePipeline = new FramePipeline<>(FRAME_STAGE_CAPACITY, new String[]{"encode", "index", "metadata"}, this::writeFrame,
+                this::indexFrame, this::logFrame);
         mCameraManager = CameraManager.get(app);
         mUploadManager = ((OSVApplication) mContext).getUploadManager();
         mSensorManager = new SensorManager(mContext);
@@ -417,6 +457,7 @@ public class Recorder implements ObdManager.ConnectionListener, LocationManager.
                 mCameraIdle = true;
                 recording = true;
                 mSafe = appPrefs.getBooleanPreference(PreferenceTypes.K_SAFE_MODE_ENABLED, false);
+                SequenceDB.instance.setRejectedRowListener(Recorder.this::onRowRejected);
                 mSequence = SequenceDB.instance.createNewSequence(mContext, -1, -1, false //no 360 cam yet
                         , appPrefs.getBooleanPreference(PreferenceTypes.K_EXTERNAL_STORAGE), OSVApplication.VERSION_NAME, false, mSafe);
                 if (mSequence == null) {
@@ -442,7 +483,21 @@ public class Recorder implements ObdManager.ConnectionListener, LocationManager.
                     recording = false;
                     return;
                 }
-                if (!mSafe) {
+                if (!mSafe && mCameraManager.isYuvCapture()) {
+                    mVideoEncoder = new VideoEncoder();
+                    if (mVideoEncoder.initial(mSequence.getFolder().getPath() + "/") != 0) {
+                        Log.e(TAG, "startRecording: could not create video file");
+                        mHandler.post(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                Toast.makeText(mContext, R.string.error_creating_video_file_message, Toast.LENGTH_SHORT).show();
+                            }
+                        });
+                        stopRecording();
+                        return;
+                    }
+                } else if (!mSafe) {
                     try {
                         ffmpeg = new FFMPEG(new FFMPEG.ErrorListener() {
 
@@ -545,6 +600,11 @@ public class Recorder implements ObdManager.ConnectionListener, LocationManager.
         final LocalSequence finalSequence = mSequence;
         EventBus.clear(RecordingEvent.class);
         Runnable runnable = () -> {
+            //let the frames that are already captured reach the video file, database and metadata before closing them
+            mFramePipeline.drain();
+            //the idle frame buffers are only reused while recording
+            FrameBufferPool.get().trim();
+            SequenceDB.instance.flushPendingFrames();
 
             if (mSequence != null && SequenceDB.instance.getNumberOfFrames(mSequence.getId()) <= 0) {
                 SequenceDB.instance.deleteRecords(mSequence.getId());
@@ -577,7 +637,11 @@ public class Recorder implements ObdManager.ConnectionListener, LocationManager.
             mSensorManager.onPauseOrStop();
             setTimeOfRecordingStart(RECORD_TIME_START_NOT_SET);
             if (!mSafe) {
-                if (ffmpeg != null) {
+                if (mVideoEncoder != null) {
+                    int ret = mVideoEncoder.close();
+                    mVideoEncoder = null;
+                    Log.d(TAG, "run: video encoder close: " + ret);
+                } else if (ffmpeg != null) {
                     int ret = ffmpeg.close();
                     Log.d(TAG, "run: ffmpeg close: " + ret);
                 }
@@ -586,6 +650,8 @@ public class Recorder implements ObdManager.ConnectionListener, LocationManager.
             if (!appPrefs.getBooleanPreference(PreferenceTypes.K_FOCUS_MODE_STATIC)) {
                 mCameraManager.unlockFocus();
             }
+            //the rows are committed and the video is closed, the startup checks may clean up the sequence from now on
+            SequenceDB.instance.clearRecordingSequence();
             if (finalSequence == null) {
                 EventBus.post(new RecordingEvent(null, false));
                 return;
@@ -719,11 +785,38 @@ public class Recorder implements ObdManager.ConnectionListener, LocationManager.
     }
 
     private void onImageSaved(boolean success, LocalSequence sequence, Location location) {
-        EventBus.post(new FrameQueueEvent(mThreadPoolExec.getQueue().size()));
+        onImageSaved(success, sequence, location, -1);
+    }
+
+    private void onImageSaved(boolean success, LocalSequence sequence, Location location, long encodeLatency) {
+        postFrameQueueEvent();
         if (success) {
             mScoreManager.onPictureTaken(location);
         }
-        EventBus.post(new ImageSavedEvent(sequence, success));
+        EventBus.post(new ImageSavedEvent(sequence, success, encodeLatency));
+        if (Utils.DEBUG) {
+            postFrameBufferStatsEvent();
+        }
+    }
+
+    private void postFrameBufferStatsEvent() {
+        FrameBufferPool pool = FrameBufferPool.get();
+        long gcCount = -1;
+        long gcTime = -1;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            try {
+                gcCount = Long.parseLong(Debug.getRuntimeStat("art.gc.gc-count"));
+                gcTime = Long.parseLong(Debug.getRuntimeStat("art.gc.gc-time"));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "postFrameBufferStatsEvent: " + e.getMessage());
+            }
+        }
+        EventBus.post(new FrameBufferStatsEvent(pool.getRequests(), pool.getHits(), pool.getPooledBytes(), gcCount, gcTime));
+    }
+
+    private void postFrameQueueEvent() {
+        EventBus.post(new FrameQueueEvent(mFramePipeline.getQueueDepth(), mFramePipeline.getStageNames(), mFramePipeline.getStageQueueDepths(),
+                mFramePipeline.getStageLatencies()));
     }
 
     private void offerNewTrackPosition(Location location) {
@@ -810,9 +903,9 @@ public class Recorder implements ObdManager.ConnectionListener, LocationManager.
         return SensorManager.isGpsDataAvailableInMetadata();
     }
 
-    private void saveFrame(final boolean safe, final byte[] jpegData, final int sequenceId, final String folderPath, final Location location,
-                           final int orientation, final long timestamp) {
-        Log.d(TAG, "saveFrame: posting frame data to handler");
+    private void saveFrame(final boolean safe, final FrameBuffer jpeg, final YuvFrame yuvFrame, final int sequenceId,
+                           final String folderPath, final Location location, final int orientation, final long timestamp) {
+        Log.d(TAG, "saveFrame: posting frame data to pipeline");
 
         if (mUploadManager != null && mUploadManager.isUploading()) {
             mThreadPoolExec.execute(new Runnable() {
@@ -823,165 +916,258 @@ public class Recorder implements ObdManager.ConnectionListener, LocationManager.
                 }
             });
         }
-        mThreadPoolExec.execute(new Runnable() {
+        mFramePipeline.offer(new PendingFrame(safe, jpeg, yuvFrame, sequenceId, folderPath, location, orientation, timestamp, mSequence));
+        postFrameQueueEvent();
+    }
 
-            @Override
-            public void run() {
-                int available = (int) Utils.getAvailableSpace(mContext);
-                Log.d(TAG, "saveFrame: entered data handler");
-                if (available <= MIN_FREE_SPACE) {
+    /**
+     * First stage of the frame pipeline, writes the jpeg file or encodes the frame into the current video file.
+     * @param frame frame
+     * @return true if the frame was persisted
+     */
+    private boolean writeFrame(PendingFrame frame) {
+        try {
+            return persistFrame(frame);
+        } finally {
+            //the image data is not needed by the later stages
+            frame.releaseData();
+        }
+    }
+
+    private boolean persistFrame(PendingFrame frame) {
+        int available = (int) Utils.getAvailableSpace(mContext);
+        Log.d(TAG, "writeFrame: entered data handler");
+        if (available <= MIN_FREE_SPACE) {
+            mHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    boolean needToRestart = false;
+                    try {
+                        if (Utils.checkSDCard(mContext)) {
+                            appPrefs.saveBooleanPreference(PreferenceTypes.K_EXTERNAL_STORAGE,
+                                    !appPrefs.getBooleanPreference(PreferenceTypes.K_EXTERNAL_STORAGE));
+                            needToRestart = true;
+                            Toast.makeText(mContext, R.string.reached_current_storage_limit_message, Toast.LENGTH_LONG).show();
+                        } else {
+                            Toast.makeText(mContext, R.string.reached_storage_limit, Toast.LENGTH_LONG).show();
+                        }
+                    } catch (Exception e) {
+                        Log.d(TAG, "writeFrame: minimum space reached" + Log.getStackTraceString(e));
+                        Toast.makeText(mContext, R.string.reached_storage_limit, Toast.LENGTH_LONG).show();
+                    }
+                    stopRecording();
+                    if (needToRestart) {
+                        mHandler.postDelayed(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                startRecording();
+                            }
+                        }, 1500);
+                    }
+                }
+            });
+            return false;
+        }
+        if (frame.jpeg == null && frame.yuvFrame == null) {
+            Log.w(TAG, "writeFrame: jpegData is null");
+            return false;
+        }
+        synchronized (shutterSynObject) {
+            frame.index = mIndex;
+        }
+        final long time = System.currentTimeMillis();
+        if (frame.safe) {
+            if (frame.jpeg == null) {
+                //safe mode was turned on while the camera captures for the hardware encoder
+                frame.jpeg = FrameBuffer.wrap(frame.yuvFrame.toJpeg());
+            }
+            String path;
+            if (frame.folderPath != null) {
+                path = frame.folderPath + "/" + frame.index + ".jpg";
+            } else {
+                String folder = Utils.generateOSVFolder(mContext).getPath() + "/SEQ_" + frame.sequenceId;
+                path = folder + "/" + frame.index + ".jpg";
+                if (frame.sequence == null) {
+                    frame.sequence = new LocalSequence(new OSVFile(folder));
+                }
+            }
+            String tmpPath = path + ".tmp";
+            FileOutputStream out;
+            try {
+                out = new FileOutputStream(tmpPath);
+                out.write(frame.jpeg.data, 0, frame.jpeg.length);
+                out.close();
+                OSVFile jpg = new OSVFile(path);
+                OSVFile tmpFile = new OSVFile(tmpPath);
+                tmpFile.renameTo(jpg);
+                Log.v(TAG, "Saved JPEG data : " + jpg.getName() + ", size: " + ((float) jpg.length()) / 1024f / 1024f + " mb");
+                frame.filePath = jpg.getPath();
+                frame.videoIndex = -1;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write image", e);
+                onImageSaved(false, frame.sequence, frame.location);
+                return false;
+            }
+        } else {
+            int[] ret;
+            if (frame.yuvFrame != null) {
+                ret = mVideoEncoder.encode(frame.yuvFrame);
+            } else {
+                ret = ffmpeg.encode(frame.jpeg.data, frame.jpeg.length);
+            }
+            Log.d(TAG, "writeFrame: encoding done in " + (System.currentTimeMillis() - time) + " ms ,  video file " + ret[0] + " and frame " +
+                    ret[1]);
+            if (ret[0] < 0 || ret[1] < 0) {
+                onImageSaved(false, frame.sequence, frame.location);
+                if (ret[0] < 0) {
                     mHandler.post(new Runnable() {
 
                         @Override
                         public void run() {
-                            boolean needToRestart = false;
-                            try {
-                                if (Utils.checkSDCard(mContext)) {
-                                    appPrefs.saveBooleanPreference(PreferenceTypes.K_EXTERNAL_STORAGE,
-                                            !appPrefs.getBooleanPreference(PreferenceTypes.K_EXTERNAL_STORAGE));
-                                    needToRestart = true;
-                                    Toast.makeText(mContext, R.string.reached_current_storage_limit_message, Toast.LENGTH_LONG).show();
-                                } else {
-                                    Toast.makeText(mContext, R.string.reached_storage_limit, Toast.LENGTH_LONG).show();
-                                }
-                            } catch (Exception e) {
-                                Log.d(TAG, "saveFrame: minimum space reached" + Log.getStackTraceString(e));
-                                Toast.makeText(mContext, R.string.reached_storage_limit, Toast.LENGTH_LONG).show();
-                            }
-                            stopRecording();
-                            if (needToRestart) {
-                                mHandler.postDelayed(new Runnable() {
-
-                                    @Override
-                                    public void run() {
-                                        startRecording();
-                                    }
-                                }, 1500);
-                            }
+                            Toast.makeText(mContext, R.string.encoding_error_message, Toast.LENGTH_SHORT).show();
                         }
                     });
-                    return;
+                    stopRecording();
+                    mHandler.postDelayed(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            startRecording();
+                        }
+                    }, 1500);
+                }
+                return false;
+            }
+            frame.videoIndex = ret[0];
+            frame.filePath = frame.folderPath + "/" + frame.videoIndex + ".mp4";
+        }
+        frame.encodeLatency = System.currentTimeMillis() - time;
+        synchronized (shutterSynObject) {
+            mIndex++;
+        }
+        return true;
+    }
+
+    /**
+     * Second stage of the frame pipeline, indexes the persisted frame in the database.
+     * @param frame frame
+     * @return true if the frame was indexed
+     */
+    private boolean indexFrame(final PendingFrame frame) {
+        if (!frame.safe) {
+            SequenceDB.instance.queueVideoIfNotAdded(frame.sequenceId, frame.videoIndex, frame.filePath);
+        }
+        //the rows are committed in batches, a rejected row of another frame is handled by onRowRejected
+        return SequenceDB.instance.queuePhoto(frame.sequenceId, frame.videoIndex, frame.index, frame.filePath, frame.location.getLatitude(),
+                frame.location.getLongitude(), frame.location.getAccuracy(), frame.orientation);
+    }
+
+    /**
+     * A frame row violated a constraint when its batch was committed, by the index stage, the timed flush or stopRecording. The jpeg of a
+     * safe frame is deleted and the recording is restarted.
+     */
+    private void onRowRejected(int sequenceId, final int videoIndex, int sequenceIndex, String filePath) {
+        Log.w(TAG, "onRowRejected: frame " + sequenceIndex + " of sequence " + sequenceId);
+        if (videoIndex == -1) {
+            new OSVFile(filePath).delete();
+        }
+        mHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                if (videoIndex != -1 && Fabric.isInitialized()) {
+                    Answers.getInstance().logCustom(new CustomEvent("SQLiteConstraintException at insert photo"));
                 }
-                if (jpegData == null) {
-                    Log.w(TAG, "saveFrame: jpegData is null");
+                if (!recording) {
                     return;
                 }
-                final long time = System.currentTimeMillis();
-                if (safe) {
-                    String path;
-                    if (folderPath != null) {
-                        path = folderPath + "/" + mIndex + ".jpg";
-                    } else {
-                        String folder = Utils.generateOSVFolder(mContext).getPath() + "/SEQ_" + sequenceId;
-                        path = folder + "/" + mIndex + ".jpg";
-                        if (mSequence == null) {
-                            mSequence = new LocalSequence(new OSVFile(folder));
-                        }
+                stopRecording();
+                mHandler.postDelayed(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        startRecording();
                     }
-                    String tmpPath = path + ".tmp";
-                    FileOutputStream out;
-                    try {
-                        out = new FileOutputStream(tmpPath);
-                        out.write(jpegData);
-                        out.close();
-                        OSVFile jpg = new OSVFile(path);
-                        OSVFile tmpFile = new OSVFile(tmpPath);
-                        tmpFile.renameTo(jpg);
-                        Log.v(TAG, "Saved JPEG data : " + jpg.getName() + ", size: " + ((float) jpg.length()) / 1024f / 1024f + " mb");
+                }, 1500);
+            }
+        });
+    }
 
-                        try {
-                            SequenceDB.instance.insertPhoto(sequenceId, -1, mIndex, jpg.getPath(), location.getLatitude(), location.getLongitude(),
-                                    location.getAccuracy(), orientation);
+    /**
+     * Last stage of the frame pipeline, writes the frame entry in the metadata file and notifies about the saved frame.
+     * @param frame frame
+     * @return always true
+     */
+    private boolean logFrame(PendingFrame frame) {
+        SensorManager.logVideoData(new VideoData(frame.index, frame.safe ? 0 : frame.videoIndex, frame.timestamp));
+        if (frame.sequence != null) {
+            frame.sequence.setFrameCount(frame.sequence.getFrameCount() + 1);
+        }
+        onImageSaved(true, frame.sequence, frame.location, frame.encodeLatency);
+        return true;
+    }
 
-                            SensorManager.logVideoData(new VideoData(mIndex, 0, timestamp));
-                            synchronized (shutterSynObject) {
-                                mIndex++;
-                            }
-                        } catch (SQLiteConstraintException e) {
-                            jpg.delete();
-                            Log.w(TAG, "saveFrame: " + Log.getStackTraceString(e));
-                            stopRecording();
-                            mHandler.postDelayed(new Runnable() {
-
-                                @Override
-                                public void run() {
-                                    startRecording();
-                                }
-                            }, 1500);
-                        }
-                    } catch (IOException e) {
-                        Log.e(TAG, "Failed to write image", e);
-                        onImageSaved(false, mSequence, location);
-                        return;
-                    }
-                } else {
-                    int[] ret = ffmpeg.encode(jpegData);
-                    Log.d(TAG, "saveFrame: encoding done in " + (System.currentTimeMillis() - time) + " ms ,  video file " + ret[0] + " and frame " +
-                            ret[1]);
-                    if (ret[0] < 0 || ret[1] < 0) {
-                        //                    synchronized (shutterSynObject) {
-                        //                        mIndex--;
-                        //                    }
-                        onImageSaved(false, mSequence, location);
-                        if (ret[0] < 0) {
-                            mHandler.post(new Runnable() {
-
-                                @Override
-                                public void run() {
-                                    Toast.makeText(mContext, R.string.encoding_error_message, Toast.LENGTH_SHORT).show();
-                                }
-                            });
-                            stopRecording();
-                            mHandler.postDelayed(new Runnable() {
-
-                                @Override
-                                public void run() {
-                                    startRecording();
-                                }
-                            }, 1500);
-                        }
-                        return;
-                    }
+    /**
+     * A captured frame travelling through the {@link #mFramePipeline} stages.
+     */
+    private static class PendingFrame {
 
-                    int mVideoIndexF = ret[0];
-                    SensorManager.logVideoData(new VideoData(mIndex, mVideoIndexF, timestamp));
-                    try {
-                        SequenceDB.instance.insertVideoIfNotAdded(sequenceId, mVideoIndexF, folderPath + "/" + mVideoIndexF + ".mp4");
-                    } catch (Exception ignored) {
-                    }
+        final boolean safe;
 
-                    try {
-                        SequenceDB.instance
-                                .insertPhoto(sequenceId, mVideoIndexF, mIndex, folderPath + "/" + mVideoIndexF + ".mp4", location.getLatitude(),
-                                        location.getLongitude(), location.getAccuracy(), orientation);
-                        synchronized (shutterSynObject) {
-                            mIndex++;
-                        }
-                    } catch (final SQLiteConstraintException e) {
-                        Log.w(TAG, "saveFrame: " + Log.getStackTraceString(e));
-                        mHandler.post(new Runnable() {
+        final int sequenceId;
 
-                            @Override
-                            public void run() {
+        final String folderPath;
 
-                                if (Fabric.isInitialized()) {
-                                    Answers.getInstance().logCustom(new CustomEvent("SQLiteConstraintException at insert photo"));
-                                }
-                                stopRecording();
-                                mHandler.postDelayed(new Runnable() {
-
-                                    @Override
-                                    public void run() {
-                                        startRecording();
-                                    }
-                                }, 1500);
-                            }
-                        });
-                    }
-                }
-                mSequence.setFrameCount(mSequence.getFrameCount() + 1);
-                onImageSaved(true, mSequence, location);
+        final Location location;
+
+        final int orientation;
+
+        final long timestamp;
+
+        FrameBuffer jpeg;
+
+        YuvFrame yuvFrame;
+
+        LocalSequence sequence;
+
+        int index;
+
+        int videoIndex;
+
+        String filePath;
+
+        /**
+         * time spent in writing or encoding the frame, in milliseconds
+         */
+        long encodeLatency;
+
+        PendingFrame(boolean safe, FrameBuffer jpeg, YuvFrame yuvFrame, int sequenceId, String folderPath, Location location,
+                     int orientation, long timestamp, LocalSequence sequence) {
+            this.safe = safe;
+            this.jpeg = jpeg;
+            this.yuvFrame = yuvFrame;
+            this.sequenceId = sequenceId;
+            this.folderPath = folderPath;
+            this.location = location;
+            this.orientation = orientation;
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+        }
+
+        /**
+         * returns the image buffers to the pool
+         */
+        void releaseData() {
+            if (jpeg != null) {
+                jpeg.release();
+                jpeg = null;
             }
-        });
+            if (yuvFrame != null) {
+                yuvFrame.release();
+                yuvFrame = null;
+            }
+        }
     }
 }
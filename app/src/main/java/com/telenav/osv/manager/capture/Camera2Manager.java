@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -147,6 +148,11 @@ class Camera2Manager extends CameraManager {
 
     private Semaphore mCameraWorkLock = new Semaphore(1);
 
+    /**
+     * true if the frames are captured as {@link ImageFormat#YUV_420_888} for the hardware encoder, instead of jpeg
+     */
+    private final boolean mYuvCapture;
+
     /**
      * {@link CameraDevice.StateCallback} is called when {@link CameraDevice} changes its state.
      */
@@ -207,6 +213,7 @@ class Camera2Manager extends CameraManager {
     Camera2Manager(Context context) {
         super(context);
         appPrefs = new ApplicationPreferences(mContext);
+        mYuvCapture = appPrefs.getBooleanPreference(PreferenceTypes.K_HARDWARE_ENCODER);
         startBackgroundThread();
         readCameraCharacteristics();
     }
@@ -240,9 +247,12 @@ class Camera2Manager extends CameraManager {
                                     Image mImage = reader.acquireNextImage();
                                     if (mImage.getFormat() == ImageFormat.JPEG) {
                                         ByteBuffer buffer = mImage.getPlanes()[0].getBuffer();
-                                        byte[] bytes = new byte[buffer.remaining()];
-                                        buffer.get(bytes);
-                                        imageReadyCallback.onPictureTaken(bytes, timestamp, sequenceId, folderPath, location);
+                                        FrameBuffer jpeg = FrameBufferPool.get().acquire(buffer.remaining());
+                                        buffer.get(jpeg.data, 0, jpeg.length);
+                                        imageReadyCallback.onPictureTaken(jpeg, timestamp, sequenceId, folderPath, location);
+                                    } else if (mImage.getFormat() == ImageFormat.YUV_420_888) {
+                                        YuvFrame frame = YuvFrame.copyOf(mImage, getOrientation());
+                                        imageReadyCallback.onFrameTaken(frame, timestamp, sequenceId, folderPath, location);
                                     }
                                     mImage.close();
                                 } catch (IllegalStateException e) {
@@ -399,6 +409,11 @@ class Camera2Manager extends CameraManager {
         return list;
     }
 
+    @Override
+    public boolean isYuvCapture() {
+        return mYuvCapture;
+    }
+
     @Override
     public void unlockFocus() {
 
@@ -420,7 +435,7 @@ class Camera2Manager extends CameraManager {
                 mImageReader.close();
                 mImageReader = null;
             }
-            mImageReader = ImageReader.newInstance(width, height, ImageFormat.JPEG, maxImages);
+            mImageReader = ImageReader.newInstance(width, height, getCaptureFormat(), maxImages);
 
             if (mCameraDevice != null || mSnapShotRequestBuilder != null) {
                 // We set up a CaptureRequest.Builder with the output Surface.
@@ -456,7 +471,7 @@ class Camera2Manager extends CameraManager {
             } else {
                 maxImages = 2;
             }
-            mImageReader = ImageReader.newInstance(width, height, ImageFormat.JPEG, maxImages);
+            mImageReader = ImageReader.newInstance(width, height, getCaptureFormat(), maxImages);
 
             // We set up a CaptureRequest.Builder with the output Surface.
             mSnapShotRequestBuilder = createSnapshotTemplate();
@@ -687,7 +702,15 @@ class Camera2Manager extends CameraManager {
                 Integer rotation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
                 mSensorOrientation = rotation != null ? rotation : 0;
 
-                mPictureResolutions = new ArrayList<>(Arrays.asList(map.getOutputSizes(ImageFormat.JPEG)));
+                mPictureResolutions = new ArrayList<>(Arrays.asList(map.getOutputSizes(getCaptureFormat())));
+                if (mYuvCapture) {
+                    for (Iterator<Size> iterator = mPictureResolutions.iterator(); iterator.hasNext(); ) {
+                        Size size = iterator.next();
+                        if (!VideoEncoder.isSizeSupported(size.getWidth(), size.getHeight())) {
+                            iterator.remove();
+                        }
+                    }
+                }
                 Collections.sort(mPictureResolutions, new CompareSizesByArea());
                 mPreviewSize = getOptimalPreviewSize(Arrays.asList(map.getOutputSizes(SurfaceTexture.class)));
 
@@ -791,6 +814,10 @@ class Camera2Manager extends CameraManager {
         return mSnapShotRequestBuilder;
     }
 
+    private int getCaptureFormat() {
+        return mYuvCapture ? ImageFormat.YUV_420_888 : ImageFormat.JPEG;
+    }
+
     private int getOrientation() {
         return (mSensorOrientation + mOrientation) % 360;
     }
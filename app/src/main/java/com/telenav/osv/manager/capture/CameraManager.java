@@ -8,6 +8,8 @@ import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
 import android.location.Location;
 import android.view.OrientationEventListener;
+import com.telenav.osv.application.OSVApplication;
+import com.telenav.osv.application.PreferenceTypes;
 import com.telenav.osv.event.EventBus;
 import com.telenav.osv.event.ui.OrientationChangedEvent;
 import com.telenav.osv.listener.ImageReadyCallback;
@@ -38,6 +40,13 @@ public abstract class CameraManager {
 
     public static CameraManager get(Context context) {
         CameraManager manager;
+        if (isNewApiCompatible() && ((OSVApplication) context.getApplicationContext()).getAppPrefs()
+                .getBooleanPreference(PreferenceTypes.K_HARDWARE_ENCODER)) {
+            //the uncompressed frames are only available through the new api
+            manager = new Camera2Manager(context);
+            EventBus.register(manager);
+            return manager;
+        }
         //        if (isNewApiCompatible() && ((OSVApplication) context.getApplicationContext()).getAppPrefs().getBooleanPreference
         // (PreferenceTypes.K_USE_CAMERA_API_NEW)) {
         //            manager = new Camera2Manager(context);
@@ -87,6 +96,13 @@ public abstract class CameraManager {
 
     public abstract void forceCloseCamera();
 
+    /**
+     * @return true if the frames are delivered uncompressed, through {@link ImageReadyCallback#onFrameTaken}
+     */
+    public boolean isYuvCapture() {
+        return false;
+    }
+
     public abstract List<Size> getSupportedPictureSizes();
 
     public abstract void unlockFocus();
@@ -167,7 +167,7 @@ public class CameraManagerOld extends CameraManager
                                     Log.d(TAG, "onPictureTaken: callback called");
                                     restartPreviewIfNeeded();
                                     if (jpeg != null) {
-                                        jpeg.onPictureTaken(bytes, timestamp, sequenceId, folderPath, location);
+                                        jpeg.onPictureTaken(FrameBuffer.wrap(bytes), timestamp, sequenceId, folderPath, location);
                                     }
                                     checkFocusManual();
                                 }
@@ -24,7 +24,10 @@ public abstract class DataSaver {
 
     protected int mIndex = 0;
 
-    public void saveFrame(final byte[] jpegData, final Location mLocationF, final float mAccuracyF, final int mOrientationF,
+    /**
+     * @param jpeg the jpeg data, released by the saver once written
+     */
+    public void saveFrame(final FrameBuffer jpeg, final Location mLocationF, final float mAccuracyF, final int mOrientationF,
                           final long mTimestampF) {
         if (mSequence.getLocation().getLatitude() == 0 && mSequence != null) {
             mSequence.getLocation().setLatitude(mLocationF.getLatitude());
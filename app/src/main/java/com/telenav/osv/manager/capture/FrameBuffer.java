@@ -0,0 +1,55 @@
+package com.telenav.osv.manager.capture;
+
+import java.util.Arrays;
+
+/**
+ * Captured frame data, the first {@link #length} bytes of {@link #data}. Buffers taken from the {@link FrameBufferPool} go back to the
+ * pool when released, the data must not be used afterwards.
+ */
+public class FrameBuffer {
+
+    public final byte[] data;
+
+    public final int length;
+
+    private final FrameBufferPool mPool;
+
+    private boolean mReleased;
+
+    FrameBuffer(byte[] data, int length, FrameBufferPool pool) {
+        this.data = data;
+        this.length = length;
+        this.mPool = pool;
+    }
+
+    /**
+     * @return a buffer holding the whole array, not returned to the pool
+     */
+    public static FrameBuffer wrap(byte[] data) {
+        return new FrameBuffer(data, data.length, null);
+    }
+
+    /**
+     * @return the content in an array of the exact length, the backing array if it has that length already
+     */
+    public byte[] toArray() {
+        return data.length == length ? data : Arrays.copyOf(data, length);
+    }
+
+    /**
+     * Hands the array back to the pool, further calls have no effect.
+     */
+    public void release() {
+        FrameBufferPool pool;
+        synchronized (this) {
+            if (mReleased) {
+                return;
+            }
+            mReleased = true;
+            pool = mPool;
+        }
+        if (pool != null) {
+            pool.recycle(data);
+        }
+    }
+}
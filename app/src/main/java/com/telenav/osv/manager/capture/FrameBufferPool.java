@@ -0,0 +1,121 @@
+package com.telenav.osv.manager.capture;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Bounded pool of the large arrays holding captured frames, so recording does not allocate a multi megabyte array for every frame.
+ * <p>
+ * Requested sizes are rounded up to a size class, a quarter of a power of two, so frames of slightly different sizes share the same arrays
+ * while wasting at most a quarter of the array. Only a few arrays are kept per size class and the total size of the idle arrays is limited,
+ * arrays that do not fit are left to the garbage collector.
+ */
+public class FrameBufferPool {
+
+    /**
+     * smallest size class
+     */
+    private static final int MIN_SIZE = 4096;
+
+    /**
+     * idle arrays kept for each size class
+     */
+    private static final int MAX_PER_CLASS = 4;
+
+    private static final FrameBufferPool sInstance = new FrameBufferPool(Runtime.getRuntime().maxMemory() / 8);
+
+    private final HashMap<Integer, ArrayDeque<byte[]>> mFree = new HashMap<>();
+
+    private final long mMaxBytes;
+
+    private long mPooledBytes;
+
+    private long mRequests;
+
+    private long mHits;
+
+    /**
+     * @param maxBytes maximum total size of the idle arrays
+     */
+    FrameBufferPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    public static FrameBufferPool get() {
+        return sInstance;
+    }
+
+    /**
+     * @return the array size used for the requested size
+     */
+    static int sizeClass(int size) {
+        if (size <= MIN_SIZE) {
+            return MIN_SIZE;
+        }
+        long step = Integer.highestOneBit(size - 1) / 4;
+        return (int) Math.min((size + step - 1) / step * step, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param size the number of bytes needed
+     * @return a buffer of the given length, backed by an array at least as large, to be released once its content was written
+     */
+    public FrameBuffer acquire(int size) {
+        int sizeClass = sizeClass(size);
+        byte[] data = null;
+        synchronized (this) {
+            mRequests++;
+            ArrayDeque<byte[]> free = mFree.get(sizeClass);
+            if (free != null && !free.isEmpty()) {
+                data = free.poll();
+                mPooledBytes -= data.length;
+                mHits++;
+            }
+        }
+        if (data == null) {
+            data = new byte[sizeClass];
+        }
+        return new FrameBuffer(data, size, this);
+    }
+
+    synchronized void recycle(byte[] data) {
+        if (data.length != sizeClass(data.length) || mPooledBytes + data.length > mMaxBytes) {
+            return;
+        }
+        ArrayDeque<byte[]> free = mFree.get(data.length);
+        if (free == null) {
+            free = new ArrayDeque<>(MAX_PER_CLASS);
+            mFree.put(data.length, free);
+        }
+        if (free.size() < MAX_PER_CLASS) {
+            free.push(data);
+            mPooledBytes += data.length;
+        }
+    }
+
+    /**
+     * drops the idle arrays, e.g. when recording stops
+     */
+    public synchronized void trim() {
+        mFree.clear();
+        mPooledBytes = 0;
+    }
+
+    public synchronized long getRequests() {
+        return mRequests;
+    }
+
+    /**
+     * @return the number of requests served with an idle array
+     */
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    /**
+     * @return the total size of the idle arrays
+     */
+    public synchronized long getPooledBytes() {
+        return mPooledBytes;
+    }
+}
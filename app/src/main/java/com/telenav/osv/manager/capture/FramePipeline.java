@@ -0,0 +1,172 @@
+package com.telenav.osv.manager.capture;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.telenav.osv.utils.Log;
+
+/**
+ * Staged frame saving pipeline.
+ * <p>
+ * Every stage has its own worker thread and a bounded queue, so different frames are processed by different stages at the same time,
+ * while a single stage still handles the frames in the order they were offered. When a stage queue is full the thread handing over the
+ * frame blocks until there is room, which pushes back to the camera instead of letting the backlog grow without bound.
+ * @param <T> the frame item flowing through the stages
+ */
+public class FramePipeline<T> {
+
+    private static final String TAG = "FramePipeline";
+
+    private static final int KEEP_ALIVE = 7;
+
+    private final String[] mNames;
+
+    private final Stage<T>[] mStages;
+
+    private final ThreadPoolExecutor[] mExecutors;
+
+    private final long[] mLatencies;
+
+    /**
+     * @param capacity maximum number of frames waiting in front of each stage
+     * @param names the stage names, used for the thread names and for logging
+     * @param stages the stages, in processing order
+     */
+    @SafeVarargs
+    public FramePipeline(int capacity, String[] names, Stage<T>... stages) {
+        if (names.length != stages.length) {
+            throw new IllegalArgumentException("Every stage needs a name");
+        }
+        mNames = names;
+        mStages = stages;
+        mLatencies = new long[stages.length];
+        mExecutors = new ThreadPoolExecutor[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            mExecutors[i] = new ThreadPoolExecutor(1, 1, KEEP_ALIVE, TimeUnit.SECONDS, new ArrayBlockingQueue<>(capacity),
+                    new ThreadFactoryBuilder().setDaemon(false).setNameFormat("Recorder-" + names[i] + "-%d")
+                            .setPriority(Thread.MAX_PRIORITY).build(), new BlockingPolicy());
+        }
+    }
+
+    /**
+     * Hands a frame to the first stage, blocking while the first stage queue is full.
+     * @param frame the frame
+     */
+    public void offer(T frame) {
+        submit(0, frame);
+    }
+
+    /**
+     * Blocks until every frame offered before this call has left the pipeline.
+     */
+    public void drain() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        drain(0, latch);
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Log.w(TAG, "drain: interrupted");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of frames waiting in all stage queues
+     */
+    public int getQueueDepth() {
+        int total = 0;
+        for (ThreadPoolExecutor executor : mExecutors) {
+            total += executor.getQueue().size();
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of frames waiting in front of each stage
+     */
+    public int[] getStageQueueDepths() {
+        int[] depths = new int[mExecutors.length];
+        for (int i = 0; i < mExecutors.length; i++) {
+            depths[i] = mExecutors[i].getQueue().size();
+        }
+        return depths;
+    }
+
+    /**
+     * @return the processing time of the last frame for each stage, in milliseconds
+     */
+    public long[] getStageLatencies() {
+        synchronized (mLatencies) {
+            return mLatencies.clone();
+        }
+    }
+
+    public String[] getStageNames() {
+        return mNames;
+    }
+
+    private void submit(final int stage, final T frame) {
+        mExecutors[stage].execute(() -> {
+            long start = System.currentTimeMillis();
+            boolean proceed = false;
+            try {
+                proceed = mStages[stage].process(frame);
+            } catch (Exception e) {
+                Log.w(TAG, "stage " + mNames[stage] + ": " + Log.getStackTraceString(e));
+            }
+            long duration = System.currentTimeMillis() - start;
+            synchronized (mLatencies) {
+                mLatencies[stage] = duration;
+            }
+            if (proceed && stage + 1 < mStages.length) {
+                submit(stage + 1, frame);
+            }
+        });
+    }
+
+    private void drain(final int stage, final CountDownLatch latch) {
+        mExecutors[stage].execute(() -> {
+            if (stage + 1 < mStages.length) {
+                drain(stage + 1, latch);
+            } else {
+                latch.countDown();
+            }
+        });
+    }
+
+    /**
+     * A single step of the pipeline.
+     * @param <T> the frame item
+     */
+    public interface Stage<T> {
+
+        /**
+         * @param frame the frame
+         * @return true if the frame should be passed on to the next stage
+         */
+        boolean process(T frame);
+    }
+
+    /**
+     * Makes the offering thread wait for room in the stage queue instead of rejecting the frame.
+     */
+    private static class BlockingPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Frame pipeline stage is shut down");
+            }
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        }
+    }
+}
@@ -28,9 +28,9 @@ public class PhotoSaver extends DataSaver {
     }
 
     @Override
-    public void saveFrame(final byte[] jpegData, final Location mLocationF, final float mAccuracyF, final int mOrientationF,
+    public void saveFrame(final FrameBuffer jpeg, final Location mLocationF, final float mAccuracyF, final int mOrientationF,
                           final long mTimestampF) {
-        super.saveFrame(jpegData, mLocationF, mAccuracyF, mOrientationF, mTimestampF);
+        super.saveFrame(jpeg, mLocationF, mAccuracyF, mOrientationF, mTimestampF);
         final int mIndexF = mIndex;
         mIndex++;
         mBackgroundHandler.post(new Runnable() {
@@ -42,7 +42,11 @@ public class PhotoSaver extends DataSaver {
                 FileOutputStream out = null;
                 try {
                     out = new FileOutputStream(tmpPath);
-                    out.write(jpegData);
+                    try {
+                        out.write(jpeg.data, 0, jpeg.length);
+                    } finally {
+                        jpeg.release();
+                    }
                     out.close();
                     OSVFile jpg = new OSVFile(path);
                     OSVFile tmpFile = new OSVFile(tmpPath);
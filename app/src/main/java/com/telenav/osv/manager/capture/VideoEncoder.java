@@ -0,0 +1,284 @@
+package com.telenav.osv.manager.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import android.annotation.TargetApi;
+import android.media.Image;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Build;
+import android.util.Range;
+import com.telenav.osv.utils.Log;
+
+/**
+ * Hardware H.264 encoder for the frames captured as YUV, a replacement of the jpeg based ffmpeg encoder.
+ * <p>
+ * Produces the same files as the ffmpeg encoder: the frames of a sequence are split into mp4 files named after their index in the sequence
+ * folder, each file holding at most {@link #FRAMES_PER_FILE} intra coded frames played back at {@link #FRAME_RATE} frames per second.
+ * A new file is also started when the frame size or orientation changes. Like the ffmpeg encoder, {@link #encode(YuvFrame)} returns only
+ * after the frame was written, so the file can be referenced by the frame right away.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class VideoEncoder {
+
+    private static final String TAG = "VideoEncoder";
+
+    private static final String MIME_TYPE = MediaFormat.MIMETYPE_VIDEO_AVC;
+
+    /**
+     * same as the native encoder
+     */
+    private static final int FRAME_RATE = 4;
+
+    /**
+     * same as the native encoder
+     */
+    private static final int FRAMES_PER_FILE = 64;
+
+    /**
+     * target bitrate, every frame is a key frame
+     */
+    private static final float BITS_PER_PIXEL = 1f;
+
+    private static final long DEQUEUE_TIMEOUT_US = 10000;
+
+    /**
+     * maximum time to wait for the encoded frame
+     */
+    private static final long FRAME_TIMEOUT_US = 2000000;
+
+    private final MediaCodec.BufferInfo mBufferInfo = new MediaCodec.BufferInfo();
+
+    private String mFolder;
+
+    private MediaCodec mCodec;
+
+    private MediaMuxer mMuxer;
+
+    private int mTrack = -1;
+
+    private int mWidth;
+
+    private int mHeight;
+
+    private int mRotation;
+
+    private int mVideoIndex = -1;
+
+    /**
+     * frames queued to the encoder for the current file, including the ones whose output timed out, sets the presentation times
+     */
+    private int mFrameIndex;
+
+    /**
+     * samples written into the current file, the output of a timed out frame can still be written with the next frame
+     */
+    private int mWrittenFrames;
+
+    /**
+     * @return true if the device has an encoder for frames of this size
+     */
+    public static boolean isSizeSupported(int width, int height) {
+        return findEncoder(width, height) != null;
+    }
+
+    private static MediaCodecInfo findEncoder(int width, int height) {
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (!info.isEncoder()) {
+                continue;
+            }
+            for (String type : info.getSupportedTypes()) {
+                if (type.equalsIgnoreCase(MIME_TYPE)) {
+                    MediaCodecInfo.CodecCapabilities capabilities = info.getCapabilitiesForType(MIME_TYPE);
+                    if (capabilities.getVideoCapabilities().isSizeSupported(width, height)) {
+                        return info;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param folder the sequence folder, ending with a separator
+     * @return 0 on success
+     */
+    public int initial(String folder) {
+        if (!new File(folder).isDirectory()) {
+            return -1;
+        }
+        mFolder = folder;
+        mVideoIndex = -1;
+        return 0;
+    }
+
+    /**
+     * Encodes the frame and writes it into the current video file.
+     * @param frame the frame
+     * @return the index of the video file and the index of the frame in the file, a negative video index if the file could not be created,
+     * a negative frame index if the frame could not be encoded
+     */
+    public int[] encode(YuvFrame frame) {
+        int[] ret = new int[]{mVideoIndex, -1};
+        if (mCodec == null || frame.width != mWidth || frame.height != mHeight || frame.rotation != mRotation ||
+                mFrameIndex >= FRAMES_PER_FILE) {
+            finishFile();
+            try {
+                startFile(frame);
+            } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+                Log.w(TAG, "encode: could not create video file: " + Log.getStackTraceString(e));
+                release();
+                ret[0] = -1;
+                return ret;
+            }
+        }
+        ret[0] = mVideoIndex;
+        try {
+            int input = mCodec.dequeueInputBuffer(FRAME_TIMEOUT_US);
+            if (input < 0) {
+                Log.w(TAG, "encode: no input buffer available");
+                return ret;
+            }
+            Image image = mCodec.getInputImage(input);
+            frame.writeTo(image);
+            long presentationTime = mFrameIndex * 1000000L / FRAME_RATE;
+            mCodec.queueInputBuffer(input, 0, frame.getSize(), presentationTime, 0);
+            mFrameIndex++;
+            if (drain(false, presentationTime)) {
+                //the index of the sample in the file, a late sample of a timed out frame is written before it
+                ret[1] = mWrittenFrames - 1;
+            }
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "encode: " + Log.getStackTraceString(e));
+        }
+        return ret;
+    }
+
+    /**
+     * Finishes the current video file.
+     * @return 0
+     */
+    public int close() {
+        finishFile();
+        return 0;
+    }
+
+    private void startFile(YuvFrame frame) throws IOException {
+        MediaCodecInfo info = findEncoder(frame.width, frame.height);
+        if (info == null) {
+            throw new IOException("No encoder for " + frame.width + "x" + frame.height);
+        }
+        MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, frame.width, frame.height);
+        Range<Integer> bitrates = info.getCapabilitiesForType(MIME_TYPE).getVideoCapabilities().getBitrateRange();
+        int bitrate = (int) Math.min((long) frame.width * frame.height * FRAME_RATE * BITS_PER_PIXEL, Integer.MAX_VALUE);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitrates.clamp(bitrate));
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, FRAME_RATE);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, 0);
+        mCodec = MediaCodec.createByCodecName(info.getName());
+        mCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        mCodec.start();
+        mVideoIndex++;
+        mMuxer = new MediaMuxer(getPath(mVideoIndex), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        mMuxer.setOrientationHint(frame.rotation);
+        mTrack = -1;
+        mWidth = frame.width;
+        mHeight = frame.height;
+        mRotation = frame.rotation;
+        mFrameIndex = 0;
+        mWrittenFrames = 0;
+        Log.d(TAG, "startFile: " + mVideoIndex + ".mp4, " + mWidth + "x" + mHeight + " with " + info.getName());
+    }
+
+    private void finishFile() {
+        if (mCodec == null) {
+            return;
+        }
+        try {
+            int input = mCodec.dequeueInputBuffer(FRAME_TIMEOUT_US);
+            if (input >= 0) {
+                mCodec.queueInputBuffer(input, 0, 0, mFrameIndex * 1000000L / FRAME_RATE, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                drain(true, 0);
+            }
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "finishFile: " + Log.getStackTraceString(e));
+        }
+        int frames = mWrittenFrames;
+        release();
+        if (frames == 0) {
+            //a muxer that never started leaves an unplayable file
+            new File(getPath(mVideoIndex)).delete();
+        }
+    }
+
+    private void release() {
+        if (mCodec != null) {
+            try {
+                mCodec.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "release: " + e.getMessage());
+            }
+            mCodec.release();
+            mCodec = null;
+        }
+        if (mMuxer != null) {
+            try {
+                if (mTrack >= 0) {
+                    mMuxer.stop();
+                }
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "release: " + e.getMessage());
+            }
+            mMuxer.release();
+            mMuxer = null;
+        }
+        mTrack = -1;
+        mWrittenFrames = 0;
+    }
+
+    /**
+     * Writes the encoded output into the muxer.
+     * @param endOfStream true to wait for the end of the stream, false to wait for the frame with the given presentation time
+     * @param presentationTime the presentation time of the frame to wait for
+     * @return true if the awaited output was written
+     */
+    private boolean drain(boolean endOfStream, long presentationTime) {
+        long waited = 0;
+        while (waited < FRAME_TIMEOUT_US) {
+            int output = mCodec.dequeueOutputBuffer(mBufferInfo, DEQUEUE_TIMEOUT_US);
+            if (output == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                waited += DEQUEUE_TIMEOUT_US;
+            } else if (output == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                mTrack = mMuxer.addTrack(mCodec.getOutputFormat());
+                mMuxer.start();
+            } else if (output >= 0) {
+                ByteBuffer data = mCodec.getOutputBuffer(output);
+                boolean written = false;
+                if ((mBufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && mBufferInfo.size > 0 && mTrack >= 0 && data != null) {
+                    data.position(mBufferInfo.offset);
+                    data.limit(mBufferInfo.offset + mBufferInfo.size);
+                    mMuxer.writeSampleData(mTrack, data, mBufferInfo);
+                    mWrittenFrames++;
+                    written = true;
+                }
+                mCodec.releaseOutputBuffer(output, false);
+                if ((mBufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return endOfStream;
+                }
+                if (!endOfStream && written && mBufferInfo.presentationTimeUs >= presentationTime) {
+                    return true;
+                }
+            }
+        }
+        Log.w(TAG, "drain: timed out waiting for the encoder");
+        return false;
+    }
+
+    private String getPath(int videoIndex) {
+        return mFolder + videoIndex + ".mp4";
+    }
+}
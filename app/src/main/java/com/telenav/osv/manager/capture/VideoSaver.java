@@ -46,9 +46,9 @@ public class VideoSaver extends DataSaver {
     }
 
     @Override
-    public void saveFrame(final byte[] jpegData, final Location mLocationF, final float mAccuracyF, final int mOrientationF,
+    public void saveFrame(final FrameBuffer jpeg, final Location mLocationF, final float mAccuracyF, final int mOrientationF,
                           final long mTimestampF) {
-        super.saveFrame(jpegData, mLocationF, mAccuracyF, mOrientationF, mTimestampF);
+        super.saveFrame(jpeg, mLocationF, mAccuracyF, mOrientationF, mTimestampF);
         final int mIndexF = mIndex;
         mIndex++;
         mBackgroundHandler.post(new Runnable() {
@@ -58,7 +58,8 @@ public class VideoSaver extends DataSaver {
                 //mRunDetection = false;
                 final long time = System.currentTimeMillis();
                 int[] ret;
-                ret = ffmpeg.encode(jpegData);
+                ret = ffmpeg.encode(jpeg.data, jpeg.length);
+                jpeg.release();
                 Log.d(TAG, "saveFrame: encoding done in " + (System.currentTimeMillis() - time) + " ms ,  video file " + ret[0] + " and frame " +
                         ret[1]);
                 //mRunDetection = true;
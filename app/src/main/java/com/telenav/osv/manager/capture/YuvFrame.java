@@ -0,0 +1,140 @@
+package com.telenav.osv.manager.capture;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import android.annotation.TargetApi;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.media.Image;
+import android.os.Build;
+
+/**
+ * An uncompressed camera frame, copied out of a {@link ImageFormat#YUV_420_888} image into a compact NV21 array so the camera image can
+ * be released right away. The array comes from the {@link FrameBufferPool}, the frame has to be released once it was encoded.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class YuvFrame {
+
+    private static final int JPEG_QUALITY = 100;
+
+    public final int width;
+
+    public final int height;
+
+    /**
+     * clockwise rotation needed to display the frame upright, in degrees
+     */
+    public final int rotation;
+
+    /**
+     * full resolution luma followed by the interleaved V and U samples of every 2x2 block
+     */
+    private final byte[] mData;
+
+    private final FrameBuffer mBuffer;
+
+    private YuvFrame(int width, int height, int rotation, FrameBuffer buffer) {
+        this.width = width;
+        this.height = height;
+        this.rotation = rotation;
+        this.mBuffer = buffer;
+        this.mData = buffer.data;
+    }
+
+    /**
+     * Copies the planes of the image, the image can be closed afterwards.
+     * @param image a {@link ImageFormat#YUV_420_888} image
+     * @param rotation clockwise rotation needed to display the frame upright
+     * @return the frame
+     */
+    public static YuvFrame copyOf(Image image, int rotation) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        FrameBuffer buffer = FrameBufferPool.get().acquire(width * height * 3 / 2);
+        byte[] data = buffer.data;
+        Image.Plane[] planes = image.getPlanes();
+        ByteBuffer luma = planes[0].getBuffer();
+        int lumaStride = planes[0].getRowStride();
+        if (planes[0].getPixelStride() == 1 && lumaStride == width) {
+            luma.get(data, 0, width * height);
+        } else {
+            for (int row = 0; row < height; row++) {
+                readRow(luma, row * lumaStride, planes[0].getPixelStride(), data, row * width, 1, width);
+            }
+        }
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        int offset = width * height;
+        for (int row = 0; row < chromaHeight; row++) {
+            int target = offset + row * width;
+            readRow(planes[2].getBuffer(), row * planes[2].getRowStride(), planes[2].getPixelStride(), data, target, 2, chromaWidth);
+            readRow(planes[1].getBuffer(), row * planes[1].getRowStride(), planes[1].getPixelStride(), data, target + 1, 2, chromaWidth);
+        }
+        return new YuvFrame(width, height, rotation, buffer);
+    }
+
+    private static void readRow(ByteBuffer source, int position, int pixelStride, byte[] target, int offset, int step, int count) {
+        for (int i = 0; i < count; i++) {
+            target[offset + i * step] = source.get(position + i * pixelStride);
+        }
+    }
+
+    private static void writeRow(byte[] source, int offset, int step, ByteBuffer target, int position, int pixelStride, int count) {
+        for (int i = 0; i < count; i++) {
+            target.put(position + i * pixelStride, source[offset + i * step]);
+        }
+    }
+
+    /**
+     * Copies the frame into an encoder input image, whatever its plane layout.
+     * @param image a YUV 4:2:0 image of the same size
+     */
+    public void writeTo(Image image) {
+        Image.Plane[] planes = image.getPlanes();
+        ByteBuffer luma = planes[0].getBuffer();
+        int lumaStride = planes[0].getRowStride();
+        if (planes[0].getPixelStride() == 1) {
+            for (int row = 0; row < height; row++) {
+                luma.position(row * lumaStride);
+                luma.put(mData, row * width, width);
+            }
+        } else {
+            for (int row = 0; row < height; row++) {
+                writeRow(mData, row * width, 1, luma, row * lumaStride, planes[0].getPixelStride(), width);
+            }
+        }
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        int offset = width * height;
+        for (int row = 0; row < chromaHeight; row++) {
+            int source = offset + row * width;
+            writeRow(mData, source + 1, 2, planes[1].getBuffer(), row * planes[1].getRowStride(), planes[1].getPixelStride(), chromaWidth);
+            writeRow(mData, source, 2, planes[2].getBuffer(), row * planes[2].getRowStride(), planes[2].getPixelStride(), chromaWidth);
+        }
+    }
+
+    /**
+     * @return the number of bytes of the frame in a packed 4:2:0 layout
+     */
+    public int getSize() {
+        return mBuffer.length;
+    }
+
+    /**
+     * returns the frame data to the pool
+     */
+    public void release() {
+        mBuffer.release();
+    }
+
+    /**
+     * Compresses the frame, for the recordings that store photos.
+     * @return the jpeg data
+     */
+    public byte[] toJpeg() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(mBuffer.length / 4);
+        new YuvImage(mData, ImageFormat.NV21, width, height, null).compressToJpeg(new Rect(0, 0, width, height), JPEG_QUALITY, out);
+        return out.toByteArray();
+    }
+}
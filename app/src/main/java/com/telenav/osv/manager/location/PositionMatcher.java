@@ -16,7 +16,6 @@ import com.telenav.osv.item.Segment;
 import com.telenav.osv.item.network.GeometryCollection;
 import com.telenav.osv.listener.network.NetworkResponseDataListener;
 import com.telenav.osv.manager.network.GeometryRetriever;
-import com.telenav.osv.utils.BackgroundThreadPool;
 import com.telenav.osv.utils.ComputingDistance;
 import com.telenav.osv.utils.Log;
 import com.telenav.osv.utils.Utils;
@@ -39,6 +38,18 @@ class PositionMatcher {
 
     private static final double[] HEADING_WEIGHTS = new double[]{2, 4, 8, 16};
 
+    /**
+     * distance in meters of the prefetched region ahead of the position, beyond the edge of the loaded region
+     */
+    private static final double PREFETCH_DISTANCE = 3500;
+
+    private static final double PREFETCH_RADIUS = 2000;
+
+    /**
+     * movement in meters over the position history below which the direction is unknown and nothing is prefetched
+     */
+    private static final double MIN_PREFETCH_MOVEMENT = 20;
+
     private final GeometryRetriever mGeometryRetriever;
 
     private final Object matcherSyncObject = new Object();
@@ -49,8 +60,18 @@ class PositionMatcher {
 
     private SKBoundingBox mLoadedBB;
 
+    /**
+     * region around the center of the last prefetch, the prefetch is not repeated while the center stays inside
+     */
+    private SKBoundingBox mLastPrefetchBB;
+
     private ArrayList<Polyline> mPolylines;
 
+    /**
+     * grid over the edges of {@link #mPolylines}, rebuilt when new segments arrive
+     */
+    private SegmentIndex mSegmentIndex;
+
     private boolean requestSent = false;
 
     private long mLastCheckTime;
@@ -108,30 +129,48 @@ class PositionMatcher {
             final SKBoundingBox requestedBB = getBoundingBoxForRegion(coordinate, 3500);
             final SKBoundingBox triggerBB = getBoundingBoxForRegion(coordinate, 1500);
             Log.d(TAG, "requestNewDataIfNeeded: " + triggerBB);
-            BackgroundThreadPool.post(new Runnable() {
+            mGeometryRetriever.loadTiles(new NetworkResponseDataListener<GeometryCollection>() {
 
                 @Override
-                public void run() {
-                    Log.d(TAG, "requestNewDataIfNeeded: sending request");
-
-                    mGeometryRetriever.listSegments(new NetworkResponseDataListener<GeometryCollection>() {
-
-                                                        @Override
-                                                        public void requestFailed(int status, GeometryCollection details) {
-                                                            Log.d(TAG, "requestNewDataIfNeeded: " + details);
-                                                            requestSent = false;
-                                                        }
-
-                                                        @Override
-                                                        public void requestFinished(int status, GeometryCollection collectionData) {
-                                                            offerNewSegments(coordinate, collectionData.getSegmentList(), triggerBB, requestedBB);
-                                                        }
-                                                    }, requestedBB.getTopLeft().getLatitude() + "," + requestedBB.getTopLeft().getLongitude(),
-                            requestedBB.getBottomRight().getLatitude() + "," + requestedBB.getBottomRight().getLongitude(),
-                            MAX_RESOLUTION_ZOOM);
+                public void requestFailed(int status, GeometryCollection details) {
+                    Log.d(TAG, "requestNewDataIfNeeded: " + details);
+                    requestSent = false;
                 }
-            });
+
+                @Override
+                public void requestFinished(int status, GeometryCollection collectionData) {
+                    offerNewSegments(coordinate, collectionData.getSegmentList(), triggerBB, requestedBB);
+                }
+            }, requestedBB.getTopLeft().getLatitude(), requestedBB.getTopLeft().getLongitude(), requestedBB.getBottomRight().getLatitude(),
+                    requestedBB.getBottomRight().getLongitude());
+        }
+    }
+
+    /**
+     * Prefetches the tiles ahead of the last positions, so the next load of segments is served from the tile cache, also if the network
+     * is lost meanwhile.
+     */
+    private void prefetchAhead(SKCoordinate coordinate) {
+        if (mGeometryRetriever == null || mLastCoordinates.size() < 2) {
+            return;
+        }
+        SKCoordinate first = mLastCoordinates.getFirst();
+        double latDelta = coordinate.getLatitude() - first.getLatitude();
+        double lonDelta = coordinate.getLongitude() - first.getLongitude();
+        double length = Math.sqrt(latDelta * latDelta + lonDelta * lonDelta);
+        if (length < getMercFromDist(MIN_PREFETCH_MOVEMENT)) {
+            return;
+        }
+        double ahead = getMercFromDist(PREFETCH_DISTANCE) / length;
+        double aheadLat = coordinate.getLatitude() + latDelta * ahead;
+        double aheadLon = coordinate.getLongitude() + lonDelta * ahead;
+        if (pointIsInBB(mLastPrefetchBB, aheadLat, aheadLon)) {
+            return;
         }
+        mLastPrefetchBB = getBoundingBox(aheadLat, aheadLon, PREFETCH_RADIUS / 2);
+        SKBoundingBox prefetchBB = getBoundingBox(aheadLat, aheadLon, PREFETCH_RADIUS);
+        mGeometryRetriever.prefetchTiles(prefetchBB.getTopLeft().getLatitude(), prefetchBB.getTopLeft().getLongitude(),
+                prefetchBB.getBottomRight().getLatitude(), prefetchBB.getBottomRight().getLongitude());
     }
 
     private boolean assessBBDifference(SKBoundingBox mLastBB, SKBoundingBox bbnormal) {
@@ -163,6 +202,7 @@ class PositionMatcher {
             SKBoundingBox smallBB = getBoundingBoxForRegion(coordinate, 500);
             //send request if needed
             requestNewDataIfNeeded(smallBB, coordinate);
+            prefetchAhead(coordinate);
             if (Utils.DEBUG) {
                 EventBus.post(new BoundingBoxChangedEvent(mTriggerBB, mLoadedBB, smallBB));
             }
@@ -213,6 +253,10 @@ class PositionMatcher {
             }
             mPolylines.clear();
             mPolylines.addAll(segments);
+            long time = System.currentTimeMillis();
+            mSegmentIndex = new SegmentIndex(mPolylines, MATCH_DISTANCE_LIMIT);
+            Log.d(TAG, "offerNewSegments: indexed " + mSegmentIndex.getEdgeCount() + " edges in " + mSegmentIndex.getCellCount() + " cells, in " +
+                    (System.currentTimeMillis() - time) + " ms");
             if (mPolylines.isEmpty()) {
                 Log.d(TAG, "requestNewDataIfNeeded: no segments were recived");
             }
@@ -245,67 +289,100 @@ class PositionMatcher {
             synchronized (matcherSyncObject) {
                 long time = System.currentTimeMillis();
                 ArrayList<Segment> candidates = new ArrayList<>();
-                for (Polyline polyline : mPolylines) {
-                    List<SKCoordinate> track = polyline.getNodes();
-                    if (coordinate != null && !track.isEmpty()) {
-                        for (int i = 0; i < track.size() - 1; i++) {
-                            SKCoordinate coord1 = track.get(i);
-                            SKCoordinate coord2 = track.get(i + 1);
-                            double distanceToPos = ComputingDistance.getDistanceFromSegment(coordinate, coord1, coord2);
-                            if (distanceToPos < MATCH_DISTANCE_LIMIT) {
-                                double dist1 = ComputingDistance.distanceBetween(coord1, coordinate);
-                                double dist2 = ComputingDistance.distanceBetween(coord2, coordinate);
-
-                                SKCoordinate firstCoord;
-                                SKCoordinate secondCoord;
-                                if (dist1 < dist2) {
-                                    firstCoord = coord1;
-                                    secondCoord = coord2;
-                                } else {
-                                    firstCoord = coord2;
-                                    secondCoord = coord1;
-                                }
-                                double bearing = calculateBearing(firstCoord, secondCoord);
-                                double altBearing = (bearing + 180) % 360;
-                                if ((distanceToPos < dist1 || distanceToPos < dist2) &&
-                                        (Math.abs(bearing - historicalBearing) > Math.abs(altBearing - historicalBearing))) {
-                                    bearing = altBearing;
-                                    SKCoordinate temp = firstCoord;
-                                    firstCoord = secondCoord;
-                                    secondCoord = temp;
-                                }
-                                double deltaBearing = Math.abs(bearing - historicalBearing);
-                                Log.d(TAG, "match:" + polyline.getIdentifier() + " bearing for " + i + " is " + bearing + " delta is " + deltaBearing);
-
-                                //                          0-20                0-180
-                                float score = (float) (((distanceToPos / MATCH_DISTANCE_LIMIT) * 50.0 + (deltaBearing / 180) * 50.0) / 100f);
-                                candidates.add(new Segment(distanceToPos, coordinate, polyline, firstCoord, secondCoord, deltaBearing, score));
-                            }
-                        }
+                SegmentIndex.Cell cell = coordinate == null || mSegmentIndex == null ? null :
+                        mSegmentIndex.cellAt(coordinate.getLatitude(), coordinate.getLongitude());
+                if (cell != null) {
+                    for (int k = 0; k < cell.size; k++) {
+                        int edge = cell.edges[k];
+                        addCandidate(candidates, coordinate, mSegmentIndex.getPolyline(edge), mSegmentIndex.getNode(edge), historicalBearing);
                     }
                 }
+                Log.d(TAG, "match: matched segment called on " + (cell == null ? 0 : cell.size) + " of " + mSegmentIndex.getEdgeCount() +
+                        " edges, run in " + (System.currentTimeMillis() - time));
+                return pickBest(candidates, coordinate);
+            }
+        }
+        return null;
+    }
 
-                Segment bestCandidate = null;
-                float bestScore = 100000f;
-                for (Segment segment : candidates) {
-                    if (segment.getScore() < bestScore) {
-                        bestScore = segment.getScore();
-                        bestCandidate = segment;
+    /**
+     * Matches the position by checking every edge of every polyline, which {@link #match(SKCoordinate)} avoids using the index.
+     * Kept as the reference the indexed matching is tested against.
+     */
+    Segment matchAll(SKCoordinate coordinate) {
+        double historicalBearing = getBearing(coordinate);
+        if (mPolylines != null) {
+            synchronized (matcherSyncObject) {
+                ArrayList<Segment> candidates = new ArrayList<>();
+                for (Polyline polyline : mPolylines) {
+                    if (coordinate != null) {
+                        for (int i = 0; i < polyline.getNodeCount() - 1; i++) {
+                            addCandidate(candidates, coordinate, polyline, i, historicalBearing);
+                        }
                     }
                 }
+                return pickBest(candidates, coordinate);
+            }
+        }
+        return null;
+    }
+
+    private void addCandidate(ArrayList<Segment> candidates, SKCoordinate coordinate, Polyline polyline, int i, double historicalBearing) {
+        double lat = coordinate.getLatitude();
+        double lon = coordinate.getLongitude();
+        double lat1 = polyline.getLatitude(i);
+        double lon1 = polyline.getLongitude(i);
+        double lat2 = polyline.getLatitude(i + 1);
+        double lon2 = polyline.getLongitude(i + 1);
+        double distanceToPos = ComputingDistance.getDistanceFromSegment(lat, lon, lat1, lon1, lat2, lon2);
+        if (distanceToPos < MATCH_DISTANCE_LIMIT) {
+            double dist1 = ComputingDistance.distanceBetween(lon1, lat1, lon, lat);
+            double dist2 = ComputingDistance.distanceBetween(lon2, lat2, lon, lat);
+
+            SKCoordinate firstCoord;
+            SKCoordinate secondCoord;
+            if (dist1 < dist2) {
+                firstCoord = new SKCoordinate(lat1, lon1);
+                secondCoord = new SKCoordinate(lat2, lon2);
+            } else {
+                firstCoord = new SKCoordinate(lat2, lon2);
+                secondCoord = new SKCoordinate(lat1, lon1);
+            }
+            double bearing = calculateBearing(firstCoord, secondCoord);
+            double altBearing = (bearing + 180) % 360;
+            if ((distanceToPos < dist1 || distanceToPos < dist2) &&
+                    (Math.abs(bearing - historicalBearing) > Math.abs(altBearing - historicalBearing))) {
+                bearing = altBearing;
+                SKCoordinate temp = firstCoord;
+                firstCoord = secondCoord;
+                secondCoord = temp;
+            }
+            double deltaBearing = Math.abs(bearing - historicalBearing);
+            Log.d(TAG, "match:" + polyline.getIdentifier() + " bearing for " + i + " is " + bearing + " delta is " + deltaBearing);
 
-                Log.d(TAG, "match: matched segment called on " + mPolylines.size() + " segments, run in " + (System.currentTimeMillis() - time));
+            //                          0-20                0-180
+            float score = (float) (((distanceToPos / MATCH_DISTANCE_LIMIT) * 50.0 + (deltaBearing / 180) * 50.0) / 100f);
+            candidates.add(new Segment(distanceToPos, coordinate, polyline, firstCoord, secondCoord, deltaBearing, score));
+        }
+    }
 
-                if (bestCandidate == null) {
-                    Polyline polyline = new Polyline(404);
-                    polyline.coverage = 0;
-                    return new Segment(1000, coordinate, polyline, new SKCoordinate(), new SKCoordinate(), 0, 0);
-                } else {
-                    return bestCandidate;
-                }
+    private Segment pickBest(ArrayList<Segment> candidates, SKCoordinate coordinate) {
+        Segment bestCandidate = null;
+        float bestScore = 100000f;
+        for (Segment segment : candidates) {
+            if (segment.getScore() < bestScore) {
+                bestScore = segment.getScore();
+                bestCandidate = segment;
             }
         }
-        return null;
+
+        if (bestCandidate == null) {
+            Polyline polyline = new Polyline(404);
+            polyline.coverage = 0;
+            return new Segment(1000, coordinate, polyline, new SKCoordinate(), new SKCoordinate(), 0, 0);
+        } else {
+            return bestCandidate;
+        }
     }
 
     double getBearing(SKCoordinate coordinate) {
@@ -0,0 +1,125 @@
+package com.telenav.osv.manager.location;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import com.telenav.osv.item.Polyline;
+
+/**
+ * Uniform grid over the edges of the matched polylines, so a position is only checked against the edges around it.
+ * <p>
+ * Every edge, a pair of consecutive polyline nodes, is registered in each cell touched by its bounding box grown by the match distance,
+ * so the cell of a position holds all the edges closer than that distance. Edges are added in polyline order, a cell lists them in the
+ * same order as a full scan would visit them.
+ */
+class SegmentIndex {
+
+    /**
+     * cell side in degrees, about 55 meters
+     */
+    static final double CELL_SIZE = 0.0005;
+
+    private final HashMap<Long, Cell> mCells = new HashMap<>();
+
+    private final List<Polyline> mPolylines;
+
+    private int[] mEdgePolylines = new int[256];
+
+    private int[] mEdgeNodes = new int[256];
+
+    private int mEdgeCount;
+
+    /**
+     * @param polylines the polylines, not copied, must not change while the index is used
+     * @param margin the match distance in degrees
+     */
+    SegmentIndex(List<Polyline> polylines, double margin) {
+        mPolylines = polylines;
+        for (int p = 0; p < polylines.size(); p++) {
+            Polyline polyline = polylines.get(p);
+            for (int i = 0; i < polyline.getNodeCount() - 1; i++) {
+                double firstLat = polyline.getLatitude(i);
+                double firstLon = polyline.getLongitude(i);
+                double secondLat = polyline.getLatitude(i + 1);
+                double secondLon = polyline.getLongitude(i + 1);
+                int edge = addEdge(p, i);
+                int minRow = cell(Math.min(firstLat, secondLat) - margin);
+                int maxRow = cell(Math.max(firstLat, secondLat) + margin);
+                int minColumn = cell(Math.min(firstLon, secondLon) - margin);
+                int maxColumn = cell(Math.max(firstLon, secondLon) + margin);
+                for (int row = minRow; row <= maxRow; row++) {
+                    for (int column = minColumn; column <= maxColumn; column++) {
+                        long key = key(row, column);
+                        Cell cell = mCells.get(key);
+                        if (cell == null) {
+                            cell = new Cell();
+                            mCells.put(key, cell);
+                        }
+                        cell.add(edge);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int cell(double degrees) {
+        return (int) Math.floor(degrees / CELL_SIZE);
+    }
+
+    private static long key(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+
+    /**
+     * @return the edges near the position, null if there are none
+     */
+    Cell cellAt(double lat, double lon) {
+        return mCells.get(key(cell(lat), cell(lon)));
+    }
+
+    Polyline getPolyline(int edge) {
+        return mPolylines.get(mEdgePolylines[edge]);
+    }
+
+    /**
+     * @return the index of the first node of the edge in its polyline
+     */
+    int getNode(int edge) {
+        return mEdgeNodes[edge];
+    }
+
+    int getEdgeCount() {
+        return mEdgeCount;
+    }
+
+    int getCellCount() {
+        return mCells.size();
+    }
+
+    private int addEdge(int polyline, int node) {
+        if (mEdgeCount == mEdgePolylines.length) {
+            mEdgePolylines = Arrays.copyOf(mEdgePolylines, mEdgeCount * 2);
+            mEdgeNodes = Arrays.copyOf(mEdgeNodes, mEdgeCount * 2);
+        }
+        mEdgePolylines[mEdgeCount] = polyline;
+        mEdgeNodes[mEdgeCount] = node;
+        return mEdgeCount++;
+    }
+
+    /**
+     * edges of a grid cell, in insertion order
+     */
+    static class Cell {
+
+        int[] edges = new int[4];
+
+        int size;
+
+        void add(int edge) {
+            if (size == edges.length) {
+                edges = Arrays.copyOf(edges, size * 2);
+            }
+            edges[size++] = edge;
+        }
+    }
+}
@@ -1,12 +1,8 @@
 package com.telenav.osv.manager.location;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.zip.GZIPOutputStream;
 import android.content.Context;
 import android.os.Build;
 import android.os.Handler;
@@ -24,6 +20,9 @@ import com.telenav.datacollectormodule.datatype.util.LibraryUtil;
 import com.telenav.osv.application.OSVApplication;
 import com.telenav.osv.item.OSVFile;
 import com.telenav.osv.item.metadata.DataCollectorItemWrapper;
+import com.telenav.osv.item.metadata.MetadataBuffer;
+import com.telenav.osv.item.metadata.MetadataConverter;
+import com.telenav.osv.item.metadata.MetadataWriter;
 import com.telenav.osv.item.metadata.Obd2Data;
 import com.telenav.osv.item.metadata.VideoData;
 import com.telenav.osv.utils.Log;
@@ -31,7 +30,15 @@ import com.telenav.osv.utils.Utils;
 
 public class SensorManager implements EventDataListener {
 
-    private static final String LINE_SEPARATOR = "\n";
+    /**
+     * gzipped binary metadata, compressed while recording and converted to {@link #METADATA_FILE} before upload
+     */
+    public static final String METADATA_BINARY_FILE = "track.bin.gz";
+
+    /**
+     * gzipped text metadata, the upload format
+     */
+    public static final String METADATA_FILE = "track.txt.gz";
 
     private static final String SENSOR_FORMAT_VERSION = "1.1.6";
 
@@ -43,13 +50,16 @@ public class SensorManager implements EventDataListener {
 
     private static final AtomicBoolean activeState = new AtomicBoolean(false);
 
-    //TODO move everything from the static data queue, in a non-static field...all this logic pertaining to logging and to the sensor data queue
+    //TODO move everything from the static metadata buffer, in a non-static field...all this logic pertaining to logging and to the sensor data
     //TODO doesn't need to be static, nor should it be in the sensor manager...a separate logger, or metadata-only responsible class is necessary
-    private static ConcurrentLinkedQueue<Object> sensorDataQueue = new ConcurrentLinkedQueue<>();
+    private static final MetadataBuffer sMetadataBuffer = new MetadataBuffer();
 
-    private static OSVFile sSequence;
+    /**
+     * used only on the background thread
+     */
+    private static final MetadataWriter sMetadataWriter = new MetadataWriter();
 
-    private static FileOutputStream mOutputStream;
+    private static OSVFile sSequence;
 
     private static HandlerThread mBackgroundThread;
 
@@ -73,8 +83,22 @@ public class SensorManager implements EventDataListener {
     }
 
     public static void logSensorData(DataCollectorItemWrapper sensorData) {
-        sensorDataQueue.add(sensorData);
-        if (isGpsData(sensorData)) {
+        if (sensorData.writeTo(sMetadataBuffer)) {
+            onSensorDataLogged(sensorData.getType());
+        }
+    }
+
+    /**
+     * records a sensor sample straight from the data collector object
+     */
+    private static void logSensorData(BaseObject sensorData) {
+        if (DataCollectorItemWrapper.writeTo(sensorData, sMetadataBuffer)) {
+            onSensorDataLogged(sensorData.getSensorType());
+        }
+    }
+
+    private static void onSensorDataLogged(String type) {
+        if (isGpsData(type)) {
             if (!gpsAvailableInMetadata.get()) {
                 //to whomever will work on this in the future, this is just a quick workaround, and I apologise in advance
                 //for the technical debt introduced by this 'quick fix'.
@@ -94,12 +118,12 @@ public class SensorManager implements EventDataListener {
     }
 
     public static void logOBD2Data(Obd2Data obd2Data) {
-        sensorDataQueue.add(obd2Data);
+        obd2Data.writeTo(sMetadataBuffer);
         flushIfNeeded();
     }
 
     public static void logVideoData(VideoData videoData) {
-        sensorDataQueue.add(videoData);
+        videoData.writeTo(sMetadataBuffer);
         flushToDisk();
     }
 
@@ -120,23 +144,13 @@ public class SensorManager implements EventDataListener {
 
     public static void flushToDisk() {
         ensureBackgroundHandlerExists();
-        final ConcurrentLinkedQueue<Object> tempQueue = sensorDataQueue;
         mBackgroundHandler.post(() -> {
             atomicInteger.set(0);
-            StringBuilder result = new StringBuilder();
-            while (!tempQueue.isEmpty()) {
-                result.append(tempQueue.poll());
-                if (result.length() > 2000) {
-                    appendLog(result.toString());
-                    result = new StringBuilder();
-                }
-            }
-            if (result.length() > 0) {
-                appendLog(result.toString());
-            }
             try {
-                mOutputStream.flush();
-            } catch (Exception ignored) {
+                sMetadataBuffer.drainTo(sMetadataWriter);
+                sMetadataWriter.flush();
+            } catch (IOException e) {
+                Log.w(TAG, "flushToDisk: " + Log.getStackTraceString(e));
             }
         });
     }
@@ -150,15 +164,14 @@ public class SensorManager implements EventDataListener {
         switch (baseObject.getSensorType()) {
             case LibraryUtil.ACCELEROMETER:
                 if (baseObject.getStatusCode() == LibraryUtil.PHONE_SENSOR_READ_SUCCESS) {
-                    ThreeAxesObject accelerometerObject = (ThreeAxesObject) baseObject;
-                    //osc implementation
-                    logSensorData(new DataCollectorItemWrapper(accelerometerObject));
+                    //osc implementation, the accelerometer is not part of the metadata format
+                    logSensorData(baseObject);
                 }
                 break;
             case LibraryUtil.HEADING:
                 if (baseObject.getStatusCode() == LibraryUtil.PHONE_SENSOR_READ_SUCCESS) {
                     ThreeAxesObject compassObject = (ThreeAxesObject) baseObject;
-                    logSensorData(new DataCollectorItemWrapper(compassObject));
+                    logSensorData(compassObject);
                     //-z
                     mHeadingValues[0] = compassObject.getzValue();
                     //x
@@ -170,32 +183,32 @@ public class SensorManager implements EventDataListener {
             case LibraryUtil.PRESSURE:
                 if (baseObject.getStatusCode() == LibraryUtil.PHONE_SENSOR_READ_SUCCESS) {
                     PressureObject pressureObject = (PressureObject) baseObject;
-                    logSensorData(new DataCollectorItemWrapper(pressureObject));
+                    logSensorData(pressureObject);
                 }
                 break;
             case LibraryUtil.GRAVITY:
                 if (baseObject.getStatusCode() == LibraryUtil.PHONE_SENSOR_READ_SUCCESS) {
                     ThreeAxesObject gravityObject = ((ThreeAxesObject) baseObject);
-                    logSensorData(new DataCollectorItemWrapper(gravityObject));
+                    logSensorData(gravityObject);
                 }
                 break;
             case LibraryUtil.LINEAR_ACCELERATION:
                 if (baseObject.getStatusCode() == LibraryUtil.PHONE_SENSOR_READ_SUCCESS) {
                     ThreeAxesObject linearAccelerationObject = ((ThreeAxesObject) baseObject);
-                    logSensorData(new DataCollectorItemWrapper(linearAccelerationObject));
+                    logSensorData(linearAccelerationObject);
                 }
                 break;
             case LibraryUtil.ROTATION_VECTOR_RAW:
                 if (baseObject.getStatusCode() == LibraryUtil.PHONE_SENSOR_READ_SUCCESS) {
                     ThreeAxesObject rotVectRawObject = ((ThreeAxesObject) baseObject);
-                    logSensorData(new DataCollectorItemWrapper(rotVectRawObject));
+                    logSensorData(rotVectRawObject);
                 }
                 break;
             case LibraryUtil.PHONE_GPS:
                 if (baseObject.getStatusCode() == LibraryUtil.PHONE_SENSOR_READ_SUCCESS) {
                     PositionObject positionObject = (PositionObject) baseObject;
                     Log.d(TAG, "SensorManager#logSensorData-> PHONE GPS. obj: " + ((baseObject != null) ? " Not null." : " Null."));
-                    logSensorData(new DataCollectorItemWrapper(positionObject));
+                    logSensorData(positionObject);
                 } else {
                     Log.d(TAG, "SensorManager#logSensorData-> error when reading PHONE GPS. obj: " + ((baseObject != null) ? baseObject.getTimestamp() : "Null."));
                 }
@@ -204,15 +217,15 @@ public class SensorManager implements EventDataListener {
                 if (baseObject.getStatusCode() == LibraryUtil.PHONE_SENSOR_READ_SUCCESS) {
                     GPSData gpsData = (GPSData) baseObject;
                     Log.d(TAG, "SensorManager#logSensorData-> GPS DATA. obj: " + ((baseObject != null) ? " Not null." : " Null."));
-                    logSensorData(new DataCollectorItemWrapper(gpsData));
+                    logSensorData(gpsData);
                 } else {
                     Log.d(TAG, "SensorManager#logSensorData-> error when reading GPS DATA. obj: " + ((baseObject != null) ? (baseObject.getTimestamp()) : "Null."));
                 }
         }
     }
 
-    private static boolean isGpsData(DataCollectorItemWrapper sensorData) {
-        return sensorData.getType().equals(LibraryUtil.GPS_DATA) || sensorData.getType().equals(LibraryUtil.PHONE_GPS);
+    private static boolean isGpsData(String type) {
+        return type.equals(LibraryUtil.GPS_DATA) || type.equals(LibraryUtil.PHONE_GPS);
     }
 
     private static void flushIfNeeded() {
@@ -222,93 +235,46 @@ public class SensorManager implements EventDataListener {
         }
     }
 
-    private static void prettyPrintFlushedLogs(ConcurrentLinkedQueue<VideoData> tempQueue) {
-        StringBuilder stringBuilder = new StringBuilder();
-        for (VideoData entry : tempQueue) {
-            stringBuilder.append(entry.toString()).append("\n");
-        }
-
-        Log.d(TAG, "Logs flushed: " + stringBuilder.toString());
-    }
-
-    private static void appendLog(String string) {
-        try {
-            if (mOutputStream != null) {
-                mOutputStream.write(string.getBytes());
-            }
-        } catch (IOException ignored) {
-        } catch (Exception e) {
-            Log.w(TAG, "compress: " + Log.getStackTraceString(e));
-        }
-    }
-
     private static void finishLog() {
         ensureBackgroundHandlerExists();
         mBackgroundHandler.post(() -> {
-            if (mOutputStream != null) {
-                try {
-                    try {
-                        String done = "DONE";
-                        mOutputStream.write(done.getBytes());
-                    } catch (Exception e) {
-                        Log.w(TAG, "compress: " + Log.getStackTraceString(e));
-                    }
-                    try {
-                        mOutputStream.flush();
-                    } catch (IllegalStateException ignored) {
-                    }
-                    mOutputStream.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+            try {
+                sMetadataBuffer.drainTo(sMetadataWriter);
+                sMetadataWriter.finish();
+            } catch (IOException e) {
+                Log.w(TAG, "finishLog: " + Log.getStackTraceString(e));
             }
-            zipLog();
         });
     }
 
-    private static void zipLog() {
-        if (sSequence != null) {
-            OSVFile zipFile = new OSVFile(sSequence, "track.txt.gz");
-            OSVFile txtFile = new OSVFile(sSequence, "track.txt");
-            if (txtFile.exists()) {
-                FileInputStream is = null;
-                FileOutputStream os = null;
-                GZIPOutputStream zip = null;
-                try {
-                    is = new FileInputStream(txtFile);
-                    os = new FileOutputStream(zipFile);
-                    zip = new GZIPOutputStream(os);
-
-                    byte[] buffer = new byte[1024];
-                    int len;
-                    while ((len = is.read(buffer)) != -1) {
-                        zip.write(buffer, 0, len);
-                    }
-                    if (zipFile.exists() && Utils.fileSize(zipFile) > 0) {
-                        Log.d(TAG, "zipLog: successfully zipped");
-                        txtFile.delete();
-                    }
-                } catch (IOException e) {
-                    Log.w(TAG, "zipLog: " + Log.getStackTraceString(e));
-                } finally {
-                    try {
-                        if (zip != null) {
-                            zip.finish();
-
-                            zip.close();
-                        }
-                        if (os != null) {
-                            os.close();
-                        }
-                        if (is != null) {
-                            is.close();
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
+    /**
+     * Makes the metadata of a sequence ready for upload, converting the binary track to gzipped text. A track left without gzip trailer
+     * when the app was killed while recording is converted up to its last sync flush.
+     * @param sequence the sequence folder
+     * @return true if the text metadata exists
+     */
+    public static boolean prepareLog(OSVFile sequence) {
+        if (sequence == null) {
+            return false;
+        }
+        OSVFile binFile = new OSVFile(sequence, METADATA_BINARY_FILE);
+        OSVFile zipFile = new OSVFile(sequence, METADATA_FILE);
+        if (!binFile.exists()) {
+            return zipFile.exists();
+        }
+        try {
+            long time = System.currentTimeMillis();
+            boolean complete = MetadataConverter.convertToGzip(binFile, zipFile);
+            Log.d(TAG, "prepareLog: converted in " + (System.currentTimeMillis() - time) + " ms, complete = " + complete);
+            if (zipFile.exists() && Utils.fileSize(zipFile) > 0) {
+                binFile.delete();
+                return true;
             }
+        } catch (IOException e) {
+            Log.w(TAG, "prepareLog: " + Log.getStackTraceString(e));
+            zipFile.delete();
         }
+        return false;
     }
 
     private static void ensureBackgroundHandlerExists() {
@@ -350,22 +316,18 @@ public class SensorManager implements EventDataListener {
             Log.d(TAG, "Set active state to true");
             resetGpsDataAvailableInMetadata();
             activeState.set(true);
-            sensorDataQueue = new ConcurrentLinkedQueue<>();
+            sMetadataBuffer.clear();
             sSequence = sequence;
             if (!sSequence.exists()) {
                 sSequence.mkdir();
             }
-            mLogFile = new OSVFile(sSequence, "track.txt");
-            if (mLogFile.exists()) {
-                mLogFile.delete();
-            }
+            mLogFile = new OSVFile(sSequence, METADATA_BINARY_FILE);
             try {
-                mOutputStream = new FileOutputStream(mLogFile, true);
+                sMetadataWriter.open(mLogFile, Build.MANUFACTURER + " " + android.os.Build.MODEL + ";" + Build.VERSION.RELEASE + ";" +
+                        SENSOR_FORMAT_VERSION + ";" + OSVApplication.VERSION_NAME + ";" + (safe ? "photo" : "video"));
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.w(TAG, "onResume: " + Log.getStackTraceString(e));
             }
-            appendLog(Build.MANUFACTURER + " " + android.os.Build.MODEL + ";" + Build.VERSION.RELEASE + ";" + SENSOR_FORMAT_VERSION + ";" + OSVApplication.VERSION_NAME + ";"
-                    + (safe ? "photo" : "video") + LINE_SEPARATOR);
 
             //register for the desired phone sensors, and start the data collector library
             Config config = new Config();
@@ -1,5 +1,9 @@
 package com.telenav.osv.manager.network;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import android.content.Context;
 import android.os.Handler;
 import android.os.HandlerThread;
@@ -13,7 +17,9 @@ import com.android.volley.VolleyLog;
 import com.telenav.osv.event.EventBus;
 import com.telenav.osv.http.ListTracksRequest;
 import com.telenav.osv.http.NearbyRequest;
+import com.telenav.osv.http.TrackTileRequest;
 import com.telenav.osv.http.requestFilters.NearbyRequestFilter;
+import com.telenav.osv.item.Polyline;
 import com.telenav.osv.item.network.GeometryCollection;
 import com.telenav.osv.item.network.TrackCollection;
 import com.telenav.osv.listener.network.NetworkResponseDataListener;
@@ -35,6 +41,10 @@ public class GeometryRetriever extends NetworkManager implements Response.ErrorL
 
     private static final int TRACKS_TO_LOAD = 100000;
 
+    private static final float TILE_ZOOM = 19;
+
+    private static final String TILE_CACHE_DIRECTORY = "geometry";
+
     /**
      * list ALL sequences request url
      */
@@ -51,10 +61,17 @@ public class GeometryRetriever extends NetworkManager implements Response.ErrorL
 
         @Override
         public boolean apply(Request<?> request) {
-            return request instanceof ListTracksRequest;
+            return request instanceof ListTracksRequest && !(request instanceof TrackTileRequest);
         }
     };
 
+    private final GeometryTileCache mTileCache;
+
+    /**
+     * tiles being downloaded or revalidated, accessed on the tracks thread
+     */
+    private final HashSet<Long> mPendingTiles = new HashSet<>();
+
     private GeometryParser mGeometryParser = new GeometryParser();
 
     private NearbyTracksParser mNearbyTracksParser = new NearbyTracksParser();
@@ -66,7 +83,7 @@ public class GeometryRetriever extends NetworkManager implements Response.ErrorL
         HandlerThread handlerThread = new HandlerThread("Tracks", Process.THREAD_PRIORITY_BACKGROUND);
         handlerThread.start();
         mTracksHandler = new Handler(handlerThread.getLooper());
-        this.mQueue = newRequestQueue(mContext, 4);
+        mTileCache = new GeometryTileCache(new File(context.getCacheDir(), TILE_CACHE_DIRECTORY));
         setEnvironment();
         EventBus.register(this);
         VolleyLog.DEBUG = Utils.isDebugEnabled(mContext);
@@ -102,7 +119,7 @@ public class GeometryRetriever extends NetworkManager implements Response.ErrorL
     public void listSegments(final NetworkResponseDataListener<GeometryCollection> listener, final String upperLeft, final String lowerRight,
                              final float zoom) {
         Log.d(TAG, "listSegments: cancelling previous requests");
-        mQueue.cancelAll(mTrackFilter);
+        cancelAll(mTrackFilter);
         mTracksHandler.removeCallbacksAndMessages(null);
         ListTracksRequest seqRequest =
                 new ListTracksRequest(URL_LIST_TRACKS, new OsvRequestResponseListener<GeometryParser, GeometryCollection>(mGeometryParser) {
@@ -131,7 +148,96 @@ public class GeometryRetriever extends NetworkManager implements Response.ErrorL
                     }
                 }, upperLeft, lowerRight, 1, TRACKS_TO_LOAD, zoom);
         seqRequest.setRetryPolicy(new DefaultRetryPolicy(10000, 3, 1f));
-        mQueue.add(seqRequest);
+        add(seqRequest);
+    }
+
+    /**
+     * Loads the segments of the bounding box from the tile cache, downloading the missing tiles. Expired tiles are used right away and
+     * revalidated in the background, so matching keeps working offline. The listener gets the segments of all the tiles which could be
+     * loaded, it fails only if none could.
+     */
+    public void loadTiles(final NetworkResponseDataListener<GeometryCollection> listener, final double topLat, final double leftLon,
+                          final double bottomLat, final double rightLon) {
+        mTracksHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                List<Long> keys = GeometryTileCache.getTiles(topLat, leftLon, bottomLat, rightLon);
+                TileLoad load = new TileLoad(keys.size(), listener);
+                for (long key : keys) {
+                    GeometryTileCache.Tile tile = mTileCache.get(key);
+                    if (tile == null) {
+                        requestTile(key, null, load);
+                        continue;
+                    }
+                    if (tile.isExpired()) {
+                        requestTile(key, tile.etag, null);
+                    }
+                    load.onTileLoaded(tile.segments);
+                }
+            }
+        });
+    }
+
+    /**
+     * Downloads the missing or expired tiles of the bounding box into the cache, without parsing the cached ones.
+     */
+    public void prefetchTiles(final double topLat, final double leftLon, final double bottomLat, final double rightLon) {
+        mTracksHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                for (long key : GeometryTileCache.getTiles(topLat, leftLon, bottomLat, rightLon)) {
+                    if (!mPendingTiles.contains(key) && !mTileCache.isFresh(key)) {
+                        Log.d(TAG, "prefetchTiles: " + GeometryTileCache.getTopLeft(key));
+                        requestTile(key, null, null);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @param etag the etag of the cached tile, null if it is not cached
+     * @param load the load waiting for the tile, null for revalidation and prefetching
+     */
+    private void requestTile(final long key, String etag, final TileLoad load) {
+        mPendingTiles.add(key);
+        TrackTileRequest request =
+                new TrackTileRequest(URL_LIST_TRACKS, new OsvRequestResponseListener<GeometryParser, GeometryCollection>(mGeometryParser) {
+
+                    @Override
+                    public void onSuccess(final int status, final GeometryCollection geometryCollection) {
+                        mTracksHandler.post(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                mPendingTiles.remove(key);
+                                if (load != null) {
+                                    boolean loaded = geometryCollection.getHttpCode() == NetworkResponseDataListener.HTTP_OK;
+                                    load.onTileLoaded(loaded ? geometryCollection.getSegmentList() : null);
+                                }
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onFailure(final int status, final GeometryCollection geometryCollection) {
+                        Log.d(TAG, "requestTile: failed with " + status + " for " + GeometryTileCache.getTopLeft(key));
+                        mTracksHandler.post(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                mPendingTiles.remove(key);
+                                if (load != null) {
+                                    load.onTileLoaded(null);
+                                }
+                            }
+                        });
+                    }
+                }, mTileCache, key, etag, TRACKS_TO_LOAD, TILE_ZOOM);
+        request.setRetryPolicy(new DefaultRetryPolicy(10000, 3, 1f));
+        add(request);
     }
 
     public void nearby(final NetworkResponseDataListener<TrackCollection> listener, String lat, String lon) {
@@ -163,7 +269,7 @@ public class GeometryRetriever extends NetworkManager implements Response.ErrorL
                     }
                 }, lat, lon, 50);
         seqRequest.setRetryPolicy(new DefaultRetryPolicy(18000, 1, 1f));
-        mQueue.add(seqRequest);
+        add(seqRequest);
     }
 
     /**
@@ -172,6 +278,46 @@ public class GeometryRetriever extends NetworkManager implements Response.ErrorL
     public void cancelNearby() {
         Log.d(TAG, "cancelListTasks: cancelled map list tasks");
         NearbyRequestFilter listFilter = new NearbyRequestFilter();
-        mQueue.cancelAll(listFilter);
+        cancelAll(listFilter);
+    }
+
+    /**
+     * Collects the tiles of a {@link #loadTiles} call, accessed on the tracks thread.
+     */
+    private class TileLoad {
+
+        private final NetworkResponseDataListener<GeometryCollection> mListener;
+
+        private final List<List<Polyline>> mTiles = new ArrayList<>();
+
+        private int mRemaining;
+
+        TileLoad(int tileCount, NetworkResponseDataListener<GeometryCollection> listener) {
+            mRemaining = tileCount;
+            mListener = listener;
+        }
+
+        /**
+         * @param segments the segments of the tile, null if the tile could not be loaded
+         */
+        void onTileLoaded(List<Polyline> segments) {
+            if (segments != null) {
+                mTiles.add(segments);
+            }
+            if (--mRemaining > 0) {
+                return;
+            }
+            GeometryCollection collection = new GeometryCollection();
+            if (mTiles.isEmpty()) {
+                collection.setHttpCode(NetworkResponseDataListener.HTTP_SERVICE_UNAVAILABLE);
+                mListener.requestFailed(NetworkResponseDataListener.HTTP_SERVICE_UNAVAILABLE, collection);
+                return;
+            }
+            collection.setHttpCode(NetworkResponseDataListener.HTTP_OK);
+            collection.getSegmentList().addAll(GeometryTileCache.merge(mTiles));
+            collection.setTotalFilteredItems(collection.getSegmentList().size());
+            Log.d(TAG, "loadTiles: " + collection.getSegmentList().size() + " segments from " + mTiles.size() + " tiles");
+            mListener.requestFinished(NetworkResponseDataListener.HTTP_OK, collection);
+        }
     }
 }
@@ -0,0 +1,368 @@
+package com.telenav.osv.manager.network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import com.telenav.osv.item.Polyline;
+import com.telenav.osv.item.network.GeometryCollection;
+import com.telenav.osv.manager.network.parser.GeometryParser;
+import com.telenav.osv.utils.Log;
+
+/**
+ * Disk cache of the coverage geometry, split in fixed size tiles each holding the listing response of its bounding box.
+ * <p>
+ * A tile is fresh for {@link #TILE_TTL}, expired tiles are still used, e.g. offline, while they are revalidated with their etag.
+ * The least recently used tiles are deleted once the files grow over the size limit. The parsed polylines of the last used tiles are
+ * kept in memory, so driving back and forth does not parse the same tiles again. Their segments are numbered once, when the tile is
+ * loaded, so the map keeps the same identifier for a segment across loads.
+ */
+public class GeometryTileCache {
+
+    /**
+     * tile side in degrees, about 2.2 km of latitude
+     */
+    static final double TILE_SIZE = 0.02;
+
+    /**
+     * age after which a tile is revalidated
+     */
+    static final long TILE_TTL = 24 * 60 * 60 * 1000;
+
+    private static final String TAG = "GeometryTileCache";
+
+    private static final long MAX_SIZE = 32 * 1024 * 1024;
+
+    private static final int MEMORY_TILES = 32;
+
+    private static final int VERSION = 1;
+
+    private static final String EXTENSION = ".tile";
+
+    /**
+     * limit of the segment identifiers, which wrap around to {@link GeometryParser#ONLINE_SEGMENTS_ID_MODIFIER} below the identifiers of
+     * the other map polylines
+     */
+    private static final int MAX_IDENTIFIER = 10000000;
+
+    private final File mDirectory;
+
+    private final long mMaxSize;
+
+    private final GeometryParser mParser = new GeometryParser();
+
+    private final LinkedHashMap<Long, Tile> mMemory = new LinkedHashMap<Long, Tile>(MEMORY_TILES, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+            return size() > MEMORY_TILES;
+        }
+    };
+
+    private int mNextIdentifier = GeometryParser.ONLINE_SEGMENTS_ID_MODIFIER;
+
+    GeometryTileCache(File directory) {
+        this(directory, MAX_SIZE);
+    }
+
+    /**
+     * @param directory the directory of the tile files
+     * @param maxSize the size of the tile files above which the least recently used ones are deleted
+     */
+    GeometryTileCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    static long key(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+
+    private static int row(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int column(long key) {
+        return (int) key;
+    }
+
+    private static int cell(double degrees) {
+        return (int) Math.floor(degrees / TILE_SIZE);
+    }
+
+    /**
+     * @return the keys of the tiles covering the bounding box, row by row
+     */
+    static List<Long> getTiles(double topLat, double leftLon, double bottomLat, double rightLon) {
+        ArrayList<Long> keys = new ArrayList<>();
+        for (int row = cell(bottomLat); row <= cell(topLat); row++) {
+            for (int column = cell(leftLon); column <= cell(rightLon); column++) {
+                keys.add(key(row, column));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @return the top left corner of the tile, in the format of the listing request
+     */
+    public static String getTopLeft(long key) {
+        return (row(key) + 1) * TILE_SIZE + "," + column(key) * TILE_SIZE;
+    }
+
+    /**
+     * @return the bottom right corner of the tile, in the format of the listing request
+     */
+    public static String getBottomRight(long key) {
+        return row(key) * TILE_SIZE + "," + (column(key) + 1) * TILE_SIZE;
+    }
+
+    /**
+     * Merges the segments of neighbouring tiles, segments crossing a tile border are listed by each tile but kept only once.
+     */
+    static ArrayList<Polyline> merge(List<List<Polyline>> tiles) {
+        ArrayList<Polyline> segments = new ArrayList<>();
+        HashSet<Long> keys = new HashSet<>();
+        for (List<Polyline> tile : tiles) {
+            for (Polyline polyline : tile) {
+                if (polyline.segmentKey == 0 || keys.add(polyline.segmentKey)) {
+                    segments.add(polyline);
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * @return the cached tile, parsed from its file if it is not in memory, or null if the tile was not cached
+     */
+    public Tile get(long key) {
+        synchronized (mMemory) {
+            Tile tile = mMemory.get(key);
+            if (tile != null) {
+                getFile(key).setLastModified(System.currentTimeMillis());
+                return tile;
+            }
+        }
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != VERSION) {
+                    throw new IOException("unknown tile version");
+                }
+                long time = in.readLong();
+                String etag = in.readUTF();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                GeometryCollection collection = mParser.parse(data, "UTF-8");
+                Tile tile = new Tile(collection.getSegmentList(), etag.isEmpty() ? null : etag, time);
+                file.setLastModified(System.currentTimeMillis());
+                synchronized (mMemory) {
+                    number(tile.segments);
+                    mMemory.put(key, tile);
+                }
+                return tile;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "get: dropping unreadable tile " + file.getName() + " " + e.getLocalizedMessage());
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the tile is cached and not expired, without parsing it
+     */
+    public boolean isFresh(long key) {
+        synchronized (mMemory) {
+            Tile tile = mMemory.get(key);
+            if (tile != null) {
+                return !tile.isExpired();
+            }
+        }
+        File file = getFile(key);
+        if (!file.exists()) {
+            return false;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                return in.readInt() == VERSION && System.currentTimeMillis() - in.readLong() < TILE_TTL;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stores a downloaded tile.
+     * @param data the listing response of the tile
+     * @param etag the etag of the response, null if it has none
+     * @param segments the segments parsed from the response
+     */
+    public void put(long key, byte[] data, String etag, List<Polyline> segments) {
+        long time = System.currentTimeMillis();
+        synchronized (mMemory) {
+            number(segments);
+            mMemory.put(key, new Tile(segments, etag, time));
+        }
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "put: could not create " + mDirectory);
+            return;
+        }
+        File file = getFile(key);
+        File temp = new File(mDirectory, file.getName() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(VERSION);
+                out.writeLong(time);
+                out.writeUTF(etag == null ? "" : etag);
+                out.writeInt(data.length);
+                out.write(data);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("could not rename " + temp);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "put: " + e.getLocalizedMessage());
+            temp.delete();
+            return;
+        }
+        trim();
+    }
+
+    /**
+     * marks the tile as fresh again, after the server confirmed it did not change
+     */
+    public void touch(long key) {
+        long time = System.currentTimeMillis();
+        synchronized (mMemory) {
+            Tile tile = mMemory.get(key);
+            if (tile != null) {
+                tile.time = time;
+            }
+        }
+        File file = getFile(key);
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            RandomAccessFile out = new RandomAccessFile(file, "rw");
+            try {
+                out.seek(4);
+                out.writeLong(time);
+            } finally {
+                out.close();
+            }
+            file.setLastModified(time);
+        } catch (IOException e) {
+            Log.w(TAG, "touch: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * @return the total size of the tile files
+     */
+    long getSize() {
+        long size = 0;
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * gives the segments of a loaded tile identifiers not used by the other tiles in memory
+     */
+    private void number(List<Polyline> segments) {
+        for (Polyline polyline : segments) {
+            if (mNextIdentifier >= MAX_IDENTIFIER) {
+                mNextIdentifier = GeometryParser.ONLINE_SEGMENTS_ID_MODIFIER;
+            }
+            polyline.setIdentifier(mNextIdentifier++);
+        }
+    }
+
+    File getFile(long key) {
+        return new File(mDirectory, row(key) + "_" + column(key) + EXTENSION);
+    }
+
+    /**
+     * deletes the least recently used tile files while they take more than the size limit
+     */
+    private synchronized void trim() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= mMaxSize) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+
+            @Override
+            public int compare(File lhs, File rhs) {
+                return Long.compare(lhs.lastModified(), rhs.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length && size > mMaxSize; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                size -= length;
+            }
+        }
+        Log.d(TAG, "trim: tile files take " + size / 1024 + " KB");
+    }
+
+    /**
+     * Segments of a cached tile.
+     */
+    public static class Tile {
+
+        public final List<Polyline> segments;
+
+        public final String etag;
+
+        private volatile long time;
+
+        Tile(List<Polyline> segments, String etag, long time) {
+            this.segments = segments;
+            this.etag = etag;
+            this.time = time;
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() - time > TILE_TTL;
+        }
+    }
+}
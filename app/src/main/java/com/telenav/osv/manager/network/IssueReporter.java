@@ -38,6 +38,13 @@ public class IssueReporter extends NetworkManager implements RequestQueue.Reques
      */
     private static String URL_ISSUE_UPLOAD = "http://" + "&&" + URL_VER + "upload/issue-file/";
 
+    /**
+     * queue of the upload lane for the log files, started while files are uploading so the interactive lane is not held by them
+     */
+    private final RequestQueue mUploadQueue;
+
+    private boolean mUploadQueueStarted;
+
     private ConcurrentLinkedQueue<StringRequest> mHolderQueue = new ConcurrentLinkedQueue<>();
 
     private NetworkResponseDataListener<IssueData> mListener;
@@ -48,7 +55,8 @@ public class IssueReporter extends NetworkManager implements RequestQueue.Reques
 
     public IssueReporter(Context context) {
         super(context);
-        mQueue.addRequestFinishedListener(this);
+        mUploadQueue = newUploadQueue(1);
+        mUploadQueue.addRequestFinishedListener(this);
         setEnvironment();
     }
 
@@ -61,16 +69,20 @@ public class IssueReporter extends NetworkManager implements RequestQueue.Reques
 
     @Override
     public void destroy() {
+        mUploadQueue.cancelAll(this);
+        mUploadQueue.removeRequestFinishedListener(this);
+        stopUploadQueue();
         super.destroy();
     }
 
     @Override
     public void onRequestFinished(Request<Object> request) {
-        Log.d(TAG, "onRequestFinished: " + request.toString());
-        if (request instanceof IssueUploadRequest) {
+        if (request instanceof IssueUploadRequest && request.getTag() == this) {
+            Log.d(TAG, "onRequestFinished: " + request.toString());
             mHolderQueue.remove(request);
             Log.d(TAG, "onRequestFinished: mHolderQueue size is " + mHolderQueue.size());
             if (mHolderQueue.size() == 0) {
+                stopUploadQueue();
                 if (mListener != null) {
                     mListener.requestFinished(NetworkResponseDataListener.HTTP_OK, new IssueData());
                 }
@@ -90,14 +102,26 @@ public class IssueReporter extends NetworkManager implements RequestQueue.Reques
 
                             @Override
                             public void run() {
-                                mQueue.stop();
+                                //every file is held before the first upload can finish, so the listener hears of the last one only
+                                ArrayList<IssueUploadRequest> requests = new ArrayList<>();
                                 int index = 0;
+                                //the log writer buffers the latest lines, they are written before the files are read
+                                Log.flush();
                                 ArrayList<OSVFile> files = Log.getLogFiles(mContext);
                                 for (OSVFile file : files) {
-                                    uploadIssueFile(listener, issueData.getOnlineID(), file, index);
+                                    IssueUploadRequest request = newIssueFileRequest(listener, issueData.getOnlineID(), file, index);
+                                    if (request != null) {
+                                        mHolderQueue.add(request);
+                                        requests.add(request);
+                                    }
                                     index++;
                                 }
-                                mQueue.start();
+                                if (!requests.isEmpty()) {
+                                    startUploadQueue();
+                                }
+                                for (IssueUploadRequest request : requests) {
+                                    addUpload(request);
+                                }
                             }
                         });
                     }
@@ -114,13 +138,50 @@ public class IssueReporter extends NetworkManager implements RequestQueue.Reques
                     }
                 }, "[Android;" + Build.MODEL + ";" + Build.VERSION.RELEASE + "] " + description, getAccessToken());
         issueRequest.setRetryPolicy(new DefaultRetryPolicy(18000, 1, 1f));
-        mQueue.add(issueRequest);
+        add(issueRequest);
+    }
+
+    private void uploadIssueFile(NetworkResponseDataListener<IssueData> listener, int id, OSVFile file, int index) {
+        IssueUploadRequest request = newIssueFileRequest(listener, id, file, index);
+        if (request != null) {
+            mHolderQueue.add(request);
+            addUpload(request);
+        }
+    }
+
+    private synchronized void startUploadQueue() {
+        if (!mUploadQueueStarted) {
+            mUploadQueueStarted = true;
+            mUploadQueue.start();
+        }
     }
 
-    private void uploadIssueFile(final NetworkResponseDataListener<IssueData> listener, final int id, final OSVFile file, final int index) {
+    /**
+     * stops the dispatchers of the upload lane once no file is uploading, a stopped queue holds no threads
+     */
+    private synchronized void stopUploadQueue() {
+        if (mUploadQueueStarted) {
+            mUploadQueueStarted = false;
+            mUploadQueue.stop();
+        }
+    }
+
+    /**
+     * adds the file upload to the upload lane, tagged with this manager
+     */
+    private void addUpload(IssueUploadRequest request) {
+        request.setTag(this);
+        mUploadQueue.add(request);
+    }
+
+    /**
+     * @return the upload request of the file, null if the file doesn't exist
+     */
+    private IssueUploadRequest newIssueFileRequest(final NetworkResponseDataListener<IssueData> listener, final int id, final OSVFile file,
+                                                   final int index) {
         if (!file.exists()) {
             Log.w(TAG, "uploadIssueFile: file doesn't exist: " + file.getPath());
-            return;
+            return null;
         }
         final IssueUploadRequest request =
                 new IssueUploadRequest(URL_ISSUE_UPLOAD, new OsvRequestResponseListener<HttpResponseParser, ApiResponse>(mHttpResponseParser) {
@@ -139,7 +200,6 @@ public class IssueReporter extends NetworkManager implements RequestQueue.Reques
                     }
                 }, getAccessToken(), file, id, index);
         request.setRetryPolicy(new DefaultRetryPolicy(UPLOAD_REQUEST_TIMEOUT, 0, 1f));
-        mHolderQueue.add(request);
-        mQueue.add(request);
+        return request;
     }
 }
@@ -552,7 +552,7 @@ public class LoginManager extends NetworkManager implements GoogleApiClient.OnCo
             }
         }, requestToken, secretToken);
         request.setRetryPolicy(new DefaultRetryPolicy(10000, 3, 1f));
-        mQueue.add(request);
+        add(request);
     }
 
     private void handleGoogleLoginResult(final GoogleSignInResult result) {
@@ -1,18 +1,8 @@
 package com.telenav.osv.manager.network;
 
-import java.io.File;
 import android.content.Context;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Process;
-import com.android.volley.ExecutorDelivery;
-import com.android.volley.Network;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.BasicNetwork;
-import com.android.volley.toolbox.DiskBasedCache;
-import com.android.volley.toolbox.HttpStack;
-import com.android.volley.toolbox.HurlStack;
 import com.telenav.osv.application.ApplicationPreferences;
 import com.telenav.osv.application.OSVApplication;
 import com.telenav.osv.application.PreferenceTypes;
@@ -48,44 +38,51 @@ abstract class NetworkManager {
     public int mCurrentServer = 0;
 
     /**
-     * request queue for operations
-     * adding a request here will be automatically run in the next available time
+     * request queue for operations, the interactive lane of the {@link NetworkTransport} shared with the other managers
+     * adding a request here will be automatically run in the next available time, use {@link #add(Request)} so it can be cancelled
      */
-    RequestQueue mQueue;
+    final RequestQueue mQueue;
 
     String mAccessToken;
 
-    private HandlerThread mQueueThread;
-
-    private Handler backgroundHandler;
+    private final NetworkTransport mTransport;
 
     NetworkManager(Context context) {
         this.mContext = context;
-        mQueueThread = new HandlerThread("QueueThread", Process.THREAD_PRIORITY_BACKGROUND);
-        mQueueThread.start();
-
         appPrefs = ((OSVApplication) mContext.getApplicationContext()).getAppPrefs();
         mCurrentServer = appPrefs.getIntPreference(PreferenceTypes.K_DEBUG_SERVER_TYPE);
-        mQueue = newRequestQueue(mContext, 4);
+        mTransport = NetworkTransport.getInstance(mContext);
+        mQueue = mTransport.getInteractiveQueue();
     }
 
     /**
-     * Creates a default instance of the worker pool and calls {@link RequestQueue#start()} on it.
-     * @param context A {@link Context} to use for creating the cache dir.
-     * @return A started {@link RequestQueue} instance.
+     * Creates a queue of the upload lane, sharing the connections of the transport but not its cache.
+     * @param nrOfThreads the number of parallel requests
+     * @return A stopped {@link RequestQueue} instance, started by the caller.
      */
-    RequestQueue newRequestQueue(Context context, int nrOfThreads) {
-        File cacheDir = new File(context.getCacheDir(), "volley");
-        HttpStack stack = new HurlStack();
-        Network network = new BasicNetwork(stack);
-        if (mQueueThread == null) {
-            mQueueThread = new HandlerThread("QueueThread", Process.THREAD_PRIORITY_BACKGROUND);
-        }
-        backgroundHandler = new Handler(mQueueThread.getLooper());
-        RequestQueue queue = new RequestQueue(new DiskBasedCache(cacheDir), network, nrOfThreads, new ExecutorDelivery(backgroundHandler));
-        queue.start();
+    RequestQueue newUploadQueue(int nrOfThreads) {
+        return mTransport.newUploadQueue(nrOfThreads);
+    }
 
-        return queue;
+    /**
+     * adds the request to the shared queue, tagged with this manager
+     */
+    <T> Request<T> add(Request<T> request) {
+        request.setTag(this);
+        return mQueue.add(request);
+    }
+
+    /**
+     * cancels the requests of this manager which match the filter, leaving the requests of the other managers in the shared queue
+     */
+    void cancelAll(final RequestQueue.RequestFilter filter) {
+        mQueue.cancelAll(new RequestQueue.RequestFilter() {
+
+            @Override
+            public boolean apply(Request<?> request) {
+                return request.getTag() == NetworkManager.this && filter.apply(request);
+            }
+        });
     }
 
     void runInBackground(Runnable runnable) {
@@ -107,24 +104,9 @@ abstract class NetworkManager {
     }
 
     void destroy() {
-        mQueue.cancelAll(new RequestQueue.RequestFilter() {
-
-            @Override
-            public boolean apply(Request<?> request) {
-                return true;
-            }
-        });
-        backgroundHandler.postDelayed(new Runnable() {
-
-            @Override
-            public void run() {
-                try {
-                    HandlerThread thread = mQueueThread;
-                    mQueueThread = null;
-                    thread.quit();
-                } catch (Exception ignored) {
-                }
-            }
-        }, 300);
+        mQueue.cancelAll(this);
+        if (Utils.isDebugEnabled(mContext)) {
+            mTransport.logStats();
+        }
     }
 }
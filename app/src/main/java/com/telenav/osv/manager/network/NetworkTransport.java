@@ -0,0 +1,171 @@
+package com.telenav.osv.manager.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import com.android.volley.AuthFailureError;
+import com.android.volley.CacheDispatcher;
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.Network;
+import com.android.volley.NetworkDispatcher;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.ResponseDelivery;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.HurlStack;
+import com.android.volley.toolbox.NoCache;
+import com.telenav.osv.utils.Log;
+
+/**
+ * Application wide http transport shared by the {@link NetworkManager}s. All requests go through one {@link Network}, so the
+ * connections kept alive by the url connection pool are reused across managers, and the responses are cached in a single
+ * {@link DiskBasedCache}.
+ * <p>
+ * The requests are split in two lanes. The interactive lane is one started queue shared by all managers, serving the small api calls
+ * from the cache when possible. The upload lane is made of the queues created with {@link #newUploadQueue(int)}, which bypass the
+ * cache and deliver their responses on their own thread, so a long upload never delays the responses of the interactive lane.
+ */
+class NetworkTransport {
+
+    private static final String TAG = "NetworkTransport";
+
+    private static final String CACHE_DIRECTORY = "volley";
+
+    private static final int INTERACTIVE_THREADS = 4;
+
+    /**
+     * idle connections kept alive by the url connection pool, enough for every dispatcher of both lanes
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 12;
+
+    private static NetworkTransport sInstance;
+
+    private final Network mNetwork;
+
+    private final RequestQueue mInteractiveQueue;
+
+    private final ResponseDelivery mUploadDelivery;
+
+    private final AtomicLong mRequestCount = new AtomicLong();
+
+    private final AtomicLong mClosedConnectionCount = new AtomicLong();
+
+    private NetworkTransport(Context context) {
+        raiseConnectionPoolSize();
+        mNetwork = new BasicNetwork(new MeteredStack());
+        mInteractiveQueue = new RequestQueue(new DiskBasedCache(new File(context.getCacheDir(), CACHE_DIRECTORY)), mNetwork,
+                INTERACTIVE_THREADS, newDelivery("NetworkDelivery"));
+        mInteractiveQueue.start();
+        mUploadDelivery = newDelivery("UploadDelivery");
+    }
+
+    static synchronized NetworkTransport getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new NetworkTransport(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private static ResponseDelivery newDelivery(String name) {
+        HandlerThread thread = new HandlerThread(name, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        return new ExecutorDelivery(new Handler(thread.getLooper()));
+    }
+
+    /**
+     * the url connection pool keeps 5 idle connections by default, less than the dispatchers of both lanes together
+     */
+    private static void raiseConnectionPoolSize() {
+        try {
+            String current = System.getProperty("http.maxConnections");
+            if (current == null || Integer.parseInt(current) < MAX_IDLE_CONNECTIONS) {
+                System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "raiseConnectionPoolSize: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * @return the started queue of the interactive lane, shared by all managers, should not be stopped
+     */
+    RequestQueue getInteractiveQueue() {
+        return mInteractiveQueue;
+    }
+
+    /**
+     * Creates a queue of the upload lane, the caller owns it and starts or stops it as needed, a stopped queue holds no threads.
+     * @param nrOfThreads the number of parallel requests
+     * @return a stopped {@link RequestQueue} instance
+     */
+    RequestQueue newUploadQueue(int nrOfThreads) {
+        return new RequestQueue(new NoCache(), mNetwork, nrOfThreads, mUploadDelivery);
+    }
+
+    /**
+     * @return the number of live dispatcher threads of both lanes
+     */
+    int getDispatcherThreadCount() {
+        Thread[] threads = new Thread[Thread.activeCount() * 2];
+        int count = Thread.enumerate(threads);
+        int dispatchers = 0;
+        for (int i = 0; i < count; i++) {
+            if (threads[i] instanceof NetworkDispatcher || threads[i] instanceof CacheDispatcher) {
+                dispatchers++;
+            }
+        }
+        return dispatchers;
+    }
+
+    /**
+     * @return the number of requests sent over the network
+     */
+    long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * @return the number of responses after which the server closed the connection, so it could not be reused
+     */
+    long getClosedConnectionCount() {
+        return mClosedConnectionCount.get();
+    }
+
+    /**
+     * @return the part of the responses whose connection was kept alive for the next request
+     */
+    float getConnectionReuseRatio() {
+        long requests = mRequestCount.get();
+        return requests == 0 ? 0 : 1f - (float) mClosedConnectionCount.get() / requests;
+    }
+
+    void logStats() {
+        Log.d(TAG, "logStats: dispatcher threads " + getDispatcherThreadCount() + ", requests " + getRequestCount() +
+                ", closed connections " + getClosedConnectionCount() + ", reuse ratio " + getConnectionReuseRatio());
+    }
+
+    /**
+     * counts the requests and the responses which close their connection
+     */
+    private class MeteredStack extends HurlStack {
+
+        @Override
+        public HttpResponse performRequest(Request<?> request, Map<String, String> additionalHeaders) throws IOException, AuthFailureError {
+            mRequestCount.incrementAndGet();
+            HttpResponse response = super.performRequest(request, additionalHeaders);
+            Header connection = response.getFirstHeader("Connection");
+            if (connection != null && "close".equalsIgnoreCase(connection.getValue())) {
+                mClosedConnectionCount.incrementAndGet();
+            }
+            return response;
+        }
+    }
+}
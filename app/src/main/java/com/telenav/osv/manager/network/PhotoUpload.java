@@ -0,0 +1,346 @@
+package com.telenav.osv.manager.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import android.os.Handler;
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.toolbox.StringRequest;
+import com.telenav.osv.db.SequenceDB;
+import com.telenav.osv.http.PhotoBatchRequest;
+import com.telenav.osv.http.PhotoRequest;
+import com.telenav.osv.http.ProgressiveEntity;
+import com.telenav.osv.item.OSVFile;
+import com.telenav.osv.item.network.ApiResponse;
+import com.telenav.osv.item.network.PhotoBatchResult;
+import com.telenav.osv.listener.network.NetworkResponseDataListener;
+import com.telenav.osv.listener.network.OsvRequestResponseListener;
+import com.telenav.osv.manager.network.parser.HttpResponseParser;
+import com.telenav.osv.manager.network.parser.PhotoBatchParser;
+import com.telenav.osv.utils.Log;
+import com.telenav.osv.utils.Utils;
+
+/**
+ * Uploads photos of a safe sequence, keeping their state in the upload journal of {@link SequenceDB}.
+ * <p>
+ * The photos are journaled in flight when their request is queued, and done on the response thread as soon as the server answers that
+ * it has them, so a restart before their files are deleted does not send them again. If batching is enabled, the photos are sent in
+ * batches to the batch endpoint, see {@link PhotoBatchRequest}. The ones which the server did not store are sent again in a new batch,
+ * and after {@link #MAX_BATCH_TRIES} batches one by one, as are the photos of a batch failing as a whole. A server answering 404 or 405
+ * on the batch endpoint gets the photos one by one from then on.
+ */
+class PhotoUpload {
+
+    /**
+     * batches sending the photos which the server did not store, before sending them one by one
+     */
+    static final int MAX_BATCH_TRIES = 3;
+
+    private static final String TAG = "PhotoUpload";
+
+    /**
+     * Use a very large number here, since we don't want this mechanism enabled for 2.1.6.
+     * <p>
+     * Using a very high number of retries for unknown failures is basically identical to the old behavior, i.e. potentially
+     * infinite retries until a request succeeds
+     */
+    private static final int MAX_TRIES_UNKNOWN_FAILURES = 50000;
+
+    /**
+     * false once the server answered that it has no batch endpoint, the photos are sent one by one from then on
+     */
+    private static volatile boolean sBatchSupported = true;
+
+    private final SequenceDB mDatabase;
+
+    private final String mUrl;
+
+    private final String mBatchUrl;
+
+    private final boolean mBatch;
+
+    private final String mToken;
+
+    private final int mSequenceId;
+
+    private final int mOnlineSequenceId;
+
+    private final Handler mResponseHandler;
+
+    private final Callback mCallback;
+
+    private final HttpResponseParser mParser = new HttpResponseParser();
+
+    private final PhotoBatchParser mBatchParser = new PhotoBatchParser();
+
+    /**
+     * @param url the photo endpoint, receiving one photo
+     * @param batchUrl the photo batch endpoint
+     * @param batch true if the photos are sent to the batch endpoint, otherwise one by one
+     * @param sequenceId local sequence id
+     * @param onlineSequenceId online sequence id
+     */
+    PhotoUpload(SequenceDB database, String url, String batchUrl, boolean batch, String token, int sequenceId, int onlineSequenceId,
+                Handler responseHandler, Callback callback) {
+        mDatabase = database;
+        mUrl = url;
+        mBatchUrl = batchUrl;
+        mBatch = batch;
+        mToken = token;
+        mSequenceId = sequenceId;
+        mOnlineSequenceId = onlineSequenceId;
+        mResponseHandler = responseHandler;
+        mCallback = callback;
+    }
+
+    static boolean isBatchSupported() {
+        return sBatchSupported;
+    }
+
+    /**
+     * lets the next uploads try the batch endpoint again, used by the tests
+     */
+    static void resetBatchSupported() {
+        sBatchSupported = true;
+    }
+
+    /**
+     * queues the photos in one batch, or one by one
+     * @param photos the photos, the missing files are deleted from the database and skipped
+     * @return the number of photos queued
+     */
+    int start(List<PhotoBatchRequest.Photo> photos) {
+        return sendBatch(photos, 0);
+    }
+
+    /**
+     * @param tries the number of batches which sent these photos before
+     * @return the number of photos queued
+     */
+    private int sendBatch(List<PhotoBatchRequest.Photo> photos, final int tries) {
+        //the photos sent again were counted as queued, the ones skipped now are reported to the callback
+        boolean requeued = tries > 0;
+        final List<PhotoBatchRequest.Photo> batch = new ArrayList<>();
+        for (PhotoBatchRequest.Photo photo : photos) {
+            if (photo.getFile().exists()) {
+                batch.add(photo);
+            } else {
+                skip(photo, requeued);
+            }
+        }
+        if (!mBatch || !sBatchSupported || batch.size() < 2 || tries >= MAX_BATCH_TRIES) {
+            int queued = 0;
+            for (PhotoBatchRequest.Photo photo : batch) {
+                if (send(photo, requeued)) {
+                    queued++;
+                }
+            }
+            return queued;
+        }
+        PhotoBatchRequest request = new PhotoBatchRequest(mBatchUrl, new OsvRequestResponseListener<PhotoBatchParser, PhotoBatchResult>(mBatchParser) {
+
+            @Override
+            public void onSuccess(final int status, final PhotoBatchResult result) {
+                final List<PhotoBatchRequest.Photo> uploaded = new ArrayList<>();
+                final List<PhotoBatchRequest.Photo> failed = new ArrayList<>();
+                for (PhotoBatchRequest.Photo photo : batch) {
+                    if (result.isUploaded(photo.getSequenceIndex())) {
+                        uploaded.add(photo);
+                    } else {
+                        failed.add(photo);
+                    }
+                }
+                //journaled right away, a restart before the files are deleted does not send them again
+                mDatabase.setUploadState(mSequenceId, SequenceDB.JOURNAL_TYPE_PHOTO, SequenceDB.UPLOAD_DONE, indexes(uploaded));
+                mCallback.runInBackground(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        Log.d(TAG, "sendBatch: " + uploaded.size() + " of " + batch.size() + " photos uploaded to " + mOnlineSequenceId);
+                        for (PhotoBatchRequest.Photo photo : failed) {
+                            mDatabase.failUpload(mSequenceId, SequenceDB.JOURNAL_TYPE_PHOTO, photo.getSequenceIndex());
+                        }
+                        if (!failed.isEmpty()) {
+                            //queued before finishing the others, so the upload is not seen as finished meanwhile
+                            sendBatch(failed, tries + 1);
+                        }
+                        for (PhotoBatchRequest.Photo photo : uploaded) {
+                            finish(photo, NetworkResponseDataListener.HTTP_OK, result.getPhotoResult(photo.getSequenceIndex()));
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(final int status, final PhotoBatchResult result) {
+                mCallback.runInBackground(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        Log.w(TAG, "sendBatch: batch of " + batch.size() + " photos failed: " + result);
+                        if (result.getHttpCode() == NetworkResponseDataListener.HTTP_NOT_FOUND ||
+                                result.getHttpCode() == NetworkResponseDataListener.HTTP_METHOD_NOT_ALLOWED) {
+                            Log.w(TAG, "sendBatch: no batch endpoint, sending the photos one by one");
+                            sBatchSupported = false;
+                        }
+                        for (PhotoBatchRequest.Photo photo : batch) {
+                            mDatabase.failUpload(mSequenceId, SequenceDB.JOURNAL_TYPE_PHOTO, photo.getSequenceIndex());
+                        }
+                        for (PhotoBatchRequest.Photo photo : batch) {
+                            send(photo, true);
+                        }
+                    }
+                });
+            }
+        }, new ProgressiveEntity.DataProgressListener() {
+
+            @Override
+            public void onProgressChanged(long totalSent, long totalSize) {
+                mCallback.onProgressChanged(totalSent, totalSize);
+            }
+        }, mToken, mOnlineSequenceId, batch, mResponseHandler);
+        request.setRetryPolicy(new DefaultRetryPolicy(NetworkManager.UPLOAD_REQUEST_TIMEOUT * batch.size(), 0, 1f));
+        mDatabase.setUploadState(mSequenceId, SequenceDB.JOURNAL_TYPE_PHOTO, SequenceDB.UPLOAD_IN_FLIGHT, indexes(batch));
+        mCallback.queue(request);
+        return batch.size();
+    }
+
+    /**
+     * queues a photo on its own, a missing file is deleted from the database instead
+     * @param requeued true if the photo was counted as queued before, see {@link #skip(PhotoBatchRequest.Photo, boolean)}
+     * @return true if the upload request was queued
+     */
+    private boolean send(final PhotoBatchRequest.Photo photo, boolean requeued) {
+        final OSVFile image = photo.getFile();
+        final int sequenceIndex = photo.getSequenceIndex();
+        if (!image.exists()) {
+            skip(photo, requeued);
+            return false;
+        }
+        PhotoRequest request = new PhotoRequest(mUrl, new OsvRequestResponseListener<HttpResponseParser, ApiResponse>(mParser) {
+
+            @Override
+            public void onSuccess(final int status, final ApiResponse apiResponse) {
+                Log.d(TAG, "send: success, entering background to delete file");
+                mDatabase.setUploadState(mSequenceId, SequenceDB.JOURNAL_TYPE_PHOTO, SequenceDB.UPLOAD_DONE, sequenceIndex);
+                mCallback.runInBackground(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        Log.d(TAG, "send: image uploaded successfully: " + mOnlineSequenceId + "/" + image.getName());
+                        finish(photo, status, apiResponse);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(int status, final ApiResponse apiResponse) {
+                mCallback.runInBackground(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        Log.e(TAG, "send: error uploading image: " + mOnlineSequenceId + "/" + image.getName() + ": " + apiResponse);
+                        onError(photo, apiResponse);
+                    }
+                });
+            }
+        }, new ProgressiveEntity.DataProgressListener() {
+
+            @Override
+            public void onProgressChanged(long totalSent, long totalSize) {
+                mCallback.onProgressChanged(totalSent, totalSize);
+            }
+        }, mToken, image, mOnlineSequenceId, sequenceIndex, photo.getLat(), photo.getLon(), (int) photo.getAccuracy(), mResponseHandler);
+        request.setRetryPolicy(new DefaultRetryPolicy(NetworkManager.UPLOAD_REQUEST_TIMEOUT, 0, 1f));
+        mDatabase.setUploadState(mSequenceId, SequenceDB.JOURNAL_TYPE_PHOTO, SequenceDB.UPLOAD_IN_FLIGHT, sequenceIndex);
+        mCallback.queue(request);
+        return true;
+    }
+
+    private void onError(PhotoBatchRequest.Photo photo, ApiResponse apiResponse) {
+        int apiCode = apiResponse.getApiCode();
+        if (apiCode == NetworkResponseDataListener.API_DUPLICATE_ENTRY) {
+            mDatabase.setUploadState(mSequenceId, SequenceDB.JOURNAL_TYPE_PHOTO, SequenceDB.UPLOAD_DONE, photo.getSequenceIndex());
+            apiResponse.setHttpCode(NetworkResponseDataListener.HTTP_OK);
+            apiResponse.setApiCode(NetworkResponseDataListener.API_SUCCESS);
+            finish(photo, NetworkResponseDataListener.HTTP_OK, apiResponse);
+            return;
+        }
+        //counted across restarts
+        int attempts = mDatabase.failUpload(mSequenceId, SequenceDB.JOURNAL_TYPE_PHOTO, photo.getSequenceIndex());
+        if (apiCode == NetworkResponseDataListener.API_ARGUMENT_OUT_OF_RANGE && mCallback.onSequenceRejected()) {
+            return;
+        }
+        //only if the failure is due to an exceptional cause, retry for a limited number of times, before we skip the frame.
+        if (apiCode == NetworkResponseDataListener.API_EXCEPTIONAL_FAILURE && attempts >= MAX_TRIES_UNKNOWN_FAILURES) {
+            //too many retries with an unknown failure, abort upload of photo
+            mDatabase.removeUpload(mSequenceId, SequenceDB.JOURNAL_TYPE_PHOTO, photo.getSequenceIndex());
+            apiResponse.setHttpCode(NetworkResponseDataListener.HTTP_OK);
+            apiResponse.setApiCode(NetworkResponseDataListener.API_SUCCESS);
+            finish(photo, NetworkResponseDataListener.HTTP_OK, apiResponse);
+        } else {
+            send(photo, true);
+        }
+    }
+
+    /**
+     * deletes a photo whose file is missing from the journal and the database
+     * @param requeued true if the photo was counted as queued before, it is reported to {@link Callback#onSkipped()} then
+     */
+    private void skip(PhotoBatchRequest.Photo photo, boolean requeued) {
+        Log.w(TAG, "skip: file doesn't exist: " + photo.getFile().getPath());
+        mDatabase.removeUpload(mSequenceId, SequenceDB.JOURNAL_TYPE_PHOTO, photo.getSequenceIndex());
+        mDatabase.deletePhoto(photo.getFile(), mSequenceId, photo.getSequenceIndex());
+        if (requeued) {
+            mCallback.onSkipped();
+        }
+    }
+
+    /**
+     * deletes an uploaded or skipped photo, after it was journaled
+     */
+    private void finish(PhotoBatchRequest.Photo photo, int status, ApiResponse apiResponse) {
+        long size = Utils.fileSize(photo.getFile());
+        mDatabase.deletePhoto(photo.getFile(), mSequenceId, photo.getSequenceIndex());
+        mCallback.onUploaded(size, status, apiResponse);
+    }
+
+    private static int[] indexes(List<PhotoBatchRequest.Photo> photos) {
+        int[] indexes = new int[photos.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = photos.get(i).getSequenceIndex();
+        }
+        return indexes;
+    }
+
+    /**
+     * connects a photo upload to the upload queue and the progress of its sequence
+     */
+    interface Callback {
+
+        /**
+         * adds a request of the upload to the upload queue
+         */
+        void queue(StringRequest request);
+
+        void runInBackground(Runnable runnable);
+
+        void onProgressChanged(long totalSent, long totalSize);
+
+        /**
+         * a photo is journaled and deleted, called on a background thread for every photo
+         * @param size the size of the deleted file
+         */
+        void onUploaded(long size, int status, ApiResponse apiResponse);
+
+        /**
+         * a photo counted as queued by {@link #start(List)} was dropped as its file is missing, called on a background thread
+         */
+        void onSkipped();
+
+        /**
+         * the server does not accept the online sequence id, called on a background thread
+         * @return true if the upload was cancelled, false to retry the photo
+         */
+        boolean onSequenceRejected();
+    }
+}
@@ -2,9 +2,15 @@ package com.telenav.osv.manager.network;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 import android.app.job.JobInfo;
@@ -33,6 +39,7 @@ import com.telenav.osv.db.SequenceDB;
 import com.telenav.osv.event.EventBus;
 import com.telenav.osv.event.network.LoginChangedEvent;
 import com.telenav.osv.event.ui.SequencesChangedEvent;
+import com.telenav.osv.http.PhotoBatchRequest;
 import com.telenav.osv.http.PhotoRequest;
 import com.telenav.osv.http.ProgressiveEntity;
 import com.telenav.osv.http.SequenceFinishedRequest;
@@ -47,6 +54,7 @@ import com.telenav.osv.item.network.SequenceData;
 import com.telenav.osv.listener.UploadProgressListener;
 import com.telenav.osv.listener.network.NetworkResponseDataListener;
 import com.telenav.osv.listener.network.OsvRequestResponseListener;
+import com.telenav.osv.manager.location.SensorManager;
 import com.telenav.osv.manager.network.encoder.ScoreJsonEncoder;
 import com.telenav.osv.manager.network.parser.HttpResponseParser;
 import com.telenav.osv.manager.network.parser.SequenceDataParser;
@@ -74,12 +82,39 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
     private static final String TAG = "UploadManager";
 
     /**
-     * Use a very large number here, since we don't want this mechanism enabled for 2.1.6.
-     * <p>
-     * Using a very high number of retries for unknown failures is basically identical to the old behavior, i.e. potentially
-     * infinite retries until a request succeeds
+     * number of dispatcher threads of the file upload queue, the upper limit of concurrent file uploads
      */
-    private static final int MAX_TRIES_UNKNOWN_FAILURES = 50000;
+    private static final int MAX_UPLOAD_CONNECTIONS = 6;
+
+    /**
+     * concurrent file uploads at the start of an upload, unless set in {@link PreferenceTypes#K_UPLOAD_CONNECTIONS}
+     */
+    private static final int DEFAULT_UPLOAD_CONNECTIONS = 2;
+
+    /**
+     * concurrent file uploads at the start of an upload containing photo sequences
+     */
+    private static final int DEFAULT_PHOTO_UPLOAD_CONNECTIONS = 4;
+
+    /**
+     * number of sequences which can be created or have files uploading at the same time
+     */
+    private static final int MAX_SEQUENCES_IN_FLIGHT = 2;
+
+    /**
+     * minimum time between two adjustments of the concurrent file uploads
+     */
+    private static final int CONCURRENCY_ADAPT_INTERVAL_MS = 5000;
+
+    /**
+     * photos sent in one request to the batch endpoint, small enough for a batch to be sent again after a dropped connection
+     */
+    private static final int PHOTO_BATCH_SIZE = 4;
+
+    /**
+     * photos of a safe sequence queued at the same time, enough batches to keep every upload connection busy while the next ones are read
+     */
+    private static final int PHOTO_WINDOW = 2 * MAX_UPLOAD_CONNECTIONS * PHOTO_BATCH_SIZE;
 
     public static int sUploadStatus = STATUS_IDLE;
 
@@ -90,8 +125,20 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
 
     private static String URL_VIDEO = "http://" + "&&" + URL_VER + "video/";
 
+    /**
+     * resumable video upload request url, see {@link VideoUpload}, used only if {@link PreferenceTypes#K_UPLOAD_VIDEO_PARTS} is set.
+     * The part endpoint, with its chunkOffset and fileSize fields, is an assumed server contract, the server has no such endpoint yet.
+     */
+    private static String URL_VIDEO_PART = "http://" + "&&" + URL_VER + "video/part/";
+
     private static String URL_PHOTO = "http://" + "&&" + URL_VER + "photo/";
 
+    /**
+     * photo batch request url, see {@link PhotoBatchRequest}, used only if {@link PreferenceTypes#K_UPLOAD_PHOTO_BATCH} is set.
+     * The batch endpoint and its indexed photo fields are an assumed server contract, the server has no such endpoint yet.
+     */
+    private static String URL_PHOTO_BATCH = "http://" + "&&" + URL_VER + "photo/batch/";
+
     /**
      * finish a sequence upload and mark for processing
      */
@@ -99,6 +146,11 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
 
     private final ConcurrentLinkedQueue<SequenceRequest> mCreateQueue = new ConcurrentLinkedQueue<>();
 
+    /**
+     * number of sequence requests sent to {@link #mSequenceQueue} which did not get a response yet
+     */
+    private final AtomicInteger mCreatingCount = new AtomicInteger();
+
     /**
      * request queue for operations
      * adding a request here will be automatically run in the next available time
@@ -136,7 +188,7 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
         mBackgroundHandler = new Handler(mHandlerThread.getLooper());
 
         mPartialResponseHandler = new Handler(handlerThread2.getLooper());
-        this.mSequenceQueue = newRequestQueue(mContext, 1);
+        this.mSequenceQueue = newUploadQueue(1);
         mSequenceQueue.stop();
         this.videoUploaderQueue = new VideoUploaderQueue(mContext);
         setEnvironment();
@@ -186,7 +238,9 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
         super.setEnvironment();
         URL_SEQUENCE = URL_SEQUENCE.replace("&&", URL_ENV[mCurrentServer]);
         URL_VIDEO = URL_VIDEO.replace("&&", URL_ENV[mCurrentServer]);
+        URL_VIDEO_PART = URL_VIDEO_PART.replace("&&", URL_ENV[mCurrentServer]);
         URL_PHOTO = URL_PHOTO.replace("&&", URL_ENV[mCurrentServer]);
+        URL_PHOTO_BATCH = URL_PHOTO_BATCH.replace("&&", URL_ENV[mCurrentServer]);
         URL_FINISH_SEQUENCE = URL_FINISH_SEQUENCE.replace("&&", URL_ENV[mCurrentServer]);
         Log.d(TAG, "setEnvironment: " + URL_ENV[mCurrentServer]);
     }
@@ -242,6 +296,8 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
             uploadFilter = new UploadRequestFilter();
             videoUploaderQueue.mVideoUploadQueue.cancelAll(uploadFilter);
             videoUploaderQueue.uploadTaskQueue.clear();
+            videoUploaderQueue.clearDispatchState();
+            mCreatingCount.set(0);
 
             if (videoUploaderQueue.progressListener != null) {
                 videoUploaderQueue.progressListener.onUploadCancelled(getTotalSizeValue(), getRemainingSizeValue());
@@ -298,6 +354,7 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
         }
         videoUploaderQueue.mVideoUploadQueue.stop();
         mSequenceQueue.stop();
+        mCreatingCount.set(0);
         runInBackground(new Runnable() {
 
             @Override
@@ -376,192 +433,139 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
     }
 
     /**
-     * uploads an image to a specific sequence
+     * uploads a video to a specific sequence, in parts if {@link PreferenceTypes#K_UPLOAD_VIDEO_PARTS} is set, see {@link VideoUpload}
      * @param sequence parent folder
-     * @param video image file
+     * @param video video file
      * @param onlineSequenceID online sequence id
-     * @param sequenceIndex the fileIndex of the image
+     * @param sequenceIndex the fileIndex of the video
      * @param listener request listener
+     * @return true if the upload request was queued
      */
-    private void uploadVideo(final LocalSequence sequence, final OSVFile video, final int onlineSequenceID, final int sequenceIndex,
-                             final NetworkResponseDataListener<ApiResponse> listener) {
-        if (!video.exists()) {
-            Log.w(TAG, "uploadVideo: file doesn't exist: " + video.getPath());
-            SequenceDB.instance.deleteVideo(video, sequence.getId(), sequenceIndex);
-            return;
-        }
-        final VideoRequest imageUploadReq =
-                new VideoRequest(URL_VIDEO, new OsvRequestResponseListener<HttpResponseParser, ApiResponse>(mHttpResponseParser) {
+    private boolean uploadVideo(final LocalSequence sequence, final OSVFile video, final int onlineSequenceID, final int sequenceIndex,
+                                final NetworkResponseDataListener<ApiResponse> listener) {
+        VideoUpload.Callback callback = new VideoUpload.Callback() {
 
-                    @Override
-                    public void onSuccess(final int status, final ApiResponse apiResponse) {
-                        Log.d(TAG, "uploadVideo: success, entering background to delete file");
-                        runInBackground(new Runnable() {
+            @Override
+            public void queue(StringRequest request) {
+                videoUploaderQueue.add(request);
+            }
 
-                            @Override
-                            public void run() {
-                                Log.d(TAG, "uploadVideo: video uploaded successfully: " + onlineSequenceID + "/" + video.getName());
-                                sequence.setSize(sequence.getSize() - Utils.fileSize(video));
-                                SequenceDB.instance.deleteVideo(video, sequence.getId(), sequenceIndex);
-                                videoUploaderQueue.markDone(sequence);
-                                listener.requestFinished(status, apiResponse);
-                            }
-                        });
-                    }
+            @Override
+            public void runInBackground(Runnable runnable) {
+                UploadManager.this.runInBackground(runnable);
+            }
 
-                    @Override
-                    public void onFailure(final int status, final ApiResponse apiResponse) {
-                        runInBackground(new Runnable() {
+            @Override
+            public void onProgressChanged(long totalSent, long totalSize) {
+                videoUploaderQueue.partialProgressChanged(totalSent, totalSize);
+            }
 
-                            @Override
-                            public void run() {
-                                Log.e(TAG, "uploadVideo: error uploading video: " + onlineSequenceID + "/" + video.getName() + ": " + apiResponse);
-                                if (apiResponse.getApiCode() == API_DUPLICATE_ENTRY) {
-                                    sequence.setSize(sequence.getSize() - Utils.fileSize(video));
-                                    SequenceDB.instance.deleteVideo(video, sequence.getId(), sequenceIndex);
-                                    videoUploaderQueue.markDone(sequence);
-                                    listener.requestFinished(HTTP_OK, apiResponse);
-                                } else {
-                                    if (apiResponse.getApiCode() == API_ARGUMENT_OUT_OF_RANGE && videoUploaderQueue.uploadTaskQueue.size() > 0) {
-                                        int nrRowsAffected = SequenceDB.instance.resetOnlineSequenceId(onlineSequenceID);
-                                        Log.d(TAG, "uploadVideo: rollback on sequence " + onlineSequenceID + ", nr of rows affected: " + nrRowsAffected);
-                                        final Handler handler = new Handler(Looper.getMainLooper());
-                                        handler.post(new Runnable() {
-
-                                            @Override
-                                            public void run() {
-                                                Toast.makeText(mContext, "Fixing sequence id...", Toast.LENGTH_LONG).show();
-                                                handler.postDelayed(new Runnable() {
-
-                                                    @Override
-                                                    public void run() {
-                                                        Toast.makeText(mContext, "Try uploading the sequence now.", Toast.LENGTH_LONG).show();
-                                                    }
-                                                }, 3030);
-                                            }
-                                        });
-                                        Log.d(TAG, "uploadVideo: cancelling upload tasks");
-                                        cancelUploadTasks();
-                                    } else {
-                                        uploadVideo(sequence, video, onlineSequenceID, sequenceIndex, listener);
-                                    }
-                                }
-                            }
-                        });
-                    }
-                }, new ProgressiveEntity.DataProgressListener() {
+            @Override
+            public void onSent(long bytes) {
+                sequence.setSize(sequence.getSize() - bytes);
+            }
 
-                    @Override
-                    public void onProgressChanged(long totalSent, long totalSize) {
-                        videoUploaderQueue.partialProgressChanged(totalSent, totalSize);
-                    }
-                }, getAccessToken(), video, onlineSequenceID, sequenceIndex, mPartialResponseHandler);
-        imageUploadReq.setRetryPolicy(new DefaultRetryPolicy(UPLOAD_REQUEST_TIMEOUT, 0, 1f));
-        videoUploaderQueue.add(imageUploadReq);
+            @Override
+            public void onUploaded(int status, ApiResponse apiResponse) {
+                videoUploaderQueue.markDone(sequence);
+                listener.requestFinished(status, apiResponse);
+            }
+
+            @Override
+            public boolean onSequenceRejected() {
+                return rejectSequence(onlineSequenceID);
+            }
+        };
+        boolean resumable = appPrefs.getBooleanPreference(PreferenceTypes.K_UPLOAD_VIDEO_PARTS, false);
+        return new VideoUpload(SequenceDB.instance, URL_VIDEO, URL_VIDEO_PART, resumable, getAccessToken(), sequence.getId(), onlineSequenceID,
+                video, sequenceIndex, mPartialResponseHandler, callback).start();
     }
 
     /**
-     * uploads an image to a specific sequence
-     * @param sequence parent folder
-     * @param image image file
+     * uploads photos of a safe sequence, in one batch if {@link PreferenceTypes#K_UPLOAD_PHOTO_BATCH} is set and the server has the batch
+     * endpoint, see {@link PhotoUpload}
+     * @param photos the photos, the missing files are deleted from the database and skipped
      * @param onlineSequenceID online sequence id
-     * @param sequenceIndex the fileIndex of the image
      * @param listener request listener
+     * @return the number of photos queued
      */
-    private void uploadImage(final LocalSequence sequence, final OSVFile image, final int onlineSequenceID, final int sequenceIndex,
-                             final double lat, final double lon, final int acc, final NetworkResponseDataListener<ApiResponse> listener,
-                             final int exceptionalFailureCount) {
-        if (!image.exists()) {
-            Log.w(TAG, "uploadImage: file doesn't exist: " + image.getPath());
-            SequenceDB.instance.deletePhoto(image, sequence.getId(), sequenceIndex);
-            return;
-        }
-        final PhotoRequest imageUploadReq =
-                new PhotoRequest(URL_PHOTO, new OsvRequestResponseListener<HttpResponseParser, ApiResponse>(mHttpResponseParser) {
+    private int uploadImages(final LocalSequence sequence, List<PhotoBatchRequest.Photo> photos, final int onlineSequenceID,
+                             final NetworkResponseDataListener<ApiResponse> listener) {
+        PhotoUpload.Callback callback = new PhotoUpload.Callback() {
 
-                    @Override
-                    public void onSuccess(final int status, final ApiResponse apiResponse) {
-                        Log.d(TAG, "uploadImage: success, entering background to delete file");
-                        runInBackground(new Runnable() {
+            @Override
+            public void queue(StringRequest request) {
+                videoUploaderQueue.add(request);
+            }
 
-                            @Override
-                            public void run() {
-                                Log.d(TAG, "uploadImage: image uploaded successfully: " + onlineSequenceID + "/" + image.getName());
-                                sequence.setSize(sequence.getSize() - Utils.fileSize(image));
-                                SequenceDB.instance.deletePhoto(image, sequence.getId(), sequenceIndex);
-                                videoUploaderQueue.markDone(sequence);
-                                listener.requestFinished(status, apiResponse);
-                            }
-                        });
-                    }
+            @Override
+            public void runInBackground(Runnable runnable) {
+                UploadManager.this.runInBackground(runnable);
+            }
 
-                    @Override
-                    public void onFailure(int status, final ApiResponse apiResponse) {
-                        runInBackground(new Runnable() {
+            @Override
+            public void onProgressChanged(long totalSent, long totalSize) {
+                videoUploaderQueue.partialProgressChanged(totalSent, totalSize);
+            }
 
-                            @Override
-                            public void run() {
-                                Log.e(TAG, "uploadImage: error uploading image: " + onlineSequenceID + "/" + image.getName() + ": " + apiResponse);
-
-                                if (apiResponse.getApiCode() == API_DUPLICATE_ENTRY) {
-                                    apiResponse.setHttpCode(HTTP_OK);
-                                    apiResponse.setApiCode(API_SUCCESS);
-                                    sequence.setSize(sequence.getSize() - Utils.fileSize(image));
-                                    SequenceDB.instance.deletePhoto(image, sequence.getId(), sequenceIndex);
-                                    videoUploaderQueue.markDone(sequence);
-                                    listener.requestFinished(HTTP_OK, apiResponse);
-                                } else {
-                                    if (apiResponse.getApiCode() == API_ARGUMENT_OUT_OF_RANGE && videoUploaderQueue.uploadTaskQueue.size() > 0) {
-                                        int nrRowsAffected = SequenceDB.instance.resetOnlineSequenceId(onlineSequenceID);
-                                        Log.d(TAG, "uploadImage: rollback on sequence " + onlineSequenceID + ", nr of rows affected: " + nrRowsAffected);
-                                        final Handler handler = new Handler(Looper.getMainLooper());
-                                        handler.post(new Runnable() {
-
-                                            @Override
-                                            public void run() {
-                                                Toast.makeText(mContext, "Fixing sequence id...", Toast.LENGTH_LONG).show();
-                                                handler.postDelayed(new Runnable() {
-
-                                                    @Override
-                                                    public void run() {
-                                                        Toast.makeText(mContext, "Try uploading the sequence now.", Toast.LENGTH_LONG).show();
-                                                    }
-                                                }, 3030);
-                                            }
-                                        });
-                                        Log.d(TAG, "uploadImage: cancelling upload tasks");
-                                        cancelUploadTasks();
-                                    } else {
-                                        if (apiResponse.getApiCode() == API_EXCEPTIONAL_FAILURE) {
-                                            //only if the failure is due to an exceptional cause, retry for a limited number of times, before we skip the frame.
-                                            if (exceptionalFailureCount < MAX_TRIES_UNKNOWN_FAILURES) {
-                                                uploadImage(sequence, image, onlineSequenceID, sequenceIndex, lat, lon, acc, listener, exceptionalFailureCount + 1);
-                                            } else {
-                                                //too many retries with an unknown failure, abort upload of photo
-                                                apiResponse.setHttpCode(HTTP_OK);
-                                                apiResponse.setApiCode(API_SUCCESS);
-                                                sequence.setSize(sequence.getSize() - Utils.fileSize(image));
-                                                SequenceDB.instance.deletePhoto(image, sequence.getId(), sequenceIndex);
-                                                videoUploaderQueue.markDone(sequence);
-                                                listener.requestFinished(HTTP_OK, apiResponse);
-                                            }
-                                        } else {
-                                            uploadImage(sequence, image, onlineSequenceID, sequenceIndex, lat, lon, acc, listener, exceptionalFailureCount + 1);
-                                        }
-                                    }
-                                }
-                            }
-                        });
-                    }
-                }, new ProgressiveEntity.DataProgressListener() {
+            @Override
+            public void onUploaded(long size, int status, ApiResponse apiResponse) {
+                sequence.setSize(sequence.getSize() - size);
+                videoUploaderQueue.markDone(sequence);
+                listener.requestFinished(status, apiResponse);
+            }
+
+            @Override
+            public void onSkipped() {
+                //frees the place of the photo in the window of the sequence
+                videoUploaderQueue.markDone(sequence);
+            }
+
+            @Override
+            public boolean onSequenceRejected() {
+                return rejectSequence(onlineSequenceID);
+            }
+        };
+        return new PhotoUpload(SequenceDB.instance, URL_PHOTO, URL_PHOTO_BATCH, isPhotoBatchEnabled(), getAccessToken(), sequence.getId(),
+                onlineSequenceID, mPartialResponseHandler, callback).start(photos);
+    }
+
+    /**
+     * @return true if the photos of safe sequences are sent to the batch endpoint, see {@link PreferenceTypes#K_UPLOAD_PHOTO_BATCH}
+     */
+    private boolean isPhotoBatchEnabled() {
+        return appPrefs.getBooleanPreference(PreferenceTypes.K_UPLOAD_PHOTO_BATCH, false) && PhotoUpload.isBatchSupported();
+    }
+
+    /**
+     * drops the online id of a sequence which the server does not accept and cancels the upload, the sequence is created again by the
+     * next upload
+     * @return true if the upload was cancelled
+     */
+    private boolean rejectSequence(int onlineSequenceID) {
+        if (videoUploaderQueue.uploadTaskQueue.size() == 0) {
+            return false;
+        }
+        int nrRowsAffected = SequenceDB.instance.resetOnlineSequenceId(onlineSequenceID);
+        Log.d(TAG, "rejectSequence: rollback on sequence " + onlineSequenceID + ", nr of rows affected: " + nrRowsAffected);
+        final Handler handler = new Handler(Looper.getMainLooper());
+        handler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                Toast.makeText(mContext, "Fixing sequence id...", Toast.LENGTH_LONG).show();
+                handler.postDelayed(new Runnable() {
 
                     @Override
-                    public void onProgressChanged(long totalSent, long totalSize) {
-                        videoUploaderQueue.partialProgressChanged(totalSent, totalSize);
+                    public void run() {
+                        Toast.makeText(mContext, "Try uploading the sequence now.", Toast.LENGTH_LONG).show();
                     }
-                }, getAccessToken(), image, onlineSequenceID, sequenceIndex, lat, lon, acc, mPartialResponseHandler);
-        imageUploadReq.setRetryPolicy(new DefaultRetryPolicy(UPLOAD_REQUEST_TIMEOUT, 0, 1f));
-        videoUploaderQueue.add(imageUploadReq);
+                }, 3030);
+            }
+        });
+        Log.d(TAG, "rejectSequence: cancelling upload tasks");
+        cancelUploadTasks();
+        return true;
     }
 
     /**
@@ -570,14 +574,16 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
      */
     private void createSequence(final LocalSequence sequence) {
         final int onlineId = SequenceDB.instance.getOnlineId(sequence.getId());
-        OSVFile metafile = new OSVFile(sequence.getFolder(), "track.txt.gz");
-        if (!metafile.exists()) {
+        OSVFile metafile = new OSVFile(sequence.getFolder(), SensorManager.METADATA_FILE);
+        if (!SensorManager.prepareLog(sequence.getFolder())) {
+            //recorded before the compressed metadata
             metafile = new OSVFile(sequence.getFolder(), "track.txt");
         }
         final OSVFile finalMetafile = metafile;
         Log.d(TAG, "createSequence: creating sequence request");
         if (onlineId == -1) {
-            Cursor cursor = SequenceDB.instance.getFrames(sequence.getId());
+            //only the position of the first frame is sent
+            Cursor cursor = SequenceDB.instance.getFrames(sequence.getId(), -1, 1);
             if (cursor != null && cursor.getCount() > 0) {
                 String position = "" + cursor.getDouble(cursor.getColumnIndex(SequenceDB.FRAME_LAT)) + "," +
                         cursor.getDouble(cursor.getColumnIndex(SequenceDB.FRAME_LON));
@@ -590,6 +596,7 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
 
                                     @Override
                                     public void run() {
+                                        mCreatingCount.decrementAndGet();
                                         int updatedRows = SequenceDB.instance.updateSequenceOnlineId(sequence.getId(), sequenceData.getOnlineID());
                                         if (updatedRows > 0) {
                                             sequence.setOnlineId(sequenceData.getOnlineID());
@@ -610,6 +617,7 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
 
                                     @Override
                                     public void run() {
+                                        mCreatingCount.decrementAndGet();
                                         Log.w(TAG, "createSequence: " + sequenceData);
 
                                         if (Thread.interrupted()) {
@@ -649,6 +657,7 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
 
                                 @Override
                                 public void run() {
+                                    mCreatingCount.decrementAndGet();
                                     uploadSequence(sequence, onlineId, UploadManager.this);
                                     requestFinished(status, sequenceData);
                                     if (Thread.interrupted()) {
@@ -664,6 +673,7 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
 
                                 @Override
                                 public void run() {
+                                    mCreatingCount.decrementAndGet();
                                     if (finalMetafile.exists()) {
                                         sequence.setSize(sequence.getSize() - Utils.fileSize(finalMetafile));
                                         finalMetafile.delete();
@@ -690,20 +700,34 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
         }
     }
 
+    /**
+     * Sends the next sequence creation request, while the files of at most {@link #MAX_SEQUENCES_IN_FLIGHT} - 1 earlier sequences are
+     * still uploading, so a sequence is already created and indexed by the time the previous one finishes. Finishes the upload if there
+     * is nothing left to create or upload.
+     */
     private void commitNextSequence() {
         Log.d(TAG, "commitNextSequence: " + mCreateQueue.size() + "\n" +
                 " -------------------------------------------------------------------------------------------------------------" + "\n" +
                 "------------------------------------------------------------------------------------------------------------" + "\n" +
                 "------------------------------------------------------------------------------------------------------------");
-        sUploadStatus = STATUS_INDEXING;
+        boolean uploading = videoUploaderQueue.isUploadingFiles();
         if (mCreateQueue.size() == 0) {
-            videoUploaderQueue.finishUpload();
+            if (!uploading && mCreatingCount.get() == 0) {
+                videoUploaderQueue.finishUpload();
+            }
             return;
         }
-        if (videoUploaderQueue.progressListener != null) {
-            videoUploaderQueue.progressListener.onUploadingMetadata();
+        if (!uploading) {
+            sUploadStatus = STATUS_INDEXING;
+            if (videoUploaderQueue.progressListener != null) {
+                videoUploaderQueue.progressListener.onUploadingMetadata();
+            }
         }
         synchronized (mCreateQueue) {
+            if (mCreatingCount.get() + videoUploaderQueue.mActiveSequences.size() >= MAX_SEQUENCES_IN_FLIGHT) {
+                Log.d(TAG, "commitNextSequence: " + MAX_SEQUENCES_IN_FLIGHT + " sequences in flight, waiting");
+                return;
+            }
             SequenceRequest request = mCreateQueue.poll();
             while (request == null) {
                 if (mCreateQueue.size() == 0) {
@@ -712,7 +736,10 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
                 request = mCreateQueue.poll();
             }
             mSequenceQueue.add(request);
-            mSequenceQueue.start();
+            if (mCreatingCount.getAndIncrement() == 0) {
+                //the dispatcher is idle, restarting it does not drop a request in progress
+                mSequenceQueue.start();
+            }
         }
     }
 
@@ -754,7 +781,7 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
                     }
                 }, getAccessToken(), "" + sequence.getOnlineId());
         seqRequest.setRetryPolicy(new DefaultRetryPolicy(UPLOAD_REQUEST_TIMEOUT, 0, 1f));
-        mQueue.add(seqRequest);
+        add(seqRequest);
     }
 
     /**
@@ -767,35 +794,27 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
         if (videoUploaderQueue.progressListener != null) {
             videoUploaderQueue.progressListener.onIndexingSequence(sequence, mCreateQueue.size());
         }
+        int queued = 0;
+        videoUploaderQueue.mActiveSequences.add(sequence);
+        //goes on from the journal of an interrupted upload, the files it got uploaded are not sent again
+        SequenceDB.instance.openUploadJournal(sequence.getId(), sequence.isSafe());
+        sequence.setSize(sequence.getSize() - SequenceDB.instance.deleteUploadedFiles(sequence.getId()));
         if (sequence.isSafe()) {
-            Cursor cursor = SequenceDB.instance.getFrames(sequence.getId());
-            if (cursor != null && cursor.getCount() > 0) {
-                while (!cursor.isAfterLast()) {
-                    if (Thread.interrupted()) {
-                        Log.w(TAG, "uploadSequence: interrupted");
-                        cursor.close();
-                        return;
-                    }
-                    String path = cursor.getString(cursor.getColumnIndex(SequenceDB.FRAME_FILE_PATH));
-                    int index = cursor.getInt(cursor.getColumnIndex(SequenceDB.FRAME_SEQ_INDEX));
-                    double lat = cursor.getDouble(cursor.getColumnIndex(SequenceDB.FRAME_LAT));
-                    double lon = cursor.getDouble(cursor.getColumnIndex(SequenceDB.FRAME_LON));
-                    int acc = cursor.getInt(cursor.getColumnIndex(SequenceDB.FRAME_ACCURACY));
-                    OSVFile img = new OSVFile(path);
-                    uploadImage(sequence, img, sequenceIdOnline, index, lat, lon, acc, listener, 0);
-                    if (videoUploaderQueue.progressListener != null) {
-                        videoUploaderQueue.progressListener.onPreparing(videoUploaderQueue.uploadTaskQueue.size());
-                    }
-                    cursor.moveToNext();
-                }
-                cursor.close();
-                sequence.setStatus(LocalSequence.STATUS_UPLOADING);
+            //only the first window is queued here, the next photos are read as the uploads finish
+            PhotoFeeder feeder = new PhotoFeeder(sequence, sequenceIdOnline, listener);
+            videoUploaderQueue.mFeeders.put(sequence, feeder);
+            queued = feeder.fill();
+            if (Thread.interrupted()) {
+                Log.w(TAG, "uploadSequence: interrupted");
+                return;
             }
-            if (cursor != null) {
-                cursor.close();
+            if (queued > 0) {
+                sequence.setStatus(LocalSequence.STATUS_UPLOADING);
+            } else {
+                videoUploaderQueue.mFeeders.remove(sequence);
             }
         } else {
-            Cursor cursor = SequenceDB.instance.getVideos(sequence.getId());
+            Cursor cursor = SequenceDB.instance.getPendingUploads(sequence.getId(), -1, 0);
             if (cursor != null && cursor.getCount() > 0) {
                 while (!cursor.isAfterLast()) {
                     if (Thread.interrupted()) {
@@ -803,10 +822,12 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
                         cursor.close();
                         return;
                     }
-                    String path = cursor.getString(cursor.getColumnIndex(SequenceDB.VIDEO_FILE_PATH));
-                    int index = cursor.getInt(cursor.getColumnIndex(SequenceDB.VIDEO_INDEX));
+                    String path = cursor.getString(cursor.getColumnIndex(SequenceDB.JOURNAL_FILE_PATH));
+                    int index = cursor.getInt(cursor.getColumnIndex(SequenceDB.JOURNAL_INDEX));
                     OSVFile img = new OSVFile(path);
-                    uploadVideo(sequence, img, sequenceIdOnline, index, listener);
+                    if (uploadVideo(sequence, img, sequenceIdOnline, index, listener)) {
+                        queued++;
+                    }
                     if (videoUploaderQueue.progressListener != null) {
                         videoUploaderQueue.progressListener.onPreparing(videoUploaderQueue.uploadTaskQueue.size());
                     }
@@ -819,7 +840,8 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
                 cursor.close();
             }
         }
-        if (videoUploaderQueue.uploadTaskQueue.isEmpty()) {
+        if (queued == 0) {
+            videoUploaderQueue.mActiveSequences.remove(sequence);
             finishSequence(sequence, new NetworkResponseDataListener<ApiResponse>() {
 
                 @Override
@@ -833,8 +855,7 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
                 }
             });
         }
-        //requests are done, start uploading
-        mSequenceQueue.stop();
+        //requests are done, start uploading, the sequence queue keeps running to create the next sequence meanwhile
         videoUploaderQueue.commit();
     }
 
@@ -849,6 +870,109 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
         return videoUploaderQueue.mTotalSize;
     }
 
+    /**
+     * Queues the photos of a safe sequence a window at a time, reading the next ones from the upload journal as the uploads finish, so a
+     * sequence holds at most {@link #PHOTO_WINDOW} photos whatever its length and the upload starts once the first window is read. The
+     * photos are sent in batches of {@link #PHOTO_BATCH_SIZE} if batching is enabled.
+     */
+    private class PhotoFeeder {
+
+        private final LocalSequence mSequence;
+
+        private final int mOnlineId;
+
+        private final NetworkResponseDataListener<ApiResponse> mListener;
+
+        /**
+         * sequence index of the last photo read from the journal
+         */
+        private int mLastIndex = -1;
+
+        /**
+         * photos queued which were not uploaded or skipped yet
+         */
+        private int mInWindow;
+
+        private boolean mExhausted;
+
+        PhotoFeeder(LocalSequence sequence, int onlineId, NetworkResponseDataListener<ApiResponse> listener) {
+            mSequence = sequence;
+            mOnlineId = onlineId;
+            mListener = listener;
+        }
+
+        /**
+         * queues the next photos until the window is full or all frames were read
+         * @return the number of photos queued
+         */
+        synchronized int fill() {
+            int queued = 0;
+            //waits for room for a whole batch, so the photos are not sent one by one as the window drains
+            int minimum = isPhotoBatchEnabled() ? PHOTO_BATCH_SIZE : 1;
+            while (!mExhausted && PHOTO_WINDOW - mInWindow >= minimum) {
+                int limit = PHOTO_WINDOW - mInWindow;
+                Cursor cursor = SequenceDB.instance.getPendingUploads(mSequence.getId(), mLastIndex, limit);
+                if (cursor == null) {
+                    mExhausted = true;
+                    break;
+                }
+                List<PhotoBatchRequest.Photo> batch = new ArrayList<>();
+                boolean interrupted = false;
+                try {
+                    int read = 0;
+                    while (cursor.getCount() > 0 && !cursor.isAfterLast()) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            interrupted = true;
+                            break;
+                        }
+                        String path = cursor.getString(cursor.getColumnIndex(SequenceDB.JOURNAL_FILE_PATH));
+                        int index = cursor.getInt(cursor.getColumnIndex(SequenceDB.JOURNAL_INDEX));
+                        double lat = cursor.getDouble(cursor.getColumnIndex(SequenceDB.JOURNAL_LAT));
+                        double lon = cursor.getDouble(cursor.getColumnIndex(SequenceDB.JOURNAL_LON));
+                        int acc = cursor.getInt(cursor.getColumnIndex(SequenceDB.JOURNAL_ACCURACY));
+                        mLastIndex = index;
+                        read++;
+                        batch.add(new PhotoBatchRequest.Photo(new OSVFile(path), index, lat, lon, acc));
+                        if (batch.size() == PHOTO_BATCH_SIZE) {
+                            queued += queue(batch);
+                            batch.clear();
+                        }
+                        cursor.moveToNext();
+                    }
+                    if (!interrupted && read < limit) {
+                        mExhausted = true;
+                    }
+                } finally {
+                    cursor.close();
+                }
+                queued += queue(batch);
+                if (interrupted) {
+                    return queued;
+                }
+            }
+            return queued;
+        }
+
+        private int queue(List<PhotoBatchRequest.Photo> batch) {
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            int queued = uploadImages(mSequence, batch, mOnlineId, mListener);
+            mInWindow += queued;
+            if (videoUploaderQueue.progressListener != null) {
+                videoUploaderQueue.progressListener.onPreparing(videoUploaderQueue.uploadTaskQueue.size());
+            }
+            return queued;
+        }
+
+        /**
+         * a queued photo was uploaded or skipped, making room for the next one
+         */
+        synchronized void frameDone() {
+            mInWindow = Math.max(0, mInWindow - 1);
+        }
+    }
+
     private class VideoUploaderQueue implements RequestQueue.RequestFinishedListener<Object> {
 
         /**
@@ -856,6 +980,16 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
          */
         UploadProgressListener progressListener;
 
+        /**
+         * sequences which have file requests queued, and are not finished yet
+         */
+        private final Set<LocalSequence> mActiveSequences = Collections.synchronizedSet(new HashSet<LocalSequence>());
+
+        /**
+         * photo feeders of the active safe sequences
+         */
+        private final Map<LocalSequence, PhotoFeeder> mFeeders = new ConcurrentHashMap<>();
+
         /**
          * separate upload request queue, for progress checking
          */
@@ -863,27 +997,119 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
 
         private ConcurrentLinkedQueue<StringRequest> tempTaskQueue = new ConcurrentLinkedQueue<>();
 
+        /**
+         * requests waiting for a free connection
+         */
+        private final ConcurrentLinkedQueue<StringRequest> mPendingRequests = new ConcurrentLinkedQueue<>();
+
+        /**
+         * requests handed to {@link #mVideoUploadQueue}
+         */
+        private final Set<Request> mInFlightRequests = Collections.synchronizedSet(new HashSet<Request>());
+
         private RequestQueue mVideoUploadQueue;
 
         private long mTotalSize = 0;
 
         private ConcurrentLinkedQueue<LocalSequence> mSequences = new ConcurrentLinkedQueue<>();
 
+        /**
+         * number of file uploads allowed at the same time, between 1 and {@link #MAX_UPLOAD_CONNECTIONS}
+         */
+        private volatile int mConcurrency = DEFAULT_UPLOAD_CONNECTIONS;
+
+        /**
+         * direction of the last concurrency change, 1 or -1
+         */
+        private int mAdaptDirection = 1;
+
+        private double mLastBandwidth = -1;
+
+        private long mLastAdaptTime = 0;
+
+        private boolean mStarted = false;
+
         VideoUploaderQueue(Context context) {
-            mVideoUploadQueue = newRequestQueue(context, 1);
+            mVideoUploadQueue = newUploadQueue(1);
             mVideoUploadQueue.addRequestFinishedListener(this);
             mVideoUploadQueue.stop();
         }
 
         @Override
         public void onRequestFinished(Request<Object> request) {
-            if (request instanceof VideoRequest || request instanceof PhotoRequest) {
+            if (request instanceof VideoRequest || request instanceof PhotoRequest || request instanceof PhotoBatchRequest) {
                 Log.d(TAG, "onRequestFinished: for video or photo file");
                 //noinspection SuspiciousMethodCalls
                 uploadTaskQueue.remove(request);
+                mInFlightRequests.remove(request);
+                adaptConcurrency();
+                dispatch();
+            }
+        }
+
+        /**
+         * @return true if there are file requests queued or uploading
+         */
+        boolean isUploadingFiles() {
+            return !uploadTaskQueue.isEmpty() || !mActiveSequences.isEmpty();
+        }
+
+        /**
+         * Hands pending requests to the request queue while there are less than {@link #mConcurrency} uploads in progress.
+         */
+        private void dispatch() {
+            if (!mStarted || sUploadStatus == STATUS_PAUSED) {
+                return;
+            }
+            synchronized (mInFlightRequests) {
+                while (mInFlightRequests.size() < mConcurrency) {
+                    StringRequest request = mPendingRequests.poll();
+                    if (request == null) {
+                        return;
+                    }
+                    mInFlightRequests.add(request);
+                    mVideoUploadQueue.add(request);
+                }
+            }
+        }
+
+        /**
+         * Hill climbing on the measured bandwidth: keeps changing the number of connections in the same direction while the throughput
+         * improves, and turns back when it drops.
+         */
+        private void adaptConcurrency() {
+            long now = System.currentTimeMillis();
+            if (now - mLastAdaptTime < CONCURRENCY_ADAPT_INTERVAL_MS) {
+                return;
+            }
+            double bandwidth = ConnectionClassManager.getInstance().getCurrentBandwidth();
+            if (bandwidth <= 0) {
+                return;
+            }
+            mLastAdaptTime = now;
+            if (mLastBandwidth > 0 && bandwidth < mLastBandwidth * 0.9) {
+                mAdaptDirection = -mAdaptDirection;
+            } else if (mLastBandwidth > 0 && bandwidth < mLastBandwidth * 1.1) {
+                //no significant change, keep the current level
+                mLastBandwidth = bandwidth;
+                return;
+            }
+            mLastBandwidth = bandwidth;
+            int concurrency = Math.max(1, Math.min(MAX_UPLOAD_CONNECTIONS, mConcurrency + mAdaptDirection));
+            if (concurrency != mConcurrency) {
+                Log.d(TAG, "adaptConcurrency: " + mConcurrency + " -> " + concurrency + " connections at " + (int) bandwidth + " kbps");
+                mConcurrency = concurrency;
             }
         }
 
+        private void clearDispatchState() {
+            mPendingRequests.clear();
+            mInFlightRequests.clear();
+            mActiveSequences.clear();
+            mFeeders.clear();
+            mStarted = false;
+        }
+
         @SuppressWarnings("unused")
         private void partialProgressChanged(long totalSent, long fileSize) {
             long totalSize = getTotalSizeValue();
@@ -905,6 +1131,7 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
             DeviceBandwidthSampler.getInstance().stopSampling();
             sUploadStatus = STATUS_IDLE;
             mVideoUploadQueue.stop();
+            clearDispatchState();
             try {
                 if (NetworkUtils.isWifiOn(mContext) || mWifiLock != null) {
                     if (mWifiLock != null) {
@@ -925,7 +1152,8 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
             } else {
                 Log.d(TAG, "add: adding request to live uploadQueue");
                 uploadTaskQueue.add(request);
-                mVideoUploadQueue.add(request);
+                mPendingRequests.add(request);
+                dispatch();
             }
         }
 
@@ -949,9 +1177,19 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
             }
             if (mVideoUploadQueue != null) {
                 mVideoUploadQueue.removeRequestFinishedListener(this);
+                mVideoUploadQueue.stop();
+            }
+            clearDispatchState();
+            int concurrency = appPrefs.getIntPreference(PreferenceTypes.K_UPLOAD_CONNECTIONS, DEFAULT_UPLOAD_CONNECTIONS);
+            if (thereIsSafe) {
+                concurrency = Math.max(concurrency, DEFAULT_PHOTO_UPLOAD_CONNECTIONS);
             }
-            Log.d(TAG, "initialize: multithreaded upload mode = " + thereIsSafe);
-            mVideoUploadQueue = newRequestQueue(mContext, thereIsSafe ? 4 : 1);
+            mConcurrency = Math.max(1, Math.min(MAX_UPLOAD_CONNECTIONS, concurrency));
+            mAdaptDirection = 1;
+            mLastBandwidth = -1;
+            mLastAdaptTime = 0;
+            Log.d(TAG, "initialize: starting with " + mConcurrency + " connections");
+            mVideoUploadQueue = newUploadQueue(MAX_UPLOAD_CONNECTIONS);
             mVideoUploadQueue.addRequestFinishedListener(this);
             mVideoUploadQueue.stop();
 
@@ -972,13 +1210,17 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
                         "  ------------------------------------------------------------------------------------------------------------" +
                         "------------------------------------------------------------------------------------------------------------" +
                         "------------------------------------------------------------------------------------------------------------");
-                ConnectionClassManager.getInstance().reset();
-                ConnectionClassManager.getInstance().register(progressListener);
-                DeviceBandwidthSampler.getInstance().startSampling();
-                mVideoUploadQueue.start();
-            } else {
-                commitNextSequence();
+                if (!mStarted) {
+                    mStarted = true;
+                    ConnectionClassManager.getInstance().reset();
+                    ConnectionClassManager.getInstance().register(progressListener);
+                    DeviceBandwidthSampler.getInstance().startSampling();
+                    mVideoUploadQueue.start();
+                }
+                dispatch();
             }
+            //create the next sequence while the files of this one are uploading
+            commitNextSequence();
         }
 
         void pause() {
@@ -991,6 +1233,9 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
                 uploadFilter = new UploadRequestFilter();
                 mVideoUploadQueue.cancelAll(uploadFilter);
                 uploadTaskQueue.clear();
+                mPendingRequests.clear();
+                mInFlightRequests.clear();
+                mStarted = false;
                 mVideoUploadQueue.stop();
                 Log.d(TAG, "pause: upload paused");
                 int previousStatus = sUploadStatus;
@@ -1004,20 +1249,32 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
         void resume() {
             Log.d(TAG, "resume: called upload resume");
             uploadTaskQueue.clear();
-            if ((uploadTaskQueue.size() > 0 || tempTaskQueue.size() > 0) && sUploadStatus == STATUS_PAUSED) {
+            if ((uploadTaskQueue.size() > 0 || tempTaskQueue.size() > 0 || !mFeeders.isEmpty()) && sUploadStatus == STATUS_PAUSED) {
                 for (StringRequest req : tempTaskQueue) {
                     if (req.isCanceled()) {
                         req.reInit();
                     }
                     req.reInit();
-                    mVideoUploadQueue.add(req);
+                    mPendingRequests.add(req);
                     uploadTaskQueue.add(req);
                 }
                 tempTaskQueue.clear();
                 Log.d(TAG, "resume: continuing " + uploadTaskQueue.size() + " requests");
+                sUploadStatus = STATUS_UPLOADING;
+                mStarted = true;
                 mVideoUploadQueue.start();
+                dispatch();
+                //photos finished while pausing left room in the windows
+                for (final PhotoFeeder feeder : mFeeders.values()) {
+                    runInBackground(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            feeder.fill();
+                        }
+                    });
+                }
                 Log.d(TAG, "resume: upload resumed");
-                sUploadStatus = STATUS_UPLOADING;
                 if (progressListener != null) {
                     progressListener.onUploadResumed();
                 }
@@ -1035,6 +1292,10 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
         }
 
         void markDone(final LocalSequence sequence) {
+            PhotoFeeder feeder = mFeeders.get(sequence);
+            if (feeder != null) {
+                feeder.frameDone();
+            }
             if (sUploadStatus == STATUS_IDLE) {
                 cancelUploadTasks();
                 return;
@@ -1043,6 +1304,10 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
                 pause();
                 return;
             }
+            if (feeder != null) {
+                //queue the next photos first, the missing files found while reading them are deleted and not counted below
+                feeder.fill();
+            }
             if (progressListener != null) {
                 progressListener.onImageUploaded(sequence);
             }
@@ -1058,7 +1323,10 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
             final long remainingSize = getRemainingSizeValue();
 
             Log.d(TAG, "markDone: " + " imageCount " + sequence.getFrameCount());
-            if (sequence.getFrameCount() <= 0) {
+            boolean sequenceDone = sequence.getFrameCount() <= 0;
+            if (sequenceDone) {
+                mFeeders.remove(sequence);
+                mActiveSequences.remove(sequence);
                 runInBackground(new Runnable() {
 
                     @Override
@@ -1086,12 +1354,10 @@ public class UploadManager extends NetworkManager implements NetworkResponseData
             if (progressListener != null) {
                 progressListener.onProgressChanged(Math.max(totalSize, 1), remainingSize);
             }
-            if (uploadTaskQueue.isEmpty() && mCreateQueue.isEmpty()) {
+            if (uploadTaskQueue.isEmpty() && mCreateQueue.isEmpty() && mCreatingCount.get() == 0) {
                 finishUpload();
-            } else if (uploadTaskQueue.isEmpty()) {
-                synchronized (mCreateQueue) {
-                    commitNextSequence();
-                }
+            } else if (sequenceDone || uploadTaskQueue.isEmpty()) {
+                commitNextSequence();
             }
         }
     }
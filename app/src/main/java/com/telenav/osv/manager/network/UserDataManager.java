@@ -234,7 +234,7 @@ public class UserDataManager extends NetworkManager implements Response.ErrorLis
         seqRequest.setRetryPolicy(new DefaultRetryPolicy(3500, 5, 1f));
         seqRequest.setShouldCache(false);
         cancelListTasks();
-        mQueue.add(seqRequest);
+        add(seqRequest);
     }
 
     /**
@@ -277,7 +277,7 @@ public class UserDataManager extends NetworkManager implements Response.ErrorLis
         seqRequest.setRetryPolicy(new DefaultRetryPolicy(3500, 5, 1f));
         seqRequest.setShouldCache(false);
         cancelListTasks();
-        mQueue.add(seqRequest);
+        add(seqRequest);
     }
 
     /**
@@ -318,7 +318,7 @@ public class UserDataManager extends NetworkManager implements Response.ErrorLis
         seqRequest.setRetryPolicy(new DefaultRetryPolicy(3500, 5, 1f));
         seqRequest.setShouldCache(false);
         cancelListTasks();
-        mQueue.add(seqRequest);
+        add(seqRequest);
     }
 
     /**
@@ -356,7 +356,7 @@ public class UserDataManager extends NetworkManager implements Response.ErrorLis
                     }
                 }, sequenceId, getAccessToken());
         seqRequest.setRetryPolicy(new DefaultRetryPolicy(2500, 5, 1f));
-        mQueue.add(seqRequest);
+        add(seqRequest);
     }
 
     public void getUserProfileDetails(final NetworkResponseDataListener<UserData> listener) {
@@ -410,7 +410,7 @@ public class UserDataManager extends NetworkManager implements Response.ErrorLis
                     }
                 }, userName);
         profileRequest.setShouldCache(false);
-        mQueue.add(profileRequest);
+        add(profileRequest);
     }
 
     public void getDriverProfileDetails(final NetworkResponseDataListener<DriverData> listener) {
@@ -467,7 +467,7 @@ public class UserDataManager extends NetworkManager implements Response.ErrorLis
                     }
                 }, token);
         profileRequest.setShouldCache(false);
-        mQueue.add(profileRequest);
+        add(profileRequest);
     }
 
     public void getDriverPayRateDetails(final NetworkResponseDataListener<PayRateData> listener) {
@@ -505,7 +505,7 @@ public class UserDataManager extends NetworkManager implements Response.ErrorLis
                 }, token);
 
         driverPayRatesRequest.setShouldCache(false);
-        mQueue.add(driverPayRatesRequest);
+        add(driverPayRatesRequest);
     }
 
     public void getLeaderboardData(final NetworkResponseDataListener<UserCollection> listener, String date, String countryCode) {
@@ -536,9 +536,9 @@ public class UserDataManager extends NetworkManager implements Response.ErrorLis
                         });
                     }
                 }, date, countryCode, null);
-        mQueue.cancelAll(new LeaderboardRequestFilter());
+        cancelAll(new LeaderboardRequestFilter());
         leaderboardRequest.setShouldCache(false);
-        mQueue.add(leaderboardRequest);
+        add(leaderboardRequest);
     }
 
     /**
@@ -575,7 +575,7 @@ public class UserDataManager extends NetworkManager implements Response.ErrorLis
                         });
                     }
                 }, sequenceId, getAccessToken());
-        mQueue.add(seqRequest);
+        add(seqRequest);
     }
 
     @Subscribe(sticky = true, threadMode = ThreadMode.BACKGROUND)
@@ -599,6 +599,6 @@ public class UserDataManager extends NetworkManager implements Response.ErrorLis
     private void cancelListTasks() {
         Log.d(TAG, "cancelListTasks: cancelled map list tasks and listSegments");
         ListRequestFilter listFilter = new ListRequestFilter();
-        mQueue.cancelAll(listFilter);
+        cancelAll(listFilter);
     }
 }
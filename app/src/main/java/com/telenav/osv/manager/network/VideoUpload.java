@@ -0,0 +1,255 @@
+package com.telenav.osv.manager.network;
+
+import android.os.Handler;
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.toolbox.StringRequest;
+import com.telenav.osv.db.SequenceDB;
+import com.telenav.osv.http.ProgressiveEntity;
+import com.telenav.osv.http.VideoRequest;
+import com.telenav.osv.item.OSVFile;
+import com.telenav.osv.item.network.ApiResponse;
+import com.telenav.osv.listener.network.NetworkResponseDataListener;
+import com.telenav.osv.listener.network.OsvRequestResponseListener;
+import com.telenav.osv.manager.network.parser.HttpResponseParser;
+import com.telenav.osv.utils.Log;
+import com.telenav.osv.utils.Utils;
+
+/**
+ * Uploads a video of a sequence, keeping its state in the upload journal of {@link SequenceDB}.
+ * <p>
+ * By default the whole file is sent to the video endpoint in one request. In resumable mode the file is sent to the video part endpoint
+ * in parts of {@link #PART_SIZE}, and the offset acknowledged by the server is checkpointed in the video record, so a retry or a restart
+ * only sends the parts which were not acknowledged. A server answering 404 or 405 on the part endpoint has no resumable uploads, the
+ * videos are sent whole from then on. The part endpoint, with its chunkOffset and fileSize fields, is an assumed server contract.
+ */
+class VideoUpload {
+
+    /**
+     * size of the video parts of a resumable upload, a dropped connection loses at most this much
+     */
+    static final long PART_SIZE = 1024 * 1024;
+
+    private static final String TAG = "VideoUpload";
+
+    /**
+     * false once the server answered that it has no part endpoint or did not follow the part offsets, the videos are sent whole from
+     * then on
+     */
+    private static volatile boolean sPartsSupported = true;
+
+    private final SequenceDB mDatabase;
+
+    private final String mUrl;
+
+    private final String mPartUrl;
+
+    private final boolean mResumable;
+
+    private final String mToken;
+
+    private final int mSequenceId;
+
+    private final int mOnlineSequenceId;
+
+    private final OSVFile mVideo;
+
+    private final int mSequenceIndex;
+
+    private final Handler mResponseHandler;
+
+    private final Callback mCallback;
+
+    private final HttpResponseParser mParser = new HttpResponseParser();
+
+    /**
+     * bytes of the file reported to {@link Callback#onSent(long)} so far
+     */
+    private long mReported;
+
+    /**
+     * @param url the video endpoint, receiving whole files
+     * @param partUrl the video part endpoint, receiving the parts of resumable uploads
+     * @param resumable true to send the video in parts, while the server supports it
+     * @param sequenceId local sequence id
+     * @param onlineSequenceId online sequence id
+     * @param sequenceIndex the index of the video
+     */
+    VideoUpload(SequenceDB database, String url, String partUrl, boolean resumable, String token, int sequenceId, int onlineSequenceId,
+                OSVFile video, int sequenceIndex, Handler responseHandler, Callback callback) {
+        mDatabase = database;
+        mUrl = url;
+        mPartUrl = partUrl;
+        mResumable = resumable;
+        mToken = token;
+        mSequenceId = sequenceId;
+        mOnlineSequenceId = onlineSequenceId;
+        mVideo = video;
+        mSequenceIndex = sequenceIndex;
+        mResponseHandler = responseHandler;
+        mCallback = callback;
+    }
+
+    /**
+     * lets the next uploads try the part endpoint again, used by the tests
+     */
+    static void resetPartsSupported() {
+        sPartsSupported = true;
+    }
+
+    /**
+     * queues the first request of the upload, a missing file is deleted from the database instead
+     * @return true if the upload request was queued
+     */
+    boolean start() {
+        if (!mVideo.exists()) {
+            Log.w(TAG, "start: file doesn't exist: " + mVideo.getPath());
+            mDatabase.removeUpload(mSequenceId, SequenceDB.JOURNAL_TYPE_VIDEO, mSequenceIndex);
+            mDatabase.deleteVideo(mVideo, mSequenceId, mSequenceIndex);
+            return false;
+        }
+        send();
+        return true;
+    }
+
+    /**
+     * queues the whole file, or in resumable mode the part following the checkpoint
+     */
+    private void send() {
+        final long fileSize = Utils.fileSize(mVideo);
+        final boolean parts = mResumable && sPartsSupported;
+        long offset = 0;
+        if (parts) {
+            offset = mDatabase.getVideoUploadOffset(mSequenceId, mSequenceIndex);
+            if (offset >= fileSize) {
+                Log.w(TAG, "send: checkpoint " + offset + " past the end of " + mVideo.getName() + ", restarting");
+                offset = 0;
+            }
+        }
+        final long partOffset = offset;
+        final long partLength = parts ? Math.min(PART_SIZE, fileSize - offset) : -1;
+        //a duplicate entry means the video is stored only when the request carries the whole file
+        final boolean wholeFile = !parts || partLength >= fileSize;
+        String url = parts ? mPartUrl : mUrl;
+        final VideoRequest request = new VideoRequest(url, new OsvRequestResponseListener<HttpResponseParser, ApiResponse>(mParser) {
+
+            @Override
+            public void onSuccess(final int status, final ApiResponse apiResponse) {
+                if (parts && partOffset + partLength < fileSize) {
+                    Log.d(TAG, "send: part uploaded: " + mOnlineSequenceId + "/" + mVideo.getName() + " " + (partOffset + partLength) +
+                            "/" + fileSize);
+                    //checkpoint and queue the next part before this request leaves the upload queue
+                    mDatabase.setVideoUploadOffset(mSequenceId, mSequenceIndex, partOffset + partLength);
+                    report(partOffset + partLength);
+                    send();
+                    return;
+                }
+                Log.d(TAG, "send: success, entering background to delete file");
+                //journaled right away, a restart before the file is deleted does not send it again
+                mDatabase.setUploadState(mSequenceId, SequenceDB.JOURNAL_TYPE_VIDEO, SequenceDB.UPLOAD_DONE, mSequenceIndex);
+                mCallback.runInBackground(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        Log.d(TAG, "send: video uploaded successfully: " + mOnlineSequenceId + "/" + mVideo.getName());
+                        finish(status, apiResponse);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(final int status, final ApiResponse apiResponse) {
+                mCallback.runInBackground(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        Log.e(TAG, "send: error uploading video: " + mOnlineSequenceId + "/" + mVideo.getName() + ": " + apiResponse);
+                        onError(apiResponse, parts, wholeFile);
+                    }
+                });
+            }
+        }, new ProgressiveEntity.DataProgressListener() {
+
+            @Override
+            public void onProgressChanged(long totalSent, long totalSize) {
+                mCallback.onProgressChanged(totalSent, totalSize);
+            }
+        }, mToken, mVideo, mOnlineSequenceId, mSequenceIndex, partOffset, partLength, mResponseHandler);
+        request.setRetryPolicy(new DefaultRetryPolicy(NetworkManager.UPLOAD_REQUEST_TIMEOUT, 0, 1f));
+        mDatabase.setUploadState(mSequenceId, SequenceDB.JOURNAL_TYPE_VIDEO, SequenceDB.UPLOAD_IN_FLIGHT, mSequenceIndex);
+        mCallback.queue(request);
+    }
+
+    private void onError(ApiResponse apiResponse, boolean parts, boolean wholeFile) {
+        int httpCode = apiResponse.getHttpCode();
+        int apiCode = apiResponse.getApiCode();
+        if (apiCode == NetworkResponseDataListener.API_DUPLICATE_ENTRY && wholeFile) {
+            mDatabase.setUploadState(mSequenceId, SequenceDB.JOURNAL_TYPE_VIDEO, SequenceDB.UPLOAD_DONE, mSequenceIndex);
+            finish(NetworkResponseDataListener.HTTP_OK, apiResponse);
+            return;
+        }
+        mDatabase.failUpload(mSequenceId, SequenceDB.JOURNAL_TYPE_VIDEO, mSequenceIndex);
+        boolean noPartEndpoint = httpCode == NetworkResponseDataListener.HTTP_NOT_FOUND ||
+                httpCode == NetworkResponseDataListener.HTTP_METHOD_NOT_ALLOWED;
+        if (parts && (noPartEndpoint || apiCode == NetworkResponseDataListener.API_DUPLICATE_ENTRY)) {
+            //a duplicate part means the server does not follow the offsets, the video is sent again rather than counted as uploaded
+            Log.w(TAG, "onError: no resumable uploads on the server, sending the videos whole");
+            sPartsSupported = false;
+            mDatabase.setVideoUploadOffset(mSequenceId, mSequenceIndex, 0);
+            send();
+        } else if (apiCode != NetworkResponseDataListener.API_ARGUMENT_OUT_OF_RANGE || !mCallback.onSequenceRejected()) {
+            //resumes from the last acknowledged part
+            send();
+        }
+    }
+
+    /**
+     * deletes the uploaded video, after it was journaled done
+     */
+    private void finish(int status, ApiResponse apiResponse) {
+        report(Utils.fileSize(mVideo));
+        mDatabase.deleteVideo(mVideo, mSequenceId, mSequenceIndex);
+        mCallback.onUploaded(status, apiResponse);
+    }
+
+    /**
+     * reports the bytes acknowledged by the server since the last report
+     * @param acknowledged the bytes of the file the server has
+     */
+    private void report(long acknowledged) {
+        if (acknowledged > mReported) {
+            mCallback.onSent(acknowledged - mReported);
+            mReported = acknowledged;
+        }
+    }
+
+    /**
+     * connects a video upload to the upload queue and the progress of its sequence
+     */
+    interface Callback {
+
+        /**
+         * adds a request of the upload to the upload queue
+         */
+        void queue(StringRequest request);
+
+        void runInBackground(Runnable runnable);
+
+        void onProgressChanged(long totalSent, long totalSize);
+
+        /**
+         * @param bytes bytes of the file acknowledged by the server since the last call
+         */
+        void onSent(long bytes);
+
+        /**
+         * the video is journaled done and deleted, called on a background thread
+         */
+        void onUploaded(int status, ApiResponse apiResponse);
+
+        /**
+         * the server does not accept the online sequence id, called on a background thread
+         * @return true if the upload was cancelled, false to retry the video
+         */
+        boolean onSequenceRejected();
+    }
+}
@@ -1,5 +1,6 @@
 package com.telenav.osv.manager.network.parser;
 
+import java.io.UnsupportedEncodingException;
 import org.json.JSONObject;
 import com.android.volley.TimeoutError;
 import com.android.volley.VolleyError;
@@ -56,6 +57,22 @@ public abstract class ApiResponseParser<T extends ApiResponse> {
         return response;
     }
 
+    /**
+     * Parses a raw response body, by default the body is decoded and handed to {@link #parse(String)}.
+     * @param data the response body
+     * @param charset the charset of the body
+     * @return the parsed response
+     */
+    public T parse(byte[] data, String charset) {
+        String json;
+        try {
+            json = new String(data, charset);
+        } catch (UnsupportedEncodingException e) {
+            json = new String(data);
+        }
+        return parse(json);
+    }
+
     public T parse(String json) {
 
         T response = getHolder();
@@ -1,77 +1,117 @@
 package com.telenav.osv.manager.network.parser;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-import com.skobbler.ngx.SKCoordinate;
-import com.telenav.osv.item.ImageCoordinate;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import android.util.JsonReader;
+import com.telenav.osv.item.CoordinateStore;
 import com.telenav.osv.item.Polyline;
 import com.telenav.osv.item.network.GeometryCollection;
 import com.telenav.osv.utils.Log;
 
 /**
- * json parser for geometry
+ * json parser for geometry, streams the segments into polylines sharing one {@link CoordinateStore}
  * Created by kalmanb on 8/3/17.
  */
-public class GeometryParser extends ApiResponseParser<GeometryCollection> {
+public class GeometryParser extends StreamingResponseParser<GeometryCollection> {
 
     private static final String TAG = "GeometryParser";
 
-    private static final int ONLINE_SEGMENTS_ID_MODIFIER = 100000;
+    public static final int ONLINE_SEGMENTS_ID_MODIFIER = 100000;
+
+    private static final int INITIAL_STORE_CAPACITY = 4096;
 
     @Override
     public GeometryCollection getHolder() {
         return new GeometryCollection();
     }
 
-    public GeometryCollection parse(String json) {
-        GeometryCollection collectionData = super.parse(json);
-        try {
-            if (json != null && !json.isEmpty()) {
-                JSONObject obj = new JSONObject(json);
-                final JSONArray tracks = obj.getJSONArray("currentPageItems");
-                final int totalTracks = obj.getJSONArray("totalFilteredItems").getInt(0);
+    @Override
+    protected void readField(String name, JsonReader reader, GeometryCollection collection) throws IOException {
+        switch (name) {
+            case "currentPageItems":
+                readSegments(reader, collection);
+                Log.d(TAG, "parse: number of segments = " + collection.getSegmentList().size());
+                break;
+            case "totalFilteredItems":
+                collection.setTotalFilteredItems(nextFirstInt(reader, 0));
+                Log.d(TAG, "parse: totalSegments = " + collection.getTotalFilteredItems());
+                break;
+            default:
+                reader.skipValue();
+        }
+    }
 
-                Log.d(TAG, "parse: processing");
-                try {
-                    final int alreadyDisplayed = ONLINE_SEGMENTS_ID_MODIFIER;
-                    Log.d(TAG, "parse: number of segments = " + tracks.length());
-                    Log.d(TAG, "parse: totalSegments = " + totalTracks + " , page = " + 1 + " , already displayed = " + alreadyDisplayed);
-                    if (tracks.length() > 0) {
-                        for (int i = alreadyDisplayed; i < alreadyDisplayed + tracks.length(); i++) {
-                            JSONArray track = tracks.getJSONObject(i - alreadyDisplayed).getJSONArray("track");
-                            int coverage = -1;
-                            try {
-                                coverage = tracks.getJSONObject(i - alreadyDisplayed).getInt("coverage");
-                            } catch (Exception ignored) {
-                            }
-                            if (coverage == 0) {
-                                continue;
-                            }
-                            final Polyline polyline = new Polyline(i);
-                            polyline.coverage = coverage;
-                            SKCoordinate coordinate;
-                            for (int j = 0; j < track.length(); j++) {
-                                if (Thread.interrupted()) {
-                                    return collectionData;
-                                }
-                                double lat = track.getJSONArray(j).getDouble(0);
-                                double lon = track.getJSONArray(j).getDouble(1);
-                                coordinate = new ImageCoordinate(lat, lon, j);
-                                polyline.getNodes().add(coordinate);
-                            }
-                            collectionData.getSegmentList().add(polyline);
-                        }
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
+    private void readSegments(JsonReader reader, GeometryCollection collection) throws IOException {
+        CoordinateStore store = new CoordinateStore(INITIAL_STORE_CAPACITY);
+        int id = ONLINE_SEGMENTS_ID_MODIFIER;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int coverage = -1;
+            long segmentKey = 0;
+            boolean hasTrack = false;
+            int offset = store.size();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "track":
+                        readTrack(reader, store);
+                        hasTrack = true;
+                        break;
+                    case "coverage":
+                        coverage = toInt(nextString(reader), -1);
+                        break;
+                    case "element_id":
+                        segmentKey = hash(nextString(reader));
+                        break;
+                    default:
+                        reader.skipValue();
                 }
+            }
+            reader.endObject();
+            if (hasTrack && coverage != 0) {
+                Polyline polyline = new Polyline(id, store, offset, store.size() - offset);
+                polyline.coverage = coverage;
+                polyline.segmentKey = segmentKey;
+                collection.getSegmentList().add(polyline);
             } else {
-                Log.d(TAG, "parse: request response is empty: " + json);
+                store.truncate(offset);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            id++;
         }
+        reader.endArray();
+        store.trimToSize();
+    }
 
-        return collectionData;
+    /**
+     * 64 bit FNV-1a hash of the segment identifier, which is a long digit string, 0 for a missing identifier
+     */
+    private static long hash(String elementId) {
+        if (elementId == null || elementId.isEmpty()) {
+            return 0;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < elementId.length(); i++) {
+            hash ^= elementId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void readTrack(JsonReader reader, CoordinateStore store) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("geometry parsing interrupted");
+            }
+            reader.beginArray();
+            double lat = reader.nextDouble();
+            double lon = reader.nextDouble();
+            while (reader.hasNext()) {
+                reader.skipValue();
+            }
+            reader.endArray();
+            store.add(lat, lon);
+        }
+        reader.endArray();
     }
 }
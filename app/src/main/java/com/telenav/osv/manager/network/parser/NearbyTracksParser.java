@@ -1,10 +1,10 @@
 package com.telenav.osv.manager.network.parser;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import org.json.JSONArray;
-import org.json.JSONObject;
 import android.annotation.SuppressLint;
+import android.util.JsonReader;
 import com.skobbler.ngx.SKCoordinate;
 import com.telenav.osv.item.NearbySequence;
 import com.telenav.osv.item.network.TrackCollection;
@@ -15,7 +15,7 @@ import com.telenav.osv.utils.Log;
  * JSON parser for user tracks list
  * Created by kalmanb on 8/1/17.
  */
-public class NearbyTracksParser extends ApiResponseParser<TrackCollection> {
+public class NearbyTracksParser extends StreamingResponseParser<TrackCollection> {
 
     private static final String TAG = "NearbyTracksParser";
 
@@ -24,63 +24,89 @@ public class NearbyTracksParser extends ApiResponseParser<TrackCollection> {
         return new TrackCollection();
     }
 
-    public TrackCollection parse(String json) {
-        TrackCollection collectionData = super.parse(json);
-        if (json != null && !json.isEmpty()) {
-            try {
-                JSONObject obj = new JSONObject(json);
-                JSONObject osv = obj.getJSONObject("osv");
-                JSONArray array1 = osv.getJSONArray("sequences");
-                if (array1.length() > 0) {
-                    for (int i = 0; i < array1.length(); i++) {
-                        JSONObject item = array1.getJSONObject(i);
-                        int id = item.getInt("sequence_id");
-                        String dateStr = item.getString("date");
-                        String hour = item.getString("hour");
-                        @SuppressLint("SimpleDateFormat") SimpleDateFormat onlineDateFormat = new SimpleDateFormat("MM.dd.yyyy hh:mm a");
-                        Date date = new Date();
-                        try {
-                            date = onlineDateFormat.parse(dateStr + " " + hour);
-                        } catch (Exception e) {
-                            Log.w(TAG, "handleSequenceListResult: " + e.getLocalizedMessage());
-                        }
-                        String imgNum = item.getString("photo_no");
-                        String sequenceIndex = item.getString("sequence_index");
-                        String distance = item.getString("distance");
-                        double lat = item.getDouble("lat");
-                        double lon = item.getDouble("lng");
-                        String platform = "";
-                        String platformVersion = "";
-                        String appVersion = "";
-                        String partialAddress = "";
-                        try {
-                            String address = item.getString("address");
-                            String[] list = address.split(", ");
-                            partialAddress = list[0] + ", " + list[2];
-                        } catch (Exception e) {
-                        }
-                        String thumbLink = UserDataManager.URL_DOWNLOAD_PHOTO + item.getString("photo");
-                        double distanceNum = 0;
-                        try {
-                            if (distance != null) {
-                                distanceNum = Double.parseDouble(distance);
-                            }
-                        } catch (NumberFormatException e) {
-                            Log.d(TAG, "handleSequenceListResult: couldn't parse distance");
-                        }
-                        NearbySequence seq =
-                                new NearbySequence(id, date, Integer.valueOf(imgNum), partialAddress, thumbLink, platform, platformVersion, appVersion,
-                                        (int) (distanceNum * 1000d));
-                        seq.setPublic(true);
-                        seq.setLocation(new SKCoordinate(lat, lon));
-                        seq.setRequestedFrameIndex(Integer.valueOf(sequenceIndex));
-                        collectionData.getTrackList().add(seq);
-                    }
+    @Override
+    protected void readField(String name, JsonReader reader, TrackCollection collectionData) throws IOException {
+        if (!name.equals("osv")) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("sequences")) {
+                @SuppressLint("SimpleDateFormat") SimpleDateFormat onlineDateFormat = new SimpleDateFormat("MM.dd.yyyy hh:mm a");
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    collectionData.getTrackList().add(readSequence(reader, onlineDateFormat));
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
+                reader.endArray();
+            } else {
+                reader.skipValue();
             }
         }
-        return collectionData;
+        reader.endObject();
+    }
+
+    private NearbySequence readSequence(JsonReader reader, SimpleDateFormat onlineDateFormat) throws IOException {
+        int id = 0;
+        String dateStr = null;
+        String hour = null;
+        int imgNum = 0;
+        int sequenceIndex = 0;
+        double distance = 0;
+        double lat = 0;
+        double lon = 0;
+        String partialAddress = "";
+        String photo = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "sequence_id":
+                    id = toInt(nextString(reader), 0);
+                    break;
+                case "date":
+                    dateStr = nextString(reader);
+                    break;
+                case "hour":
+                    hour = nextString(reader);
+                    break;
+                case "photo_no":
+                    imgNum = toInt(nextString(reader), 0);
+                    break;
+                case "sequence_index":
+                    sequenceIndex = toInt(nextString(reader), 0);
+                    break;
+                case "distance":
+                    distance = toDouble(nextString(reader), 0);
+                    break;
+                case "lat":
+                    lat = toDouble(nextString(reader), 0);
+                    break;
+                case "lng":
+                    lon = toDouble(nextString(reader), 0);
+                    break;
+                case "address":
+                    partialAddress = partialAddress(nextString(reader));
+                    break;
+                case "photo":
+                    photo = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        Date date = new Date();
+        try {
+            date = onlineDateFormat.parse(dateStr + " " + hour);
+        } catch (Exception e) {
+            Log.w(TAG, "handleSequenceListResult: " + e.getLocalizedMessage());
+        }
+        NearbySequence seq =
+                new NearbySequence(id, date, imgNum, partialAddress, UserDataManager.URL_DOWNLOAD_PHOTO + photo, "", "", "",
+                        (int) (distance * 1000d));
+        seq.setPublic(true);
+        seq.setLocation(new SKCoordinate(lat, lon));
+        seq.setRequestedFrameIndex(sequenceIndex);
+        return seq;
     }
 }
@@ -0,0 +1,43 @@
+package com.telenav.osv.manager.network.parser;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import com.telenav.osv.item.network.ApiResponse;
+import com.telenav.osv.item.network.PhotoBatchResult;
+import com.telenav.osv.utils.Log;
+
+/**
+ * JSON parser for the photo batch upload response, listing a status for every photo:
+ * {@code {"status": {...}, "osv": {"photos": [{"sequenceIndex": 12, "status": {...}}, ...]}}}
+ */
+public class PhotoBatchParser extends ApiResponseParser<PhotoBatchResult> {
+
+    private static final String TAG = "PhotoBatchParser";
+
+    @Override
+    public PhotoBatchResult getHolder() {
+        return new PhotoBatchResult();
+    }
+
+    @Override
+    public PhotoBatchResult parse(String json) {
+        PhotoBatchResult result = super.parse(json);
+        try {
+            JSONArray photos = new JSONObject(json).getJSONObject("osv").getJSONArray("photos");
+            for (int i = 0; i < photos.length(); i++) {
+                JSONObject photo = photos.getJSONObject(i);
+                JSONObject status = photo.getJSONObject("status");
+                ApiResponse photoResult = new ApiResponse();
+                photoResult.setHttpCode(status.getInt("httpCode"));
+                photoResult.setHttpMessage(status.optString("httpMessage"));
+                photoResult.setApiCode(status.getInt("apiCode"));
+                photoResult.setApiMessage(status.optString("apiMessage"));
+                result.putPhotoResult(photo.getInt("sequenceIndex"), photoResult);
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "parse: " + e.getLocalizedMessage());
+        }
+        return result;
+    }
+}
@@ -1,9 +1,9 @@
 package com.telenav.osv.manager.network.parser;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.Comparator;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import android.util.JsonReader;
 import com.telenav.osv.item.ImageCoordinate;
 import com.telenav.osv.item.ImageFile;
 import com.telenav.osv.item.network.PhotoCollection;
@@ -14,7 +14,7 @@ import com.telenav.osv.utils.Log;
  * JSON parser for driver tracks list
  * Created by kalmanb on 8/1/17.
  */
-public class PhotoCollectionParser extends ApiResponseParser<PhotoCollection> {
+public class PhotoCollectionParser extends StreamingResponseParser<PhotoCollection> {
 
     private static final String TAG = "TrackPhotosParser";
 
@@ -23,51 +23,83 @@ public class PhotoCollectionParser extends ApiResponseParser<PhotoCollection> {
         return new PhotoCollection();
     }
 
-    public PhotoCollection parse(String json) {
-        PhotoCollection collectionData = super.parse(json);
-        if (json != null && !json.isEmpty()) {
-            try {
-                int sequenceId = 0;
-                JSONObject obj = new JSONObject(json);
-                JSONArray array = obj.getJSONObject("osv").getJSONArray("photos");
-                for (int i = 0; i < array.length(); i++) {
-                    String link = UserDataManager.URL_DOWNLOAD_PHOTO + array.getJSONObject(i).getString("lth_name");
-                    String thumbLink = "";
-                    try {
-                        thumbLink = UserDataManager.URL_DOWNLOAD_PHOTO + array.getJSONObject(i).getString("th_name");
-                    } catch (Exception e) {
-                        Log.w(TAG, "displaySequence: " + e.getLocalizedMessage());
-                    }
-                    sequenceId = array.getJSONObject(i).getInt("sequence_id");
-                    int index = array.getJSONObject(i).getInt("sequence_index");
-                    int id = array.getJSONObject(i).getInt("id");
-                    double lat = array.getJSONObject(i).getDouble("lat");
-                    double lon = array.getJSONObject(i).getDouble("lng");
-                    if (lat != 0.0 && lon != 0.0) {
-                        ImageCoordinate coord = new ImageCoordinate(lat, lon, index);
-                        collectionData.getNodes().add(new ImageFile(sequenceId, link, thumbLink, id, index, coord, false));
-                        collectionData.getTrack().add(coord);
-                    }
+    @Override
+    protected void readField(String name, JsonReader reader, PhotoCollection collectionData) throws IOException {
+        if (!name.equals("osv")) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("photos")) {
+                readPhotos(reader, collectionData);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readPhotos(JsonReader reader, PhotoCollection collectionData) throws IOException {
+        int sequenceId = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String link = UserDataManager.URL_DOWNLOAD_PHOTO;
+            String thumbLink = "";
+            int index = 0;
+            int id = 0;
+            double lat = 0;
+            double lon = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "lth_name":
+                        link = UserDataManager.URL_DOWNLOAD_PHOTO + nextString(reader);
+                        break;
+                    case "th_name":
+                        thumbLink = UserDataManager.URL_DOWNLOAD_PHOTO + nextString(reader);
+                        break;
+                    case "sequence_id":
+                        sequenceId = toInt(nextString(reader), sequenceId);
+                        break;
+                    case "sequence_index":
+                        index = toInt(nextString(reader), 0);
+                        break;
+                    case "id":
+                        id = toInt(nextString(reader), 0);
+                        break;
+                    case "lat":
+                        lat = toDouble(nextString(reader), 0);
+                        break;
+                    case "lng":
+                        lon = toDouble(nextString(reader), 0);
+                        break;
+                    default:
+                        reader.skipValue();
                 }
-                Collections.sort(collectionData.getNodes(), new Comparator<ImageFile>() {
+            }
+            reader.endObject();
+            if (lat != 0.0 && lon != 0.0) {
+                ImageCoordinate coord = new ImageCoordinate(lat, lon, index);
+                collectionData.getNodes().add(new ImageFile(sequenceId, link, thumbLink, id, index, coord, false));
+                collectionData.getTrack().add(coord);
+            }
+        }
+        reader.endArray();
+        Collections.sort(collectionData.getNodes(), new Comparator<ImageFile>() {
 
-                    @Override
-                    public int compare(ImageFile lhs, ImageFile rhs) {
-                        return lhs.index - rhs.index;
-                    }
-                });
-                Collections.sort(collectionData.getTrack(), new Comparator<ImageCoordinate>() {
+            @Override
+            public int compare(ImageFile lhs, ImageFile rhs) {
+                return lhs.index - rhs.index;
+            }
+        });
+        Collections.sort(collectionData.getTrack(), new Comparator<ImageCoordinate>() {
 
-                    @Override
-                    public int compare(ImageCoordinate lhs, ImageCoordinate rhs) {
-                        return lhs.index - rhs.index;
-                    }
-                });
-                Log.d(TAG, "listImages: id=" + sequenceId + " length=" + collectionData.getNodes().size());
-            } catch (Exception e) {
-                e.printStackTrace();
+            @Override
+            public int compare(ImageCoordinate lhs, ImageCoordinate rhs) {
+                return lhs.index - rhs.index;
             }
-        }
-        return collectionData;
+        });
+        Log.d(TAG, "listImages: id=" + sequenceId + " length=" + collectionData.getNodes().size());
     }
 }
@@ -0,0 +1,184 @@
+package com.telenav.osv.manager.network.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import com.telenav.osv.item.network.ApiResponse;
+import com.telenav.osv.utils.Log;
+
+/**
+ * Parser which pulls the response out of a {@link JsonReader} instead of building the whole json tree first, for the large listings.
+ * The status is read by this class, every other top level field is handed to {@link #readField(String, JsonReader, ApiResponse)}.
+ * <p>
+ * The api sends most numbers as strings, the read helpers accept both forms. Like the tree based parsers, a malformed response
+ * results in the fields read up to that point.
+ */
+public abstract class StreamingResponseParser<T extends ApiResponse> extends ApiResponseParser<T> {
+
+    private static final String TAG = "StreamingResponseParser";
+
+    /**
+     * Reads the value of a top level field into the response, values which are not needed have to be skipped.
+     * @param name the name of the field
+     * @param reader the reader, positioned at the value
+     * @param response the response being filled
+     * @throws IOException if the value could not be read
+     */
+    protected abstract void readField(String name, JsonReader reader, T response) throws IOException;
+
+    @Override
+    public T parse(String json) {
+        if (json == null || json.isEmpty()) {
+            Log.d(TAG, "parse: request response is empty");
+            return getHolder();
+        }
+        return parse(new StringReader(json));
+    }
+
+    @Override
+    public T parse(byte[] data, String charset) {
+        if (data == null || data.length == 0) {
+            Log.d(TAG, "parse: request response is empty");
+            return getHolder();
+        }
+        Reader in;
+        try {
+            in = new InputStreamReader(new ByteArrayInputStream(data), charset);
+        } catch (UnsupportedEncodingException e) {
+            in = new InputStreamReader(new ByteArrayInputStream(data));
+        }
+        return parse(in);
+    }
+
+    private T parse(Reader in) {
+        T response = getHolder();
+        JsonReader reader = new JsonReader(in);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("status")) {
+                    readStatus(reader, response);
+                } else {
+                    readField(name, reader, response);
+                }
+            }
+            reader.endObject();
+        } catch (InterruptedIOException e) {
+            Log.d(TAG, "parse: interrupted");
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+        }
+        return response;
+    }
+
+    private void readStatus(JsonReader reader, T response) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "httpCode":
+                    response.setHttpCode(toInt(nextString(reader), response.getHttpCode()));
+                    break;
+                case "httpMessage":
+                    response.setHttpMessage(nextString(reader));
+                    break;
+                case "apiCode":
+                    response.setApiCode(toInt(nextString(reader), response.getApiCode()));
+                    break;
+                case "apiMessage":
+                    response.setApiMessage(nextString(reader));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * @return the next value as a string, null for a null value, objects and arrays are skipped and returned as null
+     */
+    static String nextString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        switch (token) {
+            case NULL:
+                reader.nextNull();
+                return null;
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case BEGIN_ARRAY:
+            case BEGIN_OBJECT:
+                reader.skipValue();
+                return null;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    /**
+     * @return the first element of the next array, as used for the total item counts
+     */
+    static int nextFirstInt(JsonReader reader, int fallback) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            return toInt(nextString(reader), fallback);
+        }
+        int value = fallback;
+        reader.beginArray();
+        if (reader.hasNext()) {
+            value = toInt(nextString(reader), fallback);
+        }
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+        return value;
+    }
+
+    static int toInt(String value, int fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            try {
+                return (int) Double.parseDouble(value);
+            } catch (NumberFormatException ignored) {
+                return fallback;
+            }
+        }
+    }
+
+    static double toDouble(String value, double fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * @return the first and third part of a comma separated address, or an empty string if the address has less parts
+     */
+    static String partialAddress(String address) {
+        if (address == null) {
+            return "";
+        }
+        String[] list = address.split(", ");
+        return list.length > 2 ? list[0] + ", " + list[2] : "";
+    }
+}
@@ -1,122 +1,219 @@
 package com.telenav.osv.manager.network.parser;
 
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import android.annotation.SuppressLint;
+import android.util.JsonReader;
 import com.skobbler.ngx.SKCoordinate;
 import com.telenav.osv.item.ScoreHistory;
 import com.telenav.osv.item.UserOnlineSequence;
 import com.telenav.osv.item.network.TrackCollection;
 import com.telenav.osv.manager.network.UserDataManager;
 import com.telenav.osv.utils.Log;
-import com.telenav.osv.utils.Utils;
 
 /**
  * JSON parser for user tracks list
  * Created by kalmanb on 8/1/17.
  */
-public class TrackCollectionParser extends ApiResponseParser<TrackCollection> {
+public class TrackCollectionParser extends StreamingResponseParser<TrackCollection> {
 
     private static final String TAG = "UserTracksParser";
 
+    /**
+     * same format as {@link com.telenav.osv.utils.Utils#onlineDateFormat}, a format is created for each response since parsing runs on
+     * the network threads
+     */
+    private static final String DATE_FORMAT = "yyyy-MM-dd  (hh:mm)";
+
     @Override
     public TrackCollection getHolder() {
         return new TrackCollection();
     }
 
-    public TrackCollection parse(String json) {
-        TrackCollection collection = super.parse(json);
-        try {
-            JSONObject obj = new JSONObject(json);
-            JSONArray array1 = obj.getJSONArray("totalFilteredItems");
-            collection.setTotalFilteredItems(array1.getInt(0));
-            if (array1.length() > 0 && collection.getTotalFilteredItems() > 0) {
-                JSONArray array = obj.getJSONArray("currentPageItems");
+    @Override
+    protected void readField(String name, JsonReader reader, TrackCollection collection) throws IOException {
+        switch (name) {
+            case "currentPageItems":
+                @SuppressLint("SimpleDateFormat") SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    collection.getTrackList().add(readTrack(reader, dateFormat));
+                }
+                reader.endArray();
+                break;
+            case "totalFilteredItems":
+                collection.setTotalFilteredItems(nextFirstInt(reader, 0));
                 Log.d(TAG, "listSequences: size = " + collection.getTotalFilteredItems());
+                break;
+            default:
+                reader.skipValue();
+        }
+    }
 
-                for (int i = 0; i < array.length(); i++) {
-                    JSONObject item = array.getJSONObject(i);
-                    int id = item.getInt("id");
-                    String dateStr = item.getString("date_added");
-                    Date date = new Date();
+    private UserOnlineSequence readTrack(JsonReader reader, SimpleDateFormat dateFormat) throws IOException {
+        int id = 0;
+        Date date = new Date();
+        int imgNum = 0;
+        double distance = 0;
+        double lat = 0;
+        double lon = 0;
+        String processing = null;
+        boolean obd = false;
+        String platform = "";
+        String platformVersion = "";
+        String appVersion = "";
+        String partialAddress = "";
+        String thumbName = "";
+        UploadHistory history = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = toInt(nextString(reader), 0);
+                    break;
+                case "date_added":
+                    String dateStr = nextString(reader);
                     try {
-                        date = Utils.onlineDateFormat.parse(dateStr);
+                        date = dateFormat.parse(dateStr);
                     } catch (Exception e) {
                         Log.w(TAG, "listSequences: " + e.getLocalizedMessage());
                     }
-                    String imgNum = item.getString("photo_no");
-                    String distance = item.getString("distance");
-                    double lat = item.getDouble("current_lat");
-                    double lon = item.getDouble("current_lng");
-                    String processing = item.getString("image_processing_status");
-                    boolean obd = false;
-                    String platform = "";
-                    String platformVersion = "";
-                    String appVersion = "";
-                    try {
-                        platform = item.getString("platform_name");
-                        platformVersion = item.getString("platform_version");
-                        appVersion = item.getString("app_version");
-                        obd = item.getInt("obd_info") > 0;
-                    } catch (Exception e) {
-                        if (!(e instanceof JSONException)) {
-                            Log.w(TAG, "listSequences: " + Log.getStackTraceString(e));
-                        }
-                    }
-                    String partialAddress = "";
-                    try {
-                        String address = item.getString("location");
-                        String[] list = address.split(", ");
-                        partialAddress = list[0] + ", " + list[2];
-                    } catch (Exception ignored) {
-                    }
-                    String thumbLink = UserDataManager.URL_DOWNLOAD_PHOTO + item.getString("thumb_name");
-                    double distanceNum = 0;
-                    try {
-                        if (distance != null) {
-                            distanceNum = Double.parseDouble(distance);
-                        }
-                    } catch (NumberFormatException ignored) {
+                    break;
+                case "photo_no":
+                    imgNum = toInt(nextString(reader), 0);
+                    break;
+                case "distance":
+                    distance = toDouble(nextString(reader), 0);
+                    break;
+                case "current_lat":
+                    lat = toDouble(nextString(reader), 0);
+                    break;
+                case "current_lng":
+                    lon = toDouble(nextString(reader), 0);
+                    break;
+                case "image_processing_status":
+                    processing = nextString(reader);
+                    break;
+                case "platform_name":
+                    platform = nextString(reader);
+                    break;
+                case "platform_version":
+                    platformVersion = nextString(reader);
+                    break;
+                case "app_version":
+                    appVersion = nextString(reader);
+                    break;
+                case "obd_info":
+                    obd = toInt(nextString(reader), 0) > 0;
+                    break;
+                case "location":
+                    partialAddress = partialAddress(nextString(reader));
+                    break;
+                case "thumb_name":
+                    thumbName = nextString(reader);
+                    break;
+                case "upload_history":
+                    history = readUploadHistory(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        UserOnlineSequence seq =
+                new UserOnlineSequence(id, date, imgNum, partialAddress, UserDataManager.URL_DOWNLOAD_PHOTO + thumbName, obd, platform,
+                        platformVersion, appVersion, (int) (distance * 1000d), 0);
+        seq.setServerStatus(processing);
+        seq.setLocation(new SKCoordinate(lat, lon));
+        if (history != null) {
+            seq.setScoreHistory(history.toScoreHistory(obd));
+            seq.setScore(history.totalPoints);
+        } else {
+            seq.setScore(0);
+        }
+        return seq;
+    }
+
+    private UploadHistory readUploadHistory(JsonReader reader) throws IOException {
+        UploadHistory history = new UploadHistory();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "coverage":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        history.coverages.add(readCoverage(reader));
                     }
-                    UserOnlineSequence seq =
-                            new UserOnlineSequence(id, date, Integer.valueOf(imgNum), partialAddress, thumbLink, obd, platform, platformVersion,
-                                    appVersion, (int) (distanceNum * 1000d), 0);
-                    seq.setServerStatus(processing);
-                    seq.setLocation(new SKCoordinate(lat, lon));
-                    int totalPoints = 0;
-                    try {
-                        JSONObject history = item.getJSONObject("upload_history");
-                        boolean historyObd = history.getString("has_obd").equals("N");
-                        JSONArray coverages = history.getJSONArray("coverage");
-                        JSONObject points = history.getJSONObject("points");
-                        totalPoints = Integer.parseInt(points.getString("total"));
-                        HashMap<Integer, ScoreHistory> scoreHistory = new HashMap<>();
-                        for (int j = 0; j < coverages.length(); j++) {
-                            JSONObject coverage = coverages.getJSONObject(j);
-                            int cov = Integer.parseInt(coverage.getString("coverage_value").replace("+", "").replace("-", "0"));
-                            int pts = coverage.getInt("coverage_points");
-                            int photosCount = coverage.getInt("coverage_photos_count");
-                            ScoreHistory existing = scoreHistory.get(cov);
-                            if (existing != null) {
-                                existing.obdPhotoCount += obd ? photosCount : 0;
-                                existing.photoCount += obd ? 0 : photosCount;
-                            } else {
-                                scoreHistory.put(cov, new ScoreHistory(cov, obd ? 0 : photosCount, obd ? photosCount : 0));
-                            }
+                    reader.endArray();
+                    break;
+                case "points":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("total")) {
+                            history.totalPoints = toInt(nextString(reader), 0);
+                        } else {
+                            reader.skipValue();
                         }
-                        seq.setScoreHistory(scoreHistory);
-                    } catch (Exception e) {
-                        Log.d(TAG, "listSequences: " + Log.getStackTraceString(e));
                     }
-                    seq.setScore(totalPoints);
-                    collection.getTrackList().add(seq);
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return history;
+    }
+
+    /**
+     * @return the coverage value and the photo count of a coverage entry
+     */
+    private int[] readCoverage(JsonReader reader) throws IOException {
+        int[] coverage = new int[2];
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "coverage_value":
+                    String value = nextString(reader);
+                    coverage[0] = value == null ? 0 : toInt(value.replace("+", "").replace("-", "0"), 0);
+                    break;
+                case "coverage_photos_count":
+                    coverage[1] = toInt(nextString(reader), 0);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return coverage;
+    }
+
+    /**
+     * Upload history of a track, kept until the whole track was read since the obd flag may follow it.
+     */
+    private static class UploadHistory {
+
+        private final ArrayList<int[]> coverages = new ArrayList<>();
+
+        private int totalPoints;
+
+        HashMap<Integer, ScoreHistory> toScoreHistory(boolean obd) {
+            HashMap<Integer, ScoreHistory> scoreHistory = new HashMap<>();
+            for (int[] coverage : coverages) {
+                int cov = coverage[0];
+                int photosCount = coverage[1];
+                ScoreHistory existing = scoreHistory.get(cov);
+                if (existing != null) {
+                    existing.obdPhotoCount += obd ? photosCount : 0;
+                    existing.photoCount += obd ? 0 : photosCount;
+                } else {
+                    scoreHistory.put(cov, new ScoreHistory(cov, obd ? 0 : photosCount, obd ? photosCount : 0));
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            return scoreHistory;
         }
-        return collection;
     }
 }
@@ -1,6 +1,7 @@
 package com.telenav.osv.ui.fragment;
 
 import java.util.ArrayList;
+import java.util.List;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 import android.Manifest;
@@ -10,7 +11,9 @@ import android.graphics.Bitmap;
 import android.graphics.Point;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.Process;
 import android.support.annotation.Nullable;
 import android.support.design.widget.FloatingActionButton;
 import android.support.design.widget.Snackbar;
@@ -151,8 +154,6 @@ public class MapFragment extends DisplayFragment implements SKMapSurfaceListener
 
     private int mCurrentMode = MODE_IDLE;
 
-    private Polyline mMatchedPolyline;
-
     private boolean mMapEnabled;
 
     private View chessBackground;
@@ -185,6 +186,44 @@ public class MapFragment extends DisplayFragment implements SKMapSurfaceListener
 
     private Handler mHandler = new Handler(Looper.getMainLooper());
 
+    private HandlerThread mRenderThread;
+
+    /**
+     * coverage segments on the map, updated on {@link #mRenderThread}
+     */
+    private PolylineLayer mPolylineLayer;
+
+    private final PolylineLayer.Renderer mPolylineRenderer = new PolylineLayer.Renderer() {
+
+        @Override
+        public void add(Polyline polyline, int style) {
+            if (mapView == null) {
+                return;
+            }
+            switch (style) {
+                case PolylineLayer.STYLE_VISITED:
+                    //washed out accent color
+                    setMatchStyle(polyline, new float[]{189f / 255f, 16f / 255f, 224f / 255f, 1f}, 3);
+                    break;
+                case PolylineLayer.STYLE_MATCHED:
+                    //washed out red, inverse of washed out accent
+                    setMatchStyle(polyline, new float[]{0f / 255f, 125f / 255f, 0f / 255f, 1.0f}, 5);
+                    break;
+                default:
+                    setCoverageStyle(polyline);
+                    break;
+            }
+            addPolyline(polyline);
+        }
+
+        @Override
+        public void remove(int identifier) {
+            if (mapView != null) {
+                mapView.clearOverlay(identifier);
+            }
+        }
+    };
+
     @Nullable
     @Override
     public View onCreateView(final LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -192,6 +231,9 @@ public class MapFragment extends DisplayFragment implements SKMapSurfaceListener
         appPrefs = ((OSVApplication) activity.getApplication()).getAppPrefs();
         mMapEnabled = !appPrefs.getBooleanPreference(PreferenceTypes.K_MAP_DISABLED);
         mGeometryRetriever = new GeometryRetriever(activity);
+        mRenderThread = new HandlerThread("MapRender", Process.THREAD_PRIORITY_DISPLAY);
+        mRenderThread.start();
+        mPolylineLayer = new PolylineLayer(new Handler(mRenderThread.getLooper()), mPolylineRenderer);
         view = inflater.inflate(R.layout.fragment_map, null);
         recordButton = view.findViewById(R.id.record_button);
         recordButton.setOnClickListener(new View.OnClickListener() {
@@ -358,6 +400,8 @@ public class MapFragment extends DisplayFragment implements SKMapSurfaceListener
             mGeometryRetriever.destroy();
             mGeometryRetriever = null;
         }
+        mPolylineLayer.release();
+        mRenderThread.quit();
         if (mapViewGroup != null) {
             mapViewGroup.setMapSurfaceListener(null);
         }
@@ -389,6 +433,7 @@ public class MapFragment extends DisplayFragment implements SKMapSurfaceListener
         chessBackground = view.findViewById(R.id.chess_board_background);
         chessBackground.setVisibility(View.GONE);
         mapView = mapHolder.getMapSurfaceView();
+        mPolylineLayer.invalidate();
         SKMapInternationalizationSettings mapIntSetting = new SKMapInternationalizationSettings();
         mapIntSetting.setPrimaryLanguage(SKMaps.SKLanguage.LANGUAGE_EN);
         mapIntSetting.setFallbackLanguage(SKMaps.SKLanguage.LANGUAGE_LOCAL);
@@ -670,7 +715,7 @@ public class MapFragment extends DisplayFragment implements SKMapSurfaceListener
         }
     }
 
-    @Subscribe(sticky = true, threadMode = ThreadMode.BACKGROUND)
+    @Subscribe(sticky = true, threadMode = ThreadMode.BACKGROUND, conflate = true)
     public void onLocationChanged(LocationEvent event) {
         if (mMapEnabled) {
             if (mapView != null && mCurrentMode == MODE_IDLE) {
@@ -808,6 +853,7 @@ public class MapFragment extends DisplayFragment implements SKMapSurfaceListener
     public void onUploadFinished(UploadFinishedEvent event) {
         if (mapView != null) {
             mapView.clearAllOverlays();
+            mPolylineLayer.clear();
             mLastSegmentsDisplayed = null;
             diplayLocalSequences();
             refreshDisplayedSequences();
@@ -818,35 +864,7 @@ public class MapFragment extends DisplayFragment implements SKMapSurfaceListener
     public void onMatched(MatchedSegmentEvent event) {
         Log.d(TAG, "onMatched: " + (event.segment != null ? event.segment.getPolyline().getIdentifier() : "null"));
         if (Utils.DEBUG) {
-            Polyline polyline = event.segment == null ? null : event.segment.getPolyline();
-            if (mMatchedPolyline != null) {
-                if (mapView != null) {
-                    mMatchedPolyline.isLocal = false;
-                    // set segment color
-                    //                segment.setColor(new float[]{0.447f, 0.447f, 0.447f, 1.0f}); grey
-                    mMatchedPolyline.setColor(new float[]{189f / 255f, 16f / 255f, 224f / 255f, 1f}); //washed out accent color
-                    mMatchedPolyline.setOutlineColor(new float[]{189f / 255f, 16f / 255f, 224f / 255f, 1f}); //washed out accent color
-                    mMatchedPolyline.setOutlineSize(3);
-                    mMatchedPolyline.setOutlineDottedPixelsSolid(50000);
-                    mMatchedPolyline.setOutlineDottedPixelsSkip(1);
-                    mMatchedPolyline.setLineSize(3);
-                    mapView.addPolyline(mMatchedPolyline);
-                }
-            }
-            mMatchedPolyline = polyline;
-            if (mapView != null && mMatchedPolyline != null) {
-                mMatchedPolyline.isLocal = false;
-                // set segment color
-                //                segment.setColor(new float[]{0.447f, 0.447f, 0.447f, 1.0f}); grey
-                mMatchedPolyline.setColor(new float[]{0f / 255f, 125f / 255f, 0f / 255f, 1.0f});  //washed out red, inverse of washed out accent
-                mMatchedPolyline
-                        .setOutlineColor(new float[]{0f / 255f, 125f / 255f, 0f / 255f, 1.0f});  //washed out red, inverse of washed out accent
-                mMatchedPolyline.setOutlineSize(3);
-                mMatchedPolyline.setOutlineDottedPixelsSolid(50000);
-                mMatchedPolyline.setOutlineDottedPixelsSkip(1);
-                mMatchedPolyline.setLineSize(5);
-                mapView.addPolyline(mMatchedPolyline);
-            }
+            mPolylineLayer.setMatched(event.segment == null ? null : event.segment.getPolyline());
             if (mapView != null && event.segment != null) {
                 Polyline poly = new Polyline(MATCHED_SEGMENT_POLYLINE_ID);
                 poly.getNodes().add(event.segment.getStart());
@@ -888,11 +906,11 @@ public class MapFragment extends DisplayFragment implements SKMapSurfaceListener
         }
         Log.d(TAG, "onSegmentsReceived: from " + (event.matcher ? "matcher" : "map"));
         if (event.all != null) {
-            //            synchronized (event.syncObject) {
-            for (Polyline poly : event.all) {
-                displayPolyline(poly);
+            List<Polyline> segments;
+            synchronized (event.syncObject) {
+                segments = new ArrayList<>(event.all);
             }
-            //            }
+            mPolylineLayer.setSegments(segments);
             mLastSegmentsDisplayed = event;
         }
     }
@@ -1042,6 +1060,7 @@ public class MapFragment extends DisplayFragment implements SKMapSurfaceListener
             SKCoordinate coord = skCoordinateRegion.getCenter();
             if (zoom < 5) {
                 mapView.clearAllOverlays();
+                mPolylineLayer.clear();
                 mLastSegmentsDisplayed = null;
                 return;
             }
@@ -1196,6 +1215,7 @@ public class MapFragment extends DisplayFragment implements SKMapSurfaceListener
             mCurrentSequence = mPlayer.getSequence();
             int sequenceId = mCurrentSequence.getId();
             mapView.clearAllOverlays();
+            mPolylineLayer.clear();
             mLastSegmentsDisplayed = null;
             mapView.deleteAllAnnotationsAndCustomPOIs();
             mPreviewNodes = (ArrayList<ImageCoordinate>) nodes.clone();
@@ -1247,66 +1267,100 @@ public class MapFragment extends DisplayFragment implements SKMapSurfaceListener
      * displayes a polyline for a list of coords
      */
     private void displayPolyline(Polyline polyline) {
-        if (mapView != null && polyline != null && polyline.getNodes().size() > 0) {
+        if (mapView != null && polyline != null && polyline.getNodeCount() > 0) {
             //            Log.d(TAG, "displayPolyline: " + polyline.getIdentifier() + ", size " + polyline.getNodes().size());
-            // set polyline color
-            int outlineSize = 3;
-            if (polyline.isLocal) {
-                polyline.setColor(new float[]{0f, 0f, 0f, 1.0f});  //black
-                polyline.setOutlineColor(new float[]{0f, 0f, 0f, 1.0f});  //black
-            } else {
-                if (Utils.DEBUG) {
-                    float[] color = new float[4];
-                    color[3] = 0.3f;
-                    switch (polyline.coverage) {
-                        case 0:
-                            color[0] = 189f / 255f;
-                            color[1] = 16f / 255f; // white
-                            color[2] = 224f / 255f;
-                            break;
-                        case 1:
-                        case 2:
-                            color[0] = 0f;
-                            color[1] = 1f; // cyan
-                            color[2] = 230f / 255f;
-                            break;
-                        case 3:
-                        case 4:
-                            color[0] = 0f;
-                            color[1] = 1f; // green
-                            color[2] = 118f / 255f;
-                            break;
-                        case 5:
-                        case 6:
-                        case 7:
-                        case 8:
-                        case 9:
-                            color[0] = 240f / 255f;
-                            color[1] = 1f; // yellow
-                            color[2] = 0f;
-                            break;
-                        case 10:
-                        default:
-                            color[0] = 1f;
-                            color[1] = 0f; // red
-                            color[2] = 0f;
-                            break;
-                    }
-                    //                    outlineSize = new Random().nextInt(5);
-                    polyline.setColor(color);
-                    polyline.setOutlineColor(color);
-                } else {
-                    polyline
-                            .setColor(new float[]{189f / 255f, 16f / 255f, 224f / 255f, Math.min(polyline.coverage, 10) * 0.09f + 0.1f}); //accent color
-                    polyline.setOutlineColor(
-                            new float[]{189f / 255f, 16f / 255f, 224f / 255f, Math.min(polyline.coverage, 10) * 0.09f + 0.1f}); //accent color
+            setCoverageStyle(polyline);
+            addPolyline(polyline);
+        }
+    }
+
+    /**
+     * sets the polyline color by its coverage, black for local sequences
+     */
+    private void setCoverageStyle(Polyline polyline) {
+        int outlineSize = 3;
+        if (polyline.isLocal) {
+            polyline.setColor(new float[]{0f, 0f, 0f, 1.0f});  //black
+            polyline.setOutlineColor(new float[]{0f, 0f, 0f, 1.0f});  //black
+        } else {
+            if (Utils.DEBUG) {
+                float[] color = new float[4];
+                color[3] = 0.3f;
+                switch (polyline.coverage) {
+                    case 0:
+                        color[0] = 189f / 255f;
+                        color[1] = 16f / 255f; // white
+                        color[2] = 224f / 255f;
+                        break;
+                    case 1:
+                    case 2:
+                        color[0] = 0f;
+                        color[1] = 1f; // cyan
+                        color[2] = 230f / 255f;
+                        break;
+                    case 3:
+                    case 4:
+                        color[0] = 0f;
+                        color[1] = 1f; // green
+                        color[2] = 118f / 255f;
+                        break;
+                    case 5:
+                    case 6:
+                    case 7:
+                    case 8:
+                    case 9:
+                        color[0] = 240f / 255f;
+                        color[1] = 1f; // yellow
+                        color[2] = 0f;
+                        break;
+                    case 10:
+                    default:
+                        color[0] = 1f;
+                        color[1] = 0f; // red
+                        color[2] = 0f;
+                        break;
                 }
+                //                    outlineSize = new Random().nextInt(5);
+                polyline.setColor(color);
+                polyline.setOutlineColor(color);
+            } else {
+                polyline
+                        .setColor(new float[]{189f / 255f, 16f / 255f, 224f / 255f, Math.min(polyline.coverage, 10) * 0.09f + 0.1f}); //accent color
+                polyline.setOutlineColor(
+                        new float[]{189f / 255f, 16f / 255f, 224f / 255f, Math.min(polyline.coverage, 10) * 0.09f + 0.1f}); //accent color
             }
-            polyline.setOutlineSize(outlineSize);
-            polyline.setOutlineDottedPixelsSolid(50000);
-            polyline.setOutlineDottedPixelsSkip(1);
-            polyline.setLineSize(outlineSize);
+        }
+        polyline.setOutlineSize(outlineSize);
+        polyline.setOutlineDottedPixelsSolid(50000);
+        polyline.setOutlineDottedPixelsSkip(1);
+        polyline.setLineSize(outlineSize);
+    }
+
+    /**
+     * sets the style of the matched segment and of the segments matched before it
+     */
+    private void setMatchStyle(Polyline polyline, float[] color, int lineSize) {
+        polyline.setColor(color);
+        polyline.setOutlineColor(color);
+        polyline.setOutlineSize(3);
+        polyline.setOutlineDottedPixelsSolid(50000);
+        polyline.setOutlineDottedPixelsSkip(1);
+        polyline.setLineSize(lineSize);
+    }
+
+    /**
+     * Adds the polyline to the map. Packed polylines get sdk nodes only while they are handed to the map, so the coverage is not kept as
+     * coordinate objects.
+     */
+    private void addPolyline(Polyline polyline) {
+        if (!polyline.isPacked()) {
+            mapView.addPolyline(polyline);
+            return;
+        }
+        synchronized (polyline) {
+            polyline.setNodes(polyline.createNodes());
             mapView.addPolyline(polyline);
+            polyline.setNodes(new ArrayList<SKCoordinate>(0));
         }
     }
 
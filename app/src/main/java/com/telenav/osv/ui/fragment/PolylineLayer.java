@@ -0,0 +1,206 @@
+package com.telenav.osv.ui.fragment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import android.os.Handler;
+import com.telenav.osv.item.Polyline;
+import com.telenav.osv.utils.Log;
+
+/**
+ * Render state of the coverage segments on the map. Keeps the identifiers and styles of the polylines the map holds and turns the
+ * segment and match updates into the adds and removes needed to reach the wanted state, so a coverage refresh only sends the changed
+ * segments to the map. The updates arriving within a frame are applied in one pass on the render handler.
+ */
+class PolylineLayer {
+
+    static final int STYLE_COVERAGE = 0;
+
+    /**
+     * segment matched before the current one
+     */
+    static final int STYLE_VISITED = 1;
+
+    static final int STYLE_MATCHED = 2;
+
+    private static final String TAG = "PolylineLayer";
+
+    private static final long FRAME_MILLIS = 16;
+
+    private final Handler mHandler;
+
+    private final Renderer mRenderer;
+
+    private final Object mSyncObject = new Object();
+
+    private final Runnable mApplyRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            apply();
+        }
+    };
+
+    /**
+     * wanted state, guarded by {@link #mSyncObject}
+     */
+    private List<Polyline> mSegments = Collections.emptyList();
+
+    private Polyline mMatched;
+
+    private final LinkedHashMap<Integer, Polyline> mVisited = new LinkedHashMap<>();
+
+    private boolean mMapCleared;
+
+    private boolean mScheduled;
+
+    /**
+     * rendered state, accessed on the render handler
+     */
+    private HashMap<Integer, Rendered> mRendered = new HashMap<>();
+
+    /**
+     * @param handler handler of the thread the map is updated on
+     * @param renderer the map operations
+     */
+    PolylineLayer(Handler handler, Renderer renderer) {
+        mHandler = handler;
+        mRenderer = renderer;
+    }
+
+    /**
+     * Replaces the coverage segments, the segments matched so far get the coverage style again.
+     * @param segments the segments, not copied, the list must not be changed afterwards
+     */
+    void setSegments(List<Polyline> segments) {
+        synchronized (mSyncObject) {
+            mSegments = segments;
+            mVisited.clear();
+            schedule();
+        }
+    }
+
+    /**
+     * @param polyline the segment of the current position, null if the position was not matched
+     */
+    void setMatched(Polyline polyline) {
+        synchronized (mSyncObject) {
+            if (mMatched != null && mMatched != polyline) {
+                mVisited.put(mMatched.getIdentifier(), mMatched);
+            }
+            mMatched = polyline;
+            schedule();
+        }
+    }
+
+    /**
+     * Forgets the wanted and the rendered polylines, after all overlays were removed from the map.
+     */
+    void clear() {
+        synchronized (mSyncObject) {
+            mSegments = Collections.emptyList();
+            mMatched = null;
+            mVisited.clear();
+            mMapCleared = true;
+            schedule();
+        }
+    }
+
+    /**
+     * Adds all wanted polylines again, e.g. to a new map surface.
+     */
+    void invalidate() {
+        synchronized (mSyncObject) {
+            mMapCleared = true;
+            schedule();
+        }
+    }
+
+    void release() {
+        mHandler.removeCallbacks(mApplyRunnable);
+    }
+
+    private void schedule() {
+        if (!mScheduled) {
+            mScheduled = true;
+            mHandler.postDelayed(mApplyRunnable, FRAME_MILLIS);
+        }
+    }
+
+    /**
+     * Brings the map to the wanted state, sending only the polylines which were added, replaced or restyled since the last pass.
+     */
+    private void apply() {
+        List<Polyline> segments;
+        Polyline matched;
+        List<Polyline> visited;
+        synchronized (mSyncObject) {
+            mScheduled = false;
+            segments = mSegments;
+            matched = mMatched;
+            visited = new ArrayList<>(mVisited.values());
+            if (mMapCleared) {
+                mMapCleared = false;
+                mRendered.clear();
+            }
+        }
+        HashMap<Integer, Rendered> wanted = new HashMap<>(segments.size() * 4 / 3 + 4);
+        for (Polyline polyline : segments) {
+            if (polyline.getNodeCount() > 0) {
+                wanted.put(polyline.getIdentifier(), new Rendered(polyline, STYLE_COVERAGE));
+            }
+        }
+        for (Polyline polyline : visited) {
+            wanted.put(polyline.getIdentifier(), new Rendered(polyline, STYLE_VISITED));
+        }
+        if (matched != null) {
+            wanted.put(matched.getIdentifier(), new Rendered(matched, STYLE_MATCHED));
+        }
+        int removed = 0;
+        for (Integer identifier : mRendered.keySet()) {
+            if (!wanted.containsKey(identifier)) {
+                mRenderer.remove(identifier);
+                removed++;
+            }
+        }
+        int added = 0;
+        for (Map.Entry<Integer, Rendered> entry : wanted.entrySet()) {
+            Rendered next = entry.getValue();
+            Rendered previous = mRendered.get(entry.getKey());
+            if (previous == null || previous.polyline != next.polyline || previous.style != next.style) {
+                mRenderer.add(next.polyline, next.style);
+                added++;
+            }
+        }
+        mRendered = wanted;
+        Log.d(TAG, "apply: " + wanted.size() + " polylines, added " + added + ", removed " + removed);
+    }
+
+    /**
+     * Map operations of the layer, called on the render handler.
+     */
+    interface Renderer {
+
+        /**
+         * adds the polyline in the given style, replacing the polyline with the same identifier
+         */
+        void add(Polyline polyline, int style);
+
+        void remove(int identifier);
+    }
+
+    private static class Rendered {
+
+        private final Polyline polyline;
+
+        private final int style;
+
+        Rendered(Polyline polyline, int style) {
+            this.polyline = polyline;
+            this.style = style;
+        }
+    }
+}
@@ -240,7 +240,7 @@ public class UploadProgressFragment extends OSVFragment {
         }, 2500);
     }
 
-    @Subscribe(sticky = true, threadMode = ThreadMode.MAIN)
+    @Subscribe(sticky = true, threadMode = ThreadMode.MAIN, conflate = true)
     public void onProgressChanged(UploadProgressEvent event) {
         if (event.total == 0) {
             event.total = 1;
@@ -281,7 +281,7 @@ public class UploadProgressFragment extends OSVFragment {
         }
     }
 
-    @Subscribe(threadMode = ThreadMode.MAIN)
+    @Subscribe(threadMode = ThreadMode.MAIN, conflate = true)
     public void onBandwidthStateChange(UploadBandwidthEvent event) {
         if (event.bandwidthState != ConnectionQuality.UNKNOWN && event.bandwidth >= 0) {
             if (uploadSpeedText != null) {
@@ -220,31 +220,42 @@ public class ComputingDistance {
     }
 
     public static double getDistanceFromSegment(SKCoordinate origin, SKCoordinate pointA, SKCoordinate pointB) {
-        SKCoordinate dap = new SKCoordinate(origin.getLatitude() - pointA.getLatitude(), origin.getLongitude() - pointA.getLongitude());
-        SKCoordinate dab = new SKCoordinate(pointB.getLatitude() - pointA.getLatitude(), pointB.getLongitude() - pointA.getLongitude());
-        double dot = dap.getLongitude() * dab.getLongitude() + dap.getLatitude() * dab.getLatitude();
+        return getDistanceFromSegment(origin.getLatitude(), origin.getLongitude(), pointA.getLatitude(), pointA.getLongitude(),
+                pointB.getLatitude(), pointB.getLongitude());
+    }
 
-        double squareLength = dab.getLongitude() * dab.getLongitude() + dab.getLatitude() * dab.getLatitude();
+    /**
+     * Distance in degrees between a position and the closest point of a segment, treating the coordinates as planar.
+     * Takes the coordinates as primitives so packed polylines can be matched without creating coordinate objects.
+     * @return distance in degrees
+     */
+    public static double getDistanceFromSegment(double originLat, double originLon, double pointALat, double pointALon, double pointBLat,
+                                                double pointBLon) {
+        double dapLat = originLat - pointALat;
+        double dapLon = originLon - pointALon;
+        double dabLat = pointBLat - pointALat;
+        double dabLon = pointBLon - pointALon;
+        double dot = dapLon * dabLon + dapLat * dabLat;
+
+        double squareLength = dabLon * dabLon + dabLat * dabLat;
         double param = dot / squareLength;
 
-        SKCoordinate nearestPoint = new SKCoordinate();
-        if (param < 0 || (pointA.getLongitude() == pointB.getLongitude() && pointA.getLatitude() == pointB.getLatitude())) {
-            nearestPoint.setLongitude(pointA.getLongitude());
-            nearestPoint.setLatitude(pointA.getLatitude());
+        double nearestLat;
+        double nearestLon;
+        if (param < 0 || (pointALon == pointBLon && pointALat == pointBLat)) {
+            nearestLon = pointALon;
+            nearestLat = pointALat;
         } else if (param > 1) {
-            nearestPoint.setLongitude(pointB.getLongitude());
-            nearestPoint.setLatitude(pointB.getLatitude());
+            nearestLon = pointBLon;
+            nearestLat = pointBLat;
         } else {
-            nearestPoint.setLongitude(pointA.getLongitude() + param * dab.getLongitude());
-            nearestPoint.setLatitude(pointA.getLatitude() + param * dab.getLatitude());
+            nearestLon = pointALon + param * dabLon;
+            nearestLat = pointALat + param * dabLat;
         }
 
-        double dx = origin.getLongitude() - nearestPoint.getLongitude();
-        double dy = origin.getLatitude() - nearestPoint.getLatitude();
-        double distance = Math.sqrt(dx * dx + dy * dy);
-
-        //        return nearestPoint;
-        return distance;
+        double dx = originLon - nearestLon;
+        double dy = originLat - nearestLat;
+        return Math.sqrt(dx * dx + dy * dy);
     }
 
     /**
@@ -1,10 +1,7 @@
 package com.telenav.osv.utils;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.FilenameFilter;
-import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -52,15 +49,20 @@ public class Log {
 
     private static final long TEN_DAYS = 10L * 24L * 60L * 60L * 1000L;
 
-    private static final String[] TYPES = new String[]{"D", "D", "V", "D", "I", "W", "E"};
-
     private static final long TWO_DAYS = 48L * 60L * 60L * 1000L;
 
     @SuppressLint("SdCardPath")
     public static String externalFilesDir = "/sdcard/Android/data/com.telenav.streetview/files/";
 
+    /**
+     * time the crash handler waits for the queued lines to reach the log file
+     */
+    private static final long FLUSH_TIMEOUT = 500;
+
     private static File logFile;
 
+    private static volatile LogWriter sWriter;
+
     public static File getLogFile() {
         if (logFile == null) {
             logFile = new File(externalFilesDir, "log_" + dateFormat.format(OSVApplication.runTime) + ".txt");
@@ -134,6 +136,24 @@ public class Log {
         }
     }
 
+    /**
+     * Waits a short time for the queued lines to be written to the log file, before the process exits or the log files are read.
+     */
+    public static void flush() {
+        LogWriter writer = sWriter;
+        if (writer != null) {
+            writer.flush(FLUSH_TIMEOUT);
+        }
+    }
+
+    /**
+     * @return the number of lines left out of the log file because they came faster than they could be written
+     */
+    public static long getDroppedCount() {
+        LogWriter writer = sWriter;
+        return writer != null ? writer.getDroppedCount() : 0;
+    }
+
     public static ArrayList<OSVFile> getLogFiles(Context context) {
         ArrayList<OSVFile> files = new ArrayList<>();
         OSVFile folder = new OSVFile(context.getExternalFilesDir(null).getPath());
@@ -148,28 +168,22 @@ public class Log {
         return files;
     }
 
-    private static void appendLog(int priority, String tag, String text) {
-        if (logFile == null) {
-            logFile = new File(externalFilesDir, "log_" + dateFormat.format(OSVApplication.runTime) + ".txt");
-        }
-        if (!logFile.exists()) {
-            try {
-                logFile.createNewFile();
-            } catch (IOException e) {
-                //e.printStackTrace();
+    private static LogWriter getWriter() {
+        LogWriter writer = sWriter;
+        if (writer == null) {
+            synchronized (Log.class) {
+                writer = sWriter;
+                if (writer == null) {
+                    writer = new LogWriter(getLogFile());
+                    sWriter = writer;
+                }
             }
         }
-        try {
-            //BufferedWriter for performance, true to set append to file flag
-            BufferedWriter buf = new BufferedWriter(new FileWriter(logFile, true));
-            buf.append(String.valueOf(System.currentTimeMillis())).append(" ");
-            buf.append(TYPES[priority]).append("/").append(tag).append(": ");
-            buf.append(text);
-            buf.newLine();
-            buf.close();
-        } catch (IOException e) {
-            //e.printStackTrace();
-        }
+        return writer;
+    }
+
+    private static void appendLog(int priority, String tag, String text) {
+        getWriter().append(priority, tag, text);
         if (Fabric.isInitialized()) {
             try {
                 Crashlytics.log(priority, tag, text);
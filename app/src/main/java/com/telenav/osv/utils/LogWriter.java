@@ -0,0 +1,326 @@
+package com.telenav.osv.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import android.os.Process;
+
+/**
+ * Appends the log lines to a file on a single writer thread. The callers put their lines in a lock free ring buffer and never wait for
+ * the storage, the writer keeps the file open, writes the lines in batches and flushes them once enough were written or after
+ * {@link #FLUSH_MILLIS}.
+ * <p>
+ * When the lines come faster than the writer drains them, debug and verbose lines are dropped once the buffer is
+ * {@link #SHED_FRACTION} full and every line once it is full. The number of dropped lines is written to the file when the writer
+ * catches up. The file is rotated after it grows over the size limit, keeping {@link #BACKUPS} older files.
+ */
+class LogWriter {
+
+    private static final String TAG = "LogWriter";
+
+    private static final String[] TYPES = new String[]{"D", "D", "V", "D", "I", "W", "E"};
+
+    private static final int CAPACITY = 8192;
+
+    /**
+     * part of the buffer above which only info, warning and error lines are accepted
+     */
+    private static final float SHED_FRACTION = 0.75f;
+
+    private static final long FLUSH_MILLIS = 1000;
+
+    private static final int FLUSH_SIZE = 16 * 1024;
+
+    private static final long MAX_FILE_SIZE = 5 * 1024 * 1024;
+
+    private static final int BACKUPS = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+
+    private final long mMaxFileSize;
+
+    private final int mMask;
+
+    private final int mShedSize;
+
+    private final AtomicReferenceArray<Line> mSlots;
+
+    /**
+     * next slot claimed by a caller
+     */
+    private final AtomicLong mTail = new AtomicLong();
+
+    /**
+     * next slot read by the writer, only written by the writer thread
+     */
+    private volatile long mHead;
+
+    private final AtomicLong mDropped = new AtomicLong();
+
+    private final Object mFlushLock = new Object();
+
+    /**
+     * slots written and flushed to the file, guarded by {@link #mFlushLock}
+     */
+    private long mFlushedHead;
+
+    private volatile boolean mFlushRequested;
+
+    private volatile boolean mClosed;
+
+    private final Thread mThread;
+
+    private final StringBuilder mBuilder = new StringBuilder(256);
+
+    private Writer mWriter;
+
+    private long mFileSize;
+
+    LogWriter(File file) {
+        this(file, CAPACITY, MAX_FILE_SIZE);
+    }
+
+    /**
+     * @param file the log file, appended to if it exists
+     * @param capacity lines the buffer holds, rounded up to a power of two
+     * @param maxFileSize size above which the file is rotated
+     */
+    LogWriter(File file, int capacity, long maxFileSize) {
+        mFile = file;
+        mMaxFileSize = maxFileSize;
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mMask = size - 1;
+        mShedSize = (int) (size * SHED_FRACTION);
+        mSlots = new AtomicReferenceArray<>(size);
+        mThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                drainLoop();
+            }
+        }, TAG);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Queues a line for the file, without blocking.
+     * @return false if the line was dropped because the buffer is full
+     */
+    boolean append(int priority, String tag, String text) {
+        int capacity = mMask + 1;
+        long tail;
+        do {
+            tail = mTail.get();
+            long used = tail - mHead;
+            if (used >= capacity || (used >= mShedSize && priority < android.util.Log.INFO) || mClosed) {
+                mDropped.incrementAndGet();
+                return false;
+            }
+        } while (!mTail.compareAndSet(tail, tail + 1));
+        mSlots.set((int) tail & mMask, new Line(System.currentTimeMillis(), priority, tag, text));
+        if (tail - mHead == capacity / 2) {
+            LockSupport.unpark(mThread);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of lines dropped since the writer was created
+     */
+    long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    /**
+     * Waits until the lines queued so far are written to the file, e.g. before the process exits.
+     * @return false if the lines were not written within the timeout
+     */
+    boolean flush(long timeoutMillis) {
+        long target = mTail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (mFlushLock) {
+            while (mFlushedHead < target) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0 || !mThread.isAlive()) {
+                    return false;
+                }
+                mFlushRequested = true;
+                LockSupport.unpark(mThread);
+                try {
+                    mFlushLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the queued lines and closes the file, the lines appended afterwards are dropped.
+     */
+    void close() {
+        mClosed = true;
+        LockSupport.unpark(mThread);
+        try {
+            mThread.join(FLUSH_MILLIS * 5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        long lastFlush = System.currentTimeMillis();
+        int unflushed = 0;
+        long reportedDropped = 0;
+        while (true) {
+            boolean closed = mClosed;
+            long head = mHead;
+            int written = 0;
+            Line line;
+            while ((line = mSlots.get((int) head & mMask)) != null) {
+                mSlots.set((int) head & mMask, null);
+                head++;
+                mHead = head;
+                unflushed += write(line);
+                written++;
+            }
+            long dropped = mDropped.get();
+            if (dropped > reportedDropped) {
+                String text = "dropped " + (dropped - reportedDropped) + " lines";
+                unflushed += write(new Line(System.currentTimeMillis(), android.util.Log.WARN, TAG, text));
+                reportedDropped = dropped;
+            }
+            long now = System.currentTimeMillis();
+            if (unflushed > 0 && (unflushed >= FLUSH_SIZE || now - lastFlush >= FLUSH_MILLIS || mFlushRequested || closed)) {
+                flushFile();
+                unflushed = 0;
+                lastFlush = now;
+            }
+            if (written == 0 || mFlushRequested) {
+                mFlushRequested = false;
+                synchronized (mFlushLock) {
+                    if (unflushed == 0) {
+                        mFlushedHead = head;
+                    }
+                    mFlushLock.notifyAll();
+                }
+            }
+            if (closed && mSlots.get((int) head & mMask) == null) {
+                closeFile();
+                return;
+            }
+            if (written == 0) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(unflushed > 0 ? FLUSH_MILLIS : FLUSH_MILLIS / 4));
+            }
+        }
+    }
+
+    /**
+     * @return the number of characters written
+     */
+    private int write(Line line) {
+        StringBuilder builder = mBuilder;
+        builder.setLength(0);
+        builder.append(line.time).append(' ').append(TYPES[line.priority]).append('/').append(line.tag).append(": ").append(line.text)
+                .append('\n');
+        try {
+            if (mWriter == null) {
+                open();
+            }
+            mWriter.append(builder);
+            mFileSize += builder.length();
+            if (mFileSize >= mMaxFileSize) {
+                rotate();
+            }
+        } catch (IOException e) {
+            //the line is lost, the file is opened again for the next one
+            closeFile();
+        }
+        return builder.length();
+    }
+
+    private void open() throws IOException {
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        mWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mFile, true), UTF_8), FLUSH_SIZE);
+        mFileSize = mFile.length();
+    }
+
+    /**
+     * moves the file to the first backup, shifting the older backups and deleting the oldest one
+     */
+    private void rotate() throws IOException {
+        closeFile();
+        getBackup(BACKUPS).delete();
+        for (int i = BACKUPS - 1; i >= 1; i--) {
+            File backup = getBackup(i);
+            if (backup.exists()) {
+                backup.renameTo(getBackup(i + 1));
+            }
+        }
+        mFile.renameTo(getBackup(1));
+        open();
+    }
+
+    File getBackup(int index) {
+        String name = mFile.getName();
+        int extension = name.lastIndexOf('.');
+        String backup = extension > 0 ? name.substring(0, extension) + "_" + index + name.substring(extension) : name + "_" + index;
+        return new File(mFile.getParentFile(), backup);
+    }
+
+    private void flushFile() {
+        if (mWriter != null) {
+            try {
+                mWriter.flush();
+            } catch (IOException e) {
+                android.util.Log.w(TAG, "flush: " + e.getLocalizedMessage());
+                closeFile();
+            }
+        }
+    }
+
+    private void closeFile() {
+        if (mWriter != null) {
+            try {
+                mWriter.close();
+            } catch (IOException ignored) {
+            }
+            mWriter = null;
+        }
+    }
+
+    private static class Line {
+
+        private final long time;
+
+        private final int priority;
+
+        private final String tag;
+
+        private final String text;
+
+        Line(long time, int priority, String tag, String text) {
+            this.time = time;
+            this.priority = priority;
+            this.tag = tag;
+            this.text = text;
+        }
+    }
+}
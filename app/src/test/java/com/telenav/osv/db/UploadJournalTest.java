@@ -0,0 +1,149 @@
+package com.telenav.osv.db;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import com.telenav.osv.BuildConfig;
+import com.telenav.osv.item.OSVFile;
+
+/**
+ * The upload journal across restarts and rejected online sequences, the uploads going through it are tested against a stub server by
+ * {@code PhotoUploadTest} and {@code VideoUploadTest}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class UploadJournalTest {
+
+    private static final String DATABASE_NAME = "UploadJournalTest";
+
+    private static final int SEQUENCE_ID = 3;
+
+    private static final int PHOTOS = 10;
+
+    private static final int OTHER_SEQUENCE_ID = 4;
+
+    private static final int ONLINE_SEQUENCE_ID = 1234;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private SequenceDB mDatabase;
+
+    @After
+    public void tearDown() {
+        if (mDatabase != null) {
+            mDatabase.getDatabase().close();
+        }
+    }
+
+    @Test
+    public void attemptsAreKeptAcrossRestarts() throws Exception {
+        record();
+        Assert.assertEquals(PHOTOS, mDatabase.openUploadJournal(SEQUENCE_ID, true));
+        mDatabase.setUploadState(SEQUENCE_ID, SequenceDB.JOURNAL_TYPE_PHOTO, SequenceDB.UPLOAD_IN_FLIGHT, 2);
+        Assert.assertEquals(1, mDatabase.failUpload(SEQUENCE_ID, SequenceDB.JOURNAL_TYPE_PHOTO, 2));
+        mDatabase.setUploadState(SEQUENCE_ID, SequenceDB.JOURNAL_TYPE_PHOTO, SequenceDB.UPLOAD_IN_FLIGHT, 2);
+        Assert.assertEquals(2, mDatabase.failUpload(SEQUENCE_ID, SequenceDB.JOURNAL_TYPE_PHOTO, 2));
+        mDatabase.setUploadState(SEQUENCE_ID, SequenceDB.JOURNAL_TYPE_PHOTO, SequenceDB.UPLOAD_IN_FLIGHT, 2);
+        restart();
+
+        Assert.assertEquals(PHOTOS, mDatabase.openUploadJournal(SEQUENCE_ID, true));
+        Assert.assertTrue(indexesIn(SequenceDB.UPLOAD_IN_FLIGHT).isEmpty());
+        Cursor cursor = mDatabase.getPendingUploads(SEQUENCE_ID, 1, 1);
+        try {
+            Assert.assertEquals(2, cursor.getInt(cursor.getColumnIndex(SequenceDB.JOURNAL_INDEX)));
+            Assert.assertEquals(2, cursor.getInt(cursor.getColumnIndex(SequenceDB.JOURNAL_ATTEMPTS)));
+        } finally {
+            cursor.close();
+        }
+        Assert.assertEquals(3, mDatabase.failUpload(SEQUENCE_ID, SequenceDB.JOURNAL_TYPE_PHOTO, 2));
+    }
+
+    @Test
+    public void rejectedOnlineSequenceLosesItsJournal() throws Exception {
+        record();
+        insertSequence(SEQUENCE_ID, ONLINE_SEQUENCE_ID);
+        insertSequence(OTHER_SEQUENCE_ID, ONLINE_SEQUENCE_ID + 1);
+        mDatabase.insertPhoto(OTHER_SEQUENCE_ID, 0, 0, path(0), 46.77, 23.59, 5, 0);
+        Assert.assertEquals(PHOTOS, mDatabase.openUploadJournal(SEQUENCE_ID, true));
+        Assert.assertEquals(1, mDatabase.openUploadJournal(OTHER_SEQUENCE_ID, true));
+        //stored on the rejected online sequence, before the files were deleted
+        mDatabase.setUploadState(SEQUENCE_ID, SequenceDB.JOURNAL_TYPE_PHOTO, SequenceDB.UPLOAD_DONE, 0, 1);
+        mDatabase.setUploadState(SEQUENCE_ID, SequenceDB.JOURNAL_TYPE_PHOTO, SequenceDB.UPLOAD_IN_FLIGHT, 2);
+
+        Assert.assertEquals(1, mDatabase.resetOnlineSequenceId(ONLINE_SEQUENCE_ID));
+
+        Assert.assertEquals(-1, mDatabase.getOnlineId(SEQUENCE_ID));
+        Assert.assertEquals(0, DatabaseUtils.queryNumEntries(mDatabase.getDatabase(), SequenceDB.JOURNAL_TABLE, SequenceDB.JOURNAL_SEQ_ID +
+                " = ?", new String[]{"" + SEQUENCE_ID}));
+        //the new online sequence gets every photo
+        Assert.assertEquals(PHOTOS, mDatabase.openUploadJournal(SEQUENCE_ID, true));
+        Assert.assertEquals(PHOTOS, indexesIn(SequenceDB.UPLOAD_PENDING).size());
+        Assert.assertEquals(1, mDatabase.openUploadJournal(OTHER_SEQUENCE_ID, true));
+    }
+
+    /**
+     * a fresh database with the photos of a recorded safe sequence
+     */
+    private void record() throws IOException {
+        if (mDatabase != null) {
+            mDatabase.getDatabase().close();
+        }
+        RuntimeEnvironment.application.deleteDatabase(DATABASE_NAME);
+        mDatabase = new SequenceDB(RuntimeEnvironment.application, DATABASE_NAME);
+        Random random = new Random(SEQUENCE_ID);
+        for (int index = 0; index < PHOTOS; index++) {
+            byte[] data = new byte[1024 + random.nextInt(1024)];
+            random.nextBytes(data);
+            FileOutputStream fos = new FileOutputStream(path(index));
+            fos.write(data);
+            fos.close();
+            mDatabase.insertPhoto(SEQUENCE_ID, 0, index, path(index), 46.77, 23.59, 5, 0);
+        }
+    }
+
+    /**
+     * closes the database the interrupted upload left behind and opens it again, like a new process would
+     */
+    private void restart() {
+        mDatabase.getDatabase().close();
+        mDatabase = new SequenceDB(RuntimeEnvironment.application, DATABASE_NAME);
+    }
+
+    private Set<Integer> indexesIn(int state) {
+        Set<Integer> indexes = new HashSet<>();
+        Cursor cursor = mDatabase.getDatabase().query(SequenceDB.JOURNAL_TABLE, new String[]{SequenceDB.JOURNAL_INDEX},
+                SequenceDB.JOURNAL_SEQ_ID + " = ? AND " + SequenceDB.JOURNAL_STATE + " = ?", new String[]{"" + SEQUENCE_ID, "" + state}, null,
+                null, null);
+        while (cursor.moveToNext()) {
+            indexes.add(cursor.getInt(0));
+        }
+        cursor.close();
+        return indexes;
+    }
+
+    private void insertSequence(int sequenceId, int onlineSequenceId) {
+        ContentValues values = new ContentValues();
+        values.put(SequenceDB.SEQUENCE_ID, sequenceId);
+        values.put(SequenceDB.SEQUENCE_ONLINE_ID, onlineSequenceId);
+        mDatabase.getDatabase().insertOrThrow(SequenceDB.SEQUENCE_TABLE, null, values);
+    }
+
+    private String path(int index) {
+        return new OSVFile(mFolder.getRoot(), index + ".jpg").getPath();
+    }
+}
@@ -0,0 +1,69 @@
+package com.telenav.osv.event;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.meta.SubscriberInfo;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.objenesis.Objenesis;
+import org.objenesis.ObjenesisStd;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import com.telenav.osv.BuildConfig;
+
+/**
+ * Checks that the generated index lists every subscriber method of the subscribers registered while the app starts and records.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SubscriberIndexTest {
+
+    /**
+     * the subscribers registered while the app starts and records, by name as some of them are package private
+     */
+    private static final String[] SUBSCRIBERS = {"com.telenav.osv.activity.MainActivity", "com.telenav.osv.activity.SplashActivity",
+            "com.telenav.osv.activity.LoginActivity", "com.telenav.osv.activity.PlayerActivity",
+            "com.telenav.osv.ui.fragment.UploadProgressFragment", "com.telenav.osv.ui.fragment.UserProfileFragment",
+            "com.telenav.osv.ui.fragment.WaitingFragment", "com.telenav.osv.ui.fragment.SimpleProfileFragment",
+            "com.telenav.osv.ui.fragment.MapFragment", "com.telenav.osv.ui.fragment.SettingsFragment",
+            "com.telenav.osv.ui.fragment.CameraControlsFragment", "com.telenav.osv.ui.fragment.IssueReportFragment",
+            "com.telenav.osv.ui.fragment.CameraPreviewFragment", "com.telenav.osv.ui.fragment.ByodProfileFragment",
+            "com.telenav.osv.ui.ScreenDecorator", "com.telenav.osv.ui.ScreenComposer", "com.telenav.osv.manager.obd.ObdBleManager",
+            "com.telenav.osv.manager.network.LoginManager", "com.telenav.osv.manager.network.UserDataManager",
+            "com.telenav.osv.manager.network.UploadManager", "com.telenav.osv.manager.Recorder",
+            "com.telenav.osv.manager.location.ScoreManager", "com.telenav.osv.manager.location.GoogleLocationManager",
+            "com.telenav.osv.manager.capture.Camera2Manager", "com.telenav.osv.service.CameraHandlerService"};
+
+    private List<Object> mSubscribers;
+
+    @Before
+    public void setUp() throws Exception {
+        Objenesis objenesis = new ObjenesisStd();
+        mSubscribers = new ArrayList<>();
+        for (String name : SUBSCRIBERS) {
+            mSubscribers.add(objenesis.newInstance(Class.forName(name)));
+        }
+    }
+
+    @Test
+    public void indexListsEverySubscriberMethod() throws Exception {
+        OSVEventBusIndex index = new OSVEventBusIndex();
+        for (Object subscriber : mSubscribers) {
+            for (Class<?> subscriberClass = subscriber.getClass(); subscriberClass.getName().startsWith("com.telenav.osv");
+                 subscriberClass = subscriberClass.getSuperclass()) {
+                int annotated = 0;
+                for (Method method : subscriberClass.getDeclaredMethods()) {
+                    if (method.isAnnotationPresent(Subscribe.class)) {
+                        annotated++;
+                    }
+                }
+                SubscriberInfo info = index.getSubscriberInfo(subscriberClass);
+                Assert.assertEquals(subscriberClass.getSimpleName(), annotated, info == null ? 0 : info.getSubscriberMethods().length);
+            }
+        }
+    }
+}
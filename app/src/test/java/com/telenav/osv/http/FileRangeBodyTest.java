@@ -0,0 +1,154 @@
+package com.telenav.osv.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import com.telenav.osv.utils.StubHttpServer;
+
+/**
+ * resumable upload tests, against a local stub server dropping connections at random points
+ */
+public class FileRangeBodyTest {
+
+    private static final String BOUNDARY = "FileRangeBodyTest7MA4YWxkTrZu0gW";
+
+    private static final int FILE_SIZE = 300 * 1024 + 17;
+
+    private static final int PART_SIZE = 32 * 1024;
+
+    private File mFile;
+
+    private byte[] mData;
+
+    private StubServer mServer;
+
+    @Before
+    public void setup() throws Exception {
+        mData = new byte[FILE_SIZE];
+        new Random(7).nextBytes(mData);
+        mFile = File.createTempFile("video", ".mp4");
+        FileOutputStream fos = new FileOutputStream(mFile);
+        fos.write(mData);
+        fos.close();
+        mServer = new StubServer(new Random(11));
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.close();
+        mFile.delete();
+    }
+
+    @Test
+    public void writesRange() throws Exception {
+        FileRangeBody body = new FileRangeBody(mFile, 1000, 2345, ContentType.create("video/mp4"), mFile.getName());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        Assert.assertEquals(2345, body.getContentLength());
+        Assert.assertArrayEquals(Arrays.copyOfRange(mData, 1000, 3345), out.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void rangePastEndFails() throws Exception {
+        new FileRangeBody(mFile, FILE_SIZE - 10, 20, ContentType.create("video/mp4"), mFile.getName()).writeTo(new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void resumesAfterDroppedConnections() throws Exception {
+        long checkpoint = 0;
+        int attempts = 0;
+        while (checkpoint < FILE_SIZE) {
+            Assert.assertTrue("too many attempts", attempts++ < 1000);
+            long length = Math.min(PART_SIZE, FILE_SIZE - checkpoint);
+            if (sendPart(checkpoint, length)) {
+                checkpoint += length;
+            }
+        }
+        Assert.assertTrue("the stub server should have dropped connections", mServer.dropped > 0);
+        Assert.assertArrayEquals(mData, mServer.received.toByteArray());
+    }
+
+    private boolean sendPart(long offset, long length) {
+        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+        builder.addTextBody("chunkOffset", "" + offset);
+        builder.addPart("video", new FileRangeBody(mFile, offset, length, ContentType.create("video/mp4"), mFile.getName()));
+        builder.setBoundary(BOUNDARY);
+        HttpEntity entity = builder.build();
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL("http://127.0.0.1:" + mServer.getPort() + "/video").openConnection();
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setReadTimeout(5000);
+            connection.setFixedLengthStreamingMode((int) entity.getContentLength());
+            connection.setRequestProperty("Content-Type", entity.getContentType().getValue());
+            OutputStream out = connection.getOutputStream();
+            entity.writeTo(out);
+            out.close();
+            return connection.getResponseCode() == 200;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Accepts parts at the offset following the bytes received so far, or at an earlier offset for a part resent after a lost
+     * response. Drops a third of the connections while reading the body, and some after storing the part but before responding.
+     */
+    private static class StubServer extends StubHttpServer {
+
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        private final Random mRandom;
+
+        volatile int dropped;
+
+        StubServer(Random random) throws IOException {
+            mRandom = random;
+        }
+
+        @Override
+        protected void handle(Exchange exchange) throws IOException {
+            if (mRandom.nextInt(3) == 0) {
+                exchange.readBody(mRandom.nextInt(exchange.getContentLength()));
+                dropped++;
+                return;
+            }
+            Map<String, String> parts = exchange.readParts();
+            long offset = Long.parseLong(parts.get("chunkOffset").trim());
+            byte[] bytes = parts.get("video").getBytes(LATIN);
+            if (offset > received.size()) {
+                exchange.respond(409, "{}");
+                return;
+            }
+            byte[] kept = Arrays.copyOf(received.toByteArray(), (int) offset);
+            received.reset();
+            received.write(kept);
+            received.write(bytes);
+            if (mRandom.nextInt(8) == 0) {
+                dropped++;
+                return;
+            }
+            exchange.respond(200, "{}");
+        }
+    }
+}
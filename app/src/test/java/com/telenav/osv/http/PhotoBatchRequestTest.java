@@ -0,0 +1,218 @@
+package com.telenav.osv.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.apache.http.HttpEntity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import com.telenav.osv.BuildConfig;
+import com.telenav.osv.item.OSVFile;
+import com.telenav.osv.item.network.PhotoBatchResult;
+import com.telenav.osv.listener.network.OsvRequestResponseListener;
+import com.telenav.osv.manager.network.parser.PhotoBatchParser;
+import com.telenav.osv.utils.StubHttpServer;
+
+/**
+ * batched photo uploads against a local stub server failing some of the photos, only those are sent again
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class PhotoBatchRequestTest {
+
+    private static final int SEQUENCE_ID = 1234;
+
+    private static final int PHOTOS = 8;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final Map<Integer, byte[]> mData = new HashMap<>();
+
+    private List<PhotoBatchRequest.Photo> mPhotos;
+
+    private StubServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        Random random = new Random(5);
+        mPhotos = new ArrayList<>();
+        for (int i = 0; i < PHOTOS; i++) {
+            byte[] data = new byte[10 * 1024 + random.nextInt(10 * 1024)];
+            random.nextBytes(data);
+            OSVFile file = new OSVFile(mFolder.getRoot(), i + ".jpg");
+            FileOutputStream fos = new FileOutputStream(file);
+            fos.write(data);
+            fos.close();
+            mData.put(i, data);
+            mPhotos.add(new PhotoBatchRequest.Photo(file, i, 46.77 + i / 1000d, 23.59, 5));
+        }
+        mServer = new StubServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.close();
+    }
+
+    @Test
+    public void batchCarriesEveryPhoto() throws Exception {
+        PhotoBatchResult result = send(mPhotos);
+
+        Assert.assertEquals(1, mServer.requests);
+        Assert.assertEquals("token", mServer.fields.get("access_token"));
+        Assert.assertEquals("" + SEQUENCE_ID, mServer.fields.get("sequenceId"));
+        for (PhotoBatchRequest.Photo photo : mPhotos) {
+            Assert.assertTrue(result.isUploaded(photo.getSequenceIndex()));
+            Assert.assertArrayEquals(mData.get(photo.getSequenceIndex()), mServer.stored.get(photo.getSequenceIndex()));
+            Assert.assertEquals(photo.getLat() + "," + photo.getLon(), mServer.coordinates.get(photo.getSequenceIndex()));
+        }
+    }
+
+    @Test
+    public void onlyFailedPhotosAreSentAgain() throws Exception {
+        mServer.failOnce.addAll(Arrays.asList(1, 4, 6));
+        List<PhotoBatchRequest.Photo> pending = mPhotos;
+        while (!pending.isEmpty()) {
+            Assert.assertTrue("too many attempts", mServer.requests < 5);
+            PhotoBatchResult result = send(pending);
+            List<PhotoBatchRequest.Photo> failed = new ArrayList<>();
+            for (PhotoBatchRequest.Photo photo : pending) {
+                if (!result.isUploaded(photo.getSequenceIndex())) {
+                    failed.add(photo);
+                }
+            }
+            pending = failed;
+        }
+
+        Assert.assertEquals(2, mServer.requests);
+        Assert.assertEquals(PHOTOS + 3, mServer.received);
+        for (PhotoBatchRequest.Photo photo : mPhotos) {
+            Assert.assertArrayEquals(mData.get(photo.getSequenceIndex()), mServer.stored.get(photo.getSequenceIndex()));
+        }
+    }
+
+    @Test
+    public void photoMissingFromTheResponseIsNotUploaded() throws Exception {
+        mServer.omit.add(3);
+        PhotoBatchResult result = send(mPhotos.subList(0, 4));
+
+        Assert.assertTrue(result.isUploaded(2));
+        Assert.assertFalse(result.isUploaded(3));
+        Assert.assertNull(result.getPhotoResult(3));
+    }
+
+    private PhotoBatchResult send(List<PhotoBatchRequest.Photo> photos) throws IOException {
+        String url = "http://127.0.0.1:" + mServer.getPort() + "/1.0/photo/batch/";
+        PhotoBatchParser parser = new PhotoBatchParser();
+        PhotoBatchRequest request =
+                new PhotoBatchRequest(url, new OsvRequestResponseListener<PhotoBatchParser, PhotoBatchResult>(parser) {
+
+                    @Override
+                    public void onSuccess(int status, PhotoBatchResult result) {
+                    }
+
+                    @Override
+                    public void onFailure(int status, PhotoBatchResult result) {
+                    }
+                }, null, "token", SEQUENCE_ID, photos, null);
+        HttpEntity entity = request.getMultipartEntity();
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setReadTimeout(5000);
+            connection.setFixedLengthStreamingMode((int) entity.getContentLength());
+            connection.setRequestProperty("Content-Type", request.getBodyContentType());
+            OutputStream out = connection.getOutputStream();
+            entity.writeTo(out);
+            out.close();
+            Assert.assertEquals(200, connection.getResponseCode());
+            InputStream in = connection.getInputStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            return parser.parse(body.toByteArray(), "UTF-8");
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Stores the photos of the batches and answers with a status for each of them. The photos in {@link #failOnce} fail the first
+     * time they are received, the ones in {@link #omit} are left out of the response.
+     */
+    private static class StubServer extends StubHttpServer {
+
+        final Map<Integer, byte[]> stored = new HashMap<>();
+
+        final Map<Integer, String> coordinates = new HashMap<>();
+
+        final Set<Integer> failOnce = new HashSet<>();
+
+        final Set<Integer> omit = new HashSet<>();
+
+        /**
+         * the parts of the last request
+         */
+        volatile Map<String, String> fields;
+
+        volatile int requests;
+
+        volatile int received;
+
+        StubServer() throws IOException {
+        }
+
+        @Override
+        protected void handle(Exchange exchange) throws IOException {
+            Map<String, String> parts = exchange.readParts();
+            fields = parts;
+            requests++;
+            StringBuilder photos = new StringBuilder();
+            for (int i = 0; parts.containsKey("sequenceIndex[" + i + "]"); i++) {
+                received++;
+                int index = Integer.parseInt(parts.get("sequenceIndex[" + i + "]"));
+                boolean failed = failOnce.remove(index);
+                if (!failed) {
+                    stored.put(index, parts.get("photo[" + i + "]").getBytes(LATIN));
+                    coordinates.put(index, parts.get("coordinate[" + i + "]"));
+                }
+                if (omit.contains(index)) {
+                    continue;
+                }
+                if (photos.length() > 0) {
+                    photos.append(',');
+                }
+                photos.append("{\"sequenceIndex\":").append(index).append(",\"status\":")
+                        .append(failed ? status(500, 690, "Unexpected server error") : status(200, 600, "The request has been processed"))
+                        .append('}');
+            }
+            exchange.respond(200, "{\"status\":" + status(200, 600, "The request has been processed") + ",\"osv\":{\"photos\":[" + photos +
+                    "]}}");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.telenav.osv.item.metadata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import com.telenav.osv.BuildConfig;
+
+/**
+ * gzipped binary metadata round trip tests, the converted text has to match the 1.1.6 format line for line and a track without gzip
+ * trailer has to convert up to its last sync flush
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class MetadataConverterTest {
+
+    private static final String HEADER = "Google Pixel;8.0.0;1.1.6;2.5.1;video";
+
+    private File mFile;
+
+    @Before
+    public void setup() throws Exception {
+        mFile = File.createTempFile("track", ".bin.gz");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void convertsAllRecordTypes() throws Exception {
+        MetadataBuffer buffer = new MetadataBuffer(4);
+        MetadataWriter writer = new MetadataWriter();
+        writer.open(mFile, HEADER);
+        buffer.begin(MetadataBuffer.TYPE_GPS, 1500000000123L).value(23.5943).value(46.7712).value(412.5).value(4.8f).skip().end();
+        buffer.begin(MetadataBuffer.TYPE_POSITION, 1500000000200L).value(23.5944).value(46.7713).end();
+        buffer.begin(MetadataBuffer.TYPE_ROTATION, 1500000000205L).value(0.1f).value(-0.25f).value(0.75f).end();
+        buffer.begin(MetadataBuffer.TYPE_LINEAR_ACCELERATION, 1500000000199L).value(0.01f).value(9.81f).value(-0.3f).end();
+        buffer.begin(MetadataBuffer.TYPE_PRESSURE, 1500000001000L).value(1013.25f).end();
+        buffer.begin(MetadataBuffer.TYPE_HEADING, 1500000001001L).value(2.5f).end();
+        buffer.begin(MetadataBuffer.TYPE_GRAVITY, 1500000001050L).value(0.5f).value(9.7f).value(0.2f).end();
+        buffer.begin(MetadataBuffer.TYPE_SPEED, 1500000001100L).value(13.4f).end();
+        buffer.drainTo(writer);
+        new VideoData(17, 2, 1500000001105L).writeTo(buffer);
+        new Obd2Data(54, 1500000002000L).writeTo(buffer);
+        buffer.drainTo(writer);
+        writer.finish();
+
+        String expected = HEADER + "\n" +
+                "1500000000.123;23.5943;46.7712;412.5;4.8;;;;;;;;;;;;;;;;\n" +
+                "1500000000.200;23.5944;46.7713;;;;;;;;;;;;;;;;;;\n" +
+                "1500000000.205;;;;;;0.1;-0.25;0.75;;;;;;;;;;;;\n" +
+                "1500000000.199;;;;;;;;;0.01;9.81;-0.3;;;;;;;;;\n" +
+                "1500000001.0;;;;;;;;;;;;1013.25;;;;;;;;\n" +
+                "1500000001.1;;;;;;;;;;;;;2.5;;;;;;;\n" +
+                "1500000001.50;;;;;;;;;;;;;;;;0.5;9.7;0.2;;\n" +
+                "1500000001.100;;;;;;;;;;;;;;;;;;;13.4;\n" +
+                new VideoData(17, 2, 1500000001105L).toString() +
+                new Obd2Data(54, 1500000002000L).toString() +
+                "DONE";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertTrue(MetadataConverter.convert(mFile, out));
+        Assert.assertEquals(expected, out.toString("UTF-8"));
+    }
+
+    @Test
+    public void keepsFlushedRecordsOfInterruptedFile() throws Exception {
+        MetadataBuffer buffer = new MetadataBuffer();
+        MetadataWriter writer = new MetadataWriter();
+        writer.open(mFile, HEADER);
+        buffer.begin(MetadataBuffer.TYPE_HEADING, 1500000000000L).value(1.5f).end();
+        buffer.begin(MetadataBuffer.TYPE_GPS, 1500000000100L).value(23.5943).value(46.7712).skip().skip().skip().end();
+        buffer.drainTo(writer);
+        writer.flush();
+        //what is on disk when the app gets killed after the sync flush
+        byte[] crashed = readBytes(mFile);
+        buffer.begin(MetadataBuffer.TYPE_HEADING, 1500000000200L).value(2.5f).end();
+        buffer.drainTo(writer);
+        writer.finish();
+        FileOutputStream fos = new FileOutputStream(mFile);
+        fos.write(crashed);
+        fos.close();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertFalse(MetadataConverter.convert(mFile, out));
+        Assert.assertEquals(HEADER + "\n" + "1500000000.0;;;;;;;;;;;;;1.5;;;;;;;\n" + "1500000000.100;23.5943;46.7712;;;;;;;;;;;;;;;;;;\n",
+                out.toString("UTF-8"));
+    }
+
+    @Test
+    public void convertsToGzip() throws Exception {
+        MetadataBuffer buffer = new MetadataBuffer();
+        MetadataWriter writer = new MetadataWriter();
+        writer.open(mFile, HEADER);
+        new VideoData(0, 0, 1500000000000L).writeTo(buffer);
+        buffer.drainTo(writer);
+        writer.finish();
+        File text = File.createTempFile("track", ".txt.gz");
+        try {
+            Assert.assertTrue(MetadataConverter.convertToGzip(mFile, text));
+            InputStream in = new GZIPInputStream(new FileInputStream(text));
+            Assert.assertEquals(HEADER + "\n" + new VideoData(0, 0, 1500000000000L).toString() + "DONE", new String(readFully(in), "UTF-8"));
+        } finally {
+            text.delete();
+        }
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void rejectsOtherFiles() throws Exception {
+        FileOutputStream fos = new FileOutputStream(mFile);
+        fos.write("1500000000.0;;;;;\n".getBytes("UTF-8"));
+        fos.close();
+        MetadataConverter.convert(mFile, new ByteArrayOutputStream());
+    }
+
+    private static byte[] readBytes(File file) throws Exception {
+        return readFully(new FileInputStream(file));
+    }
+
+    private static byte[] readFully(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,68 @@
+package com.telenav.osv.manager.capture;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * size classes, reuse and bounds of the frame buffer pool
+ */
+public class FrameBufferPoolTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    public void roundsToQuarterPowerOfTwo() {
+        Assert.assertEquals(4096, FrameBufferPool.sizeClass(1));
+        Assert.assertEquals(4096, FrameBufferPool.sizeClass(4096));
+        Assert.assertEquals(5120, FrameBufferPool.sizeClass(4097));
+        Assert.assertEquals(4 * MB, FrameBufferPool.sizeClass(4 * MB));
+        Assert.assertEquals(5 * MB, FrameBufferPool.sizeClass(4 * MB + 1));
+        Assert.assertEquals(5 * MB, FrameBufferPool.sizeClass(5 * MB));
+        Assert.assertEquals(8 * MB, FrameBufferPool.sizeClass(7 * MB + 1));
+        for (int size = 4097; size < 64 * MB; size = size * 3 / 2 + 7) {
+            int sizeClass = FrameBufferPool.sizeClass(size);
+            Assert.assertTrue(sizeClass >= size);
+            Assert.assertTrue(sizeClass - size < size / 4 + 1);
+            Assert.assertEquals(sizeClass, FrameBufferPool.sizeClass(sizeClass));
+        }
+    }
+
+    @Test
+    public void reusesReleasedArrays() {
+        FrameBufferPool pool = new FrameBufferPool(64 * MB);
+        FrameBuffer first = pool.acquire(3 * MB + 100);
+        Assert.assertEquals(3 * MB + 100, first.length);
+        Assert.assertEquals(FrameBufferPool.sizeClass(first.length), first.data.length);
+        first.release();
+        //a second release must not put the array in the pool twice
+        first.release();
+        Assert.assertEquals(first.data.length, pool.getPooledBytes());
+
+        FrameBuffer second = pool.acquire(3 * MB + 2000);
+        Assert.assertSame(first.data, second.data);
+        FrameBuffer third = pool.acquire(3 * MB + 2000);
+        Assert.assertNotSame(second.data, third.data);
+        Assert.assertEquals(3, pool.getRequests());
+        Assert.assertEquals(1, pool.getHits());
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void keepsIdleArraysWithinBounds() {
+        FrameBufferPool pool = new FrameBufferPool(10 * MB);
+        FrameBuffer[] buffers = new FrameBuffer[4];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.acquire(4 * MB);
+        }
+        for (FrameBuffer buffer : buffers) {
+            buffer.release();
+        }
+        Assert.assertEquals(8 * MB, pool.getPooledBytes());
+        pool.trim();
+        Assert.assertEquals(0, pool.getPooledBytes());
+
+        //arrays not taken from the pool are not kept
+        FrameBuffer.wrap(new byte[4 * MB]).release();
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+}
@@ -0,0 +1,104 @@
+package com.telenav.osv.manager.network;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import com.telenav.osv.BuildConfig;
+import com.telenav.osv.MockUtil;
+import com.telenav.osv.item.Polyline;
+import com.telenav.osv.manager.network.parser.GeometryParser;
+
+/**
+ * tiles stored on disk, read back by a new cache, evicted by size and merged without the duplicated segments
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class GeometryTileCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private byte[] mData;
+
+    private List<Polyline> mSegments;
+
+    @Before
+    public void setUp() throws Exception {
+        mData = MockUtil.getJsonFromFile(this, "geometry.json").getBytes(StandardCharsets.UTF_8);
+        mSegments = new GeometryParser().parse(mData, "UTF-8").getSegmentList();
+    }
+
+    @Test
+    public void tileIsReadBackFromDisk() throws Exception {
+        File directory = mFolder.newFolder();
+        long key = GeometryTileCache.key(2337, 1181);
+        new GeometryTileCache(directory).put(key, mData, "\"etag\"", mSegments);
+
+        GeometryTileCache cache = new GeometryTileCache(directory);
+        Assert.assertTrue(cache.isFresh(key));
+        GeometryTileCache.Tile tile = cache.get(key);
+        Assert.assertNotNull(tile);
+        Assert.assertEquals("\"etag\"", tile.etag);
+        Assert.assertFalse(tile.isExpired());
+        Assert.assertEquals(mSegments.size(), tile.segments.size());
+        Assert.assertEquals(mSegments.get(0).segmentKey, tile.segments.get(0).segmentKey);
+        Assert.assertNull(cache.get(GeometryTileCache.key(2337, 1182)));
+        Assert.assertFalse(cache.isFresh(GeometryTileCache.key(2337, 1182)));
+    }
+
+    @Test
+    public void leastRecentlyUsedTileIsEvicted() throws Exception {
+        File directory = mFolder.newFolder();
+        GeometryTileCache cache = new GeometryTileCache(directory, mData.length * 5 / 2);
+        long first = GeometryTileCache.key(1, 1);
+        long second = GeometryTileCache.key(1, 2);
+        long third = GeometryTileCache.key(1, 3);
+        cache.put(first, mData, null, mSegments);
+        cache.put(second, mData, null, mSegments);
+        Assert.assertTrue(cache.getFile(first).setLastModified(System.currentTimeMillis() - 10000));
+        Assert.assertTrue(cache.getFile(second).setLastModified(System.currentTimeMillis() - 20000));
+
+        cache.put(third, mData, null, mSegments);
+
+        Assert.assertTrue(cache.getFile(first).exists());
+        Assert.assertFalse(cache.getFile(second).exists());
+        Assert.assertTrue(cache.getFile(third).exists());
+        Assert.assertTrue(cache.getSize() <= mData.length * 5 / 2);
+    }
+
+    @Test
+    public void tilesCoverTheBoundingBox() {
+        List<Long> tiles = GeometryTileCache.getTiles(46.75, 23.61, 46.73, 23.63);
+        Assert.assertEquals(4, tiles.size());
+        Assert.assertEquals(GeometryTileCache.key(2336, 1180), (long) tiles.get(0));
+        Assert.assertEquals(GeometryTileCache.key(2337, 1181), (long) tiles.get(3));
+        String[] topLeft = GeometryTileCache.getTopLeft(tiles.get(0)).split(",");
+        Assert.assertEquals(46.74, Double.parseDouble(topLeft[0]), 1e-9);
+        Assert.assertEquals(23.60, Double.parseDouble(topLeft[1]), 1e-9);
+    }
+
+    @Test
+    public void mergeKeepsSharedSegmentsOnce() throws Exception {
+        GeometryTileCache cache = new GeometryTileCache(mFolder.newFolder());
+        cache.put(GeometryTileCache.key(1, 1), mData, null, mSegments);
+        List<Polyline> neighbour = new GeometryParser().parse(mData, "UTF-8").getSegmentList().subList(0, 10);
+        cache.put(GeometryTileCache.key(1, 2), mData, null, neighbour);
+
+        ArrayList<Polyline> merged = GeometryTileCache.merge(Arrays.asList(mSegments, neighbour));
+        Assert.assertEquals(mSegments.size(), merged.size());
+        Assert.assertEquals(GeometryParser.ONLINE_SEGMENTS_ID_MODIFIER, merged.get(0).getIdentifier());
+        //identifiers are given when the tiles are loaded, the same segment of the neighbour tile gets another one
+        Assert.assertEquals(GeometryParser.ONLINE_SEGMENTS_ID_MODIFIER + mSegments.size(), neighbour.get(0).getIdentifier());
+        Assert.assertEquals(mSegments.get(0).segmentKey, neighbour.get(0).segmentKey);
+    }
+}
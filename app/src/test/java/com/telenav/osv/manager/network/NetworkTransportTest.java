@@ -0,0 +1,50 @@
+package com.telenav.osv.manager.network;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import com.android.volley.RequestQueue;
+import com.telenav.osv.BuildConfig;
+
+/**
+ * one transport for the application, the upload queues start their dispatchers only while they run
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class NetworkTransportTest {
+
+    private static final long THREAD_TIMEOUT = 5000;
+
+    private static void awaitDispatcherCount(NetworkTransport transport, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + THREAD_TIMEOUT;
+        while (transport.getDispatcherThreadCount() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(expected, transport.getDispatcherThreadCount());
+    }
+
+    @Test
+    public void interactiveQueueIsShared() throws Exception {
+        NetworkTransport transport = NetworkTransport.getInstance(RuntimeEnvironment.application);
+        Assert.assertSame(transport, NetworkTransport.getInstance(RuntimeEnvironment.application));
+        Assert.assertSame(transport.getInteractiveQueue(), NetworkTransport.getInstance(RuntimeEnvironment.application).getInteractiveQueue());
+        Assert.assertTrue(Integer.parseInt(System.getProperty("http.maxConnections")) >= 12);
+    }
+
+    @Test
+    public void uploadQueueHoldsThreadsOnlyWhileStarted() throws Exception {
+        NetworkTransport transport = NetworkTransport.getInstance(RuntimeEnvironment.application);
+        int idle = transport.getDispatcherThreadCount();
+        RequestQueue queue = transport.newUploadQueue(3);
+        Assert.assertEquals(idle, transport.getDispatcherThreadCount());
+
+        queue.start();
+        //three network dispatchers and one cache dispatcher
+        awaitDispatcherCount(transport, idle + 4);
+        queue.stop();
+        awaitDispatcherCount(transport, idle);
+    }
+}
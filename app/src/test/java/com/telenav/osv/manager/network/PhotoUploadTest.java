@@ -0,0 +1,491 @@
+package com.telenav.osv.manager.network;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import android.database.Cursor;
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.HurlStack;
+import com.android.volley.toolbox.NoCache;
+import com.android.volley.toolbox.StringRequest;
+import com.telenav.osv.BuildConfig;
+import com.telenav.osv.db.SequenceDB;
+import com.telenav.osv.http.PhotoBatchRequest;
+import com.telenav.osv.item.OSVFile;
+import com.telenav.osv.item.network.ApiResponse;
+import com.telenav.osv.utils.StubHttpServer;
+
+/**
+ * Uploads the photos of a safe sequence through the upload journal against a local stub server, interrupting the upload at every
+ * request, answer and background task and resuming it on a reopened database: every photo is stored, the ones journaled done are
+ * never sent again, and only the ones waiting for an answer at the interruption reach the server twice.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class PhotoUploadTest {
+
+    private static final String DATABASE_NAME = "PhotoUploadTest";
+
+    private static final int SEQUENCE_ID = 3;
+
+    private static final int ONLINE_SEQUENCE_ID = 1234;
+
+    private static final int PHOTOS = 10;
+
+    private static final int BATCH_SIZE = 4;
+
+    /**
+     * the photo which the server fails the first time it receives it, it is sent again on its own
+     */
+    private static final int REJECTED = 5;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final Map<Integer, byte[]> mData = new HashMap<>();
+
+    private SequenceDB mDatabase;
+
+    /**
+     * every recording gets a database of its own, the database of an interrupted upload is left open like a dead process leaves it
+     */
+    private String mDatabaseName;
+
+    private int mRecordings;
+
+    private StubServer mServer;
+
+    /**
+     * batching is behind a preference which is off by default, the tests send batches unless they turn it off
+     */
+    private boolean mBatch = true;
+
+    @Before
+    public void setUp() throws Exception {
+        record();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.close();
+    }
+
+    @Test
+    public void photosAreSentInBatches() throws Exception {
+        new UploadProcess(null, -1).upload().awaitUploaded();
+
+        assertUploaded();
+        //three batches and the rejected photo on its own
+        Assert.assertEquals(PHOTOS + 1, mServer.received.size());
+        Assert.assertTrue(mServer.duplicates.isEmpty());
+    }
+
+    @Test
+    public void serverWithoutBatchEndpointGetsSinglePhotos() throws Exception {
+        mServer.batchEndpoint = false;
+        new UploadProcess(null, -1).upload().awaitUploaded();
+
+        Assert.assertFalse(PhotoUpload.isBatchSupported());
+        assertUploaded();
+    }
+
+    @Test
+    public void batchingOffSendsSinglePhotos() throws Exception {
+        mBatch = false;
+        mServer.batchEndpoint = false;
+        new UploadProcess(null, -1).upload().awaitUploaded();
+
+        //the batch endpoint was never tried
+        Assert.assertTrue(PhotoUpload.isBatchSupported());
+        assertUploaded();
+        Assert.assertEquals(PHOTOS + 1, mServer.received.size());
+    }
+
+    @Test
+    public void photoMissingWhenSentAgainIsSkipped() throws Exception {
+        mServer.deleteRejected = true;
+        UploadProcess process = new UploadProcess(null, -1).upload();
+        process.awaitUploaded();
+
+        //the photo gives its place in the window back, or the feeder would wait for it forever
+        Assert.assertEquals(1, process.mSkipped.get());
+        Assert.assertNull(mServer.stored(REJECTED));
+        Assert.assertEquals(0, mDatabase.getNumberOfFrames(SEQUENCE_ID));
+        Assert.assertEquals(0, mDatabase.openUploadJournal(SEQUENCE_ID, true));
+    }
+
+    @Test
+    public void interruptedUploadsResumeWithoutDuplicatesOrGaps() throws Exception {
+        UploadProcess clean = new UploadProcess(null, -1).upload();
+        clean.awaitUploaded();
+        Map<Step, Integer> steps = clean.counts();
+
+        for (Step kind : Step.values()) {
+            for (int crashAt = 0; crashAt < steps.get(kind); crashAt++) {
+                String step = "interrupted at " + kind + " " + crashAt;
+                mServer.close();
+                record();
+                new UploadProcess(kind, crashAt).upload().awaitDead();
+                Set<Integer> doneAtCrash = doneIndexes();
+                int receivedBeforeCrash = mServer.received.size();
+
+                mDatabase = new SequenceDB(RuntimeEnvironment.application, mDatabaseName);
+                new UploadProcess(null, -1).upload().awaitUploaded();
+
+                assertUploaded();
+                for (int index : mServer.received.subList(receivedBeforeCrash, mServer.received.size())) {
+                    Assert.assertFalse(step + ", photo " + index + " was journaled done", doneAtCrash.contains(index));
+                }
+                for (Map.Entry<Integer, Integer> duplicate : mServer.duplicates.entrySet()) {
+                    //only the photos which were waiting for an answer reach the server again, it answers with a duplicate entry
+                    Assert.assertEquals(step + ", photo " + duplicate.getKey(), 1, (int) duplicate.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * a fresh database with the photos of a recorded safe sequence, and a fresh server
+     */
+    private void record() throws IOException {
+        PhotoUpload.resetBatchSupported();
+        mDatabaseName = DATABASE_NAME + mRecordings++;
+        RuntimeEnvironment.application.deleteDatabase(mDatabaseName);
+        mDatabase = new SequenceDB(RuntimeEnvironment.application, mDatabaseName);
+        Random random = new Random(SEQUENCE_ID);
+        for (int index = 0; index < PHOTOS; index++) {
+            byte[] data = new byte[1024 + random.nextInt(1024)];
+            random.nextBytes(data);
+            FileOutputStream fos = new FileOutputStream(path(index));
+            fos.write(data);
+            fos.close();
+            mData.put(index, data);
+            mDatabase.insertPhoto(SEQUENCE_ID, 0, index, path(index), 46.77, 23.59, 5, 0);
+        }
+        mServer = new StubServer();
+        mServer.start();
+    }
+
+    private void assertUploaded() {
+        for (int index = 0; index < PHOTOS; index++) {
+            Assert.assertArrayEquals("photo " + index, mData.get(index), mServer.stored(index));
+            Assert.assertFalse("photo " + index, new OSVFile(path(index)).exists());
+        }
+        Assert.assertEquals(0, mDatabase.getNumberOfFrames(SEQUENCE_ID));
+        Assert.assertEquals(0, mDatabase.openUploadJournal(SEQUENCE_ID, true));
+    }
+
+    /**
+     * the photos which are in the journal but not pending
+     */
+    private Set<Integer> doneIndexes() {
+        Set<Integer> indexes = new HashSet<>();
+        for (int index = 0; index < PHOTOS; index++) {
+            indexes.add(index);
+        }
+        Cursor cursor = mDatabase.getPendingUploads(SEQUENCE_ID, -1, 0);
+        while (cursor.getCount() > 0 && !cursor.isAfterLast()) {
+            indexes.remove(cursor.getInt(cursor.getColumnIndex(SequenceDB.JOURNAL_INDEX)));
+            cursor.moveToNext();
+        }
+        cursor.close();
+        return indexes;
+    }
+
+    private String path(int index) {
+        return new OSVFile(mFolder.getRoot(), index + ".jpg").getPath();
+    }
+
+    /**
+     * the points where the process can die
+     */
+    private enum Step {
+        /**
+         * a request handed to the upload queue
+         */
+        REQUEST,
+        /**
+         * an answer delivered to the response thread
+         */
+        ANSWER,
+        /**
+         * a task run in the background
+         */
+        BACKGROUND
+    }
+
+    /**
+     * The upload manager of one process, reading the photos from the journal and queueing them in batches on its background thread, the
+     * way the upload manager does. It can die at a step, from then on it sends no requests, delivers no answers and runs no tasks.
+     */
+    private class UploadProcess implements PhotoUpload.Callback {
+
+        private final ExecutorService mBackground = Executors.newSingleThreadExecutor();
+
+        private final RequestQueue mQueue;
+
+        private final Step mCrashKind;
+
+        private final int mCrashAt;
+
+        private final Map<Step, AtomicInteger> mCounts = new HashMap<>();
+
+        private final CountDownLatch mDead = new CountDownLatch(1);
+
+        /**
+         * requests handed to {@link #mQueue} and answers of them delivered or dropped
+         */
+        private final AtomicInteger mQueued = new AtomicInteger();
+
+        private final AtomicInteger mAnswered = new AtomicInteger();
+
+        private final AtomicInteger mSkipped = new AtomicInteger();
+
+        private volatile boolean mDying;
+
+        private CountDownLatch mUploaded;
+
+        UploadProcess(Step crashKind, int crashAt) {
+            mCrashKind = crashKind;
+            mCrashAt = crashAt;
+            for (Step kind : Step.values()) {
+                mCounts.put(kind, new AtomicInteger());
+            }
+            mQueue = new RequestQueue(new NoCache(), new BasicNetwork(new HurlStack()), 1, new ExecutorDelivery(new Executor() {
+
+                @Override
+                public void execute(Runnable command) {
+                    if (alive(Step.ANSWER)) {
+                        command.run();
+                    }
+                    synchronized (mAnswered) {
+                        mAnswered.incrementAndGet();
+                        mAnswered.notifyAll();
+                    }
+                }
+            }));
+            mQueue.start();
+        }
+
+        UploadProcess upload() {
+            mDatabase.openUploadJournal(SEQUENCE_ID, true);
+            mDatabase.deleteUploadedFiles(SEQUENCE_ID);
+            final List<PhotoBatchRequest.Photo> photos = new ArrayList<>();
+            Cursor cursor = mDatabase.getPendingUploads(SEQUENCE_ID, -1, 0);
+            while (cursor.getCount() > 0 && !cursor.isAfterLast()) {
+                String path = cursor.getString(cursor.getColumnIndex(SequenceDB.JOURNAL_FILE_PATH));
+                int index = cursor.getInt(cursor.getColumnIndex(SequenceDB.JOURNAL_INDEX));
+                photos.add(new PhotoBatchRequest.Photo(new OSVFile(path), index, 46.77, 23.59, 5));
+                cursor.moveToNext();
+            }
+            cursor.close();
+            mUploaded = new CountDownLatch(photos.size());
+            runInBackground(new Runnable() {
+
+                @Override
+                public void run() {
+                    String url = "http://127.0.0.1:" + mServer.getPort() + "/1.0/photo/";
+                    for (int i = 0; i < photos.size(); i += BATCH_SIZE) {
+                        List<PhotoBatchRequest.Photo> batch = photos.subList(i, Math.min(i + BATCH_SIZE, photos.size()));
+                        new PhotoUpload(mDatabase, url, url + "batch/", mBatch, "token", SEQUENCE_ID, ONLINE_SEQUENCE_ID, null,
+                                UploadProcess.this).start(batch);
+                    }
+                }
+            });
+            return this;
+        }
+
+        @Override
+        public void queue(StringRequest request) {
+            if (alive(Step.REQUEST)) {
+                mQueued.incrementAndGet();
+                mQueue.add(request);
+            }
+        }
+
+        @Override
+        public void runInBackground(final Runnable runnable) {
+            if (alive(Step.BACKGROUND)) {
+                mBackground.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        if (!mDying) {
+                            runnable.run();
+                        }
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void onProgressChanged(long totalSent, long totalSize) {
+        }
+
+        @Override
+        public void onUploaded(long size, int status, ApiResponse apiResponse) {
+            mUploaded.countDown();
+        }
+
+        @Override
+        public void onSkipped() {
+            mSkipped.incrementAndGet();
+            mUploaded.countDown();
+        }
+
+        @Override
+        public boolean onSequenceRejected() {
+            return false;
+        }
+
+        Map<Step, Integer> counts() {
+            Map<Step, Integer> counts = new HashMap<>();
+            for (Step kind : Step.values()) {
+                counts.put(kind, mCounts.get(kind).get());
+            }
+            return counts;
+        }
+
+        void awaitUploaded() throws InterruptedException {
+            Assert.assertTrue("not uploaded", mUploaded.await(20, TimeUnit.SECONDS));
+            stop();
+        }
+
+        /**
+         * waits for the process to die and for the requests it queued before to be answered, the answers are dropped
+         */
+        void awaitDead() throws InterruptedException {
+            Assert.assertTrue("not dead", mDead.await(20, TimeUnit.SECONDS));
+            long deadline = System.currentTimeMillis() + 20000;
+            synchronized (mAnswered) {
+                while (mAnswered.get() < mQueued.get() && System.currentTimeMillis() < deadline) {
+                    mAnswered.wait(100);
+                }
+            }
+            Assert.assertEquals("requests not answered", mQueued.get(), mAnswered.get());
+            stop();
+        }
+
+        private void stop() throws InterruptedException {
+            mBackground.shutdown();
+            Assert.assertTrue(mBackground.awaitTermination(20, TimeUnit.SECONDS));
+            mQueue.stop();
+        }
+
+        /**
+         * counts a step, the process dies at the step it should crash at
+         * @return false if the process is dead
+         */
+        private synchronized boolean alive(Step kind) {
+            if (mDying) {
+                return false;
+            }
+            if (kind == mCrashKind && mCounts.get(kind).get() == mCrashAt) {
+                mDying = true;
+                mDead.countDown();
+                return false;
+            }
+            mCounts.get(kind).incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Stands in for the photo and photo batch endpoints, storing a photo only the first time it is received and answering with a
+     * duplicate entry after. It fails {@link #REJECTED} the first time, and can answer 404 on the batch endpoint or delete the file of
+     * {@link #REJECTED} before failing it.
+     */
+    private class StubServer extends StubHttpServer {
+
+        /**
+         * indexes of the photos which reached the server, in order, duplicates included
+         */
+        final List<Integer> received = new ArrayList<>();
+
+        /**
+         * number of duplicate entry answers by photo
+         */
+        final Map<Integer, Integer> duplicates = new HashMap<>();
+
+        volatile boolean batchEndpoint = true;
+
+        volatile boolean deleteRejected;
+
+        private final Map<Integer, byte[]> mStored = new HashMap<>();
+
+        StubServer() throws IOException {
+        }
+
+        synchronized byte[] stored(int index) {
+            return mStored.get(index);
+        }
+
+        @Override
+        protected void handle(Exchange exchange) throws IOException {
+            Map<String, String> parts = exchange.readParts();
+            if (!exchange.getPath().endsWith("/batch/")) {
+                String status = receive(Integer.parseInt(parts.get("sequenceIndex")), parts.get("photo"));
+                int httpCode = Integer.parseInt(status.replaceAll(".*\"httpCode\":(\\d+).*", "$1"));
+                exchange.respond(httpCode, "{\"status\":" + status + "}");
+                return;
+            }
+            if (!batchEndpoint) {
+                exchange.respond(404, "{\"status\":" + status(404, 404, "Not Found") + "}");
+                return;
+            }
+            StringBuilder photos = new StringBuilder();
+            for (int i = 0; parts.containsKey("sequenceIndex[" + i + "]"); i++) {
+                int index = Integer.parseInt(parts.get("sequenceIndex[" + i + "]"));
+                String status = receive(index, parts.get("photo[" + i + "]"));
+                photos.append(i == 0 ? "" : ",").append("{\"sequenceIndex\":").append(index).append(",\"status\":").append(status).append("}");
+            }
+            exchange.respond(200, "{\"status\":" + status(200, 600, "The request has been processed") + ",\"osv\":{\"photos\":[" + photos +
+                    "]}}");
+        }
+
+        /**
+         * @return the status of the photo
+         */
+        private synchronized String receive(int index, String data) {
+            boolean first = !received.contains(index);
+            received.add(index);
+            if (index == REJECTED && first) {
+                if (deleteRejected) {
+                    new OSVFile(path(index)).delete();
+                }
+                return status(500, 690, "Photo not stored");
+            }
+            if (mStored.containsKey(index)) {
+                Integer count = duplicates.get(index);
+                duplicates.put(index, count == null ? 1 : count + 1);
+                return status(409, 660, "Duplicate entry");
+            }
+            mStored.put(index, data.getBytes(LATIN));
+            return status(200, 600, "The request has been processed");
+        }
+    }
+}
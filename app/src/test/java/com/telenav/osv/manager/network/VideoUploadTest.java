@@ -0,0 +1,319 @@
+package com.telenav.osv.manager.network;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.HurlStack;
+import com.android.volley.toolbox.NoCache;
+import com.android.volley.toolbox.StringRequest;
+import com.telenav.osv.BuildConfig;
+import com.telenav.osv.db.SequenceDB;
+import com.telenav.osv.item.OSVFile;
+import com.telenav.osv.item.network.ApiResponse;
+import com.telenav.osv.utils.StubHttpServer;
+
+/**
+ * video uploads through the upload journal against a local stub server, sent whole by default and in parts in resumable mode
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class VideoUploadTest {
+
+    private static final String DATABASE_NAME = "VideoUploadTest";
+
+    private static final int SEQUENCE_ID = 5;
+
+    private static final int ONLINE_SEQUENCE_ID = 1234;
+
+    private static final int VIDEO_INDEX = 0;
+
+    private static final int FILE_SIZE = (int) (2.5 * VideoUpload.PART_SIZE);
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private byte[] mData;
+
+    private OSVFile mVideo;
+
+    private SequenceDB mDatabase;
+
+    private StubServer mServer;
+
+    private RequestQueue mQueue;
+
+    @Before
+    public void setUp() throws Exception {
+        VideoUpload.resetPartsSupported();
+        mData = new byte[FILE_SIZE];
+        new Random(13).nextBytes(mData);
+        mVideo = new OSVFile(mFolder.getRoot(), VIDEO_INDEX + ".mp4");
+        FileOutputStream fos = new FileOutputStream(mVideo);
+        fos.write(mData);
+        fos.close();
+        RuntimeEnvironment.application.deleteDatabase(DATABASE_NAME);
+        mDatabase = new SequenceDB(RuntimeEnvironment.application, DATABASE_NAME);
+        mDatabase.insertVideoIfNotAdded(SEQUENCE_ID, VIDEO_INDEX, mVideo.getPath());
+        Assert.assertEquals(1, mDatabase.openUploadJournal(SEQUENCE_ID, false));
+        mServer = new StubServer();
+        mServer.start();
+        mQueue = new RequestQueue(new NoCache(), new BasicNetwork(new HurlStack()), 1, new ExecutorDelivery(new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }));
+        mQueue.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mQueue.stop();
+        mServer.close();
+    }
+
+    @Test
+    public void videoIsSentWholeByDefault() throws Exception {
+        Uploader uploader = upload(false, Integer.MAX_VALUE);
+        uploader.awaitUploaded();
+
+        Assert.assertEquals(Collections.singletonList(-1L), mServer.offsets);
+        assertUploaded(uploader);
+    }
+
+    @Test
+    public void partsResumeAfterDroppedConnections() throws Exception {
+        mServer.dropParts = true;
+        Uploader uploader = upload(true, Integer.MAX_VALUE);
+        uploader.awaitUploaded();
+
+        //every part is sent twice, after losing the connection in the middle of the body or losing the answer
+        long part = VideoUpload.PART_SIZE;
+        Assert.assertEquals(Arrays.asList(0L, 0L, part, part, 2 * part, 2 * part), mServer.offsets);
+        assertUploaded(uploader);
+    }
+
+    @Test
+    public void restartResumesFromTheCheckpoint() throws Exception {
+        //the process dies after two parts were acknowledged, before the third one is queued
+        Uploader first = upload(true, 2);
+        first.awaitStopped();
+        Assert.assertEquals(2 * VideoUpload.PART_SIZE, mDatabase.getVideoUploadOffset(SEQUENCE_ID, VIDEO_INDEX));
+
+        mDatabase = new SequenceDB(RuntimeEnvironment.application, DATABASE_NAME);
+        Assert.assertEquals(1, mDatabase.openUploadJournal(SEQUENCE_ID, false));
+        Uploader second = upload(true, Integer.MAX_VALUE);
+        second.awaitUploaded();
+
+        Assert.assertEquals(Arrays.asList(0L, VideoUpload.PART_SIZE, 2 * VideoUpload.PART_SIZE), mServer.offsets);
+        //the sequence size of the new process counts the whole file
+        assertUploaded(second);
+    }
+
+    @Test
+    public void serverWithoutPartEndpointGetsWholeVideos() throws Exception {
+        mServer.partEndpoint = false;
+        Uploader uploader = upload(true, Integer.MAX_VALUE);
+        uploader.awaitUploaded();
+
+        Assert.assertEquals(Arrays.asList(0L, -1L), mServer.offsets);
+        assertUploaded(uploader);
+    }
+
+    @Test
+    public void duplicatePartIsNotCountedAsUploaded() throws Exception {
+        //stands in for a server keeping the first part as the whole video
+        mServer.duplicateParts = true;
+        Uploader uploader = upload(true, Integer.MAX_VALUE);
+        uploader.awaitUploaded();
+
+        Assert.assertEquals(Arrays.asList(0L, VideoUpload.PART_SIZE, -1L), mServer.offsets);
+        assertUploaded(uploader);
+    }
+
+    private Uploader upload(boolean resumable, int requests) {
+        Uploader uploader = new Uploader(requests);
+        String url = "http://127.0.0.1:" + mServer.getPort() + "/1.0/video/";
+        VideoUpload upload = new VideoUpload(mDatabase, url, url + "part/", resumable, "token", SEQUENCE_ID, ONLINE_SEQUENCE_ID, mVideo,
+                VIDEO_INDEX, null, uploader);
+        Assert.assertTrue(upload.start());
+        return uploader;
+    }
+
+    private void assertUploaded(Uploader uploader) {
+        Assert.assertArrayEquals(mData, mServer.stored());
+        Assert.assertFalse(mVideo.exists());
+        Assert.assertEquals(0, mDatabase.getNumberOfVideos(SEQUENCE_ID));
+        Assert.assertEquals(0, mDatabase.openUploadJournal(SEQUENCE_ID, false));
+        Assert.assertEquals(FILE_SIZE, uploader.sent);
+    }
+
+    /**
+     * the upload queue of the upload manager, which stops taking requests after a number of them, like a process dying
+     */
+    private class Uploader implements VideoUpload.Callback {
+
+        private final ExecutorService mBackground = Executors.newSingleThreadExecutor();
+
+        private final CountDownLatch mUploaded = new CountDownLatch(1);
+
+        private final CountDownLatch mStopped = new CountDownLatch(1);
+
+        private final int mRequests;
+
+        private int mQueued;
+
+        volatile long sent;
+
+        Uploader(int requests) {
+            mRequests = requests;
+        }
+
+        @Override
+        public void queue(StringRequest request) {
+            if (mQueued++ == mRequests) {
+                mStopped.countDown();
+                return;
+            }
+            mQueue.add(request);
+        }
+
+        @Override
+        public void runInBackground(Runnable runnable) {
+            mBackground.execute(runnable);
+        }
+
+        @Override
+        public void onProgressChanged(long totalSent, long totalSize) {
+        }
+
+        @Override
+        public void onSent(long bytes) {
+            sent += bytes;
+        }
+
+        @Override
+        public void onUploaded(int status, ApiResponse apiResponse) {
+            mUploaded.countDown();
+        }
+
+        @Override
+        public boolean onSequenceRejected() {
+            return false;
+        }
+
+        void awaitUploaded() throws InterruptedException {
+            Assert.assertTrue("not uploaded", mUploaded.await(20, TimeUnit.SECONDS));
+            mBackground.shutdown();
+        }
+
+        void awaitStopped() throws InterruptedException {
+            Assert.assertTrue("not stopped", mStopped.await(20, TimeUnit.SECONDS));
+            mBackground.shutdown();
+        }
+    }
+
+    /**
+     * Stores the videos sent whole to the video endpoint and the parts sent to the part endpoint, answering with a duplicate entry for a
+     * video it already has. It can drop the first connection of every part, before or after storing it, answer 404 on the part endpoint,
+     * or answer with a duplicate entry for the parts after the first one.
+     */
+    private static class StubServer extends StubHttpServer {
+
+        /**
+         * offsets of the requests which reached the server, -1 for the whole video
+         */
+        final List<Long> offsets = Collections.synchronizedList(new ArrayList<Long>());
+
+        volatile boolean dropParts;
+
+        volatile boolean partEndpoint = true;
+
+        volatile boolean duplicateParts;
+
+        private final Map<Integer, byte[]> mStored = new HashMap<>();
+
+        StubServer() throws IOException {
+        }
+
+        synchronized byte[] stored() {
+            return mStored.get(VIDEO_INDEX);
+        }
+
+        @Override
+        protected void handle(Exchange exchange) throws IOException {
+            boolean part = exchange.getPath().endsWith("/part/");
+            //the even parts lose their first connection in the middle of the body, the odd ones after being stored
+            boolean drop = part && dropParts && offsets.size() % 2 == 0;
+            if (drop && offsets.size() % 4 == 0) {
+                offsets.add((long) (offsets.size() / 2) * VideoUpload.PART_SIZE);
+                exchange.readBody(exchange.getContentLength() / 2);
+                return;
+            }
+            Map<String, String> parts = exchange.readParts();
+            if (part && !partEndpoint) {
+                offsets.add(Long.parseLong(parts.get("chunkOffset")));
+                exchange.respond(404, "{\"status\":" + status(404, 404, "Not Found") + "}");
+                return;
+            }
+            int index = Integer.parseInt(parts.get("sequenceIndex"));
+            byte[] data = parts.get("video").getBytes(LATIN);
+            synchronized (this) {
+                byte[] stored = mStored.get(index);
+                if (!part) {
+                    offsets.add(-1L);
+                    if (stored != null && stored.length == data.length) {
+                        exchange.respond(409, "{\"status\":" + status(409, 660, "Duplicate entry") + "}");
+                        return;
+                    }
+                    mStored.put(index, data);
+                } else {
+                    long offset = Long.parseLong(parts.get("chunkOffset"));
+                    offsets.add(offset);
+                    if (duplicateParts && offset > 0) {
+                        exchange.respond(409, "{\"status\":" + status(409, 660, "Duplicate entry") + "}");
+                        return;
+                    }
+                    int have = stored == null ? 0 : stored.length;
+                    if (offset > have) {
+                        exchange.respond(400, "{\"status\":" + status(400, 690, "Missing part") + "}");
+                        return;
+                    }
+                    byte[] appended = Arrays.copyOf(stored == null ? new byte[0] : stored, (int) offset + data.length);
+                    System.arraycopy(data, 0, appended, (int) offset, data.length);
+                    mStored.put(index, appended);
+                }
+            }
+            if (drop) {
+                //stored, but the answer is lost
+                return;
+            }
+            exchange.respond(200, "{\"status\":" + status(200, 600, "The request has been processed") + "}");
+        }
+    }
+}
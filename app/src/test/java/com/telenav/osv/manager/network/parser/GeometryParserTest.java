@@ -0,0 +1,69 @@
+package com.telenav.osv.manager.network.parser;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import com.skobbler.ngx.SKCoordinate;
+import com.telenav.osv.BuildConfig;
+import com.telenav.osv.item.Polyline;
+import com.telenav.osv.item.network.GeometryCollection;
+
+/**
+ * geometry listing parsed from the string and from the raw response bytes
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class GeometryParserTest extends JsonParserTest {
+
+    @Override
+    protected String getFileName() {
+        return "geometry.json";
+    }
+
+    @Test
+    public void parse() throws Exception {
+        GeometryCollection geometry = new GeometryParser().parse(readJson());
+        Assert.assertEquals(200, geometry.getHttpCode());
+        Assert.assertEquals(600, geometry.getApiCode());
+        Assert.assertEquals(4630, geometry.getTotalFilteredItems());
+        //segments without coverage are left out
+        Assert.assertEquals(4451, geometry.getSegmentList().size());
+        Polyline first = geometry.getSegmentList().get(0);
+        Assert.assertEquals(100000, first.getIdentifier());
+        Assert.assertEquals(2, first.coverage);
+        Assert.assertTrue(first.isPacked());
+        Assert.assertEquals(24, first.getNodeCount());
+        Assert.assertEquals(46.741482, first.getLatitude(0), 0);
+        Assert.assertEquals(23.623612, first.getLongitude(0), 0);
+        SKCoordinate node = first.createNodes().get(23);
+        Assert.assertEquals(first.getLatitude(23), node.getLatitude(), 0);
+        int nodes = 0;
+        for (Polyline polyline : geometry.getSegmentList()) {
+            nodes += polyline.getNodeCount();
+        }
+        Assert.assertEquals(16928, nodes);
+    }
+
+    @Test
+    public void parseBytes() throws Exception {
+        String json = readJson();
+        GeometryCollection fromString = new GeometryParser().parse(json);
+        GeometryCollection fromBytes = new GeometryParser().parse(json.getBytes(StandardCharsets.UTF_8), "UTF-8");
+        Assert.assertEquals(fromString.getSegmentList().size(), fromBytes.getSegmentList().size());
+        for (int i = 0; i < fromString.getSegmentList().size(); i++) {
+            Polyline expected = fromString.getSegmentList().get(i);
+            Polyline actual = fromBytes.getSegmentList().get(i);
+            Assert.assertEquals(expected.getIdentifier(), actual.getIdentifier());
+            Assert.assertEquals(expected.getNodeCount(), actual.getNodeCount());
+        }
+    }
+
+    @Test
+    public void parseEmpty() throws Exception {
+        Assert.assertTrue(new GeometryParser().parse("").getSegmentList().isEmpty());
+        Assert.assertTrue(new GeometryParser().parse(new byte[0], "UTF-8").getSegmentList().isEmpty());
+    }
+}
@@ -1,20 +1,18 @@
 package com.telenav.osv.manager.network.parser;
 
-import org.junit.Before;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.powermock.api.mockito.PowerMockito;
-import org.powermock.core.classloader.annotations.PrepareForTest;
-import org.powermock.modules.junit4.PowerMockRunner;
-import android.os.Looper;
-import android.util.Log;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import com.telenav.osv.BuildConfig;
 import com.telenav.osv.item.network.PhotoCollection;
 
 /**
  * Created by kalmanb on 8/1/17.
  */
-@RunWith(PowerMockRunner.class)
-@PrepareForTest({Looper.class, Log.class})
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
 public class PhotoCollectionParserTest extends JsonParserTest {
 
     @Override
@@ -22,14 +20,17 @@ public class PhotoCollectionParserTest extends JsonParserTest {
         return "trackPhotos.json";
     }
 
-    @Before
-    public void setup() {
-        PowerMockito.mockStatic(Log.class);
-    }
-
     @Test
     public void parse() throws Exception {
         String json = readJson();
         PhotoCollection photos = new PhotoCollectionParser().parse(json);
+        Assert.assertEquals(200, photos.getHttpCode());
+        //the first photo has no position
+        Assert.assertEquals(73, photos.getNodes().size());
+        Assert.assertEquals(73, photos.getTrack().size());
+        for (int i = 1; i < photos.getNodes().size(); i++) {
+            Assert.assertTrue(photos.getNodes().get(i - 1).index <= photos.getNodes().get(i).index);
+        }
+        Assert.assertEquals(1, photos.getNodes().get(0).index);
     }
 }
\ No newline at end of file
@@ -1,20 +1,19 @@
 package com.telenav.osv.manager.network.parser;
 
-import org.junit.Before;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.powermock.api.mockito.PowerMockito;
-import org.powermock.core.classloader.annotations.PrepareForTest;
-import org.powermock.modules.junit4.PowerMockRunner;
-import android.os.Looper;
-import android.util.Log;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import com.telenav.osv.BuildConfig;
+import com.telenav.osv.item.Sequence;
 import com.telenav.osv.item.network.TrackCollection;
 
 /**
  * Created by kalmanb on 8/1/17.
  */
-@RunWith(PowerMockRunner.class)
-@PrepareForTest({Looper.class, Log.class})
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
 public class TrackCollectionParserTest extends JsonParserTest {
 
     @Override
@@ -22,14 +21,17 @@ public class TrackCollectionParserTest extends JsonParserTest {
         return "userTracks.json";
     }
 
-    @Before
-    public void setup() {
-        PowerMockito.mockStatic(Log.class);
-    }
-
     @Test
     public void parse() throws Exception {
         String json = readJson();
         TrackCollection tracks = new TrackCollectionParser().parse(json);
+        Assert.assertEquals(200, tracks.getHttpCode());
+        Assert.assertEquals(600, tracks.getApiCode());
+        Assert.assertEquals(219, tracks.getTotalFilteredItems());
+        Assert.assertEquals(30, tracks.getTrackList().size());
+        Sequence first = tracks.getTrackList().get(0);
+        Assert.assertEquals(505823, first.getId());
+        Assert.assertEquals(1988, first.getScore());
+        Assert.assertEquals(7, first.getScoreHistories().size());
     }
 }
\ No newline at end of file
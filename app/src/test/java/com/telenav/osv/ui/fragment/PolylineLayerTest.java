@@ -0,0 +1,129 @@
+package com.telenav.osv.ui.fragment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import android.os.Handler;
+import android.os.Looper;
+import com.skobbler.ngx.SKCoordinate;
+import com.telenav.osv.BuildConfig;
+import com.telenav.osv.item.Polyline;
+
+/**
+ * only the changed polylines are sent to the map, once per frame
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class PolylineLayerTest {
+
+    private final List<String> mOperations = new ArrayList<>();
+
+    private PolylineLayer mLayer;
+
+    private Polyline mFirst;
+
+    private Polyline mSecond;
+
+    private Polyline mThird;
+
+    private static Polyline polyline(int identifier) {
+        Polyline polyline = new Polyline(identifier);
+        polyline.getNodes().add(new SKCoordinate(46.77, 23.59));
+        polyline.getNodes().add(new SKCoordinate(46.78, 23.60));
+        return polyline;
+    }
+
+    @Before
+    public void setUp() {
+        mLayer = new PolylineLayer(new Handler(Looper.getMainLooper()), new PolylineLayer.Renderer() {
+
+            @Override
+            public void add(Polyline polyline, int style) {
+                mOperations.add("add " + polyline.getIdentifier() + " " + style);
+            }
+
+            @Override
+            public void remove(int identifier) {
+                mOperations.add("remove " + identifier);
+            }
+        });
+        mFirst = polyline(1);
+        mSecond = polyline(2);
+        mThird = polyline(3);
+    }
+
+    private List<String> render() {
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        List<String> operations = new ArrayList<>(mOperations);
+        mOperations.clear();
+        return operations;
+    }
+
+    @Test
+    public void onlyChangedSegmentsAreSent() {
+        mLayer.setSegments(Arrays.asList(mFirst, mSecond));
+        Assert.assertEquals(2, render().size());
+
+        mLayer.setSegments(Arrays.asList(mFirst, mSecond, mThird));
+        Assert.assertEquals(Arrays.asList("add 3 0"), render());
+
+        mLayer.setSegments(Arrays.asList(mSecond, mThird));
+        Assert.assertEquals(Arrays.asList("remove 1"), render());
+
+        Polyline replaced = polyline(2);
+        mLayer.setSegments(Arrays.asList(replaced, mThird));
+        Assert.assertEquals(Arrays.asList("add 2 0"), render());
+    }
+
+    @Test
+    public void burstIsAppliedOnce() {
+        mLayer.setSegments(Arrays.asList(mFirst));
+        mLayer.setSegments(Arrays.asList(mFirst, mSecond));
+        mLayer.setMatched(mFirst);
+        mLayer.setSegments(Arrays.asList(mFirst, mSecond, mThird));
+        List<String> operations = render();
+        Assert.assertEquals(3, operations.size());
+        Assert.assertTrue(operations.contains("add 1 " + PolylineLayer.STYLE_MATCHED));
+        Assert.assertTrue(render().isEmpty());
+    }
+
+    @Test
+    public void matchRestylesOnlyTheMatchedSegments() {
+        mLayer.setSegments(Arrays.asList(mFirst, mSecond, mThird));
+        render();
+
+        mLayer.setMatched(mFirst);
+        Assert.assertEquals(Arrays.asList("add 1 " + PolylineLayer.STYLE_MATCHED), render());
+
+        mLayer.setMatched(mSecond);
+        List<String> operations = render();
+        Assert.assertEquals(2, operations.size());
+        Assert.assertTrue(operations.contains("add 1 " + PolylineLayer.STYLE_VISITED));
+        Assert.assertTrue(operations.contains("add 2 " + PolylineLayer.STYLE_MATCHED));
+
+        mLayer.setMatched(mSecond);
+        Assert.assertTrue(render().isEmpty());
+    }
+
+    @Test
+    public void segmentsAreAddedAgainAfterTheMapWasCleared() {
+        mLayer.setSegments(Arrays.asList(mFirst, mSecond));
+        render();
+
+        mLayer.clear();
+        Assert.assertTrue(render().isEmpty());
+
+        mLayer.setSegments(Arrays.asList(mFirst, mSecond));
+        Assert.assertEquals(2, render().size());
+
+        mLayer.invalidate();
+        Assert.assertEquals(2, render().size());
+    }
+}
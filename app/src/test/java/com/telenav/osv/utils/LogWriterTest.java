@@ -0,0 +1,148 @@
+package com.telenav.osv.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * lines appended from several threads reach the file in order, dropped lines are accounted for and the file is rotated by size
+ */
+public class LogWriterTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+
+    private LogWriter mWriter;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = new File(mFolder.getRoot(), "log_test.txt");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (mWriter != null) {
+            mWriter.close();
+        }
+    }
+
+    private static List<String> readLines(File file) throws Exception {
+        ArrayList<String> lines = new ArrayList<>();
+        if (!file.exists()) {
+            return lines;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    @Test
+    public void linesOfEveryThreadAreWrittenInOrder() throws Exception {
+        final int threads = 4;
+        final int linesPerThread = 1000;
+        mWriter = new LogWriter(mFile, 8192, Long.MAX_VALUE);
+        final CountDownLatch start = new CountDownLatch(1);
+        ArrayList<Thread> posters = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final String tag = "T" + i;
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < linesPerThread; j++) {
+                        mWriter.append(android.util.Log.INFO, tag, String.valueOf(j));
+                    }
+                }
+            });
+            thread.start();
+            posters.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : posters) {
+            thread.join();
+        }
+        Assert.assertTrue(mWriter.flush(5000));
+        Assert.assertEquals(0, mWriter.getDroppedCount());
+
+        List<String> lines = readLines(mFile);
+        Assert.assertEquals(threads * linesPerThread, lines.size());
+        int[] next = new int[threads];
+        for (String line : lines) {
+            //<time> I/T<thread>: <index>
+            String[] parts = line.split(" ");
+            int thread = Integer.parseInt(parts[1].substring("I/T".length(), parts[1].length() - 1));
+            Assert.assertEquals(next[thread]++, Integer.parseInt(parts[2]));
+        }
+    }
+
+    @Test
+    public void droppedLinesAreCounted() throws Exception {
+        final int appended = 100000;
+        mWriter = new LogWriter(mFile, 16, Long.MAX_VALUE);
+        int accepted = 0;
+        for (int i = 0; i < appended; i++) {
+            if (mWriter.append(i % 2 == 0 ? android.util.Log.DEBUG : android.util.Log.ERROR, "tag", "line " + i)) {
+                accepted++;
+            }
+        }
+        Assert.assertTrue(mWriter.flush(5000));
+        Assert.assertEquals(appended, accepted + mWriter.getDroppedCount());
+
+        int lines = 0;
+        int reported = 0;
+        for (String line : readLines(mFile)) {
+            if (line.contains("W/LogWriter: dropped ")) {
+                reported += Integer.parseInt(line.split(" ")[3]);
+            } else {
+                lines++;
+            }
+        }
+        Assert.assertEquals(accepted, lines);
+        Assert.assertEquals(mWriter.getDroppedCount(), reported);
+    }
+
+    @Test
+    public void fileIsRotatedBySize() throws Exception {
+        mWriter = new LogWriter(mFile, 1024, 1000);
+        for (int i = 0; i < 500; i++) {
+            mWriter.append(android.util.Log.DEBUG, "tag", "rotated line " + i);
+        }
+        Assert.assertTrue(mWriter.flush(5000));
+        Assert.assertTrue(mWriter.getBackup(1).exists());
+        Assert.assertTrue(mWriter.getBackup(2).exists());
+        Assert.assertFalse(mWriter.getBackup(3).exists());
+        Assert.assertTrue(mFile.length() < 1000);
+        Assert.assertTrue(mWriter.getBackup(1).length() >= 1000);
+
+        List<String> lines = readLines(mWriter.getBackup(2));
+        lines.addAll(readLines(mWriter.getBackup(1)));
+        lines.addAll(readLines(mFile));
+        int first = 500 - lines.size();
+        for (int i = 0; i < lines.size(); i++) {
+            Assert.assertTrue(lines.get(i).endsWith("rotated line " + (first + i)));
+        }
+    }
+}
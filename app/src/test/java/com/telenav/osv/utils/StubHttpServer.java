@@ -0,0 +1,167 @@
+package com.telenav.osv.utils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loopback http server for the upload tests. It reads the request line and the headers and splits multipart bodies, the tests only
+ * define the answers in {@link #handle(Exchange)}. Every connection is closed after one request, a handler returning without
+ * answering drops it.
+ */
+public abstract class StubHttpServer extends Thread {
+
+    /**
+     * one byte per char, the multipart parts keep their binary content
+     */
+    public static final Charset LATIN = Charset.forName("ISO-8859-1");
+
+    private final ServerSocket mSocket;
+
+    public StubHttpServer() throws IOException {
+        mSocket = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+        setDaemon(true);
+    }
+
+    /**
+     * @return the status object of the api responses
+     */
+    public static String status(int httpCode, int apiCode, String message) {
+        return "{\"apiCode\":" + apiCode + ",\"apiMessage\":\"" + message + "\",\"httpCode\":" + httpCode + ",\"httpMessage\":\"" +
+                message + "\"}";
+    }
+
+    public int getPort() {
+        return mSocket.getLocalPort();
+    }
+
+    public void close() throws IOException {
+        mSocket.close();
+    }
+
+    @Override
+    public void run() {
+        while (!mSocket.isClosed()) {
+            try {
+                Socket client = mSocket.accept();
+                try {
+                    handle(new Exchange(client));
+                } finally {
+                    client.close();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * answers a request, called on the server thread
+     */
+    protected abstract void handle(Exchange exchange) throws IOException;
+
+    /**
+     * A request of which the headers were read, the body is read by the handler.
+     */
+    public static class Exchange {
+
+        private final Socket mClient;
+
+        private final InputStream mIn;
+
+        private final String mPath;
+
+        private int mContentLength = -1;
+
+        private String mBoundary;
+
+        Exchange(Socket client) throws IOException {
+            mClient = client;
+            mIn = new BufferedInputStream(client.getInputStream());
+            String[] requestLine = readLine(mIn).split(" ");
+            mPath = requestLine.length > 1 ? requestLine[1] : "";
+            String line;
+            while (!(line = readLine(mIn)).isEmpty()) {
+                String lower = line.toLowerCase();
+                if (lower.startsWith("content-length:")) {
+                    mContentLength = Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+                } else if (lower.startsWith("content-type:") && lower.contains("boundary=")) {
+                    mBoundary = line.substring(line.indexOf("boundary=") + "boundary=".length()).split(";")[0].trim();
+                }
+            }
+        }
+
+        public String getPath() {
+            return mPath;
+        }
+
+        public int getContentLength() {
+            return mContentLength;
+        }
+
+        /**
+         * reads the first bytes of the body, to drop the connection in the middle of it
+         */
+        public byte[] readBody(int length) throws IOException {
+            byte[] data = new byte[length];
+            int total = 0;
+            while (total < length) {
+                int read = mIn.read(data, total, length - total);
+                if (read == -1) {
+                    throw new IOException("connection closed");
+                }
+                total += read;
+            }
+            return data;
+        }
+
+        /**
+         * reads the multipart body
+         * @return the parts by name, with their content as {@link #LATIN} text
+         */
+        public Map<String, String> readParts() throws IOException {
+            String body = new String(readBody(mContentLength), LATIN);
+            Map<String, String> parts = new HashMap<>();
+            int start = body.indexOf("--" + mBoundary);
+            while (start >= 0) {
+                int headers = start + mBoundary.length() + 4;
+                int content = body.indexOf("\r\n\r\n", headers);
+                int end = body.indexOf("\r\n--" + mBoundary, content);
+                if (content < 0 || end < 0) {
+                    break;
+                }
+                String header = body.substring(headers, content);
+                int name = header.indexOf("name=\"") + "name=\"".length();
+                parts.put(header.substring(name, header.indexOf('"', name)), body.substring(content + 4, end));
+                start = end + 2;
+            }
+            return parts;
+        }
+
+        public void respond(int code, String body) throws IOException {
+            byte[] bytes = body.getBytes(LATIN);
+            OutputStream out = mClient.getOutputStream();
+            out.write(("HTTP/1.1 " + code + " Status\r\nContent-Type: application/json\r\nContent-Length: " + bytes.length +
+                    "\r\nConnection: close\r\n\r\n").getBytes(LATIN));
+            out.write(bytes);
+            out.flush();
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder builder = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1 && c != '\n') {
+                if (c != '\r') {
+                    builder.append((char) c);
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
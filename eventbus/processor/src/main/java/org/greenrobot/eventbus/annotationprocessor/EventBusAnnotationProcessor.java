@@ -0,0 +1,267 @@
+package org.greenrobot.eventbus.annotationprocessor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a {@code SubscriberInfoIndex} listing the {@code @Subscribe} methods of the compiled classes, so registering a subscriber
+ * looks its methods up by name instead of scanning all methods of its class hierarchy by reflection.
+ * <p>
+ * The fully qualified name of the index is given with the {@value #OPTION_EVENT_BUS_INDEX} processor option. Subscriber classes the
+ * index cannot reference, e.g. package private ones, are looked up by name when the index is loaded. Anonymous and local classes and
+ * classes with event types the index cannot reference are left out and still registered through reflection.
+ * <p>
+ * The annotation is read by name, so the processor does not depend on the android library holding it.
+ */
+@SupportedAnnotationTypes(EventBusAnnotationProcessor.SUBSCRIBE)
+@SupportedOptions(EventBusAnnotationProcessor.OPTION_EVENT_BUS_INDEX)
+public class EventBusAnnotationProcessor extends AbstractProcessor {
+
+    static final String SUBSCRIBE = "org.greenrobot.eventbus.Subscribe";
+
+    static final String OPTION_EVENT_BUS_INDEX = "eventBusIndex";
+
+    /**
+     * subscriber methods by class, in source order
+     */
+    private final Map<TypeElement, List<ExecutableElement>> mMethodsByClass = new LinkedHashMap<>();
+
+    private boolean mWritten;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
+        Messager messager = processingEnv.getMessager();
+        String index = processingEnv.getOptions().get(OPTION_EVENT_BUS_INDEX);
+        if (index == null) {
+            if (!annotations.isEmpty()) {
+                messager.printMessage(Diagnostic.Kind.WARNING, "No option " + OPTION_EVENT_BUS_INDEX + " passed, no index is generated");
+            }
+            return false;
+        }
+        for (TypeElement annotation : annotations) {
+            for (Element element : env.getElementsAnnotatedWith(annotation)) {
+                if (element instanceof ExecutableElement && checkMethod((ExecutableElement) element, messager)) {
+                    TypeElement subscriberClass = (TypeElement) element.getEnclosingElement();
+                    List<ExecutableElement> methods = mMethodsByClass.get(subscriberClass);
+                    if (methods == null) {
+                        methods = new ArrayList<>();
+                        mMethodsByClass.put(subscriberClass, methods);
+                    }
+                    methods.add((ExecutableElement) element);
+                }
+            }
+        }
+        if (!mWritten && !mMethodsByClass.isEmpty()) {
+            mWritten = true;
+            writeIndex(index, messager);
+        }
+        return false;
+    }
+
+    private boolean checkMethod(ExecutableElement method, Messager messager) {
+        if (method.getModifiers().contains(Modifier.STATIC)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Subscriber method must not be static", method);
+            return false;
+        }
+        if (!method.getModifiers().contains(Modifier.PUBLIC)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Subscriber method must be public", method);
+            return false;
+        }
+        if (method.getParameters().size() != 1) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Subscriber method must have exactly 1 parameter", method);
+            return false;
+        }
+        return true;
+    }
+
+    private void writeIndex(String index, Messager messager) {
+        int period = index.lastIndexOf('.');
+        String indexPackage = period > 0 ? index.substring(0, period) : "";
+        String indexName = index.substring(period + 1);
+        StringBuilder entries = new StringBuilder();
+        int count = 0;
+        for (Map.Entry<TypeElement, List<ExecutableElement>> entry : mMethodsByClass.entrySet()) {
+            TypeElement subscriberClass = entry.getKey();
+            if (isAnonymousOrLocal(subscriberClass) || !eventTypesVisible(entry.getValue(), indexPackage)) {
+                messager.printMessage(Diagnostic.Kind.NOTE, "Not indexed, registered through reflection: " + subscriberClass);
+                continue;
+            }
+            entries.append("        putIndex(new SimpleSubscriberInfo(");
+            if (isVisible(subscriberClass, indexPackage)) {
+                entries.append(subscriberClass.getQualifiedName()).append(".class");
+            } else {
+                entries.append("forName(\"").append(processingEnv.getElementUtils().getBinaryName(subscriberClass)).append("\")");
+            }
+            entries.append(", true, new SubscriberMethodInfo[]{\n");
+            for (ExecutableElement method : entry.getValue()) {
+                appendMethod(entries, method);
+            }
+            entries.append("        }));\n\n");
+            count++;
+        }
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(index);
+            Writer writer = file.openWriter();
+            try {
+                if (!indexPackage.isEmpty()) {
+                    writer.write("package " + indexPackage + ";\n\n");
+                }
+                writer.write("import java.util.HashMap;\n");
+                writer.write("import java.util.Map;\n");
+                writer.write("import org.greenrobot.eventbus.ThreadMode;\n");
+                writer.write("import org.greenrobot.eventbus.meta.SimpleSubscriberInfo;\n");
+                writer.write("import org.greenrobot.eventbus.meta.SubscriberInfo;\n");
+                writer.write("import org.greenrobot.eventbus.meta.SubscriberInfoIndex;\n");
+                writer.write("import org.greenrobot.eventbus.meta.SubscriberMethodInfo;\n\n");
+                writer.write("/**\n * Generated by the EventBus annotation processor, do not edit.\n */\n");
+                writer.write("public class " + indexName + " implements SubscriberInfoIndex {\n\n");
+                writer.write("    private static final Map<Class<?>, SubscriberInfo> SUBSCRIBER_INDEX = new HashMap<Class<?>, SubscriberInfo>();\n\n");
+                writer.write("    static {\n");
+                writer.write(entries.toString());
+                writer.write("    }\n\n");
+                writer.write("    private static void putIndex(SubscriberInfo info) {\n");
+                writer.write("        if (info.getSubscriberClass() != null) {\n");
+                writer.write("            SUBSCRIBER_INDEX.put(info.getSubscriberClass(), info);\n");
+                writer.write("        }\n");
+                writer.write("    }\n\n");
+                writer.write("    /**\n     * @return the class, not initialized, or null if it is missing, e.g. renamed by obfuscation\n     */\n");
+                writer.write("    private static Class<?> forName(String name) {\n");
+                writer.write("        try {\n");
+                writer.write("            return Class.forName(name, false, " + indexName + ".class.getClassLoader());\n");
+                writer.write("        } catch (ClassNotFoundException e) {\n");
+                writer.write("            return null;\n");
+                writer.write("        }\n");
+                writer.write("    }\n\n");
+                writer.write("    @Override\n");
+                writer.write("    public SubscriberInfo getSubscriberInfo(Class<?> subscriberClass) {\n");
+                writer.write("        return SUBSCRIBER_INDEX.get(subscriberClass);\n");
+                writer.write("    }\n");
+                writer.write("}\n");
+            } finally {
+                writer.close();
+            }
+            messager.printMessage(Diagnostic.Kind.NOTE, "Generated " + index + " with " + count + " subscriber classes");
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Could not write " + index + ": " + e);
+        }
+    }
+
+    private void appendMethod(StringBuilder entries, ExecutableElement method) {
+        String threadMode = "POSTING";
+        boolean sticky = false;
+        int priority = 0;
+        boolean conflate = false;
+        AnnotationMirror subscribe = getSubscribe(method);
+        if (subscribe != null) {
+            Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                    processingEnv.getElementUtils().getElementValuesWithDefaults(subscribe);
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : values.entrySet()) {
+                String name = value.getKey().getSimpleName().toString();
+                Object constant = value.getValue().getValue();
+                if ("threadMode".equals(name) && constant instanceof VariableElement) {
+                    threadMode = ((VariableElement) constant).getSimpleName().toString();
+                } else if ("sticky".equals(name)) {
+                    sticky = (Boolean) constant;
+                } else if ("priority".equals(name)) {
+                    priority = (Integer) constant;
+                } else if ("conflate".equals(name)) {
+                    conflate = (Boolean) constant;
+                }
+            }
+        }
+        entries.append("            new SubscriberMethodInfo(\"").append(method.getSimpleName()).append("\", ")
+                .append(getEventType(method).getQualifiedName()).append(".class, ThreadMode.").append(threadMode).append(", ")
+                .append(priority).append(", ").append(sticky).append(", ").append(conflate).append("),\n");
+    }
+
+    private AnnotationMirror getSubscribe(ExecutableElement method) {
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(SUBSCRIBE)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the erased class of the event parameter, null for primitives and arrays
+     */
+    private TypeElement getEventType(ExecutableElement method) {
+        TypeMirror type = processingEnv.getTypeUtils().erasure(method.getParameters().get(0).asType());
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return (TypeElement) ((DeclaredType) type).asElement();
+    }
+
+    private boolean eventTypesVisible(List<ExecutableElement> methods, String indexPackage) {
+        for (ExecutableElement method : methods) {
+            TypeElement eventType = getEventType(method);
+            if (eventType == null || !isVisible(eventType, indexPackage)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the class can be referenced from the package of the index
+     */
+    private boolean isVisible(TypeElement type, String indexPackage) {
+        if (isAnonymousOrLocal(type)) {
+            return false;
+        }
+        Element element = type;
+        while (element != null && element.getKind() != ElementKind.PACKAGE) {
+            Set<Modifier> modifiers = element.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            if (!modifiers.contains(Modifier.PUBLIC) && !getPackage(element).equals(indexPackage)) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private boolean isAnonymousOrLocal(TypeElement type) {
+        return type.getNestingKind() == NestingKind.ANONYMOUS || type.getNestingKind() == NestingKind.LOCAL;
+    }
+
+    private String getPackage(Element element) {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(element);
+        return packageElement.getQualifiedName().toString();
+    }
+}
@@ -0,0 +1,110 @@
+package org.greenrobot.eventbus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+/**
+ * Throughput of {@link EventBus#post(Object)} and {@link EventBus#postSticky(Object)} with 1 to 8 threads posting at the same time to a
+ * subscriber in the posting thread mode. The results are logged, the test only checks that every event was delivered.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class EventBusPostBenchmark {
+
+    private static final String TAG = "EventBusPostBenchmark";
+
+    private static final int EVENTS_PER_POSTER = 200000;
+
+    private static final int[] POSTERS = {1, 2, 4, 8};
+
+    private static long post(final EventBus bus, final boolean sticky, int posters, final int events) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(posters);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < posters; i++) {
+            futures.add(executor.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int j = 0; j < events; j++) {
+                        if (sticky) {
+                            bus.postSticky(new PositionEvent(j));
+                        } else {
+                            bus.post(new PositionEvent(j));
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+        return elapsed;
+    }
+
+    @Test
+    public void post() throws Exception {
+        measure(false);
+    }
+
+    @Test
+    public void postSticky() throws Exception {
+        measure(true);
+    }
+
+    private void measure(boolean sticky) throws Exception {
+        EventBus bus = EventBus.builder().logNoSubscriberMessages(false).sendNoSubscriberEvent(false).build();
+        CountingSubscriber subscriber = new CountingSubscriber();
+        bus.register(subscriber);
+        post(bus, sticky, 2, EVENTS_PER_POSTER / 4);
+        for (int posters : POSTERS) {
+            subscriber.received.set(0);
+            long elapsed = post(bus, sticky, posters, EVENTS_PER_POSTER);
+            long events = (long) posters * EVENTS_PER_POSTER;
+            Assert.assertEquals(events, subscriber.received.get());
+            Log.i(TAG, (sticky ? "postSticky" : "post") + ", " + posters + " posters, " +
+                    events * 1000000L / elapsed + " events/ms");
+        }
+        if (sticky) {
+            Assert.assertNotNull(bus.getStickyEvent(PositionEvent.class));
+        }
+        bus.unregister(subscriber);
+    }
+
+    public static class PositionEvent {
+
+        final int index;
+
+        PositionEvent(int index) {
+            this.index = index;
+        }
+    }
+
+    public static class CountingSubscriber {
+
+        final AtomicLong received = new AtomicLong();
+
+        @Subscribe(sticky = true)
+        public void onPosition(PositionEvent event) {
+            received.incrementAndGet();
+        }
+    }
+}
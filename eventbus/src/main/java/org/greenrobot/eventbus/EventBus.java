@@ -24,6 +24,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 import android.os.Looper;
 import android.util.Log;
 
@@ -40,7 +41,7 @@ public class EventBus {
 
     private static final EventBusBuilder DEFAULT_BUILDER = new EventBusBuilder();
 
-    private static final Map<Class<?>, List<Class<?>>> eventTypesCache = new HashMap<>();
+    private static final Map<Class<?>, List<Class<?>>> eventTypesCache = new ConcurrentHashMap<>();
 
     /**
      * Log tag, apps may override it.
@@ -49,10 +50,17 @@ public class EventBus {
 
     static volatile EventBus defaultInstance;
 
+    /**
+     * Read without locking while posting, changed only while holding the bus lock. The subscription lists are copy on write,
+     * so a post iterates over a snapshot of the subscriptions of its type.
+     */
     private final Map<Class<?>, CopyOnWriteArrayList<Subscription>> subscriptionsByEventType;
 
     private final Map<Object, List<Class<?>>> typesBySubscriber;
 
+    /**
+     * Concurrent map, sticky events are stored and removed without locking.
+     */
     private final Map<Class<?>, Object> stickyEvents;
 
     private final ThreadLocal<PostingThreadState> currentPostingThreadState = new ThreadLocal<PostingThreadState>() {
@@ -87,6 +95,11 @@ public class EventBus {
 
     private final int indexCount;
 
+    /**
+     * Number of events replaced before their delivery to conflating subscribers, see {@link Subscribe#conflate()}.
+     */
+    private final AtomicLong conflatedEventCount = new AtomicLong();
+
     /**
      * Creates a new EventBus instance; each instance is a separate scope in which events are delivered. To use a
      * central bus, consider {@link #getDefault()}.
@@ -96,7 +109,7 @@ public class EventBus {
     }
 
     EventBus(EventBusBuilder builder) {
-        subscriptionsByEventType = new HashMap<>();
+        subscriptionsByEventType = new ConcurrentHashMap<>();
         typesBySubscriber = new HashMap<>();
         stickyEvents = new ConcurrentHashMap<>();
         mainThreadPoster = new HandlerPoster(this, Looper.getMainLooper(), 10);
@@ -142,22 +155,21 @@ public class EventBus {
 
     /**
      * Looks up all Class objects including super classes and interfaces. Should also work for interfaces.
+     * Concurrent first lookups of a class may both build its list, the lists are equal and only read afterwards.
      */
     private static List<Class<?>> lookupAllEventTypes(Class<?> eventClass) {
-        synchronized (eventTypesCache) {
-            List<Class<?>> eventTypes = eventTypesCache.get(eventClass);
-            if (eventTypes == null) {
-                eventTypes = new ArrayList<>();
-                Class<?> clazz = eventClass;
-                while (clazz != null) {
-                    eventTypes.add(clazz);
-                    addInterfaces(eventTypes, clazz.getInterfaces());
-                    clazz = clazz.getSuperclass();
-                }
-                eventTypesCache.put(eventClass, eventTypes);
+        List<Class<?>> eventTypes = eventTypesCache.get(eventClass);
+        if (eventTypes == null) {
+            eventTypes = new ArrayList<>();
+            Class<?> clazz = eventClass;
+            while (clazz != null) {
+                eventTypes.add(clazz);
+                addInterfaces(eventTypes, clazz.getInterfaces());
+                clazz = clazz.getSuperclass();
             }
-            return eventTypes;
+            eventTypesCache.put(eventClass, eventTypes);
         }
+        return eventTypes;
     }
 
     /**
@@ -261,9 +273,7 @@ public class EventBus {
      * event of an event's type is kept in memory for future access by subscribers using {@link Subscribe#sticky()}.
      */
     public void postSticky(Object event) {
-        synchronized (stickyEvents) {
-            stickyEvents.put(event.getClass(), event);
-        }
+        stickyEvents.put(event.getClass(), event);
         // Should be posted after it is putted, in case the subscriber wants to remove immediately
         post(event);
     }
@@ -273,9 +283,7 @@ public class EventBus {
      * event of an event's type is kept in memory for future access by subscribers using {@link Subscribe#sticky()}.
      */
     public void postSticky(Class clazz, Object event) {
-        synchronized (stickyEvents) {
-            stickyEvents.put(clazz, event);
-        }
+        stickyEvents.put(clazz, event);
         // Should be posted after it is putted, in case the subscriber wants to remove immediately
         post(event);
     }
@@ -285,9 +293,7 @@ public class EventBus {
      * @see #postSticky(Object)
      */
     public <T> T getStickyEvent(Class<T> eventType) {
-        synchronized (stickyEvents) {
-            return eventType.cast(stickyEvents.get(eventType));
-        }
+        return eventType.cast(stickyEvents.get(eventType));
     }
 
     /**
@@ -295,9 +301,7 @@ public class EventBus {
      * @see #postSticky(Object)
      */
     public <T> T removeStickyEvent(Class<T> eventType) {
-        synchronized (stickyEvents) {
-            return eventType.cast(stickyEvents.remove(eventType));
-        }
+        return eventType.cast(stickyEvents.remove(eventType));
     }
 
     /**
@@ -305,25 +309,16 @@ public class EventBus {
      * @return true if the events matched and the sticky event was removed.
      */
     public boolean removeStickyEvent(Object event) {
-        synchronized (stickyEvents) {
-            Class<?> eventType = event.getClass();
-            Object existingEvent = stickyEvents.get(eventType);
-            if (event.equals(existingEvent)) {
-                stickyEvents.remove(eventType);
-                return true;
-            } else {
-                return false;
-            }
-        }
+        Class<?> eventType = event.getClass();
+        Object existingEvent = stickyEvents.get(eventType);
+        return event.equals(existingEvent) && stickyEvents.remove(eventType, existingEvent);
     }
 
     /**
      * Removes all sticky events.
      */
     public void removeAllStickyEvents() {
-        synchronized (stickyEvents) {
-            stickyEvents.clear();
-        }
+        stickyEvents.clear();
     }
 
     public boolean hasSubscriberForEvent(Class<?> eventClass) {
@@ -332,10 +327,7 @@ public class EventBus {
             int countTypes = eventTypes.size();
             for (int h = 0; h < countTypes; h++) {
                 Class<?> clazz = eventTypes.get(h);
-                CopyOnWriteArrayList<Subscription> subscriptions;
-                synchronized (this) {
-                    subscriptions = subscriptionsByEventType.get(clazz);
-                }
+                CopyOnWriteArrayList<Subscription> subscriptions = subscriptionsByEventType.get(clazz);
                 if (subscriptions != null && !subscriptions.isEmpty()) {
                     return true;
                 }
@@ -344,6 +336,27 @@ public class EventBus {
         return false;
     }
 
+    /**
+     * @return the number of events replaced by a later event before their delivery to a conflating subscriber
+     */
+    public long getConflatedEventCount() {
+        return conflatedEventCount.get();
+    }
+
+    /**
+     * @return the number of events replaced before their delivery to the registered conflating subscribers of the given event type
+     */
+    public long getConflatedEventCount(Class<?> eventType) {
+        long count = 0;
+        CopyOnWriteArrayList<Subscription> subscriptions = subscriptionsByEventType.get(eventType);
+        if (subscriptions != null) {
+            for (Subscription subscription : subscriptions) {
+                count += subscription.getConflatedCount();
+            }
+        }
+        return count;
+    }
+
     @Override
     public String toString() {
         return "EventBus[indexCount=" + indexCount + ", eventInheritance=" + eventInheritance + "]";
@@ -451,10 +464,7 @@ public class EventBus {
     }
 
     private boolean postSingleEventForEventType(Object event, PostingThreadState postingState, Class<?> eventClass) {
-        CopyOnWriteArrayList<Subscription> subscriptions;
-        synchronized (this) {
-            subscriptions = subscriptionsByEventType.get(eventClass);
-        }
+        CopyOnWriteArrayList<Subscription> subscriptions = subscriptionsByEventType.get(eventClass);
         if (subscriptions != null && !subscriptions.isEmpty()) {
             for (Subscription subscription : subscriptions) {
                 postingState.event = event;
@@ -484,26 +494,49 @@ public class EventBus {
                 break;
             case MAIN:
                 if (isMainThread) {
-                    invokeSubscriber(subscription, event);
-                } else {
+                    invokeDirectly(subscription, event);
+                } else if (!conflate(subscription, event)) {
                     mainThreadPoster.enqueue(subscription, event);
                 }
                 break;
             case BACKGROUND:
-                if (isMainThread) {
+                if (!isMainThread) {
+                    invokeDirectly(subscription, event);
+                } else if (!conflate(subscription, event)) {
                     backgroundPoster.enqueue(subscription, event);
-                } else {
-                    invokeSubscriber(subscription, event);
                 }
                 break;
             case ASYNC:
-                asyncPoster.enqueue(subscription, event);
+                if (!conflate(subscription, event)) {
+                    asyncPoster.enqueue(subscription, event);
+                }
                 break;
             default:
                 throw new IllegalStateException("Unknown thread mode: " + subscription.subscriberMethod.threadMode);
         }
     }
 
+    /**
+     * @return true if the event replaced the pending event of a conflating subscription, so it needs no queued delivery of its own
+     */
+    private boolean conflate(Subscription subscription, Object event) {
+        if (subscription.subscriberMethod.conflate && subscription.conflate(event)) {
+            conflatedEventCount.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Delivers the event on the posting thread, a pending older event of a conflating subscription is not delivered anymore.
+     */
+    private void invokeDirectly(Subscription subscription, Object event) {
+        if (subscription.subscriberMethod.conflate && subscription.dropConflatedEvent()) {
+            conflatedEventCount.incrementAndGet();
+        }
+        invokeSubscriber(subscription, event);
+    }
+
     private void handleSubscriberException(Subscription subscription, Object event, Throwable cause) {
         if (event instanceof SubscriberExceptionEvent) {
             if (logSubscriberExceptions) {
@@ -560,7 +593,10 @@ public class EventBus {
         Object event = pendingPost.event;
         Subscription subscription = pendingPost.subscription;
         PendingPost.releasePendingPost(pendingPost);
-        if (subscription.active) {
+        if (subscription.subscriberMethod.conflate) {
+            event = subscription.takeConflatedEvent();
+        }
+        if (subscription.active && event != null) {
             invokeSubscriber(subscription, event);
         }
     }
@@ -42,5 +42,13 @@ public @interface Subscribe {
      * delivery among subscribers with different {@link ThreadMode}s!
      */
     int priority() default 0;
+
+    /**
+     * If true, an event queued for delivery on another thread ({@link ThreadMode#MAIN}, {@link ThreadMode#BACKGROUND} or
+     * {@link ThreadMode#ASYNC}) replaces the event still pending for this subscriber instead of queuing behind it, so the subscriber
+     * only receives the latest one. Meant for events posted more often than the subscriber can handle them, like progress or location
+     * updates. The replaced events are counted by {@link EventBus#getConflatedEventCount()}.
+     */
+    boolean conflate() default false;
 }
 
@@ -32,17 +32,24 @@ public class SubscriberMethod {
 
     final boolean sticky;
 
+    final boolean conflate;
+
     /**
      * Used for efficient comparison
      */
     String methodString;
 
     public SubscriberMethod(Method method, Class<?> eventType, ThreadMode threadMode, int priority, boolean sticky) {
+        this(method, eventType, threadMode, priority, sticky, false);
+    }
+
+    public SubscriberMethod(Method method, Class<?> eventType, ThreadMode threadMode, int priority, boolean sticky, boolean conflate) {
         this.method = method;
         this.threadMode = threadMode;
         this.eventType = eventType;
         this.priority = priority;
         this.sticky = sticky;
+        this.conflate = conflate;
     }
 
     @Override
@@ -27,12 +27,62 @@ final class Subscription {
      */
     volatile boolean active;
 
+    /**
+     * Latest event waiting for delivery to a conflating subscriber. While it is set, a pending post is queued which delivers the event
+     * set at the time it runs.
+     */
+    private Object conflatedEvent;
+
+    /**
+     * Number of events replaced by a later event before their delivery.
+     */
+    private long conflatedCount;
+
     Subscription(Object subscriber, SubscriberMethod subscriberMethod) {
         this.subscriber = subscriber;
         this.subscriberMethod = subscriberMethod;
         active = true;
     }
 
+    /**
+     * Sets the event to deliver to a conflating subscriber.
+     * @return true if it replaced a pending event, which already has a queued delivery, false if the event needs to be queued
+     */
+    synchronized boolean conflate(Object event) {
+        boolean pending = conflatedEvent != null;
+        if (pending) {
+            conflatedCount++;
+        }
+        conflatedEvent = event;
+        return pending;
+    }
+
+    /**
+     * Drops the pending event of a conflating subscriber, when a newer event is delivered directly.
+     * @return true if an event was pending
+     */
+    synchronized boolean dropConflatedEvent() {
+        if (conflatedEvent == null) {
+            return false;
+        }
+        conflatedEvent = null;
+        conflatedCount++;
+        return true;
+    }
+
+    /**
+     * @return the event to deliver for a queued post of a conflating subscriber, null if it was dropped in the meantime
+     */
+    synchronized Object takeConflatedEvent() {
+        Object event = conflatedEvent;
+        conflatedEvent = null;
+        return event;
+    }
+
+    synchronized long getConflatedCount() {
+        return conflatedCount;
+    }
+
     @Override
     public boolean equals(Object other) {
         if (other instanceof Subscription) {
@@ -72,9 +72,14 @@ public abstract class AbstractSubscriberInfo implements SubscriberInfo {
 
     protected SubscriberMethod createSubscriberMethod(String methodName, Class<?> eventType, ThreadMode threadMode, int priority,
                                                       boolean sticky) {
+        return createSubscriberMethod(methodName, eventType, threadMode, priority, sticky, false);
+    }
+
+    protected SubscriberMethod createSubscriberMethod(String methodName, Class<?> eventType, ThreadMode threadMode, int priority,
+                                                      boolean sticky, boolean conflate) {
         try {
             Method method = subscriberClass.getDeclaredMethod(methodName, eventType);
-            return new SubscriberMethod(method, eventType, threadMode, priority, sticky);
+            return new SubscriberMethod(method, eventType, threadMode, priority, sticky, conflate);
         } catch (NoSuchMethodException e) {
             throw new EventBusException("Could not find subscriber method in " + subscriberClass + ". Maybe a missing ProGuard rule?", e);
         }
@@ -29,12 +29,20 @@ public class SubscriberMethodInfo {
 
     final boolean sticky;
 
-    public SubscriberMethodInfo(String methodName, Class<?> eventType, ThreadMode threadMode, int priority, boolean sticky) {
+    final boolean conflate;
+
+    public SubscriberMethodInfo(String methodName, Class<?> eventType, ThreadMode threadMode, int priority, boolean sticky,
+                                boolean conflate) {
         this.methodName = methodName;
         this.threadMode = threadMode;
         this.eventType = eventType;
         this.priority = priority;
         this.sticky = sticky;
+        this.conflate = conflate;
+    }
+
+    public SubscriberMethodInfo(String methodName, Class<?> eventType, ThreadMode threadMode, int priority, boolean sticky) {
+        this(methodName, eventType, threadMode, priority, sticky, false);
     }
 
     public SubscriberMethodInfo(String methodName, Class<?> eventType) {
@@ -0,0 +1,111 @@
+package org.greenrobot.eventbus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Queued delivery to conflating and regular subscribers. Without a main looper the bus takes the test thread as the main thread, so the
+ * events are queued for the background subscribers, which block on the first event until all others were posted.
+ */
+public class EventBusConflateTest {
+
+    private static final int EVENTS = 100;
+
+    private static List<Integer> postWhileBlocked(EventBus bus, BlockingSubscriber subscriber) throws Exception {
+        bus.register(subscriber);
+        bus.post(new ProgressEvent(0));
+        Assert.assertTrue(subscriber.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < EVENTS; i++) {
+            bus.post(new ProgressEvent(i));
+        }
+        subscriber.release.countDown();
+        Assert.assertTrue(subscriber.last.await(5, TimeUnit.SECONDS));
+        bus.unregister(subscriber);
+        return subscriber.received;
+    }
+
+    @Test
+    public void conflatingSubscriberReceivesTheLatestEvent() throws Exception {
+        EventBus bus = EventBus.builder().build();
+        List<Integer> received = postWhileBlocked(bus, new ConflatingSubscriber());
+        Assert.assertEquals(Arrays.asList(0, EVENTS - 1), received);
+        Assert.assertEquals(EVENTS - 2, bus.getConflatedEventCount());
+    }
+
+    @Test
+    public void conflatedCountIsKeptPerEventType() throws Exception {
+        EventBus bus = EventBus.builder().build();
+        ConflatingSubscriber subscriber = new ConflatingSubscriber();
+        bus.register(subscriber);
+        bus.post(new ProgressEvent(0));
+        Assert.assertTrue(subscriber.entered.await(5, TimeUnit.SECONDS));
+        bus.post(new ProgressEvent(1));
+        bus.post(new ProgressEvent(EVENTS - 1));
+        Assert.assertEquals(1, bus.getConflatedEventCount(ProgressEvent.class));
+        Assert.assertEquals(0, bus.getConflatedEventCount(Object.class));
+        subscriber.release.countDown();
+        Assert.assertTrue(subscriber.last.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void regularSubscriberReceivesEveryEvent() throws Exception {
+        EventBus bus = EventBus.builder().build();
+        List<Integer> received = postWhileBlocked(bus, new QueuingSubscriber());
+        Assert.assertEquals(EVENTS, received.size());
+        for (int i = 0; i < EVENTS; i++) {
+            Assert.assertEquals(i, (int) received.get(i));
+        }
+        Assert.assertEquals(0, bus.getConflatedEventCount());
+    }
+
+    public static class ProgressEvent {
+
+        final int value;
+
+        ProgressEvent(int value) {
+            this.value = value;
+        }
+    }
+
+    public static class BlockingSubscriber {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final CountDownLatch last = new CountDownLatch(1);
+
+        final List<Integer> received = new ArrayList<>();
+
+        void receive(ProgressEvent event) throws InterruptedException {
+            received.add(event.value);
+            if (event.value == 0) {
+                entered.countDown();
+                release.await();
+            } else if (event.value == EVENTS - 1) {
+                last.countDown();
+            }
+        }
+    }
+
+    public static class ConflatingSubscriber extends BlockingSubscriber {
+
+        @Subscribe(threadMode = ThreadMode.BACKGROUND, conflate = true)
+        public void onProgress(ProgressEvent event) throws InterruptedException {
+            receive(event);
+        }
+    }
+
+    public static class QueuingSubscriber extends BlockingSubscriber {
+
+        @Subscribe(threadMode = ThreadMode.BACKGROUND)
+        public void onProgress(ProgressEvent event) throws InterruptedException {
+            receive(event);
+        }
+    }
+}
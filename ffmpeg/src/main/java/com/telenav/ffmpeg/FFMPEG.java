@@ -24,7 +24,17 @@ public class FFMPEG {
     //JNI
     public native int initial(String folder);
 
-    public native int[] encode(byte[] yuvimage);
+    public int[] encode(byte[] jpeg) {
+        return encode(jpeg, jpeg.length);
+    }
+
+    /**
+     * encodes a jpeg held in the first bytes of a larger buffer, e.g. a pooled one
+     * @param jpeg the buffer
+     * @param length the length of the jpeg in the buffer
+     * @return the video index and the frame index, negative on failure
+     */
+    public native int[] encode(byte[] jpeg, int length);
 
     public native int close();
 
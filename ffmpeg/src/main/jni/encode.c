@@ -630,7 +630,7 @@ JNIEXPORT jint JNICALL Java_com_telenav_ffmpeg_FFMPEG_initial(JNIEnv *env, jobje
 }
 
 
-JNIEXPORT jintArray JNICALL Java_com_telenav_ffmpeg_FFMPEG_encode(JNIEnv *env, jobject obj, jbyteArray jpeg) {
+JNIEXPORT jintArray JNICALL Java_com_telenav_ffmpeg_FFMPEG_encode(JNIEnv *env, jobject obj, jbyteArray jpeg, jint length) {
     int *ret;
     int enc_got_frame = 0;
     LOGI("Encoding frame");
@@ -638,7 +638,8 @@ JNIEXPORT jintArray JNICALL Java_com_telenav_ffmpeg_FFMPEG_encode(JNIEnv *env, j
 
     jbyte *in = (*env)->GetByteArrayElements(env, jpeg, 0);
 
-    ret = decodeJpegData(in, (*env)->GetArrayLength(env, jpeg));
+    jsize capacity = (*env)->GetArrayLength(env, jpeg);
+    ret = decodeJpegData(in, length > 0 && length < capacity ? length : capacity);
 
     if (ret[0] < 0 || ret[1] < 0) {
         LOGE("Error while decoding frame");
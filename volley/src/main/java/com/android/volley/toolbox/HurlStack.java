@@ -16,9 +16,11 @@
 
 package com.android.volley.toolbox;
 
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.HashMap;
@@ -49,10 +51,23 @@ public class HurlStack implements HttpStack {
 
     private static final String HEADER_CONTENT_TYPE = "Content-Type";
 
+    /**
+     * chunk size used when the body length is not known in advance
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+    /**
+     * buffer between the entity and the connection, so the small writes of the multipart headers and the file parts go out in large
+     * pieces
+     */
+    private static final int BODY_BUFFER_SIZE = 64 * 1024;
+
     private final UrlRewriter mUrlRewriter;
 
     private final SSLSocketFactory mSslSocketFactory;
 
+    private final boolean mFixedLengthStreaming;
+
     public HurlStack() {
         this(null);
     }
@@ -69,8 +84,18 @@ public class HurlStack implements HttpStack {
      * @param sslSocketFactory SSL factory to use for HTTPS connections
      */
     public HurlStack(UrlRewriter urlRewriter, SSLSocketFactory sslSocketFactory) {
+        this(urlRewriter, sslSocketFactory, true);
+    }
+
+    /**
+     * @param urlRewriter Rewriter to use for request URLs
+     * @param sslSocketFactory SSL factory to use for HTTPS connections
+     * @param fixedLengthStreaming send bodies of known length with a Content-Length header instead of chunked
+     */
+    public HurlStack(UrlRewriter urlRewriter, SSLSocketFactory sslSocketFactory, boolean fixedLengthStreaming) {
         mUrlRewriter = urlRewriter;
         mSslSocketFactory = sslSocketFactory;
+        mFixedLengthStreaming = fixedLengthStreaming;
     }
 
     /**
@@ -104,9 +129,14 @@ public class HurlStack implements HttpStack {
         return entity;
     }
 
-    @SuppressWarnings("deprecation")
     /* package */ static void setConnectionParametersForRequest(HttpURLConnection connection, Request<?> request)
             throws IOException, AuthFailureError {
+        setConnectionParametersForRequest(connection, request, true);
+    }
+
+    @SuppressWarnings("deprecation")
+    /* package */ static void setConnectionParametersForRequest(HttpURLConnection connection, Request<?> request,
+                                                               boolean fixedLengthStreaming) throws IOException, AuthFailureError {
         switch (request.getMethod()) {
             case Method.DEPRECATED_GET_OR_POST:
                 // This is the deprecated way that needs to be handled for backwards compatibility.
@@ -135,11 +165,11 @@ public class HurlStack implements HttpStack {
                 break;
             case Method.POST:
                 connection.setRequestMethod("POST");
-                addBodyIfExists(connection, request);
+                addBodyIfExists(connection, request, fixedLengthStreaming);
                 break;
             case Method.PUT:
                 connection.setRequestMethod("PUT");
-                addBodyIfExists(connection, request);
+                addBodyIfExists(connection, request, fixedLengthStreaming);
                 break;
             case Method.HEAD:
                 connection.setRequestMethod("HEAD");
@@ -152,23 +182,31 @@ public class HurlStack implements HttpStack {
                 break;
             case Method.PATCH:
                 connection.setRequestMethod("PATCH");
-                addBodyIfExists(connection, request);
+                addBodyIfExists(connection, request, fixedLengthStreaming);
                 break;
             default:
                 throw new IllegalStateException("Unknown method type.");
         }
     }
 
-    private static void addBodyIfExists(HttpURLConnection connection, Request<?> request) throws IOException, AuthFailureError {
+    private static void addBodyIfExists(HttpURLConnection connection, Request<?> request, boolean fixedLengthStreaming)
+            throws IOException, AuthFailureError {
 
         HttpEntity entity = request.getMultipartEntity();
         if (entity != null) {
             try {
                 connection.setDoOutput(true);
                 connection.addRequestProperty(HEADER_CONTENT_TYPE, request.getBodyContentType());
-                entity.writeTo(connection.getOutputStream());
+                long length = entity.getContentLength();
+                if (fixedLengthStreaming && length >= 0) {
+                    connection.setFixedLengthStreamingMode(length);
+                } else {
+                    connection.setChunkedStreamingMode(CHUNK_SIZE);
+                }
+                OutputStream out = new BufferedOutputStream(connection.getOutputStream(), BODY_BUFFER_SIZE);
+                entity.writeTo(out);
                 try {
-                    connection.getOutputStream().close();
+                    out.close();
                 } catch (Exception ignored) {
                 }
             } catch (IOException ioe) {
@@ -179,6 +217,11 @@ public class HurlStack implements HttpStack {
             if (body != null) {
                 connection.setDoOutput(true);
                 connection.addRequestProperty(HEADER_CONTENT_TYPE, request.getBodyContentType());
+                if (fixedLengthStreaming) {
+                    connection.setFixedLengthStreamingMode(body.length);
+                } else {
+                    connection.setChunkedStreamingMode(CHUNK_SIZE);
+                }
                 DataOutputStream out = new DataOutputStream(connection.getOutputStream());
                 out.write(body);
                 out.close();
@@ -204,7 +247,7 @@ public class HurlStack implements HttpStack {
         for (String headerName : map.keySet()) {
             connection.addRequestProperty(headerName, map.get(headerName));
         }
-        setConnectionParametersForRequest(connection, request);
+        setConnectionParametersForRequest(connection, request, mFixedLengthStreaming);
         // Initialize HttpResponse with data from the HttpURLConnection.
         ProtocolVersion protocolVersion = new ProtocolVersion("HTTP", 1, 1);
         int responseCode = connection.getResponseCode();
@@ -246,7 +289,6 @@ public class HurlStack implements HttpStack {
         connection.setConnectTimeout(timeoutMs);
         connection.setReadTimeout(timeoutMs);
         connection.setUseCaches(false);
-        connection.setChunkedStreamingMode(4096);
         connection.setDoInput(true);
 
         // use caller-provided custom SslSocketFactory, if any, for HTTPS